@@ -15,4 +15,24 @@ else
   javaPath="/usr/bin/env java"
 fi
 
-$javaPath --add-modules ALL-MODULE-PATH,ALL-SYSTEM -p /usr/lib/cish/dependencies/ -m org.alindner.cish.interpreter "$@"
+# if CISH_DAEMON is set, the script is forwarded to a running daemon (started with `cish --daemon` in the same directory).
+# The client exits with 75, if there is no usable daemon. In this case the script is executed the classic way.
+# A watched script keeps running and the CDS training needs a fresh jvm, so they aren't forwarded. The daemon rejects them anyway.
+if [ -n "$CISH_DAEMON" ] && [ "$1" != "--daemon" ] && [ "$1" != "--watch" ] && [ "$1" != "--build-cds" ]; then
+  $javaPath -XX:TieredStopAtLevel=1 -Xshare:auto -p /usr/lib/cish/dependencies/ -m cish.interpreter/org.alindner.cish.interpreter.daemon.DaemonClient "$@"
+  status=$?
+  if [ $status -ne 75 ]; then
+    exit $status
+  fi
+fi
+
+# use the class data sharing archive created by `cish --build-cds`, which reduces the startup time
+cds=""
+if [ -f /usr/lib/cish/cish.jsa ]; then
+  cds="-XX:SharedArchiveFile=/usr/lib/cish/cish.jsa -Xshare:auto"
+elif [ -f "$HOME/.cish/cish.jsa" ]; then
+  cds="-XX:SharedArchiveFile=$HOME/.cish/cish.jsa -Xshare:auto"
+fi
+
+# CISH_OPTS passes options to the jvm, e.g. CISH_OPTS="-Dcish.offline=true -Xmx512m". It is split at spaces like JAVA_OPTS.
+$javaPath $cds $CISH_OPTS --add-modules ALL-MODULE-PATH,ALL-SYSTEM -p /usr/lib/cish/dependencies/ -m cish.interpreter/org.alindner.cish.interpreter.Interpreter "$@"
@@ -3,15 +3,18 @@
  */
 module cish.compiler {
 	requires cish.extension;
-	requires reflections;
 	requires org.apache.logging.log4j;
 	requires static lombok;
 	requires org.apache.commons.io;
 	requires java.compiler;
 	requires java.net.http;
+	requires java.xml;
 
 	exports org.alindner.cish.compiler;
 	exports org.alindner.cish.compiler.precompiler.jj; //todo remove
 	exports org.alindner.cish.compiler.utils;
 	exports org.alindner.cish.compiler.exceptions;
+	exports org.alindner.cish.compiler.postcompiler.predicates;
+	exports org.alindner.cish.compiler.postcompiler to cish.interpreter;
+	exports org.alindner.cish.compiler.postcompiler.extension to cish.interpreter;
 }
\ No newline at end of file
@@ -2,19 +2,27 @@ package org.alindner.cish.compiler;
 
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.exceptions.CishCompileException;
 import org.alindner.cish.compiler.exceptions.CishException;
 import org.alindner.cish.compiler.exceptions.CishSyntaxError;
+import org.alindner.cish.compiler.postcompiler.CacheCollector;
 import org.alindner.cish.compiler.postcompiler.CacheManager;
+import org.alindner.cish.compiler.postcompiler.CacheManifest;
 import org.alindner.cish.compiler.postcompiler.PostCompiler;
 import org.alindner.cish.compiler.postcompiler.extension.ExtensionManager;
 import org.alindner.cish.compiler.precompiler.CishCompiler;
 import org.alindner.cish.compiler.precompiler.jj.ParseException;
+import org.alindner.cish.compiler.utils.CishPath;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
+import java.util.stream.Collectors;
 
 /**
  * the main class for compiling a .cish file to (java) byte code
@@ -24,20 +32,48 @@ import java.util.regex.Matcher;
 @Log4j2
 @Getter
 public class Compiler {
-	private final ExtensionManager manager;
-	private final boolean          debug;
+	private final Supplier<ExtensionManager> manager;
+	private final boolean                    debug;
 
 	private final PostCompiler   postCompiler;
 	private final ScriptMetaInfo script;
 	private final ScriptMetaInfo currentScript;
+	private final List<Compiler> subCompilers = new ArrayList<>();
+	private final Set<Path>      scripts;
+	private       CishCompiler   parsed;
+	private       List<Path>     extensions;
 
 
 	public Compiler(final boolean debug, final Path cishFile) {
+		this(debug, cishFile, Compiler.lazy(() -> ExtensionManager.load(cishFile)));
+	}
+
+	/**
+	 * Constructor with an already loaded extension manager, e.g. a long living one of the daemon
+	 *
+	 * @param debug    debug
+	 * @param cishFile path to the script
+	 * @param manager  extension manager
+	 */
+	public Compiler(final boolean debug, final Path cishFile, final ExtensionManager manager) {
+		this(debug, cishFile, () -> manager);
+	}
+
+	/**
+	 * Constructor with an extension manager, which is only loaded when it is needed. A script, which was already compiled, doesn't need it. The supplier can be shared by
+	 * several scripts, see {@link #lazy(Supplier)}.
+	 *
+	 * @param debug    debug
+	 * @param cishFile path to the script
+	 * @param manager  supplier of the extension manager
+	 */
+	public Compiler(final boolean debug, final Path cishFile, final Supplier<ExtensionManager> manager) {
 		this.debug = debug;
-		this.manager = ExtensionManager.load(cishFile);
+		this.manager = manager;
 		this.script = new ScriptMetaInfo(cishFile, "main");
 		this.currentScript = this.script;
 		this.postCompiler = new PostCompiler(this.manager, this.currentScript);
+		this.scripts = ConcurrentHashMap.newKeySet();
 	}
 
 	/**
@@ -46,17 +82,41 @@ public class Compiler {
 	 * @param debug      debug
 	 * @param rootScript the script manager object
 	 * @param subScript  path to the current sub script
-	 * @param manager    extension manager
+	 * @param manager    supplier of the extension manager
+	 * @param scripts    normalized paths of all scripts of the tree, which are already known
 	 */
-	private Compiler(final boolean debug, final ScriptMetaInfo rootScript, final Path subScript, final ExtensionManager manager) {
+	private Compiler(final boolean debug, final ScriptMetaInfo rootScript, final Path subScript, final Supplier<ExtensionManager> manager, final Set<Path> scripts) {
 		this.debug = debug;
 		this.manager = manager;
 		this.script = rootScript;
 		this.currentScript = rootScript.addSubScript(subScript);
 		this.postCompiler = new PostCompiler(this.manager, this.currentScript);
+		this.scripts = scripts;
 	}
 
 
+	/**
+	 * wraps a supplier, so the value is only computed once
+	 *
+	 * @param supplier supplier
+	 * @param <T>      type of the value
+	 *
+	 * @return caching supplier
+	 */
+	public static <T> Supplier<T> lazy(final Supplier<T> supplier) {
+		final AtomicReference<T> value = new AtomicReference<>();
+		return () -> value.updateAndGet(current -> current != null ? current : supplier.get());
+	}
+
+	/**
+	 * get the extension manager. It is loaded on the first call.
+	 *
+	 * @return extension manager
+	 */
+	public ExtensionManager getManager() {
+		return this.manager.get();
+	}
+
 	/**
 	 * compile the given file to java using our javacc parser
 	 *
@@ -68,76 +128,275 @@ public class Compiler {
 	 */
 	public Compiler compileCish(final String s) throws ParseException {
 		final CishCompiler c = new CishCompiler(this.debug, this.currentScript).compile(s);
-		this.currentScript.getJavaContent().put(
-				"Main",
-				String.format("package %s;\n%s", this.currentScript.getPkg(), c.getContent())
-		);
-		c.getJavaClasses().forEach(cl -> {
+		this.parsed = c;
+		this.currentScript.getJavaContent().put("Main", c.getContent());
+		this.currentScript.getLineMaps().put("Main", c.getLineMap());
+		for (int i = 0; i < c.getJavaClasses().size(); i++) {
+			final String  cl      = c.getJavaClasses().get(i);
 			final Matcher matcher = Props.regexClassPattern.matcher(cl.replaceAll("\n", ""));
 			while (matcher.find()) {
-				this.currentScript.getJavaContent().put(
-						matcher.group(2),
-						String.format(
-								"package %s;\n%s",
-								this.currentScript.getPkg(),
-								cl
-						)
-						//todo
-				);
+				this.currentScript.getJavaContent().put(matcher.group(2), cl);
+				this.currentScript.getLineMaps().put(matcher.group(2), c.getJavaClassLines().get(i));
 			}
-		});
+		}
 		this.currentScript.getImports().addAll(c.getImports());
 		this.currentScript.getLoads().addAll(c.getLoads());
 		this.currentScript.getRequires().addAll(c.getRequires());
+		this.currentScript.getIncludes().addAll(c.getIncludes());
 		this.currentScript.getBash().putAll(c.getBash());
-		this.currentScript.getRequiresAsPaths().forEach(this::compileASubScript);
+		this.currentScript.getReferences().addAll(c.getReferences());
+		this.compileSubScripts();
 		return this;
 	}
 
 	/**
-	 * compile a script, which is included in the main script
+	 * parses the required scripts concurrently on the fork join pool. Each of them parses its own required scripts the same way, so the whole require graph is processed in
+	 * parallel. A script, which is required more than once in the tree, is only parsed the first time.
+	 */
+	private void compileSubScripts() {
+		final List<Compiler> compilers = this.currentScript.getRequiresAsPaths()
+		                                                   .stream()
+		                                                   .filter(f -> this.scripts.add(f.toAbsolutePath().normalize()))
+		                                                   .map(f -> new Compiler(this.debug, this.currentScript, f, this.manager, this.scripts))
+		                                                   .collect(Collectors.toList());
+		final List<ForkJoinTask<Boolean>> tasks = compilers.stream()
+		                                                   .map(subCompiler -> ForkJoinTask.adapt(subCompiler::compileAsSubScript))
+		                                                   .collect(Collectors.toList());
+		ForkJoinTask.invokeAll(tasks);
+		for (int i = 0; i < compilers.size(); i++) {
+			if (tasks.get(i).join()) {
+				this.subCompilers.add(compilers.get(i));
+			}
+		}
+	}
+
+	/**
+	 * compile this sub script
 	 *
-	 * @param f path of the subscript
+	 * @return compiling was successful
 	 */
-	private void compileASubScript(final Path f) {
+	private boolean compileAsSubScript() {
 		try {
-			new Compiler(this.debug, this.currentScript, f, this.manager).compile();
+			this.compile();
+			return true;
 		} catch (final CishException e) {
-			Compiler.log.error("Couldn't parse subscript: {}", () -> f);
+			Compiler.log.error("Couldn't parse subscript: {}", this.currentScript::getScript);
 			Compiler.log.error(e);
+			return false;
 		}
 	}
 
 	/**
 	 * compile the given script
+	 * <p>
+	 * A sub script is only parsed. The root script looks up the whole script tree in the {@link CacheManager} and only compiles it to byte code, if there is no cached entry.
+	 * If the {@link CacheManifest} of the root script is up to date, even parsing the script and scanning the extensions is skipped.
 	 *
 	 * @throws CishException Compilation fails
 	 */
 	public void compile() throws CishException {
-		final CacheManager cm = CacheManager.load();
-
+		if (this.currentScript.isRoot() && this.useManifest()) {
+			return;
+		}
 		Compiler.log.debug("Compile the .cish script to java plain text");
 		try {
 			this.compileCish(this.currentScript.getContent());
 		} catch (final ParseException e) {
 			throw new CishSyntaxError("The provided script contains a syntax error.", e);
 		}
-		this.manager.scanForExtensions();
-		this.manager.processFoundExtensions();
-		if (cm.needsCompilation(this.script)) {
-			try {
-				this.postCompiler.compileJava(this.manager.getImports());
-			} catch (final IOException e) {
-				throw new CishException("Couldn't compile java code. Maybe a bug?", e);
+		if (!this.currentScript.isRoot()) {
+			return;
+		}
+		CacheCollector.markUsed(CishPath.ofCishFile(this.script.getRootScript()));
+		this.getManager().scanForExtensions();
+		this.getManager().processFoundExtensions();
+
+		final Set<String> references  = this.script.getAllReferences();
+		final List<Path>  extensions  = this.getManager().getModulesList(false, references);
+		final List<Path>  modulePaths = this.getManager().getModulesList(true, references);
+		this.useModules(extensions, modulePaths);
+
+		final CacheManager   cm     = new CacheManager();
+		final String         key    = CacheManager.buildKey(this.script, this.getManager(), extensions);
+		final Optional<Path> cached = cm.lookup(key);
+		try {
+			this.postCompiler.putBashContentToFile();
+			if (cached.isPresent()) {
+				Compiler.log.debug("Using cached compilation {}.", key);
+				this.postCompiler.useCached(cached.get());
+				CacheManifest.of(this.script, key, modulePaths).store(this.script.getRootScript());
+				return;
+			}
+			final List<String> imports = this.getManager().getImports(references);
+			if (!this.compileUnits(cm, imports) && !this.postCompiler.compileBytecode(this.getParsedScripts(), imports)) {
+				this.compileJava(imports);
+			}
+			if (this.postCompiler.getCompiledModule() != null) {
+				cm.store(key, this.postCompiler.getCompiledModule());
+				CacheManifest.of(this.script, key, modulePaths).store(this.script.getRootScript());
+			}
+		} catch (final IOException e) {
+			throw new CishException("Couldn't compile java code. Maybe a bug?", e);
+		}
+		this.getManager().store();
+	}
+
+	/**
+	 * passes the modules of the extensions, which are computed once per compilation, to this script and its sub scripts
+	 *
+	 * @param extensions  module paths of the referenced extensions
+	 * @param modulePaths module paths of the extensions and their dependencies
+	 */
+	private void useModules(final List<Path> extensions, final List<Path> modulePaths) {
+		this.extensions = extensions;
+		this.postCompiler.useModules(extensions, modulePaths);
+		this.subCompilers.forEach(subCompiler -> subCompiler.useModules(extensions, modulePaths));
+	}
+
+	/**
+	 * uses the cached compilation of the last run, if the stat data of all files of the script tree is unchanged
+	 *
+	 * @return the cached compilation is used
+	 */
+	private boolean useManifest() {
+		final Optional<CacheManifest> manifest = CacheManifest.load(this.script.getRootScript()).filter(CacheManifest::isUpToDate);
+		if (manifest.isEmpty()) {
+			return false;
+		}
+		final Optional<Path> cached = new CacheManager().lookup(manifest.get().getKey());
+		if (cached.isEmpty()) {
+			return false;
+		}
+		Compiler.log.debug("Using cached compilation {} without parsing the script.", manifest.get().getKey());
+		CacheCollector.markUsed(CishPath.ofCishFile(this.script.getRootScript()));
+		manifest.get().getBash().forEach(hash -> CacheCollector.markUsed(CishPath.ofBashScript(hash)));
+		manifest.get().getModulePaths().forEach(CacheCollector::markUsed);
+		this.postCompiler.useCached(cached.get(), manifest.get().getModulePaths());
+		return true;
+	}
+
+	/**
+	 * compiles every script of the tree as its own unit and builds the module of the tree from them. A unit is cached by {@link CacheManager#buildUnitKey}, so only the
+	 * scripts, which changed, and the scripts, which require a script whose api changed, are compiled again.
+	 *
+	 * @param cm      store of the compiled units
+	 * @param imports imports of the extensions
+	 *
+	 * @return the tree was compiled. If the scripts require each other in a cycle, they can't be compiled one after another and the tree needs to be compiled at once.
+	 *
+	 * @throws IOException          a compiled unit can't be read or written
+	 * @throws CishCompileException a script can't be compiled
+	 */
+	private boolean compileUnits(final CacheManager cm, final List<String> imports) throws IOException, CishCompileException {
+		final Map<String, Compiler> compilers = new HashMap<>();
+		this.collectCompilers(compilers);
+		final Map<String, Path>   units = new LinkedHashMap<>();
+		final Map<String, String> apis  = new HashMap<>();
+		if (!this.compileUnit(compilers, cm, imports, units, apis, new HashSet<>())) {
+			Compiler.log.debug("The required scripts contain a cycle, compiling them together");
+			return false;
+		}
+		compilers.values().forEach(compiler -> this.postCompiler.getLineMaps().putAll(compiler.postCompiler.getLineMaps()));
+		this.postCompiler.assemble(units.values());
+		return true;
+	}
+
+	/**
+	 * collects the compilers of this script and its sub scripts
+	 *
+	 * @param compilers compilers by package
+	 */
+	private void collectCompilers(final Map<String, Compiler> compilers) {
+		compilers.put(this.currentScript.getPkg(), this);
+		this.subCompilers.forEach(subCompiler -> subCompiler.collectCompilers(compilers));
+	}
+
+	/**
+	 * compiles the scripts, which this script requires, and this script afterwards, unless they are cached
+	 *
+	 * @param compilers compilers of the tree by package
+	 * @param cm        store of the compiled units
+	 * @param imports   imports of the extensions
+	 * @param units     cache entries of the compiled units by package, in the order they were compiled
+	 * @param apis      api keys of the compiled units by package
+	 * @param visiting  packages, whose required scripts are currently compiled
+	 *
+	 * @return false, if a cycle was found
+	 *
+	 * @throws IOException          a compiled unit can't be read or written
+	 * @throws CishCompileException the script can't be compiled
+	 */
+	private boolean compileUnit(final Map<String, Compiler> compilers, final CacheManager cm, final List<String> imports, final Map<String, Path> units, final Map<String, String> apis, final Set<String> visiting) throws IOException, CishCompileException {
+		final String pkg = this.currentScript.getPkg();
+		if (units.containsKey(pkg)) {
+			return true;
+		}
+		if (!visiting.add(pkg)) {
+			return false;
+		}
+		final List<String> required = new ArrayList<>();
+		for (final Path requiredScript : this.currentScript.getRequiresAsPaths()) {
+			final Compiler subCompiler = compilers.get(ScriptMetaInfo.packageName(requiredScript));
+			if (subCompiler == null) {
+				continue;
 			}
-			this.manager.store();
-			if (this.script.isRoot()) {
-				cm.add(this.script);
-				cm.store();
+			if (!subCompiler.compileUnit(compilers, cm, imports, units, apis, visiting)) {
+				return false;
 			}
+			required.add(subCompiler.currentScript.getPkg() + ":" + apis.get(subCompiler.currentScript.getPkg()));
+		}
+		final String   key   = CacheManager.buildUnitKey(this.currentScript, this.getManager(), this.extensions, imports, required);
+		final String   api   = CacheManager.buildApiKey(this.currentScript);
+		Optional<Path> entry = cm.lookup(key);
+		if (entry.isPresent()) {
+			Compiler.log.debug("Using cached unit {} of {}.", key, this.currentScript.getScript());
 		} else {
-			Compiler.log.debug("Using cached compilation.");
+			Compiler.log.debug("Compiling unit {} of {}.", key, this.currentScript.getScript());
+			entry = Optional.of(cm.store(key, this.postCompiler.compileUnit(this.parsed, imports, units)));
 		}
+		visiting.remove(pkg);
+		units.put(pkg, entry.get());
+		apis.put(pkg, api);
+		return true;
+	}
+
+	/**
+	 * collects the parsed scripts of this script and its sub scripts
+	 *
+	 * @return parsed scripts
+	 */
+	private List<CishCompiler> getParsedScripts() {
+		final List<CishCompiler> scripts = new ArrayList<>();
+		scripts.add(this.parsed);
+		this.subCompilers.forEach(subCompiler -> scripts.addAll(subCompiler.getParsedScripts()));
+		return scripts;
+	}
+
+	/**
+	 * prepares the java code of the sub scripts and this script and compiles it
+	 *
+	 * @param imports imports of the extensions
+	 *
+	 * @throws IOException          when compiling fails
+	 * @throws CishCompileException javac rejected the java code
+	 */
+	private void compileJava(final List<String> imports) throws IOException, CishCompileException {
+		for (final Compiler subCompiler : this.subCompilers) {
+			subCompiler.compileJava(imports);
+		}
+		this.postCompiler.compileJava(imports);
+	}
+
+	/**
+	 * get the files of the script tree, e.g. to watch them for changes. If the cached compilation was used without parsing the script, the files are taken from its
+	 * {@link CacheManifest}.
+	 *
+	 * @return absolute paths of the scripts, their includes and the local java files they load
+	 */
+	public Set<Path> getFiles() {
+		final Set<Path> files = CacheManifest.files(this.script);
+		CacheManifest.load(this.script.getRootScript()).ifPresent(manifest -> files.addAll(manifest.getFiles()));
+		return files;
 	}
 
 	/**
@@ -146,8 +405,10 @@ public class Compiler {
 	 * @param simpleParameters the parameters like -version
 	 * @param argsList         the parameters like `0.3.2`
 	 * @param parameters       the parameters like --version=test
+	 *
+	 * @return the script finished without an exception
 	 */
-	public void run(final List<String> simpleParameters, final List<String> argsList, final Map<String, String> parameters) {
-		this.postCompiler.run(simpleParameters, argsList, parameters);
+	public boolean run(final List<String> simpleParameters, final List<String> argsList, final Map<String, String> parameters) {
+		return this.postCompiler.run(simpleParameters, argsList, parameters);
 	}
 }
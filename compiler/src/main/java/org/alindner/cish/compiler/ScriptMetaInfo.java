@@ -3,7 +3,7 @@ package org.alindner.cish.compiler;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.extern.log4j.Log4j2;
-import org.alindner.cish.compiler.utils.CishPath;
+import org.alindner.cish.compiler.precompiler.LineMap;
 import org.alindner.cish.compiler.utils.Utils;
 
 import java.io.IOException;
@@ -13,7 +13,9 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 /**
@@ -28,12 +30,16 @@ import java.util.stream.Collectors;
 @AllArgsConstructor
 @Log4j2
 public class ScriptMetaInfo implements Serializable {
-	private static final long                 serialVersionUID = 2983316659443518895L;
+	private static final long                 serialVersionUID = -6411937104255270137L;
 	private final        Map<String, String>  bash             = new TreeMap<>();
 	private final        Map<String, String>  javaContent      = new TreeMap<>();
+	private final        Map<String, LineMap> lineMaps         = new TreeMap<>();
 	private final        List<String>         imports          = new ArrayList<>();
 	private final        List<String>         loads            = new ArrayList<>();
 	private final        List<String>         requires         = new ArrayList<>();
+	private final        List<String>         includes         = new ArrayList<>();
+	private final        Set<String>          references       = new TreeSet<>();
+	private final        Map<String, String>  remoteHashes     = new TreeMap<>();
 	private final        Path                 script;
 	private final        String               pkg;
 	private final        List<ScriptMetaInfo> subScripts;
@@ -66,12 +72,14 @@ public class ScriptMetaInfo implements Serializable {
 	}
 
 	/**
-	 * get path to module-info.java
+	 * get the java package of a required script. It is derived from the whole path, so scripts with the same file name in different directories get different packages.
 	 *
-	 * @return module-info.java
+	 * @param script path of the required script
+	 *
+	 * @return package name
 	 */
-	public Path getModuleInfo() {
-		return CishPath.moduleInfoFile(this.getRoot().getScript());
+	public static String packageName(final Path script) {
+		return "p" + Utils.hash(script.toAbsolutePath().normalize().toString());
 	}
 
 	/**
@@ -87,15 +95,6 @@ public class ScriptMetaInfo implements Serializable {
 		}
 	}
 
-	/**
-	 * get the path to the Main.java file
-	 *
-	 * @return Main.java
-	 */
-	public Path getJavaFile() {
-		return CishPath.ofPackage(this.getRoot().getScript(), this.pkg).resolve("Main.java");
-	}
-
 	/**
 	 * add a script, which is mostly called inside this script, as it's children
 	 *
@@ -104,11 +103,7 @@ public class ScriptMetaInfo implements Serializable {
 	 * @return subscript meta object
 	 */
 	public ScriptMetaInfo addSubScript(final Path subScript) {
-		final ScriptMetaInfo s = new ScriptMetaInfo(
-				subScript,
-				"p" + Utils.hash(subScript.toAbsolutePath().getFileName().toString()),
-				this
-		);
+		final ScriptMetaInfo s = new ScriptMetaInfo(subScript, ScriptMetaInfo.packageName(subScript), this);
 		this.subScripts.add(s);
 		return s;
 	}
@@ -131,7 +126,18 @@ public class ScriptMetaInfo implements Serializable {
 	 * @return list of all modules
 	 */
 	public List<Path> getRequiresAsPaths() {
-		return this.getRequires().stream().map(stringPath -> this.script.getParent().resolve(stringPath)).collect(Collectors.toList());
+		return this.getRequires().stream().map(this::resolveRequire).collect(Collectors.toList());
+	}
+
+	/**
+	 * resolves the path of a require statement against the directory of this script
+	 *
+	 * @param path argument of the require statement
+	 *
+	 * @return normalized path of the required script
+	 */
+	public Path resolveRequire(final String path) {
+		return this.script.toAbsolutePath().getParent().resolve(path).normalize();
 	}
 
 	/**
@@ -168,4 +174,30 @@ public class ScriptMetaInfo implements Serializable {
 		new Help().buildPathsVariable(this.getRoot());
 		return paths;
 	}
+
+	/**
+	 * get a list of the meta objects of the root script and all its children scripts
+	 *
+	 * @return list of all script meta objects
+	 */
+	public List<ScriptMetaInfo> getAllScriptInfos() {
+		final List<ScriptMetaInfo> scripts = new ArrayList<>();
+		class Help {
+			public void buildScriptsVariable(final ScriptMetaInfo script) {
+				scripts.add(script);
+				script.getSubScripts().forEach(this::buildScriptsVariable);
+			}
+		}
+		new Help().buildScriptsVariable(this.getRoot());
+		return scripts;
+	}
+
+	/**
+	 * get the names, which are referenced by the root script and all its children scripts. They decide, which extensions are loaded.
+	 *
+	 * @return referenced names
+	 */
+	public Set<String> getAllReferences() {
+		return this.getAllScriptInfos().stream().flatMap(info -> info.getReferences().stream()).collect(Collectors.toCollection(TreeSet::new));
+	}
 }
@@ -0,0 +1,319 @@
+package org.alindner.cish.compiler.postcompiler;
+
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.exceptions.CishException;
+import org.alindner.cish.compiler.utils.CishPath;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A precompiled cish script, which is shipped as a single jar.
+ * <p>
+ * The jar is the <code>cishResult</code> module of the script tree itself. Additionally it contains the inline bash scripts and the extensions with their dependencies below
+ * <code>META-INF/cish</code>. Running a bundle neither parses the script, nor calls javac, nor scans the extensions: the bash scripts and extensions are extracted to the
+ * cache directory on the first run and the module is started directly.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class Bundle {
+	private static final String     PREFIX     = "META-INF/cish/";
+	private static final String     PROPERTIES = Bundle.PREFIX + "bundle.properties";
+	private static final String     BASH       = Bundle.PREFIX + "bash/";
+	private static final String     LIB        = Bundle.PREFIX + "lib/";
+	private static final String     KEY        = "key";
+	private static final String     SCRIPT     = "script";
+	private static final String     BASHES     = "bash";
+	private static final String     MODULES    = "modules";
+	private final        Path       jar;
+	private final        Properties properties;
+
+	/**
+	 * Constructor
+	 *
+	 * @param jar        bundle
+	 * @param properties properties of the bundle
+	 */
+	private Bundle(final Path jar, final Properties properties) {
+		this.jar = jar;
+		this.properties = properties;
+	}
+
+	/**
+	 * checks, if a file is a bundle
+	 *
+	 * @param file file
+	 *
+	 * @return is a bundle
+	 */
+	public static boolean isBundle(final Path file) {
+		if (!Files.isRegularFile(file) || !file.getFileName().toString().endsWith(".jar")) {
+			return false;
+		}
+		try (final JarFile jarFile = new JarFile(file.toFile())) {
+			return jarFile.getEntry(Bundle.PROPERTIES) != null;
+		} catch (final IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * opens a bundle
+	 *
+	 * @param jar bundle
+	 *
+	 * @return bundle
+	 *
+	 * @throws CishException the bundle can't be read
+	 */
+	public static Bundle open(final Path jar) throws CishException {
+		try (final JarFile jarFile = new JarFile(jar.toFile())) {
+			final JarEntry entry = jarFile.getJarEntry(Bundle.PROPERTIES);
+			if (entry == null) {
+				throw new CishException(String.format("%s isn't a cish bundle", jar));
+			}
+			final Properties properties = new Properties();
+			try (final InputStream is = jarFile.getInputStream(entry)) {
+				properties.load(is);
+			}
+			return new Bundle(jar.toAbsolutePath(), properties);
+		} catch (final IOException e) {
+			throw new CishException(String.format("Couldn't read in the bundle %s", jar), e);
+		}
+	}
+
+	/**
+	 * writes the bundle of a script tree, which was compiled before. The compilation is looked up by the {@link CacheManifest} of the root script.
+	 *
+	 * @param rootScript root script
+	 * @param target     jar, which is written
+	 *
+	 * @throws CishException the script wasn't compiled or the bundle can't be written
+	 */
+	public static void create(final Path rootScript, final Path target) throws CishException {
+		final CacheManifest manifest = CacheManifest.load(rootScript)
+		                                            .orElseThrow(() -> new CishException(String.format("%s wasn't compiled successfully", rootScript)));
+		final Path module = new CacheManager().lookup(manifest.getKey())
+		                                      .map(entry -> entry.resolve(PostCompiler.MODULE_NAME))
+		                                      .orElseThrow(() -> new CishException(String.format("The compilation of %s isn't cached", rootScript)));
+
+		final Properties properties = new Properties();
+		properties.setProperty(Bundle.KEY, manifest.getKey());
+		properties.setProperty(Bundle.SCRIPT, rootScript.getFileName().toString());
+		properties.setProperty(Bundle.BASHES, String.join(File.pathSeparator, manifest.getBash()));
+
+		final Manifest jarManifest = new Manifest();
+		jarManifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		try {
+			Files.createDirectories(target.toAbsolutePath().getParent());
+			final Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+			try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(tmp), jarManifest)) {
+				Bundle.addDirectory(out, module);
+				for (final String hash : manifest.getBash()) {
+					Bundle.addFile(out, CishPath.ofBashScript(hash), Bundle.BASH + hash);
+				}
+				final List<String> modules = new ArrayList<>();
+				for (int i = 0; i < manifest.getModulePaths().size(); i++) {
+					modules.add(Bundle.addModulePath(out, manifest.getModulePaths().get(i), String.valueOf(i)));
+				}
+				properties.setProperty(Bundle.MODULES, String.join(File.pathSeparator, modules));
+				out.putNextEntry(new JarEntry(Bundle.PROPERTIES));
+				properties.store(out, "cish bundle");
+				out.closeEntry();
+			}
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			throw new CishException(String.format("Couldn't write the bundle %s", target), e);
+		}
+		Bundle.log.info("Created the bundle {}", target);
+	}
+
+	/**
+	 * adds an entry of the module path. A jar is added as it is, a directory with the jars it contains.
+	 *
+	 * @param out        bundle
+	 * @param modulePath entry of the module path
+	 * @param name       name of the entry inside the bundle
+	 *
+	 * @return path of the entry relative to the extraction directory
+	 *
+	 * @throws IOException read or write error
+	 */
+	private static String addModulePath(final JarOutputStream out, final Path modulePath, final String name) throws IOException {
+		if (!Files.isDirectory(modulePath)) {
+			final String fileName = name + "/" + modulePath.getFileName();
+			Bundle.addFile(out, modulePath, Bundle.LIB + fileName);
+			return fileName;
+		}
+		try (final Stream<Path> files = Files.list(modulePath)) {
+			for (final Path file : files.filter(Files::isRegularFile).filter(file -> file.toString().endsWith(".jar")).collect(Collectors.toList())) {
+				Bundle.addFile(out, file, Bundle.LIB + name + "/" + file.getFileName());
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * adds all files of a directory recursively
+	 *
+	 * @param out bundle
+	 * @param dir directory
+	 *
+	 * @throws IOException read or write error
+	 */
+	private static void addDirectory(final JarOutputStream out, final Path dir) throws IOException {
+		try (final Stream<Path> files = Files.walk(dir)) {
+			for (final Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+				Bundle.addFile(out, file, dir.relativize(file).toString().replace(File.separatorChar, '/'));
+			}
+		}
+	}
+
+	/**
+	 * adds a file
+	 *
+	 * @param out  bundle
+	 * @param file file
+	 * @param name name of the entry
+	 *
+	 * @throws IOException read or write error
+	 */
+	private static void addFile(final JarOutputStream out, final Path file, final String name) throws IOException {
+		out.putNextEntry(new JarEntry(name));
+		Files.copy(file, out);
+		out.closeEntry();
+	}
+
+	/**
+	 * splits a list of the bundle properties
+	 *
+	 * @param key key of the property
+	 *
+	 * @return list of elements
+	 */
+	private List<String> list(final String key) {
+		final String value = this.properties.getProperty(key, "");
+		return value.isEmpty() ? List.of() : Arrays.asList(value.split(File.pathSeparator));
+	}
+
+	/**
+	 * extracts the bash scripts and the extensions, if they weren't extracted yet
+	 *
+	 * @return directory, which contains the extensions
+	 *
+	 * @throws IOException read or write error
+	 */
+	private Path extract() throws IOException {
+		final Path dir = CishPath.ofCacheDir("bundles").resolve(this.properties.getProperty(Bundle.KEY));
+		try (final JarFile jarFile = new JarFile(this.jar.toFile())) {
+			for (final String hash : this.list(Bundle.BASHES)) {
+				final Path target = CishPath.ofBashScript(hash);
+				if (Files.notExists(target)) {
+					Bundle.extract(jarFile, Bundle.BASH + hash, target);
+				}
+			}
+			if (Files.isDirectory(dir)) {
+				CacheCollector.markUsed(dir);
+				return dir;
+			}
+			Files.createDirectories(dir.getParent());
+			final Path tmp = Files.createTempDirectory(dir.getParent(), dir.getFileName() + ".");
+			try {
+				for (final JarEntry entry : Collections.list(jarFile.entries())) {
+					if (!entry.isDirectory() && entry.getName().startsWith(Bundle.LIB)) {
+						final Path target = tmp.resolve(entry.getName().substring(Bundle.LIB.length())).normalize();
+						if (!target.startsWith(tmp)) {
+							throw new IOException(String.format("The entry %s is outside of the bundle", entry.getName()));
+						}
+						Files.createDirectories(target.getParent());
+						try (final InputStream is = jarFile.getInputStream(entry)) {
+							Files.copy(is, target);
+						}
+					}
+				}
+				Files.move(tmp, dir, StandardCopyOption.ATOMIC_MOVE);
+			} catch (final FileSystemException e) {
+				if (!Files.isDirectory(dir)) {
+					throw e;
+				}
+				Bundle.log.debug("The bundle {} was extracted by another process", this.jar);
+			} finally {
+				if (Files.exists(tmp)) {
+					FileUtils.deleteDirectory(tmp.toFile());
+				}
+			}
+		}
+		return dir;
+	}
+
+	/**
+	 * extracts a single entry. It is written to a temporary file first, so a concurrent cish never sees a half written file.
+	 *
+	 * @param jarFile bundle
+	 * @param name    name of the entry
+	 * @param target  target file
+	 *
+	 * @throws IOException read or write error
+	 */
+	private static void extract(final JarFile jarFile, final String name, final Path target) throws IOException {
+		final JarEntry entry = jarFile.getJarEntry(name);
+		if (entry == null) {
+			throw new IOException(String.format("The bundle doesn't contain %s", name));
+		}
+		final Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		try (final InputStream is = jarFile.getInputStream(entry); final OutputStream os = Files.newOutputStream(tmp)) {
+			is.transferTo(os);
+		}
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * executes the bundled script
+	 *
+	 * @param simpleParameters the parameters like -version
+	 * @param argsList         the parameters like `0.3.2`
+	 * @param parameters       the parameters like --version=test
+	 *
+	 * @return the script finished without an exception
+	 *
+	 * @throws CishException the bundle can't be extracted
+	 */
+	public boolean run(final List<String> simpleParameters, final List<String> argsList, final Map<String, String> parameters) throws CishException {
+		final Path dir;
+		try {
+			dir = this.extract();
+		} catch (final IOException e) {
+			throw new CishException(String.format("Couldn't extract the bundle %s", this.jar), e);
+		}
+		final ModuleManager moduleManager = new ModuleManager(() -> {
+			throw new IllegalStateException("A bundle doesn't use an extension manager");
+		}, Set::of);
+		moduleManager.setModulePaths(this.list(Bundle.MODULES).stream().map(dir::resolve).collect(Collectors.toList()));
+		moduleManager.setOutPath(this.jar);
+		return PostCompiler.run(
+				moduleManager.getLayer(),
+				"main",
+				this.jar.resolveSibling(this.properties.getProperty(Bundle.SCRIPT)),
+				simpleParameters,
+				argsList,
+				parameters
+		);
+	}
+}
@@ -0,0 +1,507 @@
+package org.alindner.cish.compiler.postcompiler;
+
+import lombok.Data;
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.postcompiler.extension.ExtensionManager;
+import org.alindner.cish.compiler.utils.CishPath;
+import org.alindner.cish.compiler.utils.Utils;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the size of the cish home directory below a budget.
+ * <p>
+ * The home directory is split into regions, e.g. the compiled scripts, the downloaded dependencies, the files of the <code>load</code> statements or the local maven
+ * repository. A region consists of entries, which are always deleted as a whole. The last usage of an entry is the later one of its modification time and the modification
+ * time of its access marker, which is touched by {@link #markUsed(Path)}. The marker is a separate file, so an entry, which may be part of a module path, isn't modified by
+ * using it.
+ * <p>
+ * {@link #gc()} replaces equal jars by hard links and deletes the least recently used entries, until the home directory is smaller than the system property
+ * <code>cish.home.size</code> (in megabytes). Entries, which were used during the last minutes, are kept, because a concurrent cish may use them. {@link #collectIfDue()}
+ * runs it after a script at most once per <code>cish.gc.interval</code> hours.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class CacheCollector {
+	private static final long         DEFAULT_MAX_SIZE = 2048;
+	private static final long         DEFAULT_INTERVAL = 24;
+	private static final long         MEGABYTE         = 1024 * 1024;
+	static final         Duration     GRACE            = Duration.ofMinutes(10);
+	private static final String       TOMBSTONE        = ".gc";
+	private final        Path         access;
+	private final        Path         stamp;
+	private final        Path         extensionManager;
+	private final        List<Region> regions;
+	private final        long         maxSize;
+
+	/**
+	 * Constructor, which uses the cish home directory
+	 */
+	public CacheCollector() {
+		this(CishPath.of("."), Long.getLong("cish.home.size", CacheCollector.DEFAULT_MAX_SIZE) * CacheCollector.MEGABYTE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param home    cish home directory
+	 * @param maxSize maximum size of all regions in bytes
+	 */
+	public CacheCollector(final Path home, final long maxSize) {
+		final Path base  = home.toAbsolutePath().normalize();
+		final Path cache = base.resolve("cache");
+		final Path tmp   = base.resolve("tmp");
+		this.access = cache.resolve("access");
+		this.stamp = cache.resolve("gc.stamp");
+		this.extensionManager = cache.resolve(ExtensionManager.class.getName());
+		this.maxSize = maxSize;
+		this.regions = List.of(
+				new Region("compiled", cache.resolve("compiled"), false, false, false),
+				new Region("bash", cache.resolve("bash"), false, false, false),
+				new Region("manifests", cache.resolve("manifests"), false, false, false),
+				new Region("bundles", cache.resolve("bundles"), false, true, false),
+				new Region("http", cache.resolve("http"), false, true, false),
+				new Region("jars", cache.resolve("jars"), false, false, false),
+				new Region("maven", cache.resolve("maven"), true, true, false),
+				new Region("downloads", tmp.resolve("downloads"), false, true, true),
+				new Region("assets", tmp.resolve("assets"), false, true, true),
+				new Region("tmp", tmp, false, false, false)
+		);
+	}
+
+	/**
+	 * marks the entry, which contains the given path, as recently used. Paths outside the regions are ignored.
+	 *
+	 * @param path file or directory inside the cish home directory
+	 */
+	public static void markUsed(final Path path) {
+		new CacheCollector(CishPath.of("."), 0).touch(path);
+	}
+
+	/**
+	 * runs {@link #gc()}, if the last run is longer ago than <code>cish.gc.interval</code> hours. Errors are only logged, because the script already ran.
+	 */
+	public static void collectIfDue() {
+		final CacheCollector collector = new CacheCollector();
+		final Duration       interval  = Duration.ofHours(Long.getLong("cish.gc.interval", CacheCollector.DEFAULT_INTERVAL));
+		try {
+			if (Files.exists(collector.stamp) && CacheCollector.age(Files.getLastModifiedTime(collector.stamp)).compareTo(interval) < 0) {
+				return;
+			}
+			Files.createDirectories(collector.stamp.getParent());
+			Files.write(collector.stamp, new byte[0]);
+			collector.gc();
+		} catch (final IOException | UncheckedIOException e) {
+			CacheCollector.log.error("Couldn't clean up the cish home directory", e);
+		}
+	}
+
+	/**
+	 * get the time since a point in time
+	 *
+	 * @param time point in time
+	 *
+	 * @return duration
+	 */
+	static Duration age(final FileTime time) {
+		return Duration.ofMillis(System.currentTimeMillis() - time.toMillis());
+	}
+
+	/**
+	 * get the region, which contains a path. Nested regions win over the enclosing ones.
+	 *
+	 * @param path absolute path
+	 *
+	 * @return region
+	 */
+	private Optional<Region> regionOf(final Path path) {
+		return this.regions.stream()
+		                   .filter(region -> path.startsWith(region.getRoot()) && !path.equals(region.getRoot()))
+		                   .max(Comparator.comparingInt(region -> region.getRoot().getNameCount()));
+	}
+
+	/**
+	 * get the entry, which contains a path
+	 *
+	 * @param path file or directory
+	 *
+	 * @return entry
+	 */
+	private Optional<Path> entryOf(final Path path) {
+		final Path normalized = path.toAbsolutePath().normalize();
+		return this.regionOf(normalized).map(region -> {
+			if (!region.isLeaves()) {
+				return region.getRoot().resolve(normalized.getName(region.getRoot().getNameCount()));
+			}
+			return Files.isDirectory(normalized) ? normalized : normalized.getParent();
+		});
+	}
+
+	/**
+	 * get the access marker of an entry
+	 *
+	 * @param entry entry
+	 *
+	 * @return marker file
+	 */
+	private Path markerOf(final Path entry) {
+		return this.access.resolve(Utils.hash(entry.toString()));
+	}
+
+	/**
+	 * touches the access marker of the entry, which contains the given path
+	 *
+	 * @param path file or directory
+	 */
+	void touch(final Path path) {
+		this.entryOf(path).ifPresent(entry -> {
+			final Path marker = this.markerOf(entry);
+			try {
+				if (Files.exists(marker)) {
+					Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+				} else {
+					Files.createDirectories(this.access);
+					Files.write(marker, new byte[0]);
+				}
+			} catch (final IOException e) {
+				CacheCollector.log.debug("Couldn't mark {} as used", entry, e);
+			}
+		});
+	}
+
+	/**
+	 * lists the entries of a region. Tombstones of an interrupted run are deleted.
+	 *
+	 * @param region region
+	 *
+	 * @return entries
+	 *
+	 * @throws IOException the region can't be read
+	 */
+	private List<Path> entries(final Region region) throws IOException {
+		if (!Files.isDirectory(region.getRoot())) {
+			return List.of();
+		}
+		final Set<Path>  roots = this.regions.stream().map(Region::getRoot).collect(Collectors.toSet());
+		final List<Path> entries;
+		if (region.isLeaves()) {
+			try (final Stream<Path> paths = Files.walk(region.getRoot())) {
+				entries = paths.filter(Files::isRegularFile).map(Path::getParent).filter(dir -> !roots.contains(dir)).distinct().collect(Collectors.toList());
+			}
+		} else {
+			try (final Stream<Path> paths = Files.list(region.getRoot())) {
+				entries = paths.filter(path -> !roots.contains(path)).collect(Collectors.toList());
+			}
+		}
+		final List<Path> tombstones = entries.stream().filter(entry -> entry.getFileName().toString().endsWith(CacheCollector.TOMBSTONE)).collect(Collectors.toList());
+		for (final Path tombstone : tombstones) {
+			FileUtils.forceDelete(tombstone.toFile());
+		}
+		entries.removeAll(tombstones);
+		return entries;
+	}
+
+	/**
+	 * reads the size and the last usage of all entries. Files, which are linked into several entries, are counted once.
+	 *
+	 * @return entries ordered by region
+	 *
+	 * @throws IOException a region can't be read
+	 */
+	private List<Entry> scan() throws IOException {
+		final Set<Object> seen    = new HashSet<>();
+		final List<Entry> entries = new ArrayList<>();
+		for (final Region region : this.regions) {
+			for (final Path path : this.entries(region)) {
+				final Entry entry = new Entry(region, path);
+				entry.lastUsed = CacheCollector.lastModified(path);
+				final Path marker = this.markerOf(path);
+				if (Files.exists(marker)) {
+					entry.lastUsed = Math.max(entry.lastUsed, CacheCollector.lastModified(marker));
+				}
+				try (final Stream<Path> files = region.isLeaves() ? Files.list(path) : Files.walk(path)) {
+					files.forEach(file -> {
+						try {
+							final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+							if (attributes.isRegularFile() && seen.add(attributes.fileKey() != null ? attributes.fileKey() : file)) {
+								entry.size += attributes.size();
+							}
+						} catch (final IOException e) {
+							CacheCollector.log.debug("Couldn't read {}", file, e);
+						}
+					});
+				} catch (final IOException | UncheckedIOException e) {
+					CacheCollector.log.debug("Couldn't read {}", path, e);
+				}
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * get the modification time of a file
+	 *
+	 * @param path file
+	 *
+	 * @return modification time in milliseconds or 0, if it can't be read
+	 */
+	private static long lastModified(final Path path) {
+		try {
+			return Files.getLastModifiedTime(path).toMillis();
+		} catch (final IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * get the size and the number of entries per region
+	 *
+	 * @return usage per region
+	 *
+	 * @throws IOException a region can't be read
+	 */
+	public List<Usage> stats() throws IOException {
+		final Map<Region, Usage> usages = new LinkedHashMap<>();
+		this.regions.forEach(region -> usages.put(region, new Usage(region.getName(), region.getRoot())));
+		for (final Entry entry : this.scan()) {
+			final Usage usage = usages.get(entry.region);
+			usage.entries++;
+			usage.size += entry.size;
+		}
+		return new ArrayList<>(usages.values());
+	}
+
+	/**
+	 * get the maximum size of all regions
+	 *
+	 * @return size in bytes
+	 */
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * replaces equal jars by hard links and deletes the least recently used entries, until the size of all regions is below the maximum size
+	 *
+	 * @return freed bytes
+	 *
+	 * @throws IOException a region can't be read
+	 */
+	public long gc() throws IOException {
+		final long        deduplicated = this.deduplicate();
+		final List<Entry> entries      = this.scan();
+		long              size         = entries.stream().mapToLong(entry -> entry.size).sum();
+		long              evicted      = 0;
+		final List<Entry> lru          = entries.stream()
+		                                        .filter(entry -> CacheCollector.age(FileTime.fromMillis(entry.lastUsed)).compareTo(CacheCollector.GRACE) > 0)
+		                                        .sorted(Comparator.comparingLong(entry -> entry.lastUsed))
+		                                        .collect(Collectors.toList());
+		final Set<Entry> deleted = new HashSet<>();
+		for (final Entry entry : lru) {
+			if (size <= this.maxSize) {
+				break;
+			}
+			if (this.delete(entry)) {
+				size -= entry.size;
+				evicted += entry.size;
+				deleted.add(entry);
+			}
+		}
+		if (deleted.stream().anyMatch(entry -> entry.region.isReferenced())) {
+			// the cached extension manager references the deleted dependencies, so the extensions are scanned again
+			Files.deleteIfExists(this.extensionManager);
+		}
+		final Set<Path> markers = entries.stream().filter(entry -> !deleted.contains(entry)).map(entry -> this.markerOf(entry.path)).collect(Collectors.toSet());
+		this.deleteMarkers(markers::contains);
+		final long freed = deduplicated + evicted;
+		CacheCollector.log.info("Freed {} of the cish home directory", () -> FileUtils.byteCountToDisplaySize(freed));
+		return freed;
+	}
+
+	/**
+	 * deletes all regions and the cached extension manager
+	 *
+	 * @return freed bytes
+	 *
+	 * @throws IOException a region can't be read
+	 */
+	public long clear() throws IOException {
+		long freed = 0;
+		for (final Entry entry : this.scan()) {
+			if (this.delete(entry)) {
+				freed += entry.size;
+			}
+		}
+		Files.deleteIfExists(this.extensionManager);
+		this.deleteMarkers(marker -> false);
+		return freed;
+	}
+
+	/**
+	 * deletes an entry. It is renamed first, so a concurrent cish never sees a half deleted entry.
+	 *
+	 * @param entry entry
+	 *
+	 * @return the entry is deleted
+	 */
+	private boolean delete(final Entry entry) {
+		final Path tombstone = entry.path.resolveSibling(entry.path.getFileName() + "." + System.nanoTime() + CacheCollector.TOMBSTONE);
+		try {
+			Files.move(entry.path, tombstone, StandardCopyOption.ATOMIC_MOVE);
+			FileUtils.forceDelete(tombstone.toFile());
+			CacheCollector.log.debug("Evicted {} from the {} region", entry.path, entry.region.getName());
+			return true;
+		} catch (final IOException e) {
+			CacheCollector.log.error(String.format("Couldn't evict %s", entry.path), e);
+			return false;
+		}
+	}
+
+	/**
+	 * deletes the access markers, which don't belong to an entry anymore
+	 *
+	 * @param keep markers, which are kept
+	 *
+	 * @throws IOException the markers can't be read
+	 */
+	private void deleteMarkers(final Predicate<Path> keep) throws IOException {
+		if (!Files.isDirectory(this.access)) {
+			return;
+		}
+		try (final Stream<Path> markers = Files.list(this.access)) {
+			for (final Path marker : markers.filter(marker -> !keep.test(marker)).collect(Collectors.toList())) {
+				Files.deleteIfExists(marker);
+			}
+		}
+	}
+
+	/**
+	 * replaces jars with equal content by hard links to one of them. The same artifact is often copied into the dependency directory of several extensions.
+	 *
+	 * @return freed bytes
+	 *
+	 * @throws IOException a region can't be read
+	 */
+	long deduplicate() throws IOException {
+		final Map<Long, List<Path>> bySize = new HashMap<>();
+		for (final Region region : this.regions) {
+			if (!region.isJars() || !Files.isDirectory(region.getRoot())) {
+				continue;
+			}
+			try (final Stream<Path> files = Files.walk(region.getRoot())) {
+				for (final Path file : files.filter(path -> path.getFileName().toString().endsWith(".jar")).filter(Files::isRegularFile).collect(Collectors.toList())) {
+					bySize.computeIfAbsent(Files.size(file), size -> new ArrayList<>()).add(file);
+				}
+			}
+		}
+		long freed = 0;
+		for (final Map.Entry<Long, List<Path>> candidates : bySize.entrySet()) {
+			if (candidates.getValue().size() < 2) {
+				continue;
+			}
+			final Map<String, Path> byHash = new HashMap<>();
+			for (final Path file : candidates.getValue()) {
+				try {
+					final Path original = byHash.putIfAbsent(Utils.hash(file), file);
+					if (original != null && !Files.isSameFile(original, file)) {
+						CacheCollector.link(original, file);
+						freed += candidates.getKey();
+					}
+				} catch (final IOException | UnsupportedOperationException e) {
+					CacheCollector.log.debug("Couldn't deduplicate {}", file, e);
+				}
+			}
+		}
+		return freed;
+	}
+
+	/**
+	 * replaces a file by a hard link to another file
+	 *
+	 * @param source file, which is linked
+	 * @param target file, which is replaced
+	 *
+	 * @throws IOException the link can't be created
+	 */
+	private static void link(final Path source, final Path target) throws IOException {
+		final Path tmp = target.resolveSibling(target.getFileName() + "." + System.nanoTime() + ".link");
+		try {
+			Files.createLink(tmp, source);
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * The size and the number of entries of a region
+	 */
+	@Data
+	public static class Usage {
+		private final String name;
+		private final Path   root;
+		private       int    entries;
+		private       long   size;
+	}
+
+	/**
+	 * A part of the cish home directory
+	 */
+	@Data
+	private static class Region {
+		/**
+		 * name, which is shown by {@link #stats()}
+		 */
+		private final String  name;
+		/**
+		 * directory of the region
+		 */
+		private final Path    root;
+		/**
+		 * the entries are the directories, which contain files, instead of the children of the root
+		 */
+		private final boolean leaves;
+		/**
+		 * the region contains jars, which are deduplicated
+		 */
+		private final boolean jars;
+		/**
+		 * the entries are referenced by the cached extension manager
+		 */
+		private final boolean referenced;
+	}
+
+	/**
+	 * An entry of a region
+	 */
+	private static class Entry {
+		private final Region region;
+		private final Path   path;
+		private       long   size;
+		private       long   lastUsed;
+
+		/**
+		 * Constructor
+		 *
+		 * @param region region
+		 * @param path   path of the entry
+		 */
+		Entry(final Region region, final Path path) {
+			this.region = region;
+			this.path = path;
+		}
+	}
+}
@@ -2,148 +2,338 @@ package org.alindner.cish.compiler.postcompiler;
 
 import lombok.extern.log4j.Log4j2;
 import org.alindner.cish.compiler.ScriptMetaInfo;
+import org.alindner.cish.compiler.postcompiler.extension.ExtensionManager;
+import org.alindner.cish.compiler.postcompiler.extension.HttpCache;
+import org.alindner.cish.compiler.postcompiler.memory.CompiledModule;
 import org.alindner.cish.compiler.utils.CishPath;
 import org.alindner.cish.compiler.utils.Utils;
+import org.apache.commons.io.FileUtils;
 
-import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Manages the states of the compiled cish script for caching purpose
+ * A content addressed store of compiled cish scripts.
+ * <p>
+ * The key of an entry is a hash of everything the compiled code depends on: the content of the script, its sub scripts, includes and loaded source files, the set of extensions,
+ * the cish version and the jdk version. So two scripts with the same content share an entry and a changed script never overwrites the entry of another one. An entry is a
+ * directory named like the key, which is written once and never modified afterwards.
+ * <p>
+ * The size of the store is limited by the system property <code>cish.cache.size</code> (in megabytes). When it is exceeded, the least recently used entries are deleted,
+ * unless they were used during the last minutes.
  *
  * @author alindner
  * @since 0.7.0
  */
 @Log4j2
-public class CacheManager implements Serializable {
-	private static final long                serialVersionUID = 2087063028546222210L;
-	private transient    Map<Path, String>   store            = new HashMap<>();
-	private              Map<String, String> storeParsed      = new HashMap<>();
+public class CacheManager {
+	private static final long DEFAULT_MAX_SIZE = 512;
+	private static final long MEGABYTE         = 1024 * 1024;
+	private final        Path dir;
+	private final        long maxSize;
 
 	/**
-	 * load an instance of {@link CacheManager} from file. This is possible, because {@link CacheManager} is {@link Serializable}
+	 * Constructor, which uses the compile directory of the cish home directory
+	 */
+	public CacheManager() {
+		this(CishPath.ofCompiled("."), Long.getLong("cish.cache.size", CacheManager.DEFAULT_MAX_SIZE) * CacheManager.MEGABYTE);
+	}
+
+	/**
+	 * Constructor
 	 *
-	 * @return instance
+	 * @param dir     directory of the store
+	 * @param maxSize maximum size of the store in bytes
 	 */
-	public static CacheManager load() {
-		final Path storePath = CishPath.ofCacheDir(CacheManager.class.getName());
-		if (Files.exists(storePath)) {
-			try (final ObjectInputStream ois = new ObjectInputStream(new FileInputStream(storePath.toAbsolutePath().toString()))) {
-				CacheManager.log.info("Loading cached CacheManager");
-				return (CacheManager) ois.readObject();
-			} catch (final IOException | ClassNotFoundException | ClassCastException e) {
-				CacheManager.log.error("Could not load the CacheManager from cache directory. Skipping. This reduces the performance");
-				CacheManager.log.error(e);
-			}
-		}
-		return new CacheManager();
+	public CacheManager(final Path dir, final long maxSize) {
+		this.dir = dir.normalize();
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * build the key of a script tree
+	 *
+	 * @param script     any script of the tree. The whole tree, starting at the root script, is used.
+	 * @param manager    extension manager, which was used to scan the extensions
+	 * @param extensions extensions, which are referenced by the tree, see {@link ExtensionManager#getModulesList(boolean, Set)}
+	 *
+	 * @return key
+	 */
+	public static String buildKey(final ScriptMetaInfo script, final ExtensionManager manager, final List<Path> extensions) {
+		final StringBuilder builder = CacheManager.runtime(manager, extensions);
+		script.getAllScriptInfos().forEach(info -> {
+			builder.append("script:").append(info.getPkg()).append(':').append(Utils.hash(Objects.requireNonNullElse(info.getContent(), ""))).append('\n');
+			info.getIncludes().forEach(include -> builder.append("include:")
+			                                             .append(include)
+			                                             .append(':')
+			                                             .append(Utils.hash(Utils.loadTextContentOrEmpty(include)))
+			                                             .append('\n'));
+			CacheManager.appendLoads(builder, info);
+		});
+		return Utils.hash(builder.toString());
 	}
 
 	/**
-	 * build a comparable string, based on the root script and it's children
+	 * build the key of a single script, which is compiled as its own unit. Besides the files of the script it depends on the extensions and on the api of the scripts it
+	 * requires, but not on their content.
 	 *
-	 * @param script script
+	 * @param script     script
+	 * @param manager    extension manager, which was used to scan the extensions
+	 * @param extensions extensions, which are referenced by the tree of the script
+	 * @param imports    imports of the extensions, which are placed in front of the script
+	 * @param required   api keys of the required scripts, see {@link #buildApiKey(ScriptMetaInfo)}
 	 *
-	 * @return comparable string
+	 * @return key
 	 */
-	private static String buildCacheString(final ScriptMetaInfo script) {
-		return script.getAllScripts().stream()
-		             .sorted()
-		             .map(path -> Utils.hash(Utils.loadTextContentOrEmpty(path.toString())))
-		             .filter(s -> !s.isEmpty())
-		             .collect(Collectors.joining(":"));
+	public static String buildUnitKey(final ScriptMetaInfo script, final ExtensionManager manager, final List<Path> extensions, final List<String> imports, final List<String> required) {
+		final StringBuilder builder = CacheManager.runtime(manager, extensions);
+		imports.forEach(name -> builder.append("import:").append(name).append('\n'));
+		builder.append("unit:").append(script.getPkg()).append(':').append(Utils.hash(Objects.requireNonNullElse(script.getContent(), ""))).append('\n');
+		script.getIncludes().forEach(include -> builder.append("include:").append(include).append(':').append(Utils.hash(Utils.loadTextContentOrEmpty(include))).append('\n'));
+		CacheManager.appendLoads(builder, script);
+		required.stream().sorted().forEach(api -> builder.append("requires:").append(api).append('\n'));
+		return Utils.hash(builder.toString());
 	}
 
 	/**
-	 * checks if the given script (will use the root script) and it's children was changed based on hashes
+	 * build the key of the api of a script, which other scripts use, when they require it. The main class of a script always has the same signature, so the api only
+	 * consists of its java classes and loaded files. A script, which requires another one, needs to be compiled again, if this key changes.
 	 *
-	 * @param script cish script
+	 * @param script parsed script, whose java content isn't prepared for javac yet
 	 *
-	 * @return script was modified
+	 * @return key
 	 */
-	public boolean needsCompilation(final ScriptMetaInfo script) {
-		return !(this.store.containsKey(script.getRootScript()) && this.store.get(script.getRootScript()).equals(CacheManager.buildCacheString(script)));
+	public static String buildApiKey(final ScriptMetaInfo script) {
+		final StringBuilder builder = new StringBuilder("api:").append(script.getPkg()).append('\n');
+		script.getJavaContent()
+		      .entrySet()
+		      .stream()
+		      .filter(entry -> !entry.getKey().equals("Main"))
+		      .forEach(entry -> builder.append("class:").append(entry.getKey()).append(':').append(Utils.hash(entry.getValue())).append('\n'));
+		CacheManager.appendLoads(builder, script);
+		return Utils.hash(builder.toString());
 	}
 
 	/**
-	 * store this instance to filesystem. It will be load automatically, when a new instance is created. This is intended for caching purpose.
+	 * starts a key with the runtime and the extensions, which every compiled script depends on
+	 *
+	 * @param manager    extension manager, which was used to scan the extensions
+	 * @param extensions extensions, which are referenced by the tree
+	 *
+	 * @return builder of the key
 	 */
-	public void store() {
-		final Path storePath = CishPath.ofCacheDir(CacheManager.class.getName());
-		try (final ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(storePath.toAbsolutePath().toString()))) {
-			oos.writeObject(this);
+	private static StringBuilder runtime(final ExtensionManager manager, final List<Path> extensions) {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("runtime:").append(CacheManager.runtimeVersion()).append('\n');
+		builder.append("extensions:").append(manager.getHash()).append('\n');
+		extensions.stream().map(Path::toString).sorted().forEach(module -> builder.append("module:").append(module).append('\n'));
+		return builder;
+	}
+
+	/**
+	 * appends the loaded files of a script to a key. Local java files and remote source files are identified by their content, everything else by its url.
+	 *
+	 * @param builder builder of the key
+	 * @param script  script
+	 */
+	private static void appendLoads(final StringBuilder builder, final ScriptMetaInfo script) {
+		script.getLoads().forEach(load -> {
+			builder.append("load:").append(load);
+			if (CacheManager.isLocalJavaFile(load)) {
+				builder.append(':').append(Utils.hash(Utils.loadTextContentOrEmpty(script.getScript().getParent().resolve(load).toString())));
+			} else if (CacheManager.isRemoteSource(load)) {
+				builder.append(':').append(script.getRemoteHashes().computeIfAbsent(load, CacheManager::remoteHash));
+			}
+			builder.append('\n');
+		});
+	}
+
+	/**
+	 * checks, if a load statement references a source file on a web server. Its class is compiled into the module of the script, like the one of a local java file.
+	 *
+	 * @param load argument of the load statement
+	 *
+	 * @return is a http or https url, which doesn't point to a jar
+	 */
+	static boolean isRemoteSource(final String load) {
+		try {
+			final URI uri = new URI(load);
+			return ("http".equals(uri.getScheme()) || "https".equals(uri.getScheme())) && !uri.getPath().endsWith(".jar");
+		} catch (final URISyntaxException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * get the hash of the content of a remote source file. The file is fetched through the {@link HttpCache}, so an unchanged file is only revalidated.
+	 *
+	 * @param load url of the load statement
+	 *
+	 * @return hash of the content or an empty string, if the file can't be fetched. Compiling the script fails in that case anyway.
+	 */
+	static String remoteHash(final String load) {
+		try {
+			return Utils.hash(new HttpCache().fetch(URI.create(load)));
 		} catch (final IOException e) {
-			CacheManager.log.error("Could not store the ExtensionManager to cache directory. Skipping. This reduces the performance");
-			CacheManager.log.error(e);
+			CacheManager.log.debug("Couldn't fetch {}", load, e);
+			return "";
+		}
+	}
+
+	/**
+	 * checks, if a load statement references a java file next to the script
+	 *
+	 * @param load argument of the load statement
+	 *
+	 * @return is a local java file
+	 */
+	static boolean isLocalJavaFile(final String load) {
+		try {
+			final URI uri = new URI(load);
+			return uri.getScheme() == null && uri.getPath().endsWith(".java");
+		} catch (final URISyntaxException e) {
+			return false;
 		}
 	}
 
 	/**
-	 * serialize this object
+	 * get a string identifying the running cish compiler and jdk
 	 *
-	 * @param oos ObjectOutputStream
+	 * @return runtime version
+	 */
+	static String runtimeVersion() {
+		return CacheManager.cishVersion() + "/" + Runtime.version();
+	}
+
+	/**
+	 * get a string identifying the running cish compiler. If the version isn't known, e.g. during development, the modification time of the compiler is used.
 	 *
-	 * @throws IOException if I/O errors occur while writing to the underlying OutputStream
+	 * @return version
 	 */
-	private void writeObject(final ObjectOutputStream oos) throws IOException {
-		this.storeParsed = this.store.entrySet()
-		                             .stream()
-		                             .map(
-				                             pathStringEntry -> Map.entry(
-						                             pathStringEntry.getKey().toAbsolutePath().normalize().toString(),
-						                             pathStringEntry.getValue()
-				                             )
-		                             )
-		                             .collect(
-				                             Collectors.toMap(
-						                             Map.Entry::getKey,
-						                             Map.Entry::getValue
-				                             )
-		                             );
-		oos.defaultWriteObject();
+	private static String cishVersion() {
+		final String version = CacheManager.class.getPackage().getImplementationVersion();
+		if (version != null) {
+			return version;
+		}
+		try {
+			final Path location = Path.of(CacheManager.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			return location + "@" + Files.getLastModifiedTime(location).toMillis();
+		} catch (final URISyntaxException | IOException | SecurityException | NullPointerException e) {
+			CacheManager.log.debug("Couldn't determine the location of the compiler", e);
+			return "unknown";
+		}
+	}
 
+	/**
+	 * get the entry of a key and marks it as recently used
+	 *
+	 * @param key key
+	 *
+	 * @return directory containing the compiled module, if it is cached
+	 */
+	public Optional<Path> lookup(final String key) {
+		final Path entry = this.dir.resolve(key);
+		if (!Files.isDirectory(entry)) {
+			return Optional.empty();
+		}
+		try {
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (final IOException e) {
+			CacheManager.log.debug("Couldn't update the access time of {}", entry, e);
+		}
+		return Optional.of(entry);
 	}
 
 	/**
-	 * deserialize this object
+	 * stores a compiled module as entry of the given key. The entry is written to a temporary directory first and moved afterwards, so a concurrent cish never sees a half
+	 * written entry.
+	 *
+	 * @param key    key
+	 * @param module compiled module
 	 *
-	 * @param ois ObjectInputStream
+	 * @return directory containing the compiled module
 	 *
-	 * @throws ClassNotFoundException if the class of a serialized object could not be found.
-	 * @throws IOException            if an I/O error occurs.
+	 * @throws IOException write error
 	 */
-	private void readObject(final ObjectInputStream ois) throws IOException, ClassNotFoundException {
-		ois.defaultReadObject();
-		this.store = this.storeParsed.entrySet()
-		                             .stream()
-		                             .map(
-				                             pathStringEntry -> Map.entry(
-						                             Path.of(pathStringEntry.getKey()),
-						                             pathStringEntry.getValue()
-				                             )
-		                             )
-		                             .collect(
-				                             Collectors.toMap(
-						                             Map.Entry::getKey,
-						                             Map.Entry::getValue
-				                             )
-		                             );
+	public Path store(final String key, final CompiledModule module) throws IOException {
+		final Path entry = this.dir.resolve(key);
+		final Path tmp   = Files.createTempDirectory(this.dir, key + ".");
+		try {
+			module.store(tmp);
+			Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final FileSystemException e) {
+			if (!Files.isDirectory(entry)) {
+				throw e;
+			}
+			CacheManager.log.debug("The entry {} was stored by another process", key);
+		} finally {
+			if (Files.exists(tmp)) {
+				FileUtils.deleteDirectory(tmp.toFile());
+			}
+		}
+		this.evict(entry);
+		return entry;
 	}
 
 	/**
-	 * A a script and it's state to the cache.
+	 * deletes the least recently used entries, until the size of the store is below the maximum size. Entries, which were used during the last minutes, are kept, because
+	 * a concurrent cish may have just looked them up.
 	 *
-	 * @param script cish script
+	 * @param keep entry, which must not be deleted
 	 */
-	public void add(final ScriptMetaInfo script) {
-		if (!this.store.containsKey(script.getRootScript())) {
-			this.store.put(script.getRootScript(), CacheManager.buildCacheString(script));
-		} else {
-			this.store.replace(script.getRootScript(), CacheManager.buildCacheString(script));
+	private void evict(final Path keep) {
+		final Map<Path, Long> sizes = new HashMap<>();
+		try (final Stream<Path> entries = Files.list(this.dir)) {
+			entries.filter(Files::isDirectory)
+			       .filter(entry -> !entry.getFileName().toString().contains("."))
+			       .forEach(entry -> sizes.put(entry, FileUtils.sizeOfDirectory(entry.toFile())));
+		} catch (final IOException | UncheckedIOException e) {
+			CacheManager.log.error("Couldn't read in the cache directory", e);
+			return;
+		}
+		long size = sizes.values().stream().mapToLong(Long::longValue).sum();
+		if (size <= this.maxSize) {
+			return;
+		}
+		final List<Path> lru = sizes.keySet()
+		                            .stream()
+		                            .filter(entry -> !entry.equals(keep))
+		                            .filter(entry -> CacheCollector.age(CacheManager.lastUsed(entry)).compareTo(CacheCollector.GRACE) > 0)
+		                            .sorted(Comparator.comparing(CacheManager::lastUsed))
+		                            .collect(Collectors.toList());
+		for (final Path entry : lru) {
+			if (size <= this.maxSize) {
+				break;
+			}
+			try {
+				FileUtils.deleteDirectory(entry.toFile());
+				size -= sizes.get(entry);
+				CacheManager.log.debug("Evicted {} from the cache", entry);
+			} catch (final IOException e) {
+				CacheManager.log.error("Couldn't evict {} from the cache", entry, e);
+			}
+		}
+	}
+
+	/**
+	 * get the time an entry was used the last time
+	 *
+	 * @param entry entry
+	 *
+	 * @return last usage
+	 */
+	private static FileTime lastUsed(final Path entry) {
+		try {
+			return Files.getLastModifiedTime(entry);
+		} catch (final IOException e) {
+			return FileTime.fromMillis(0);
 		}
 	}
 }
@@ -0,0 +1,273 @@
+package org.alindner.cish.compiler.postcompiler;
+
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.ScriptMetaInfo;
+import org.alindner.cish.compiler.postcompiler.extension.ExtensionManager;
+import org.alindner.cish.compiler.utils.CishPath;
+import org.alindner.cish.compiler.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Describes the files a cached compilation was built from by their size, modification time and inode. Remote source files of load statements are described by the hash of
+ * their content, as they can change without a local trace. They are revalidated by the {@link org.alindner.cish.compiler.postcompiler.extension.HttpCache}.
+ * <p>
+ * Computing the key of the {@link CacheManager} needs a parsed script tree and the scanned extensions. The manifest allows to skip both: if the stat data of all files still
+ * matches, the key of the last run is used directly. A manifest is stored per root script and working directory, as includes are resolved against the working directory.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class CacheManifest {
+	private static final String              KEY        = "key";
+	private static final String              RUNTIME    = "runtime";
+	private static final String              EXTENSIONS = "extensions";
+	private static final String              MODULES    = "modules";
+	private static final String              BASH       = "bash";
+	private static final String              FILES      = "files";
+	private static final String              REMOTES    = "remotes";
+	private final        Properties          properties;
+	private final        Map<Path, String>   files;
+	private final        Map<String, String> remotes;
+	private final        List<Path>          modulePaths;
+	private final        List<String>        bash;
+
+	/**
+	 * Constructor
+	 *
+	 * @param properties  key, runtime version and hash of the extensions
+	 * @param files       files and their stat data
+	 * @param remotes     urls of remote source files and the hashes of their content
+	 * @param modulePaths module paths of the extensions and their dependencies
+	 * @param bash        hashes of the inline bash scripts
+	 */
+	private CacheManifest(final Properties properties, final Map<Path, String> files, final Map<String, String> remotes, final List<Path> modulePaths, final List<String> bash) {
+		this.properties = properties;
+		this.files = files;
+		this.remotes = remotes;
+		this.modulePaths = modulePaths;
+		this.bash = bash;
+	}
+
+	/**
+	 * creates a manifest of a script tree
+	 *
+	 * @param script      any script of the tree. The whole tree, starting at the root script, is used.
+	 * @param key         key of the compiled script in the {@link CacheManager}
+	 * @param modulePaths module paths of the extensions and their dependencies, which the compiled script needs
+	 *
+	 * @return manifest
+	 */
+	public static CacheManifest of(final ScriptMetaInfo script, final String key, final List<Path> modulePaths) {
+		final Map<Path, String>   files   = new LinkedHashMap<>();
+		final Map<String, String> remotes = new LinkedHashMap<>();
+		final List<String>        bash    = new ArrayList<>();
+		CacheManifest.files(script).forEach(file -> files.put(file, CacheManifest.stat(file)));
+		script.getAllScriptInfos().forEach(info -> {
+			info.getLoads()
+			    .stream()
+			    .filter(CacheManager::isRemoteSource)
+			    .forEach(load -> remotes.put(load, info.getRemoteHashes().computeIfAbsent(load, CacheManager::remoteHash)));
+			bash.addAll(info.getBash().keySet());
+		});
+
+		final Properties properties = new Properties();
+		properties.setProperty(CacheManifest.KEY, key);
+		properties.setProperty(CacheManifest.RUNTIME, CacheManager.runtimeVersion());
+		properties.setProperty(CacheManifest.EXTENSIONS, ExtensionManager.calcHash());
+		return new CacheManifest(properties, files, remotes, modulePaths, bash);
+	}
+
+	/**
+	 * get the files of a script tree: the scripts, their includes and the local java files they load
+	 *
+	 * @param script any script of the tree. The whole tree, starting at the root script, is used.
+	 *
+	 * @return absolute paths of the files
+	 */
+	public static Set<Path> files(final ScriptMetaInfo script) {
+		final Set<Path> files = new LinkedHashSet<>();
+		script.getAllScriptInfos().forEach(info -> {
+			files.add(info.getScript().toAbsolutePath().normalize());
+			info.getIncludes().forEach(include -> files.add(Path.of(include).toAbsolutePath().normalize()));
+			info.getLoads()
+			    .stream()
+			    .filter(CacheManager::isLocalJavaFile)
+			    .forEach(load -> files.add(info.getScript().toAbsolutePath().getParent().resolve(load).normalize()));
+		});
+		return files;
+	}
+
+	/**
+	 * load the manifest of the given root script, which was stored for the current working directory
+	 *
+	 * @param rootScript root script
+	 *
+	 * @return manifest, if one was stored
+	 */
+	public static Optional<CacheManifest> load(final Path rootScript) {
+		final Path file = CacheManifest.file(rootScript);
+		if (Files.notExists(file)) {
+			return Optional.empty();
+		}
+		final Properties properties = new Properties();
+		try (final InputStream is = Files.newInputStream(file)) {
+			properties.load(is);
+		} catch (final IOException e) {
+			CacheManifest.log.debug("Couldn't read in the manifest {}", file, e);
+			return Optional.empty();
+		}
+		CacheCollector.markUsed(file);
+		final Map<Path, String> files = new LinkedHashMap<>();
+		for (int i = 0; i < Integer.parseInt(properties.getProperty(CacheManifest.FILES, "0")); i++) {
+			files.put(Path.of(properties.getProperty(CacheManifest.FILES + "." + i + ".path")), properties.getProperty(CacheManifest.FILES + "." + i + ".stat"));
+		}
+		final Map<String, String> remotes = new LinkedHashMap<>();
+		for (int i = 0; i < Integer.parseInt(properties.getProperty(CacheManifest.REMOTES, "0")); i++) {
+			remotes.put(properties.getProperty(CacheManifest.REMOTES + "." + i + ".url"), properties.getProperty(CacheManifest.REMOTES + "." + i + ".hash"));
+		}
+		return Optional.of(new CacheManifest(
+				properties,
+				files,
+				remotes,
+				CacheManifest.split(properties.getProperty(CacheManifest.MODULES, "")).stream().map(Path::of).collect(Collectors.toList()),
+				CacheManifest.split(properties.getProperty(CacheManifest.BASH, ""))
+		));
+	}
+
+	/**
+	 * get the file of the manifest
+	 *
+	 * @param rootScript root script
+	 *
+	 * @return path to the manifest
+	 */
+	private static Path file(final Path rootScript) {
+		final String id = rootScript.toAbsolutePath().normalize() + File.pathSeparator + Path.of("").toAbsolutePath();
+		return CishPath.ofCacheDir("manifests").resolve(Utils.hash(id) + ".properties");
+	}
+
+	/**
+	 * get the stat data of a file
+	 *
+	 * @param path file
+	 *
+	 * @return size, modification time and inode or an empty string, if the file doesn't exist
+	 */
+	private static String stat(final Path path) {
+		try {
+			final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return String.format("%d:%s:%s", attributes.size(), attributes.lastModifiedTime(), attributes.fileKey());
+		} catch (final IOException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * splits a list stored by {@link #store(Path)}
+	 *
+	 * @param value value of the property
+	 *
+	 * @return list of elements
+	 */
+	private static List<String> split(final String value) {
+		return value.isEmpty() ? List.of() : Arrays.asList(value.split(File.pathSeparator));
+	}
+
+	/**
+	 * checks, if the files, the extensions and the runtime are unchanged since the manifest was created and the needed files weren't deleted by the {@link CacheCollector}
+	 *
+	 * @return the cached compilation can be used
+	 */
+	public boolean isUpToDate() {
+		return CacheManager.runtimeVersion().equals(this.properties.getProperty(CacheManifest.RUNTIME))
+				&& this.files.entrySet().stream().allMatch(entry -> CacheManifest.stat(entry.getKey()).equals(entry.getValue()))
+				&& this.bash.stream().allMatch(hash -> Files.exists(CishPath.ofBashScript(hash)))
+				&& this.modulePaths.stream().allMatch(Files::exists)
+				&& ExtensionManager.calcHash().equals(this.properties.getProperty(CacheManifest.EXTENSIONS))
+				&& this.remotes.entrySet().stream().allMatch(entry -> CacheManager.remoteHash(entry.getKey()).equals(entry.getValue()));
+	}
+
+	/**
+	 * get the key of the compiled script in the {@link CacheManager}
+	 *
+	 * @return key
+	 */
+	public String getKey() {
+		return this.properties.getProperty(CacheManifest.KEY);
+	}
+
+	/**
+	 * get the files, the cached compilation was built from
+	 *
+	 * @return absolute paths of the files
+	 */
+	public Set<Path> getFiles() {
+		return this.files.keySet();
+	}
+
+	/**
+	 * get the module paths of the extensions and their dependencies, which are needed to run the script
+	 *
+	 * @return module paths
+	 */
+	public List<Path> getModulePaths() {
+		return this.modulePaths;
+	}
+
+	/**
+	 * get the hashes of the inline bash scripts of the script tree
+	 *
+	 * @return hashes, which are the file names in {@link CishPath#ofBashScript(String)}
+	 */
+	public List<String> getBash() {
+		return this.bash;
+	}
+
+	/**
+	 * stores the manifest for the given root script and the current working directory
+	 *
+	 * @param rootScript root script
+	 */
+	public void store(final Path rootScript) {
+		final Properties properties = new Properties();
+		properties.putAll(this.properties);
+		properties.setProperty(CacheManifest.MODULES, this.modulePaths.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator)));
+		properties.setProperty(CacheManifest.BASH, String.join(File.pathSeparator, this.bash));
+		properties.setProperty(CacheManifest.FILES, String.valueOf(this.files.size()));
+		int i = 0;
+		for (final Map.Entry<Path, String> entry : this.files.entrySet()) {
+			properties.setProperty(CacheManifest.FILES + "." + i + ".path", entry.getKey().toString());
+			properties.setProperty(CacheManifest.FILES + "." + i + ".stat", entry.getValue());
+			i++;
+		}
+		properties.setProperty(CacheManifest.REMOTES, String.valueOf(this.remotes.size()));
+		i = 0;
+		for (final Map.Entry<String, String> entry : this.remotes.entrySet()) {
+			properties.setProperty(CacheManifest.REMOTES + "." + i + ".url", entry.getKey());
+			properties.setProperty(CacheManifest.REMOTES + "." + i + ".hash", entry.getValue());
+			i++;
+		}
+		final Path file = CacheManifest.file(rootScript);
+		try {
+			Files.createDirectories(file.getParent());
+			final Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			try (final OutputStream os = Files.newOutputStream(tmp)) {
+				properties.store(os, "cish cache manifest");
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			CacheManifest.log.error("Couldn't store the cache manifest. The next run needs to parse the script again.", e);
+		}
+	}
+}
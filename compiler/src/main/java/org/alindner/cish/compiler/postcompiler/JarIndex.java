@@ -0,0 +1,231 @@
+package org.alindner.cish.compiler.postcompiler;
+
+import lombok.Data;
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.utils.CishPath;
+import org.alindner.cish.compiler.utils.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.module.FindException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+
+/**
+ * The packages and the module name of a jar
+ * <p>
+ * Scanning a jar for its packages means reading all of its entries, which is expensive for big jars. So the result is stored twice: in an index file next to a jar inside the
+ * cish home directory, which is valid as long as the size and the modification time of the jar are unchanged, and in a global index keyed by the hash of the content of the
+ * jar. This way the same jar, which is used by several scripts or downloaded to several directories, is only scanned once.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+@Data
+final class JarIndex {
+	private static final String                SUFFIX   = ".index";
+	private static final String                STAT     = "stat";
+	private static final String                HASH     = "hash";
+	private static final String                MODULE   = "module";
+	private static final String                PACKAGES = "packages";
+	private static final Map<String, JarIndex> loaded   = new ConcurrentHashMap<>();
+	private final        String                hash;
+	private final        String                module;
+	private final        List<String>          packages;
+
+	/**
+	 * get the index of a jar
+	 *
+	 * @param jar jar
+	 *
+	 * @return index
+	 *
+	 * @throws IOException the jar can't be read
+	 */
+	static JarIndex of(final Path jar) throws IOException {
+		return JarIndex.of(jar, CishPath.ofCacheDir("jars"), CishPath.of("."));
+	}
+
+	/**
+	 * get the index of a jar
+	 *
+	 * @param jar      jar
+	 * @param indexDir directory of the global index
+	 * @param home     directory, in which index files are written next to the jars
+	 *
+	 * @return index
+	 *
+	 * @throws IOException the jar can't be read
+	 */
+	static JarIndex of(final Path jar, final Path indexDir, final Path home) throws IOException {
+		final Path     path   = jar.toAbsolutePath().normalize();
+		final String   stat   = JarIndex.stat(path);
+		final String   key    = path + ":" + stat;
+		final JarIndex cached = JarIndex.loaded.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		final Path       sidecar    = path.resolveSibling(path.getFileName() + JarIndex.SUFFIX);
+		final Properties properties = JarIndex.read(sidecar);
+		JarIndex         index      = stat.equals(properties.getProperty(JarIndex.STAT)) ? JarIndex.of(properties) : null;
+		if (index == null) {
+			final String hash   = Utils.hash(path);
+			final Path   global = indexDir.resolve(hash + JarIndex.SUFFIX);
+			index = JarIndex.of(JarIndex.read(global));
+			if (index == null || !index.hash.equals(hash)) {
+				index = JarIndex.scan(path, hash);
+				JarIndex.write(global, index.toProperties());
+			}
+			if (path.startsWith(home.toAbsolutePath().normalize())) {
+				final Properties withStat = index.toProperties();
+				withStat.setProperty(JarIndex.STAT, stat);
+				JarIndex.write(sidecar, withStat);
+			}
+		}
+		JarIndex.loaded.put(key, index);
+		return index;
+	}
+
+	/**
+	 * reads the packages and the module name of a jar. A jar, which can't be used as module, e.g. because it contains classes in the unnamed package, has no module name and
+	 * its packages are read from the names of the class files.
+	 *
+	 * @param jar  jar
+	 * @param hash hash of the content of the jar
+	 *
+	 * @return index
+	 *
+	 * @throws IOException the jar can't be read
+	 */
+	private static JarIndex scan(final Path jar, final String hash) throws IOException {
+		JarIndex.log.debug("Scanning the packages of {}", jar);
+		try {
+			final Optional<ModuleDescriptor> descriptor = ModuleFinder.of(jar).findAll().stream().findFirst().map(ModuleReference::descriptor);
+			if (descriptor.isPresent()) {
+				return new JarIndex(hash, descriptor.get().name(), descriptor.get().packages().stream().sorted().collect(Collectors.toList()));
+			}
+		} catch (final FindException e) {
+			JarIndex.log.debug("{} isn't a valid module", jar, e);
+		}
+		try (final JarFile jarFile = new JarFile(jar.toFile())) {
+			return new JarIndex(hash, "", jarFile.stream()
+			                                     .map(ZipEntry::getName)
+			                                     .map(name -> name.replaceFirst("^META-INF/versions/\\d+/", ""))
+			                                     .filter(name -> name.endsWith(".class") && name.contains("/") && !name.startsWith("META-INF/"))
+			                                     .map(name -> name.substring(0, name.lastIndexOf('/')).replace('/', '.'))
+			                                     .distinct()
+			                                     .sorted()
+			                                     .collect(Collectors.toList()));
+		}
+	}
+
+	/**
+	 * get the size and the modification time of a file
+	 *
+	 * @param path file
+	 *
+	 * @return comparable string
+	 *
+	 * @throws IOException the file can't be read
+	 */
+	private static String stat(final Path path) throws IOException {
+		final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		return String.format("%d:%s", attributes.size(), attributes.lastModifiedTime());
+	}
+
+	/**
+	 * reads an index file
+	 *
+	 * @param file index file
+	 *
+	 * @return content or empty properties, if the file doesn't exist or can't be read
+	 */
+	private static Properties read(final Path file) {
+		final Properties properties = new Properties();
+		if (Files.isRegularFile(file)) {
+			try (final InputStream is = Files.newInputStream(file)) {
+				properties.load(is);
+			} catch (final IOException | IllegalArgumentException e) {
+				JarIndex.log.debug("Couldn't read the index {}", file, e);
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * writes an index file. It is written to a temporary file first, so a concurrent cish never sees a half written file. Errors are only logged, because the index can be
+	 * built again.
+	 *
+	 * @param file       index file
+	 * @param properties content
+	 */
+	private static void write(final Path file, final Properties properties) {
+		try {
+			Files.createDirectories(file.getParent());
+			final Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			try {
+				try (final OutputStream os = Files.newOutputStream(tmp)) {
+					properties.store(os, null);
+				}
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		} catch (final IOException e) {
+			JarIndex.log.debug("Couldn't write the index {}", file, e);
+		}
+	}
+
+	/**
+	 * builds an index from an index file
+	 *
+	 * @param properties content of the index file
+	 *
+	 * @return index or null, if the file is incomplete
+	 */
+	private static JarIndex of(final Properties properties) {
+		if (properties.getProperty(JarIndex.HASH) == null || properties.getProperty(JarIndex.PACKAGES) == null) {
+			return null;
+		}
+		final String packages = properties.getProperty(JarIndex.PACKAGES);
+		return new JarIndex(
+				properties.getProperty(JarIndex.HASH),
+				properties.getProperty(JarIndex.MODULE, ""),
+				packages.isEmpty() ? List.of() : Arrays.asList(packages.split(","))
+		);
+	}
+
+	/**
+	 * converts this index to the content of an index file
+	 *
+	 * @return content
+	 */
+	private Properties toProperties() {
+		final Properties properties = new Properties();
+		properties.setProperty(JarIndex.HASH, this.hash);
+		properties.setProperty(JarIndex.MODULE, this.module);
+		properties.setProperty(JarIndex.PACKAGES, String.join(",", this.packages));
+		return properties;
+	}
+
+	/**
+	 * get the on demand imports of all packages of the jar
+	 *
+	 * @return imports like <code>org.apache.commons.io.*</code>
+	 */
+	List<String> getImports() {
+		return this.packages.stream().map(pkg -> pkg + ".*").collect(Collectors.toList());
+	}
+}
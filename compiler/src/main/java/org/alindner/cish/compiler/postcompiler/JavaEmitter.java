@@ -0,0 +1,76 @@
+package org.alindner.cish.compiler.postcompiler;
+
+import org.alindner.cish.compiler.precompiler.LineMap;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Writes a java source file of a script in a single pass: first the package statement, then the imports and at last the generated code.
+ * <p>
+ * Every import is only written once. The emitter counts the lines it writes in front of the generated code, so the {@link LineMap} of the code stays valid for the written
+ * file.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+class JavaEmitter {
+	private final StringBuilder content = new StringBuilder();
+	private final Set<String>   imports = new HashSet<>();
+	private       int           lines;
+
+	/**
+	 * Constructor, which writes the package statement
+	 *
+	 * @param pkg package of the file
+	 */
+	JavaEmitter(final String pkg) {
+		this.writeLine(String.format("package %s;", pkg));
+	}
+
+	/**
+	 * writes a line
+	 *
+	 * @param line line without line break
+	 */
+	private void writeLine(final String line) {
+		this.content.append(line).append('\n');
+		this.lines++;
+	}
+
+	/**
+	 * writes import statements, which weren't written before
+	 *
+	 * @param names imported names, like <code>java.util.*</code>
+	 *
+	 * @return this
+	 */
+	JavaEmitter addImports(final Collection<String> names) {
+		names.stream().filter(Objects::nonNull).filter(this.imports::add).forEach(name -> this.writeLine(String.format("import %s;", name)));
+		return this;
+	}
+
+	/**
+	 * writes the generated code and finishes the file
+	 *
+	 * @param code generated code
+	 *
+	 * @return content of the java file
+	 */
+	String finish(final String code) {
+		return this.content.append(code).toString();
+	}
+
+	/**
+	 * adapts the line map of the generated code to the lines, which were written in front of it
+	 *
+	 * @param lineMap line map of the generated code
+	 *
+	 * @return line map of the java file
+	 */
+	LineMap shift(final LineMap lineMap) {
+		return lineMap.shift(this.lines);
+	}
+}
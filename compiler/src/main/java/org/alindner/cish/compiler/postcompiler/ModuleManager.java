@@ -2,7 +2,6 @@ package org.alindner.cish.compiler.postcompiler;
 
 import lombok.extern.log4j.Log4j2;
 import org.alindner.cish.compiler.postcompiler.extension.ExtensionManager;
-import org.alindner.cish.compiler.utils.CishPath;
 
 import java.io.IOException;
 import java.lang.module.Configuration;
@@ -11,9 +10,10 @@ import java.lang.module.ModuleFinder;
 import java.lang.module.ModuleReference;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -24,40 +24,76 @@ import java.util.stream.Collectors;
  */
 @Log4j2
 public class ModuleManager {
-	private final Path             cishFile;
-	private final ExtensionManager extensionManager;
+	/**
+	 * number of extension layers, which are kept. A daemon sees only a few sets of extensions, older layers and their class loaders can be collected.
+	 */
+	static final         int                         MAX_EXTENSION_LAYERS = 8;
+	private static final Map<String, ExtensionLayer> extensionLayers      = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, ExtensionLayer> eldest) {
+			return this.size() > ModuleManager.MAX_EXTENSION_LAYERS;
+		}
+	});
+	private final        Supplier<ExtensionManager>  extensionManager;
+	private final        Supplier<Set<String>>       references;
+	private              Path                        outPath;
+	private              List<Path>                  extensions;
+	private              List<Path>                  modulePaths;
 
 	/**
 	 * Constructor
 	 *
-	 * @param cishFile         cish script file
-	 * @param extensionManager instance of the matching extension manager
+	 * @param extensionManager supplier of the matching extension manager
+	 * @param references       supplier of the names, which are referenced by the script tree. Only the extensions providing them are used.
 	 */
-	public ModuleManager(final Path cishFile, final ExtensionManager extensionManager) {
-		this.cishFile = cishFile;
+	public ModuleManager(final Supplier<ExtensionManager> extensionManager, final Supplier<Set<String>> references) {
 		this.extensionManager = extensionManager;
+		this.references = references;
+	}
+
+	/**
+	 * set the modules, which are needed to run the compiled script. If they are known, the extension manager isn't needed for running the script.
+	 *
+	 * @param modulePaths module paths of the extensions and their dependencies
+	 */
+	public void setModulePaths(final List<Path> modulePaths) {
+		this.modulePaths = modulePaths;
+	}
+
+	/**
+	 * set the modules of the extensions, which were computed once for the compilation of the script tree, so the extension manager doesn't need to compute them again
+	 *
+	 * @param extensions  module paths of the referenced extensions
+	 * @param modulePaths module paths of the extensions and their dependencies
+	 */
+	public void setModules(final List<Path> extensions, final List<Path> modulePaths) {
+		this.extensions = extensions;
+		this.modulePaths = modulePaths;
+	}
+
+	/**
+	 * set the directory, which contains the already compiled cish script as module
+	 *
+	 * @param outPath directory of the compiled module
+	 */
+	public void setOutPath(final Path outPath) {
+		this.outPath = outPath;
 	}
 
+	/**
+	 * get the on demand imports of all packages of a jar. The packages are read from the {@link JarIndex}, so a jar is only scanned once.
+	 *
+	 * @param path jar
+	 *
+	 * @return imports like <code>org.apache.commons.io.*</code>
+	 */
 	public static List<String> getPackagesOfJar(final Path path) {
-		final ModuleFinder moduleFinder = ModuleFinder.of(path);
-
-		return moduleFinder.findAll().stream()
-		                   .flatMap(moduleReference -> {
-			                   try {
-				                   return moduleReference.open().list();
-			                   } catch (final IOException e) {
-				                   ModuleManager.log.error("Couldn't read in jar file", e);
-			                   }
-			                   return null;
-		                   })
-		                   .filter(packageName -> packageName.endsWith(".class"))
-		                   .map(packageName -> {
-			                   final String[] array = packageName.split("/");
-			                   final String[] a     = Arrays.copyOfRange(array, 0, array.length - 1);
-			                   return String.join(".", a) + ".*";
-		                   })
-		                   .distinct()
-		                   .collect(Collectors.toList());
+		try {
+			return JarIndex.of(path).getImports();
+		} catch (final IOException e) {
+			ModuleManager.log.error("Couldn't read in jar file", e);
+			return List.of();
+		}
 	}
 
 	/**
@@ -67,14 +103,24 @@ public class ModuleManager {
 	 * @return module info compatible string with newlines.
 	 */
 	public String getRequireString() {
-		final ModuleFinder pluginsFinder = ModuleFinder.of(this.extensionManager.getModulesList(false).toArray(new Path[0]));
-		final List<String> s = pluginsFinder
+		final List<String> s = this.getRequiredModules();
+		return s.size() > 0 ? s.stream().collect(Collectors.joining(";\n\trequires transitive ", "\n\trequires transitive ", ";")) : "";
+	}
+
+	/**
+	 * get the names of the extension modules, which the compiled cish script requires transitively
+	 *
+	 * @return module names
+	 */
+	public List<String> getRequiredModules() {
+		final List<Path>   extensions    = this.extensions != null ? this.extensions : this.extensionManager.get().getModulesList(false, this.references.get());
+		final ModuleFinder pluginsFinder = ModuleFinder.of(extensions.toArray(new Path[0]));
+		return pluginsFinder
 				.findAll()
 				.stream()
 				.map(ModuleReference::descriptor)
 				.map(ModuleDescriptor::name)
 				.collect(Collectors.toList());
-		return s.size() > 0 ? s.stream().collect(Collectors.joining(";\n\trequires transitive ", "\n\trequires transitive ", ";")) : "";
 	}
 
 	/**
@@ -83,8 +129,10 @@ public class ModuleManager {
 	 * @return list of modules
 	 */
 	public List<Path> getModulePaths() {
-		final List<Path> moduleList = this.extensionManager.getModulesList(true);
-		moduleList.add(CishPath.outPath(this.cishFile));
+		final List<Path> moduleList = this.modulePaths != null ? new ArrayList<>(this.modulePaths) : this.extensionManager.get().getModulesList(true, this.references.get());
+		if (this.outPath != null) {
+			moduleList.add(this.outPath);
+		}
 
 		return moduleList;
 	}
@@ -111,13 +159,60 @@ public class ModuleManager {
 	 * @return modulelayer for run the cishscript as java
 	 */
 	public ModuleLayer getLayer() {
-		final ModuleFinder pluginsFinder = ModuleFinder.of(this.getModulePaths().toArray(new Path[0]));
+		return this.getLayer(ModuleFinder.of());
+	}
+
+	/**
+	 * generates a JPMS module layer like {@link #getLayer()}, but the given finder is asked first for a module. This way a module, which was compiled to memory, can be used
+	 * instead of the cached one.
+	 * <p>
+	 * The layer only contains the compiled cish script. Its parent is the layer of the extensions, see {@link #getExtensionLayer()}, which is shared by all scripts using
+	 * the same extensions.
+	 *
+	 * @param finder module finder, which has precedence over the module paths
+	 *
+	 * @return modulelayer for run the cishscript as java
+	 */
+	public ModuleLayer getLayer(final ModuleFinder finder) {
+		final ModuleLayer  parent       = this.getExtensionLayer();
+		final ModuleFinder scriptFinder = this.outPath != null ? ModuleFinder.compose(finder, ModuleFinder.of(this.outPath)) : finder;
+		final List<String> roots        = scriptFinder.find(PostCompiler.MODULE_NAME).isPresent() ? List.of(PostCompiler.MODULE_NAME) : List.of();
+
+		final Configuration scriptConfiguration = parent.configuration().resolve(scriptFinder, ModuleFinder.of(), roots);
+		return parent.defineModulesWithOneLoader(scriptConfiguration, this.getClass().getClassLoader());
+	}
+
+	/**
+	 * get the JPMS module layer of the extensions and their dependencies. Its parent is the boot layer, which contains the jdk and cish.
+	 * <p>
+	 * Resolving the modules is expensive, so the layer is defined once per set of module paths and reused, e.g. by the scripts of a daemon. If a module path changed since,
+	 * the stale layer is replaced. Only the last {@link #MAX_EXTENSION_LAYERS} sets of module paths are kept.
+	 *
+	 * @return module layer of the extensions
+	 */
+	public ModuleLayer getExtensionLayer() {
+		final List<Path> paths = this.modulePaths != null ? this.modulePaths : this.extensionManager.get().getModulesList(true, this.references.get());
+		final String     key   = paths.stream().map(path -> path.toAbsolutePath().normalize().toString()).collect(Collectors.joining("\n"));
+		final String     stat  = paths.stream().map(ModuleManager::stat).collect(Collectors.joining("\n"));
+		return ModuleManager.extensionLayers.compute(key, (k, current) -> current != null && current.stat.equals(stat) ? current : new ExtensionLayer(stat, ModuleManager.defineExtensionLayer(paths))).layer;
+	}
 
+	/**
+	 * defines the JPMS module layer of the extensions and their dependencies
+	 *
+	 * @param paths module paths of the extensions and their dependencies
+	 *
+	 * @return module layer of the extensions
+	 */
+	private static ModuleLayer defineExtensionLayer(final List<Path> paths) {
+		ModuleManager.log.debug("Define the module layer of the extensions {}", paths);
+		final ModuleFinder pluginsFinder = ModuleFinder.of(paths.toArray(new Path[0]));
 		final List<String> moduleNames = pluginsFinder
 				.findAll()
 				.stream()
 				.map(ModuleReference::descriptor)
 				.map(ModuleDescriptor::name)
+				.distinct()
 				.collect(Collectors.toList());
 
 		final Configuration pluginsConfiguration = ModuleLayer
@@ -127,12 +222,40 @@ public class ModuleManager {
 
 		return ModuleLayer
 				.boot()
-				.defineModulesWithOneLoader(pluginsConfiguration, this.getClass().getClassLoader());
+				.defineModulesWithOneLoader(pluginsConfiguration, ModuleManager.class.getClassLoader());
+	}
+
+	/**
+	 * layer of the extensions and the stat data of its module paths, when it was defined
+	 */
+	private static final class ExtensionLayer {
+		private final String      stat;
+		private final ModuleLayer layer;
+
+		private ExtensionLayer(final String stat, final ModuleLayer layer) {
+			this.stat = stat;
+			this.layer = layer;
+		}
+	}
+
+	/**
+	 * get the modification time of a module path, so a changed jar gets a new layer
+	 *
+	 * @param path jar or directory
+	 *
+	 * @return modification time or an empty string, if it doesn't exist
+	 */
+	private static String stat(final Path path) {
+		try {
+			return Files.getLastModifiedTime(path).toString();
+		} catch (final IOException e) {
+			return "";
+		}
 	}
 
 	public List<String> getPackagesOfJar(final String url) {
 		try {
-			return ModuleManager.getPackagesOfJar(this.extensionManager.getAssetsManager().getByUrl(new URI(url).toURL()).getPath());
+			return ModuleManager.getPackagesOfJar(this.extensionManager.get().getAssetsManager().getByUrl(new URI(url).toURL()).getPath());
 		} catch (final IOException | URISyntaxException e) {
 			ModuleManager.log.error("Couldn't download dependency");
 		}
@@ -2,35 +2,39 @@ package org.alindner.cish.compiler.postcompiler;
 
 
 import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.Compiler;
 import org.alindner.cish.compiler.Props;
 import org.alindner.cish.compiler.ScriptMetaInfo;
 import org.alindner.cish.compiler.exceptions.CishCompileException;
 import org.alindner.cish.compiler.exceptions.CishException;
+import org.alindner.cish.compiler.postcompiler.bytecode.BytecodeCompiler;
 import org.alindner.cish.compiler.postcompiler.extension.ExtensionManager;
+import org.alindner.cish.compiler.postcompiler.extension.HttpCache;
+import org.alindner.cish.compiler.postcompiler.memory.CompiledModule;
+import org.alindner.cish.compiler.postcompiler.memory.InMemoryFileManager;
+import org.alindner.cish.compiler.postcompiler.memory.JavaSource;
+import org.alindner.cish.compiler.postcompiler.predicates.Predicates;
+import org.alindner.cish.compiler.precompiler.CishCompiler;
+import org.alindner.cish.compiler.precompiler.JavaGenerator;
+import org.alindner.cish.compiler.precompiler.LineMap;
 import org.alindner.cish.compiler.utils.CishPath;
 import org.alindner.cish.compiler.utils.Utils;
 import org.apache.commons.io.FilenameUtils;
 
 import javax.tools.*;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
 
 /**
  * compile a java file within the cish environment
@@ -39,13 +43,20 @@ import java.util.zip.GZIPInputStream;
  */
 @Log4j2
 public class PostCompiler {
-	private final List<Path>     listOfModules = new ArrayList<>();
-	private final ModuleManager  moduleManager;
-	private final ScriptMetaInfo script;
+	static final         String                 MODULE_NAME       = "cishResult";
+	private static final String                 MODULE_INFO       = "module-info";
+	private static final String                 BYTECODE_PROPERTY = "cish.bytecode";
+	private static final Supplier<JavaCompiler> JAVAC             = Compiler.lazy(ToolProvider::getSystemJavaCompiler);
+	private final        List<Path>             listOfModules     = new ArrayList<>();
+	private final        Map<String, Path>      loadedFiles       = new HashMap<>();
+	private final        Map<String, LineMap>   lineMaps          = new HashMap<>();
+	private final        ModuleManager          moduleManager;
+	private final        ScriptMetaInfo         script;
+	private              CompiledModule         compiledModule;
 
-	public PostCompiler(final ExtensionManager manager, final ScriptMetaInfo script) {
+	public PostCompiler(final Supplier<ExtensionManager> manager, final ScriptMetaInfo script) {
 		this.script = script;
-		this.moduleManager = new ModuleManager(script.getScript(), manager);
+		this.moduleManager = new ModuleManager(manager, script::getAllReferences);
 	}
 
 	/**
@@ -58,16 +69,11 @@ public class PostCompiler {
 	static List<String> fileToClass(final Path file) throws CishException {
 		switch (FilenameUtils.getExtension(file.toString())) {
 			case "java":
-				final List<String> list = new ArrayList<>();
 				try {
-					final Matcher matcher = Props.regexClassPattern.matcher(Files.readString(file));
-					while (matcher.find()) {
-						list.add(matcher.group(2));
-					}
+					return PostCompiler.contentToClass(Files.readString(file));
 				} catch (final IOException e) {
 					throw new CishException("Couldn't extract filename from java file.", e);
 				}
-				return list;
 			case "jar":
 				return Utils.getClassesFromJar(file.toAbsolutePath().toString())
 				            .stream()
@@ -78,52 +84,220 @@ public class PostCompiler {
 	}
 
 	/**
-	 * It compiles the given java file, which represents the java version of the origin cish file
+	 * returns the class names, which are declared in the given java code
+	 *
+	 * @param content java code
+	 *
+	 * @return class names
+	 */
+	static List<String> contentToClass(final String content) {
+		final List<String> list    = new ArrayList<>();
+		final Matcher      matcher = Props.regexClassPattern.matcher(content);
+		while (matcher.find()) {
+			list.add(matcher.group(2));
+		}
+		return list;
+	}
+
+	/**
+	 * It compiles the java files, which represents the java version of the origin cish file and its sub scripts.
+	 * <p>
+	 * The sources are passed to javac from memory and the resulting byte code is caught in memory as well. It can be stored afterwards using {@link CacheManager}, so the next
+	 * run can use it without compiling again.
 	 *
 	 * @param moduleList list of modules
 	 *
-	 * @throws IOException          error when copying files.
+	 * @throws IOException          error when reading in the sources
 	 * @throws CishCompileException error when compiling the java file
-	 * @throws URISyntaxException   something strange happened when trying to access the executed file itself
 	 */
-	public void compile(final List<Path> moduleList) throws IOException, URISyntaxException, CishCompileException {
+	public void compile(final List<Path> moduleList) throws IOException, CishCompileException {
 		this.listOfModules.addAll(moduleList);
+		this.compiledModule = new CompiledModule(
+				PostCompiler.MODULE_NAME,
+				this.javac(this.getSources(this.script.getAllScriptInfos(), List.of(this.script.getPkg())), List.of())
+		);
+	}
 
-		final javax.tools.JavaCompiler            compiler    = ToolProvider.getSystemJavaCompiler();
+	/**
+	 * passes java sources to javac
+	 *
+	 * @param sources java sources including the module-info.java
+	 * @param patches directories of already compiled classes, which are added to the compiled module
+	 *
+	 * @return binary class names and their byte code
+	 *
+	 * @throws IOException          error when reading in the sources
+	 * @throws CishCompileException error when compiling the java file
+	 */
+	private Map<String, byte[]> javac(final List<JavaSource> sources, final List<Path> patches) throws IOException, CishCompileException {
+		final JavaCompiler                        compiler    = PostCompiler.JAVAC.get();
 		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-		final StandardJavaFileManager             fileManager = compiler.getStandardFileManager(diagnostics, Locale.getDefault(), Charset.defaultCharset());
 
-		fileManager.setLocation(
-				StandardLocation.CLASS_PATH,
-				Collections.singletonList(CishPath.modulePath(this.script.getScript()).toFile())
-		);
+		final String       modulePathString = this.listOfModules.stream().map(path -> path.toAbsolutePath().toString()).collect(Collectors.joining(":"));
+		final List<String> options          = new ArrayList<>(Arrays.asList("-p", modulePathString));
+		if (!patches.isEmpty()) {
+			options.add("--patch-module");
+			options.add(patches.stream().map(path -> path.toAbsolutePath().toString()).collect(Collectors.joining(":", PostCompiler.MODULE_NAME + "=", "")));
+		}
+		try (final InMemoryFileManager fileManager = new InMemoryFileManager(compiler.getStandardFileManager(diagnostics, Locale.getDefault(), Charset.defaultCharset()))) {
+			final javax.tools.JavaCompiler.CompilationTask compilerTask = compiler.getTask(
+					null,
+					fileManager,
+					diagnostics,
+					options,
+					null,
+					sources
+			);
 
-		if (Files.notExists(CishPath.outPath(this.script.getRootScript()))) {
-			Files.createDirectories(CishPath.outPath(this.script.getRootScript()));
+			if (!compilerTask.call()) {
+				diagnostics.getDiagnostics().forEach(diagnostic -> System.err.println(PostCompiler.describe(diagnostic)));
+				throw new CishCompileException("Could not compile file. Something during java compilation failed.");
+			}
+			return fileManager.getClasses();
 		}
-		final String modulePathString = this.listOfModules.stream().map(path -> path.toAbsolutePath().toString()).collect(Collectors.joining(":"));
-		final javax.tools.JavaCompiler.CompilationTask compilerTask = compiler.getTask(
-				null,
-				fileManager,
-				diagnostics,
-				Arrays.asList(
-						"-d",
-						CishPath.outPath(this.script.getScript()).toString(),
-						"-p",
-						modulePathString,
-						"--module-source-path",
-						CishPath.ofCishFile(this.script.getScript()).toString(),
-						"--module",
-						"cishResult"
-				),
-				null,
-				null
-		);
+	}
+
+	/**
+	 * compiles only the script of this post compiler, while the scripts it requires are already compiled. The byte code compiler is tried first, javac is used, if it can't
+	 * compile the script.
+	 *
+	 * @param parsed   parsed script
+	 * @param imports  imports of the extensions
+	 * @param compiled cache entries of the compiled scripts by package, which include all scripts this script requires
+	 *
+	 * @return compiled classes without a module-info
+	 *
+	 * @throws IOException          error when reading in the sources
+	 * @throws CishCompileException error when compiling the java file
+	 */
+	public CompiledModule compileUnit(final CishCompiler parsed, final List<String> imports, final Map<String, Path> compiled) throws IOException, CishCompileException {
+		final Map<String, byte[]> classes = new TreeMap<>();
+		if (Boolean.parseBoolean(System.getProperty(PostCompiler.BYTECODE_PROPERTY, "true"))) {
+			new BytecodeCompiler(PostCompiler.MODULE_NAME, this.moduleManager.getExtensionLayer(), this.moduleManager.getRequiredModules())
+					.compile(List.of(parsed), imports, compiled.keySet())
+					.ifPresent(classes::putAll);
+		}
+		if (classes.isEmpty()) {
+			this.script.getImports().addAll(imports);
+			this.prependsImports();
+			this.listOfModules.addAll(this.moduleManager.getModulePathsForCompiler());
+			classes.putAll(this.javac(
+					this.getSources(List.of(this.script), List.of()),
+					compiled.values().stream().map(entry -> entry.resolve(PostCompiler.MODULE_NAME)).collect(Collectors.toList())
+			));
+		}
+		classes.remove(PostCompiler.MODULE_INFO);
+		return new CompiledModule(PostCompiler.MODULE_NAME, classes);
+	}
 
-		if (!compilerTask.call()) {
-			diagnostics.getDiagnostics().forEach(diagnostic -> System.err.format("Error on line %d in %s", diagnostic.getLineNumber(), diagnostic));
-			throw new CishCompileException("Could not compile file. Something during java compilation failed.");
+	/**
+	 * builds the compiled module of the whole script tree from the separately compiled scripts
+	 *
+	 * @param units cache entries of the compiled scripts
+	 *
+	 * @throws IOException a compiled script can't be read
+	 */
+	public void assemble(final Collection<Path> units) throws IOException {
+		final Map<String, byte[]> classes = new TreeMap<>();
+		for (final Path unit : units) {
+			classes.putAll(CompiledModule.load(PostCompiler.MODULE_NAME, unit.resolve(PostCompiler.MODULE_NAME)).getClasses());
 		}
+		final List<String> requires = new ArrayList<>();
+		requires.add("cish.compiler");
+		requires.addAll(this.moduleManager.getRequiredModules());
+		classes.put(PostCompiler.MODULE_INFO, BytecodeCompiler.moduleInfo(PostCompiler.MODULE_NAME, requires, List.of(this.script.getPkg())));
+		this.compiledModule = new CompiledModule(PostCompiler.MODULE_NAME, classes);
+	}
+
+	/**
+	 * describes a diagnostic of javac. If the java code was generated from a script, the line of the script is named.
+	 *
+	 * @param diagnostic diagnostic
+	 *
+	 * @return description
+	 */
+	static String describe(final Diagnostic<? extends JavaFileObject> diagnostic) {
+		final LineMap lineMap = diagnostic.getSource() instanceof JavaSource ? ((JavaSource) diagnostic.getSource()).getLineMap() : null;
+		final int     line    = lineMap == null ? 0 : lineMap.toSource(diagnostic.getLineNumber());
+		if (line == 0) {
+			return String.format("Error on line %d in %s", diagnostic.getLineNumber(), diagnostic);
+		}
+		return String.format("%s:%d: %s: %s", lineMap.getSource(), line, diagnostic.getKind().toString().toLowerCase(Locale.ROOT), diagnostic.getMessage(Locale.getDefault()));
+	}
+
+	/**
+	 * get the line maps of the java classes, which were compiled by javac
+	 *
+	 * @return line maps by binary class name
+	 */
+	public Map<String, LineMap> getLineMaps() {
+		return this.lineMaps;
+	}
+
+	/**
+	 * get the module compiled by {@link #compile(List)}
+	 *
+	 * @return compiled module or null, if nothing was compiled
+	 */
+	public CompiledModule getCompiledModule() {
+		return this.compiledModule;
+	}
+
+	/**
+	 * use an already compiled module instead of compiling the script
+	 *
+	 * @param outPath directory, which contains the compiled module
+	 */
+	public void useCached(final Path outPath) {
+		this.moduleManager.setOutPath(outPath);
+	}
+
+	/**
+	 * use the modules of the extensions, which were computed once for the compilation of the script tree
+	 *
+	 * @param extensions  module paths of the referenced extensions
+	 * @param modulePaths module paths of the extensions and their dependencies
+	 */
+	public void useModules(final List<Path> extensions, final List<Path> modulePaths) {
+		this.moduleManager.setModules(extensions, modulePaths);
+	}
+
+	/**
+	 * use an already compiled module instead of compiling the script, with already known module paths of the extensions
+	 *
+	 * @param outPath     directory, which contains the compiled module
+	 * @param modulePaths module paths of the extensions and their dependencies
+	 */
+	public void useCached(final Path outPath, final List<Path> modulePaths) {
+		this.moduleManager.setModulePaths(modulePaths);
+		this.useCached(outPath);
+	}
+
+	/**
+	 * collects the java sources of the given scripts plus the module-info.java. The line maps of the sources are remembered, so the stack trace of a failing script names
+	 * the lines of the script.
+	 *
+	 * @param scripts scripts, which are compiled together
+	 * @param exports packages, which are exported by the module
+	 *
+	 * @return list of in memory java files
+	 */
+	private List<JavaSource> getSources(final List<ScriptMetaInfo> scripts, final List<String> exports) {
+		final List<JavaSource> sources = new ArrayList<>();
+		sources.add(new JavaSource("module-info.java", String.format(
+				"module %s {\n\trequires cish.compiler;%s\n%s}",
+				PostCompiler.MODULE_NAME,
+				this.moduleManager.getRequireString(),
+				exports.stream().map(pkg -> String.format("\texports %s;\n", pkg)).collect(Collectors.joining())
+		)));
+		scripts.forEach(scriptInfo -> scriptInfo.getJavaContent().forEach((className, content) -> {
+			final LineMap lineMap = scriptInfo.getLineMaps().get(className);
+			if (lineMap != null) {
+				this.lineMaps.put(String.format("%s.%s", scriptInfo.getPkg(), className), lineMap);
+			}
+			sources.add(new JavaSource(String.format("%s/%s.java", scriptInfo.getPkg(), className), content, lineMap));
+		}));
+		return sources;
 	}
 
 	/**
@@ -132,244 +306,274 @@ public class PostCompiler {
 	 * @param simpleParameters the parameters like -version
 	 * @param argsList         the parameters like `0.3.2`
 	 * @param parameters       the parameters like --version=test
+	 *
+	 * @return the script finished without an exception
+	 */
+	public boolean run(final List<String> simpleParameters, final List<String> argsList, final Map<String, String> parameters) {
+		final ModuleLayer layer = this.compiledModule != null ? this.moduleManager.getLayer(this.compiledModule.asFinder()) : this.moduleManager.getLayer();
+		return PostCompiler.run(layer, this.script.getPkg(), this.script.getScript(), simpleParameters, argsList, parameters, this.lineMaps);
+	}
+
+	/**
+	 * execute the main class of a compiled script, which is defined in the given layer
+	 *
+	 * @param layer            module layer, which contains the compiled module
+	 * @param pkg              package of the main class
+	 * @param script           path of the script, which is passed to the script
+	 * @param simpleParameters the parameters like -version
+	 * @param argsList         the parameters like `0.3.2`
+	 * @param parameters       the parameters like --version=test
+	 *
+	 * @return the script finished without an exception
 	 */
-	public void run(final List<String> simpleParameters, final List<String> argsList, final Map<String, String> parameters) {
-		final ModuleLayer layer = this.moduleManager.getLayer();
+	static boolean run(final ModuleLayer layer, final String pkg, final Path script, final List<String> simpleParameters, final List<String> argsList, final Map<String, String> parameters) {
+		return PostCompiler.run(layer, pkg, script, simpleParameters, argsList, parameters, Map.of());
+	}
+
+	/**
+	 * execute the main class of a compiled script, which is defined in the given layer. If the script fails, the lines of the generated java code in its stack trace are
+	 * replaced by the lines of the scripts.
+	 *
+	 * @param layer            module layer, which contains the compiled module
+	 * @param pkg              package of the main class
+	 * @param script           path of the script, which is passed to the script
+	 * @param simpleParameters the parameters like -version
+	 * @param argsList         the parameters like `0.3.2`
+	 * @param parameters       the parameters like --version=test
+	 * @param lineMaps         line maps of the generated java classes by class name
+	 *
+	 * @return the script finished without an exception
+	 */
+	static boolean run(final ModuleLayer layer, final String pkg, final Path script, final List<String> simpleParameters, final List<String> argsList, final Map<String, String> parameters, final Map<String, LineMap> lineMaps) {
 		try {
-			final Class<?> cls  = Class.forName(this.script.getPkg() + ".Main", true, layer.findLoader("cishResult"));
+			// the layer of a run only contains the compiled script, the extensions are defined in the shared parent layers
+			layer.parents().forEach(Predicates::addLayer);
+			final Class<?> cls  = Class.forName(pkg + ".Main", true, layer.findLoader(PostCompiler.MODULE_NAME));
 			final Method   meth = cls.getMethod("main", Path.class, List.class, List.class, Map.class);
-			meth.invoke(null, this.script.getScript(), simpleParameters, argsList, parameters);
+			meth.invoke(null, script, simpleParameters, argsList, parameters);
+			return true;
 		} catch (final ClassNotFoundException e) {
 			PostCompiler.log.fatal("Couldn't found the main class. This may be a bug.", e);
-		} catch (final NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+		} catch (final InvocationTargetException e) {
+			PostCompiler.log.fatal("The script failed.", PostCompiler.toScriptLines(e.getCause(), lineMaps));
+		} catch (final NoSuchMethodException | IllegalAccessException e) {
 			PostCompiler.log.fatal("Couldn't access the main class and its main method. This may be a bug.", e);
 		}
+		return false;
+	}
+
+	/**
+	 * replaces the lines of generated java classes in the stack trace of an exception and its causes by the lines of the scripts
+	 *
+	 * @param throwable exception
+	 * @param lineMaps  line maps of the generated java classes by class name
+	 *
+	 * @return the given exception
+	 */
+	static Throwable toScriptLines(final Throwable throwable, final Map<String, LineMap> lineMaps) {
+		final Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Throwable current = throwable; current != null && visited.add(current); current = current.getCause()) {
+			current.setStackTrace(Arrays.stream(current.getStackTrace()).map(element -> {
+				final LineMap lineMap = lineMaps.get(element.getClassName().split("\\$")[0]);
+				final int     line    = lineMap == null ? 0 : lineMap.toSource(element.getLineNumber());
+				if (line == 0) {
+					return element;
+				}
+				return new StackTraceElement(
+						element.getClassLoaderName(),
+						element.getModuleName(),
+						element.getModuleVersion(),
+						element.getClassName(),
+						element.getMethodName(),
+						lineMap.getSource().getFileName().toString(),
+						line
+				);
+			}).toArray(StackTraceElement[]::new));
+		}
+		return throwable;
 	}
 
 	/**
 	 * the main method for compiling java code to byte code
+	 * <p>
+	 * A sub script only prepares its java sources. The root script passes the sources of the whole script tree to javac in a single task, as they all end up in one module.
 	 *
 	 * @param imports class which should be imported
 	 *
-	 * @throws IOException when compiling fails
+	 * @throws IOException          when compiling fails
+	 * @throws CishCompileException javac rejected the java code
 	 */
-	public void compileJava(final List<String> imports) throws IOException {
-		this.putJavaContentToFile();
-		this.putBashContentToFile();
+	public void compileJava(final List<String> imports) throws IOException, CishCompileException {
 		this.script.getImports().addAll(imports);
 		this.prependsImports();
 
-		final ArrayList<Path> listOfAllScripts = new ArrayList<>();
-		listOfAllScripts.add(this.script.getScript());
-		listOfAllScripts.addAll(
-				this.script.getRequires().stream()
-				           .map(Path::of)
-				           .collect(Collectors.toList())
-		);
 		if (this.script.isRoot()) {
-			listOfAllScripts.stream()
-			                .map(CishPath::getCompileDirOfShellScript)
-			                .forEach(f -> {
-				                try {
-					                this.compile(this.moduleManager.getModulePathsForCompiler());
-				                } catch (final Exception e) {
-					                PostCompiler.log.error("Couldn't compile file " + this.script.getScript(), e);
-				                }
-			                });
+			this.compile(this.moduleManager.getModulePathsForCompiler());
+		}
+	}
+
+	/**
+	 * compiles the parsed scripts of the whole script tree directly to byte code, without generating java code and calling javac. It is only done for the root script and
+	 * can be disabled by the system property <code>cish.bytecode=false</code>.
+	 *
+	 * @param scripts parsed scripts of the script tree
+	 * @param imports class which should be imported
+	 *
+	 * @return the scripts are compiled. Otherwise {@link #compileJava(List)} needs to compile them.
+	 */
+	public boolean compileBytecode(final List<CishCompiler> scripts, final List<String> imports) {
+		if (!this.script.isRoot() || !Boolean.parseBoolean(System.getProperty(PostCompiler.BYTECODE_PROPERTY, "true"))) {
+			return false;
 		}
+		final Optional<Map<String, byte[]>> classes = new BytecodeCompiler(
+				PostCompiler.MODULE_NAME,
+				this.moduleManager.getExtensionLayer(),
+				this.moduleManager.getRequiredModules()
+		).compile(scripts, imports);
+		classes.ifPresent(compiled -> this.compiledModule = new CompiledModule(PostCompiler.MODULE_NAME, compiled));
+		return classes.isPresent();
 	}
 
 	/**
 	 * compiles the <code>loads</code> statement
 	 * <p>
-	 * therefore it will download or copy the source file to the cache directory (classpath) and add imports to the resulting java file
+	 * therefore it will download or read in the source file, adds it to the java sources of this script and add imports to the resulting java file. The remote files are
+	 * downloaded in parallel by the {@link HttpCache}, so an unchanged file is only revalidated.
 	 *
 	 * @throws IOException error when downloading, moving and working with urls/uris
 	 */
 	private void prependsImports() throws IOException {
-		final List<Path> files = new ArrayList<>();
-		files.add(this.script.getJavaFile());
-		final Map<String, Path> filesToLoad = this.script.getLoads()
-		                                                 .stream()
-		                                                 .map(s -> {
-			                                                 final URI fileUrl = URI.create(s);
-
-			                                                 final String[] tmp = fileUrl.getPath().split("/");
-
-			                                                 final Path target;
-			                                                 if (fileUrl.getScheme() != null) {
-				                                                 target = CishPath.ofTmp(Utils.hash(fileUrl.toASCIIString()));
-				                                                 if (fileUrl.getScheme().equals("http") || fileUrl.getScheme().equals("https")) {
-					                                                 try {
-						                                                 final String fileName = tmp[tmp.length - 1];
-						                                                 if (fileName.endsWith(".jar")) {
-							                                                 final Path theTarget = CishPath.ofTmp(Utils.hash(s) + ":jar");
-
-							                                                 final HttpResponse<InputStream> response = HttpClient
-									                                                 .newBuilder().followRedirects(HttpClient.Redirect.ALWAYS)
-									                                                 .build()
-									                                                 .send(
-											                                                 HttpRequest.newBuilder(fileUrl).GET().header("Accept-Encoding", "gzip").build(),
-											                                                 HttpResponse.BodyHandlers.ofInputStream()
-									                                                 );
-							                                                 final String encoding = response.headers().firstValue("Content-Encoding").orElse("");
-							                                                 if (encoding.equals("gzip")) {
-								                                                 try (final InputStream is = new GZIPInputStream(response.body());
-								                                                      final FileOutputStream autoCloseOs = new FileOutputStream(
-										                                                      theTarget.toAbsolutePath().toString()
-								                                                      )) {
-									                                                 is.transferTo(autoCloseOs);
-								                                                 }
-							                                                 } else {
-								                                                 try (final InputStream is = response.body();
-								                                                      final FileOutputStream os = new FileOutputStream(theTarget.toAbsolutePath().toString())) {
-									                                                 is.transferTo(os);
-								                                                 }
-							                                                 }
-						                                                 } else {
-							                                                 final Path theTarget;
-							                                                 if (fileName.endsWith(".java")) {
-								                                                 theTarget = CishPath.ofPackage(
-										                                                 this.script.getScript(),
-										                                                 this.script.getPkg()
-								                                                 ).resolve(fileName);
-							                                                 } else {
-								                                                 theTarget = CishPath.ofPackage(
-										                                                 this.script.getScript(),
-										                                                 this.script.getPkg()
-								                                                 ).resolve(Utils.hash(s));
-							                                                 }
-							                                                 final HttpResponse<String> response = HttpClient.newHttpClient().send(
-									                                                 HttpRequest.newBuilder(fileUrl).build(),
-									                                                 HttpResponse.BodyHandlers.ofString()
-							                                                 );
-							                                                 final String c = String.format("package %s;\n%s", this.script.getPkg(), response.body());
-							                                                 Files.write(theTarget, c.getBytes(StandardCharsets.UTF_8));
-
-							                                                 final String className = PostCompiler.fileToClass(theTarget).get(0);
-							                                                 if (!fileName.endsWith(".java")) {
-								                                                 Files.move(theTarget, theTarget.getParent().resolve(className));
-							                                                 }
-							                                                 this.script.getImports().add(String.format(
-									                                                 "%s.%s",
-									                                                 this.script.getPkg(),
-									                                                 className
-							                                                 ));
-						                                                 }
-					                                                 } catch (final InterruptedException | IOException | CishException e) {
-						                                                 PostCompiler.log.error("Failed downloading a url from the load statement", e);
-					                                                 }
-				                                                 }
-
-			                                                 } else if (fileUrl.getPath().endsWith(".java")) {
-				                                                 final Path file = this.script.getScript().getParent().resolve(s);
-				                                                 target = CishPath.ofPackage(this.script.getRootScript(), this.script.getPkg()).resolve(file.getFileName());
-				                                                 try {
-					                                                 files.add(target);
-					                                                 if (Files.exists(target)) {
-						                                                 Files.delete(target);
-					                                                 }
-					                                                 Files.copy(file, target);
-					                                                 final List<String> tmpContent = Files.readAllLines(target);
-					                                                 tmpContent.add(0, String.format("package %s;%n", this.script.getPkg()));
-					                                                 Files.write(target, tmpContent);
-
-					                                                 try {
-						                                                 this.script.getImports().add(String.format(
-								                                                 "%s.%s",
-								                                                 this.script.getPkg(),
-								                                                 PostCompiler.fileToClass(target).get(0)
-						                                                 ));
-					                                                 } catch (final CishException e) {
-						                                                 PostCompiler.log.error("Couldn't read in copied java file", e);
-					                                                 }
-				                                                 } catch (final IOException e) {
-					                                                 PostCompiler.log.error("Failed copying the file to the cached target dir", e);
-				                                                 }
-			                                                 } else {
-				                                                 target = CishPath.ofCishFile(this.script.getRootScript()).resolve(tmp[tmp.length - 1]);
-				                                                 try {
-
-					                                                 Files.copy(Path.of(fileUrl), target);
-				                                                 } catch (final IOException e) {
-					                                                 PostCompiler.log.error("Failed copying the file to the cached target dir", e);
-
-				                                                 }
-			                                                 }
-			                                                 if (Files.exists(target)) {
-				                                                 return Map.ofEntries(Map.entry(s, target));
-			                                                 } else {
-				                                                 return new HashMap<String, Path>();
-			                                                 }
-		                                                 })
-		                                                 .flatMap(stringFileMap -> stringFileMap.entrySet().stream())
-		                                                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-		files.forEach(f -> {
-			try {
-				this.addImportsToJavaFile(f, filesToLoad);
-			} catch (final IOException e) {
-				e.printStackTrace();
+		final List<String> files = new ArrayList<>();
+		files.add("Main");
+		final Map<URI, Path> downloads = new HttpCache().fetchAll(this.script.getLoads()
+		                                                                    .stream()
+		                                                                    .map(URI::create)
+		                                                                    .filter(PostCompiler::isRemote)
+		                                                                    .collect(Collectors.toList()));
+		for (final String load : this.script.getLoads()) {
+			final URI fileUrl = URI.create(load);
+			if (PostCompiler.isRemote(fileUrl)) {
+				final Path file = downloads.get(fileUrl);
+				if (file != null) {
+					this.loadRemoteFile(load, file);
+				}
+			} else if (fileUrl.getScheme() == null && fileUrl.getPath().endsWith(".java")) {
+				final Path file = this.script.getScript().getParent().resolve(load);
+				try {
+					final String className = FilenameUtils.getBaseName(file.getFileName().toString());
+					final String c         = Files.readString(file);
+					files.add(className);
+					this.script.getJavaContent().put(className, c);
+					this.script.getLineMaps().put(className, new LineMap(file).map(1, 1));
+
+					this.script.getImports().add(String.format(
+							"%s.%s",
+							this.script.getPkg(),
+							PostCompiler.contentToClass(c).get(0)
+					));
+				} catch (final IOException e) {
+					PostCompiler.log.error("Failed reading in the java file", e);
+				}
+			} else if (fileUrl.getScheme() == null) {
+				final Path file   = this.script.getScript().getParent().resolve(load);
+				final Path target = CishPath.ofCishFile(this.script.getRootScript()).resolve(file.getFileName());
+				try {
+					Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+					this.loadedFiles.put(load, target);
+				} catch (final IOException e) {
+					PostCompiler.log.error("Failed copying the file to the cached target dir", e);
+				}
 			}
+		}
+		final List<String> imports = this.resolveImports();
+		this.script.getJavaContent().replaceAll((className, content) -> {
+			final JavaEmitter emitter = new JavaEmitter(this.script.getPkg());
+			if ("Main".equals(className)) {
+				emitter.addImports(JavaGenerator.MAIN_IMPORTS);
+			}
+			if (files.contains(className)) {
+				emitter.addImports(imports);
+			}
+			this.script.getLineMaps().computeIfPresent(className, (name, lineMap) -> emitter.shift(lineMap));
+			return emitter.finish(content);
 		});
-		Files.write(
-				this.script.getModuleInfo(),
-				String.format(
-						"module cishResult {%s\n\texports main;\n}",
-						this.moduleManager.getRequireString()
-				).getBytes()
-		); //todo gets overridden with subscripts. Content should not change
 	}
 
-	private void addImportsToJavaFile(final Path javaFile, final Map<String, Path> filesToLoad) throws IOException {
-		final AtomicReference<String> content = new AtomicReference<>("");
-		System.out.println(this.script.getImports());
-		this.script.getImports()
-		           .stream()
-		           .filter(Objects::nonNull)
-		           .map(s -> {
-			           final List<String> list = new ArrayList<>();
-			           if (s.startsWith("*.")) { // will be called when load() statement is used
-				           list.addAll(this.moduleManager.getPackagesOfJar(s.substring(2)));
-			           } else {
-				           list.add(s);
-			           }
-			           return list;
-		           })
-		           .flatMap(Collection::stream)
-		           .filter(Objects::nonNull)
-		           .forEach(s -> content.set(String.format("%s\n import %s;", content.get(), s)));
-
-		final List<String> tmpContent = Files.readAllLines(javaFile);
-		tmpContent.add(1, content.get());
-
-		Files.write(javaFile, tmpContent);
+	/**
+	 * checks, if a load statement references a file on a web server
+	 *
+	 * @param uri argument of the load statement
+	 *
+	 * @return is a http or https url
+	 */
+	private static boolean isRemote(final URI uri) {
+		return "http".equals(uri.getScheme()) || "https".equals(uri.getScheme());
+	}
 
+	/**
+	 * adds a downloaded file of a load statement to this script. A jar is only remembered, so its packages can be imported. The class of a java file is added to the java
+	 * sources and imported.
+	 *
+	 * @param load argument of the load statement
+	 * @param file downloaded file
+	 */
+	private void loadRemoteFile(final String load, final Path file) {
+		final String fileName = file.getFileName().toString();
+		this.loadedFiles.put(load, file);
+		if (fileName.endsWith(".jar")) {
+			return;
+		}
+		try {
+			final String c         = Files.readString(file);
+			final String className = PostCompiler.contentToClass(c).get(0);
+			final String name      = fileName.endsWith(".java") ? FilenameUtils.getBaseName(fileName) : className;
+			this.script.getJavaContent().put(name, c);
+			this.script.getLineMaps().put(name, new LineMap(file).map(1, 1));
+			this.script.getImports().add(String.format("%s.%s", this.script.getPkg(), className));
+		} catch (final IOException e) {
+			PostCompiler.log.error("Failed reading in a url from the load statement", e);
+		}
 	}
 
 	/**
-	 * puts the compiled cish code to a file in the cache directory (classpath)
+	 * get the imports of this script. The imports of all packages of a jar, which is loaded by <code>load(url, *)</code>, are read from the {@link JarIndex}.
 	 *
-	 * @throws IOException write error
+	 * @return imported names, like <code>java.util.*</code>
 	 */
-	private void putJavaContentToFile() throws IOException {
-		for (final Map.Entry<String, String> entry : this.script.getJavaContent().entrySet()) {
-			final Path currentFile = CishPath.ofPackage(this.script.getRootScript(), this.script.getPkg()).resolve(entry.getKey() + ".java");
-			Files.write(currentFile, entry.getValue().getBytes(StandardCharsets.UTF_8));
+	private List<String> resolveImports() {
+		final List<String> imports = new ArrayList<>();
+		for (final String name : this.script.getImports()) {
+			if (name == null) {
+				continue;
+			}
+			if (name.startsWith("*.")) { // will be called when load() statement is used
+				final Path jar = this.loadedFiles.get(name.substring(2));
+				imports.addAll(jar != null ? ModuleManager.getPackagesOfJar(jar) : this.moduleManager.getPackagesOfJar(name.substring(2)));
+			} else {
+				imports.add(name);
+			}
 		}
+		return imports;
 	}
 
 	/**
-	 * puts the used inline bash code to a file in the cache directory (classpath)
+	 * puts the used inline bash code of this script and its sub scripts to files in the cache directory. The files are named by the hash of their content, so an existing file
+	 * is never written again.
 	 *
 	 * @throws IOException write error
 	 */
-	private void putBashContentToFile() throws IOException {
-		for (final Map.Entry<String, String> entry : this.script.getBash().entrySet()) {
-
-			Files.write(
-					CishPath.ofBashScript(this.script.getRootScript(), entry.getKey()),
-					String.format("#!/bin/bash \n%s", entry.getValue()).getBytes(StandardCharsets.UTF_8)
-			);
+	public void putBashContentToFile() throws IOException {
+		for (final ScriptMetaInfo info : this.script.getAllScriptInfos()) {
+			for (final Map.Entry<String, String> entry : info.getBash().entrySet()) {
+				final Path target = CishPath.ofBashScript(entry.getKey());
+				if (Files.exists(target)) {
+					CacheCollector.markUsed(target);
+					continue;
+				}
+				final Path tmp = Files.createTempFile(target.getParent(), entry.getKey(), ".tmp");
+				Files.write(tmp, String.format("#!/bin/bash \n%s", entry.getValue()).getBytes(StandardCharsets.UTF_8));
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
 		}
 	}
 }
@@ -0,0 +1,276 @@
+package org.alindner.cish.compiler.postcompiler.bytecode;
+
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.precompiler.CishCompiler;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+import java.lang.module.ModuleDescriptor;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Compiles a tree of parsed cish scripts directly to byte code, without generating and compiling java code.
+ * <p>
+ * Only scripts, which don't need javac, are compiled this way: scripts without java code, <code>load()</code> statements, lambdas or predicates. The types and methods are
+ * resolved by reflection against the module layer of the extensions, exactly as javac would resolve them against the module path. If anything can't be compiled the way
+ * javac would do, the whole tree is left to javac, so javac reports the errors.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class BytecodeCompiler {
+	private static final String                MODULE_INFO = "module-info";
+	private static final List<String>          ON_DEMAND   = List.of("java.lang", "java.util", "java.nio.file", "org.alindner.cish.lang.functions.predicate");
+	private final        String                moduleName;
+	private final        ModuleLayer           layer;
+	private final        List<String>          modules;
+	private final        ClassLoader           loader;
+	private final        Set<Module>           readable    = new HashSet<>();
+	private final        Map<String, String>   singleType  = new HashMap<>();
+	private final        List<String>          onDemand    = new ArrayList<>(BytecodeCompiler.ON_DEMAND);
+	private final        Map<String, Class<?>> types       = new HashMap<>();
+	private final        Set<String>           packages    = new HashSet<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param moduleName name of the module, which contains the compiled scripts
+	 * @param layer      module layer of the extensions
+	 * @param modules    modules, which are required transitively by the compiled module
+	 */
+	public BytecodeCompiler(final String moduleName, final ModuleLayer layer, final List<String> modules) {
+		this.moduleName = moduleName;
+		this.layer = layer;
+		this.modules = modules;
+		this.loader = layer.modules().stream().findFirst().map(Module::getClassLoader).orElse(this.getClass().getClassLoader());
+		this.addReadable("java.base");
+		modules.forEach(this::addReadable);
+	}
+
+	/**
+	 * adds a module and the modules it requires transitively to the modules, the compiled module reads
+	 *
+	 * @param name name of the module
+	 */
+	private void addReadable(final String name) {
+		final Optional<Module> module = this.layer.findModule(name);
+		if (module.isEmpty() || !this.readable.add(module.get())) {
+			return;
+		}
+		final ModuleDescriptor descriptor = module.get().getDescriptor();
+		if (descriptor.isAutomatic()) {
+			this.layer.modules().stream().filter(other -> other.getDescriptor().isAutomatic()).map(Module::getName).forEach(this::addReadable);
+			return;
+		}
+		descriptor.requires()
+		          .stream()
+		          .filter(requires -> requires.modifiers().contains(ModuleDescriptor.Requires.Modifier.TRANSITIVE))
+		          .map(ModuleDescriptor.Requires::name)
+		          .forEach(this::addReadable);
+	}
+
+	/**
+	 * compiles the main classes of the given scripts and the module-info
+	 *
+	 * @param scripts parsed scripts. Each script is compiled to the class <code>Main</code> in its own package.
+	 * @param imports canonical names of the classes, which are imported by every script
+	 *
+	 * @return binary class names and their byte code or nothing, if javac needs to compile the scripts
+	 */
+	public Optional<Map<String, byte[]>> compile(final List<CishCompiler> scripts, final List<String> imports) {
+		return this.compile(scripts, imports, Set.of());
+	}
+
+	/**
+	 * compiles the main classes of the given scripts and the module-info. The scripts may require scripts, which were already compiled on their own.
+	 *
+	 * @param scripts  parsed scripts. Each script is compiled to the class <code>Main</code> in its own package.
+	 * @param imports  canonical names of the classes, which are imported by every script
+	 * @param compiled packages of the scripts, which are already compiled
+	 *
+	 * @return binary class names and their byte code or nothing, if javac needs to compile the scripts
+	 */
+	public Optional<Map<String, byte[]>> compile(final List<CishCompiler> scripts, final List<String> imports, final Set<String> compiled) {
+		try {
+			this.setImports(imports);
+			this.packages.addAll(compiled);
+			scripts.forEach(script -> this.packages.add(script.getCishFile().getPkg()));
+			final Map<String, byte[]> classes = new HashMap<>();
+			for (final CishCompiler script : scripts) {
+				if (!script.getLoads().isEmpty() || !script.getJavaClasses().isEmpty()) {
+					throw new FallbackException(String.format("%s loads java code", script.getCishFile().getScript()));
+				}
+				classes.put(script.getCishFile().getPkg() + ".Main", new BytecodeGenerator(this, script.getCishFile()).generate(script));
+			}
+			classes.put(BytecodeCompiler.MODULE_INFO, ClassFile.moduleInfo(this.moduleName, this.modules, List.of("main")));
+			return Optional.of(classes);
+		} catch (final FallbackException | ParseException e) {
+			BytecodeCompiler.log.debug("Compiling with javac, because {}", e.getMessage());
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * generates the module-info of a module, which consists of separately compiled scripts
+	 *
+	 * @param moduleName name of the module
+	 * @param requires   modules, which are required transitively
+	 * @param exports    exported packages
+	 *
+	 * @return byte code
+	 */
+	public static byte[] moduleInfo(final String moduleName, final List<String> requires, final List<String> exports) {
+		return ClassFile.moduleInfo(moduleName, requires, exports);
+	}
+
+	/**
+	 * registers the imports, which are placed in front of every script
+	 *
+	 * @param imports canonical names of classes or on demand imports like <code>java.io.*</code>
+	 */
+	private void setImports(final List<String> imports) {
+		for (final String name : imports) {
+			if (name.startsWith("*.")) {
+				throw new FallbackException("the packages of a jar are imported");
+			}
+			if (name.endsWith(".*")) {
+				this.onDemand.add(name.substring(0, name.length() - 2));
+				continue;
+			}
+			final String simpleName = name.substring(name.lastIndexOf('.') + 1);
+			final String previous   = this.singleType.put(simpleName, name);
+			if (simpleName.equals("Main") || previous != null && !previous.equals(name)) {
+				throw new FallbackException(String.format("the import of %s conflicts with another class", name));
+			}
+			this.checkAccessible(this.loadCanonical(name).orElseThrow(() -> new FallbackException(String.format("the imported class %s doesn't exist", name))));
+		}
+	}
+
+	/**
+	 * resolves a simple class name, which is used by a script, like javac resolves it: single type imports first, then the classes of the on demand imported packages
+	 *
+	 * @param simpleName simple name of the class
+	 *
+	 * @return class
+	 */
+	Class<?> resolveType(final String simpleName) {
+		final Class<?> cached = this.types.get(simpleName);
+		if (cached != null) {
+			return cached;
+		}
+		if (simpleName.contains(".") || simpleName.equals("Main")) {
+			throw new FallbackException(String.format("the type %s isn't resolved", simpleName));
+		}
+		final Class<?> type;
+		if (this.singleType.containsKey(simpleName)) {
+			type = this.loadCanonical(this.singleType.get(simpleName)).orElseThrow();
+		} else {
+			final Set<Class<?>> candidates = new HashSet<>();
+			for (final String pkg : this.onDemand) {
+				this.load(pkg + "." + simpleName).filter(this::isAccessible).ifPresent(candidates::add);
+			}
+			if (candidates.size() != 1) {
+				throw new FallbackException(String.format("the type %s is %s", simpleName, candidates.isEmpty() ? "unknown" : "ambiguous"));
+			}
+			type = candidates.iterator().next();
+		}
+		this.types.put(simpleName, type);
+		return type;
+	}
+
+	/**
+	 * resolves a public member class
+	 *
+	 * @param owner      enclosing class
+	 * @param simpleName simple name of the member class
+	 *
+	 * @return member class
+	 */
+	Class<?> resolveMember(final Class<?> owner, final String simpleName) {
+		final Class<?> member = Arrays.stream(owner.getClasses())
+		                              .filter(type -> type.getSimpleName().equals(simpleName))
+		                              .findFirst()
+		                              .orElseThrow(() -> new FallbackException(String.format("%s.%s doesn't exist", owner.getSimpleName(), simpleName)));
+		this.checkAccessible(member);
+		return member;
+	}
+
+	/**
+	 * checks, if the compiled module may access a class
+	 *
+	 * @param type class
+	 */
+	void checkAccessible(final Class<?> type) {
+		if (!this.isAccessible(type)) {
+			throw new FallbackException(String.format("%s isn't accessible", type.getName()));
+		}
+	}
+
+	/**
+	 * checks, if a class is public, exported and part of a module, which the compiled module reads
+	 *
+	 * @param type class
+	 *
+	 * @return is accessible
+	 */
+	private boolean isAccessible(final Class<?> type) {
+		if (type.isArray()) {
+			return this.isAccessible(type.getComponentType());
+		}
+		if (type.isPrimitive()) {
+			return true;
+		}
+		for (Class<?> current = type; current != null; current = current.getEnclosingClass()) {
+			if (!Modifier.isPublic(current.getModifiers())) {
+				return false;
+			}
+		}
+		return this.readable.contains(type.getModule()) && type.getModule().isExported(type.getPackageName());
+	}
+
+	/**
+	 * checks, if a package is compiled together with the current script
+	 *
+	 * @param pkg package name
+	 *
+	 * @return is compiled
+	 */
+	boolean isCompiled(final String pkg) {
+		return this.packages.contains(pkg);
+	}
+
+	/**
+	 * loads a class by its canonical name. The canonical name of a member class differs from its binary name, so the last dots are replaced by <code>$</code> one after another.
+	 *
+	 * @param canonicalName canonical name
+	 *
+	 * @return class or nothing, if it doesn't exist
+	 */
+	private Optional<Class<?>> loadCanonical(final String canonicalName) {
+		String name = canonicalName;
+		while (true) {
+			final Optional<Class<?>> type = this.load(name);
+			if (type.isPresent() || name.lastIndexOf('.') < 0) {
+				return type;
+			}
+			final int last = name.lastIndexOf('.');
+			name = name.substring(0, last) + "$" + name.substring(last + 1);
+		}
+	}
+
+	/**
+	 * loads a class by its binary name without initializing it
+	 *
+	 * @param binaryName binary name
+	 *
+	 * @return class or nothing, if it doesn't exist
+	 */
+	private Optional<Class<?>> load(final String binaryName) {
+		try {
+			return Optional.of(Class.forName(binaryName, false, this.loader));
+		} catch (final ClassNotFoundException | LinkageError e) {
+			return Optional.empty();
+		}
+	}
+}
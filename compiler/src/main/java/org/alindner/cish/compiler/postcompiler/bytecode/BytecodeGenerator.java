@@ -0,0 +1,840 @@
+package org.alindner.cish.compiler.postcompiler.bytecode;
+
+import org.alindner.cish.compiler.ScriptMetaInfo;
+import org.alindner.cish.compiler.precompiler.CishCompiler;
+import org.alindner.cish.compiler.precompiler.IncludeCache;
+import org.alindner.cish.compiler.precompiler.ast.*;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+import org.alindner.cish.compiler.utils.CishPath;
+import org.alindner.cish.compiler.utils.Utils;
+
+import java.io.IOException;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Generates the main class of a script directly from its syntax tree.
+ * <p>
+ * The generated byte code behaves exactly like the one javac produces for the code of the {@link org.alindner.cish.compiler.precompiler.JavaGenerator}: a local variable
+ * is declared with the static type of its first value, like <code>var</code> does, methods are selected like javac selects them and an <code>if</code> block is inlined
+ * instead of passing lambdas to <code>ControlStructures.when</code>. Everything, which javac would handle differently or would reject, throws a
+ * {@link FallbackException}, so javac compiles the script and reports the error.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+class BytecodeGenerator implements NodeVisitor<Class<?>> {
+	private static final List<Class<?>>            PARAMETERS         = List.of(Path.class, List.class, List.class, Map.class);
+	private static final String                    MAIN_DESCRIPTOR    = "(Ljava/nio/file/Path;Ljava/util/List;Ljava/util/List;Ljava/util/Map;)V";
+	private static final String                    CONTROL_STRUCTURES = "org.alindner.cish.lang.ControlStructures";
+	private static final Set<String>               KEYWORDS           = Set.of(
+			"abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue", "default", "do", "double", "else", "enum", "extends",
+			"false", "final", "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native", "new", "null", "package",
+			"private", "protected", "public", "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient", "true", "try",
+			"void", "volatile", "while"
+	);
+	private final        BytecodeCompiler          compiler;
+	private final        ScriptMetaInfo            script;
+	private final        ClassFile                 classFile;
+	private final        Deque<Map<String, Local>> scopes             = new ArrayDeque<>();
+	private final        List<Local>               locals             = new ArrayList<>();
+	private              Code                      code;
+	private              CishCompiler              current;
+	private              Script                    root;
+	private              Set<String>               variables          = new HashSet<>();
+	private              int                       nextSlot           = BytecodeGenerator.PARAMETERS.size();
+	private              boolean                   expression;
+
+	/**
+	 * Constructor
+	 *
+	 * @param compiler compiler, which resolves the types
+	 * @param script   script, which is generated
+	 */
+	BytecodeGenerator(final BytecodeCompiler compiler, final ScriptMetaInfo script) {
+		this.compiler = compiler;
+		this.script = script;
+		this.classFile = new ClassFile(script.getPkg() + "/Main", "java/lang/Object");
+		this.code = new Code(this.classFile.getPool());
+	}
+
+	/**
+	 * generates the main class
+	 *
+	 * @param parsed parsed script
+	 *
+	 * @return byte code of the class
+	 *
+	 * @throws ParseException semantic error in an included file
+	 */
+	byte[] generate(final CishCompiler parsed) throws ParseException {
+		final Code constructor = new Code(this.classFile.getPool());
+		constructor.reserveLocals(1);
+		constructor.load(Object.class, 0);
+		constructor.invoke(Object.class, BytecodeGenerator.constructor(Object.class));
+		constructor.returnVoid();
+		this.classFile.addMethod(ClassFile.PUBLIC, "<init>", "()V", constructor, List.of());
+
+		this.code.reserveLocals(BytecodeGenerator.PARAMETERS.size());
+		final Class<?> parameter = this.compiler.resolveType("Parameter");
+		this.setParameter(parameter, "params", 1);
+		this.setParameter(parameter, "simpleArgs", 2);
+		this.setParameter(parameter, "extendedParams", 3);
+		this.setParameter(parameter, "script", 0);
+		this.current = parsed;
+		this.root = parsed.getScript();
+		this.scopes.push(new HashMap<>());
+		parsed.getScript().accept(this);
+		this.locals.stream().filter(local -> local.captured && local.assignments > 1).findFirst().ifPresent(local -> {
+			throw new FallbackException(String.format("the variable %s is used inside an if block, but isn't effectively final", local.name));
+		});
+		this.code.returnVoid();
+		this.classFile.addMethod(ClassFile.PUBLIC | ClassFile.STATIC, "main", BytecodeGenerator.MAIN_DESCRIPTOR, this.code, List.of("java/lang/Exception"));
+		this.classFile.setSourceFile(this.script.getScript().getFileName().toString());
+		return this.classFile.toByteArray();
+	}
+
+	/**
+	 * assigns a parameter of the main method to a static field of the <code>Parameter</code> class
+	 *
+	 * @param parameter class <code>Parameter</code>
+	 * @param name      name of the field
+	 * @param slot      slot of the parameter
+	 */
+	private void setParameter(final Class<?> parameter, final String name, final int slot) {
+		final Field field;
+		try {
+			field = parameter.getField(name);
+		} catch (final NoSuchFieldException e) {
+			throw new FallbackException(String.format("the field Parameter.%s doesn't exist", name));
+		}
+		final Class<?> type = BytecodeGenerator.PARAMETERS.get(slot);
+		if (!Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers()) || !field.getType().isAssignableFrom(type)) {
+			throw new FallbackException(String.format("the field Parameter.%s can't be assigned", name));
+		}
+		this.code.load(type, slot);
+		this.code.putStatic(parameter, name, field.getType());
+	}
+
+	/**
+	 * get the public constructor without parameters of a class
+	 *
+	 * @param type class
+	 *
+	 * @return constructor
+	 */
+	private static Executable constructor(final Class<?> type) {
+		try {
+			return type.getConstructor();
+		} catch (final NoSuchMethodException e) {
+			throw new FallbackException(String.format("%s has no default constructor", type.getName()));
+		}
+	}
+
+	/**
+	 * get a public method of a class
+	 *
+	 * @param type       class
+	 * @param name       name of the method
+	 * @param parameters parameter types
+	 *
+	 * @return method
+	 */
+	private static Method method(final Class<?> type, final String name, final Class<?>... parameters) {
+		try {
+			return type.getMethod(name, parameters);
+		} catch (final NoSuchMethodException e) {
+			throw new FallbackException(String.format("%s.%s doesn't exist", type.getName(), name));
+		}
+	}
+
+	/**
+	 * checks, if a name can be used as java identifier
+	 *
+	 * @param name name of a variable or method
+	 */
+	private static void checkName(final String name) {
+		if (BytecodeGenerator.KEYWORDS.contains(name)) {
+			throw new FallbackException(String.format("%s is a java keyword", name));
+		}
+	}
+
+	/**
+	 * get the depth of nested if blocks at the current position
+	 *
+	 * @return 0 on the top level of the script
+	 */
+	private int depth() {
+		return this.scopes.size() - 1;
+	}
+
+	/**
+	 * looks up a local variable, which is in scope
+	 *
+	 * @param name name of the variable
+	 *
+	 * @return variable or null
+	 */
+	private Local lookup(final String name) {
+		for (final Map<String, Local> scope : this.scopes) {
+			if (scope.containsKey(name)) {
+				return scope.get(name);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * pushes the value of a local variable
+	 *
+	 * @param name name of the variable
+	 *
+	 * @return type of the variable
+	 */
+	private Class<?> read(final String name) {
+		final Local local = this.lookup(name);
+		if (local == null) {
+			throw new FallbackException(String.format("the variable %s isn't in scope", name));
+		}
+		if (local.depth < this.depth()) {
+			local.captured = true;
+		}
+		this.code.load(local.type, local.slot);
+		return local.type;
+	}
+
+	/**
+	 * get the types of the local variables in scope, as needed for a stack map frame
+	 *
+	 * @return types by slot
+	 */
+	private List<Class<?>> frame() {
+		final SortedMap<Integer, Local> bySlot = new TreeMap<>();
+		this.scopes.forEach(scope -> scope.values().forEach(local -> bySlot.put(local.slot, local)));
+		final List<Class<?>> types = new ArrayList<>(BytecodeGenerator.PARAMETERS);
+		int                  slot  = BytecodeGenerator.PARAMETERS.size();
+		for (final Local local : bySlot.values()) {
+			for (; slot < local.slot; slot++) {
+				types.add(null);
+			}
+			types.add(local.type);
+			slot += Types.size(local.type);
+		}
+		return types;
+	}
+
+	/**
+	 * generates a list of statements
+	 *
+	 * @param statements statements
+	 *
+	 * @throws ParseException semantic error in an included file
+	 */
+	private void statements(final List<Node> statements) throws ParseException {
+		for (final Node statement : statements) {
+			final boolean outer = this.expression;
+			this.expression = false;
+			try {
+				this.code.pop(statement.accept(this));
+			} finally {
+				this.expression = outer;
+			}
+		}
+	}
+
+	/**
+	 * generates the statements of an if block in a new scope
+	 *
+	 * @param statements statements
+	 *
+	 * @throws ParseException semantic error in an included file
+	 */
+	private void block(final List<Node> statements) throws ParseException {
+		this.scopes.push(new HashMap<>());
+		try {
+			this.statements(statements);
+		} finally {
+			this.scopes.pop();
+		}
+	}
+
+	/**
+	 * generates a node, which is used as value
+	 *
+	 * @param node node
+	 *
+	 * @return type of the value
+	 *
+	 * @throws ParseException semantic error in an included file
+	 */
+	private Class<?> expression(final Node node) throws ParseException {
+		final boolean outer = this.expression;
+		this.expression = true;
+		try {
+			final Class<?> type = node.accept(this);
+			if (type == void.class) {
+				throw new FallbackException("a void method is used as value");
+			}
+			return type;
+		} finally {
+			this.expression = outer;
+		}
+	}
+
+	/**
+	 * get the type of a value without generating its code
+	 *
+	 * @param node node
+	 *
+	 * @return type of the value
+	 *
+	 * @throws ParseException semantic error in an included file
+	 */
+	private Class<?> typeOf(final Node node) throws ParseException {
+		final Code generating = this.code;
+		this.code = new Code(this.classFile.getPool());
+		try {
+			return this.expression(node);
+		} finally {
+			this.code = generating;
+		}
+	}
+
+	/**
+	 * ensures, that a statement isn't used as value, which javac would reject
+	 *
+	 * @param statement description of the statement
+	 */
+	private void statementOnly(final String statement) {
+		if (this.expression) {
+			throw new FallbackException(String.format("%s is used as value", statement));
+		}
+	}
+
+	/**
+	 * ensures, that an invoked method or constructor doesn't throw checked exceptions inside an if block, as the lambda javac would generate can't throw them
+	 *
+	 * @param executable method or constructor
+	 */
+	private void checkExceptions(final Executable executable) {
+		if (this.depth() == 0) {
+			return;
+		}
+		for (final Class<?> exception : executable.getExceptionTypes()) {
+			if (!RuntimeException.class.isAssignableFrom(exception) && !Error.class.isAssignableFrom(exception)) {
+				throw new FallbackException(String.format("%s throws %s inside an if block", executable.getName(), exception.getSimpleName()));
+			}
+		}
+	}
+
+	/**
+	 * converts the value on top of the stack by boxing, unboxing or a widening primitive conversion
+	 *
+	 * @param from type of the value
+	 * @param to   target type
+	 */
+	private void convert(final Class<?> from, final Class<?> to) {
+		if (from == to || !from.isPrimitive() && !to.isPrimitive()) {
+			return;
+		}
+		if (from.isPrimitive() && to.isPrimitive()) {
+			this.widen(from, to);
+		} else if (from.isPrimitive()) {
+			final Class<?> box = Types.box(from);
+			this.code.invoke(box, BytecodeGenerator.method(box, "valueOf", from));
+		} else {
+			final Class<?> unboxed = Types.unbox(from);
+			this.code.invoke(from, BytecodeGenerator.method(from, unboxed.getName() + "Value"));
+			this.widen(unboxed, to);
+		}
+	}
+
+	/**
+	 * applies a widening primitive conversion to the value on top of the stack
+	 *
+	 * @param from primitive type of the value
+	 * @param to   wider primitive type
+	 */
+	private void widen(final Class<?> from, final Class<?> to) {
+		if (from == to || to == short.class || to == int.class) {
+			return;
+		}
+		if (from == long.class) {
+			this.code.instruction(to == float.class ? 137 : 138, to == float.class ? -1 : 0);
+		} else if (from == float.class) {
+			this.code.instruction(141, 1);
+		} else if (to == long.class) {
+			this.code.instruction(133, 1);
+		} else {
+			this.code.instruction(to == float.class ? 134 : 135, to == float.class ? 0 : 1);
+		}
+	}
+
+	/**
+	 * get the methods with the given name, which are members of a type. The public methods of <code>Object</code> are members of an interface as well.
+	 *
+	 * @param type type
+	 * @param name name of the method
+	 *
+	 * @return methods
+	 */
+	private static List<Method> methods(final Class<?> type, final String name) {
+		final List<Method> methods = Arrays.stream(type.getMethods()).filter(method -> method.getName().equals(name)).collect(Collectors.toList());
+		if (type.isInterface()) {
+			Arrays.stream(Object.class.getMethods())
+			      .filter(method -> method.getName().equals(name))
+			      .filter(method -> methods.stream().noneMatch(declared -> Arrays.equals(declared.getParameterTypes(), method.getParameterTypes())))
+			      .forEach(methods::add);
+		}
+		return methods;
+	}
+
+	/**
+	 * get the static types of arguments
+	 *
+	 * @param arguments arguments
+	 *
+	 * @return types
+	 *
+	 * @throws ParseException semantic error in an included file
+	 */
+	private List<Class<?>> typesOf(final List<Node> arguments) throws ParseException {
+		final List<Class<?>> types = new ArrayList<>();
+		for (final Node argument : arguments) {
+			types.add(this.typeOf(argument));
+		}
+		return types;
+	}
+
+	/**
+	 * invokes a method. The receiver is expected on the stack, if it is an instance method.
+	 *
+	 * @param owner     static type of the receiver or the class of a static method
+	 * @param isStatic  a static method is invoked by the name of the class
+	 * @param name      name of the method
+	 * @param arguments arguments
+	 *
+	 * @return return type of the method
+	 *
+	 * @throws ParseException semantic error in an included file
+	 */
+	private Class<?> invoke(final Class<?> owner, final boolean isStatic, final String name, final List<Node> arguments) throws ParseException {
+		BytecodeGenerator.checkName(name);
+		if (owner.isPrimitive() || owner.isArray()) {
+			throw new FallbackException(String.format("%s is called on %s", name, owner.getSimpleName()));
+		}
+		this.compiler.checkAccessible(owner);
+		final List<Class<?>> types  = this.typesOf(arguments);
+		final Method         method = MethodResolver.resolve(owner.getSimpleName() + "." + name, BytecodeGenerator.methods(owner, name), types);
+		if (Modifier.isStatic(method.getModifiers()) != isStatic) {
+			throw new FallbackException(String.format("%s.%s is %s", owner.getSimpleName(), name, isStatic ? "an instance method" : "static"));
+		}
+		this.checkExceptions(method);
+		this.arguments(method, arguments, types);
+		this.code.invoke(owner.isInterface() && method.getDeclaringClass() == Object.class ? Object.class : owner, method);
+		return method.getReturnType();
+	}
+
+	/**
+	 * pushes the arguments of an invocation and converts them to the parameter types. Arguments of a variable arity invocation are collected in an array.
+	 *
+	 * @param executable invoked method or constructor
+	 * @param arguments  arguments
+	 * @param types      static types of the arguments
+	 *
+	 * @throws ParseException semantic error in an included file
+	 */
+	private void arguments(final Executable executable, final List<Node> arguments, final List<Class<?>> types) throws ParseException {
+		final Class<?>[] parameters = executable.getParameterTypes();
+		boolean          fixed      = arguments.size() == parameters.length;
+		for (int i = 0; fixed && i < parameters.length; i++) {
+			fixed = Types.isConvertible(types.get(i), parameters[i], true);
+		}
+		final int count = fixed ? parameters.length : parameters.length - 1;
+		for (int i = 0; i < count; i++) {
+			this.expression(arguments.get(i));
+			this.convert(types.get(i), parameters[i]);
+		}
+		if (fixed) {
+			return;
+		}
+		final Class<?> component = parameters[count].getComponentType();
+		this.compiler.checkAccessible(component);
+		this.code.newArray(component, arguments.size() - count);
+		for (int i = count; i < arguments.size(); i++) {
+			this.code.prepareElement(i - count);
+			this.expression(arguments.get(i));
+			this.convert(types.get(i), component);
+			this.code.storeElement();
+		}
+	}
+
+	/**
+	 * invokes chained instance methods on the value on top of the stack
+	 *
+	 * @param receiver type of the value
+	 * @param calls    chained calls
+	 *
+	 * @return type of the result of the last call
+	 *
+	 * @throws ParseException semantic error in an included file
+	 */
+	private Class<?> chain(final Class<?> receiver, final List<Call> calls) throws ParseException {
+		Class<?> type = receiver;
+		for (final Call call : calls) {
+			if (type == void.class) {
+				throw new FallbackException(String.format("%s is called on void", call.getName()));
+			}
+			type = this.invoke(type, false, call.getName(), call.getArguments());
+		}
+		return type;
+	}
+
+	/**
+	 * converts the content of a string literal, as it is written into the java code, to the value javac would read from it
+	 *
+	 * @param content content between the quotes
+	 *
+	 * @return value of the java string literal
+	 */
+	private static String javaString(final String content) {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < content.length(); i++) {
+			final char c = content.charAt(i);
+			if (c == '"' || c == '\n' || c == '\r') {
+				throw new FallbackException("a string contains a quote or a line break");
+			}
+			if (c != '\\') {
+				builder.append(c);
+				continue;
+			}
+			if (++i == content.length()) {
+				throw new FallbackException("a string ends with a backslash");
+			}
+			final char escaped = content.charAt(i);
+			final int  octal   = "01234567".indexOf(escaped);
+			if (octal >= 0) {
+				int value = octal;
+				for (int digits = escaped <= '3' ? 2 : 1; digits > 0 && i + 1 < content.length() && "01234567".indexOf(content.charAt(i + 1)) >= 0; digits--) {
+					value = value * 8 + content.charAt(++i) - '0';
+				}
+				builder.append((char) value);
+				continue;
+			}
+			final int index = "btnfr\"'\\".indexOf(escaped);
+			if (index < 0) {
+				throw new FallbackException(String.format("a string contains the escape sequence \\%s", escaped));
+			}
+			builder.append("\b\t\n\f\r\"'\\".charAt(index));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * pushes a number literal
+	 *
+	 * @param value literal
+	 *
+	 * @return int or double
+	 */
+	private Class<?> number(final String value) {
+		if (value.contains(".")) {
+			final double number = Double.parseDouble(value);
+			if (Double.isInfinite(number)) {
+				throw new FallbackException(String.format("%s is too large", value));
+			}
+			this.code.pushDouble(number);
+			return double.class;
+		}
+		if (value.length() > 1 && value.startsWith("0")) {
+			throw new FallbackException(String.format("%s is an octal literal", value));
+		}
+		try {
+			this.code.pushInt(Integer.parseInt(value));
+		} catch (final NumberFormatException e) {
+			throw new FallbackException(String.format("%s is too large", value));
+		}
+		return int.class;
+	}
+
+	@Override
+	public Class<?> visit(final Script script) throws ParseException {
+		if (script != this.root) {
+			// the code of an included file belongs to the line of the include statement
+			this.statements(script.getStatements());
+			return void.class;
+		}
+		for (int i = 0; i < script.getStatements().size(); i++) {
+			this.code.line(script.getLines().get(i));
+			this.statements(List.of(script.getStatements().get(i)));
+		}
+		return void.class;
+	}
+
+	@Override
+	public Class<?> visit(final Include include) throws ParseException {
+		this.statementOnly("include()");
+		final CishCompiler included;
+		try {
+			included = IncludeCache.getInstance().expand(include.getPath(), this.current.getIncludeChain(), this.current.isDebug(), this.script);
+		} catch (final IOException e) {
+			return void.class;
+		}
+		final CishCompiler outer          = this.current;
+		final Set<String>  outerVariables = this.variables;
+		this.current = included;
+		this.variables = new HashSet<>();
+		try {
+			included.getScript().accept(this);
+		} finally {
+			this.current = outer;
+			this.variables = outerVariables;
+		}
+		return void.class;
+	}
+
+	@Override
+	public Class<?> visit(final Require require) {
+		this.statementOnly("require()");
+		final String pkg = ScriptMetaInfo.packageName(this.script.resolveRequire(require.getPath()));
+		if (!this.compiler.isCompiled(pkg) || this.lookup(pkg) != null) {
+			throw new FallbackException(String.format("the required script %s isn't compiled", require.getPath()));
+		}
+		if (this.depth() > 0) {
+			throw new FallbackException("a script is required inside an if block");
+		}
+		for (int slot = 0; slot < BytecodeGenerator.PARAMETERS.size(); slot++) {
+			this.code.load(BytecodeGenerator.PARAMETERS.get(slot), slot);
+		}
+		this.code.invokeStatic(pkg + "/Main", "main", BytecodeGenerator.MAIN_DESCRIPTOR, BytecodeGenerator.PARAMETERS.size());
+		return void.class;
+	}
+
+	@Override
+	public Class<?> visit(final Load load) {
+		throw new FallbackException("load() needs javac");
+	}
+
+	@Override
+	public Class<?> visit(final JavaHeredoc javaHeredoc) {
+		throw new FallbackException("the script contains java code");
+	}
+
+	@Override
+	public Class<?> visit(final BashHeredoc bashHeredoc) throws ParseException {
+		this.statementOnly("inline bash");
+		final String fileName = Utils.hash(bashHeredoc.getCode());
+		return this.invoke(this.compiler.resolveType("Bash"), true, "runScript", List.of(new StringLiteral(CishPath.ofBashScript(fileName).toString())));
+	}
+
+	@Override
+	public Class<?> visit(final InlineJava inlineJava) {
+		throw new FallbackException("the script contains java code");
+	}
+
+	@Override
+	public Class<?> visit(final IfElse ifElse) throws ParseException {
+		this.statementOnly("an if block");
+		if (!this.compiler.resolveType("ControlStructures").getName().equals(BytecodeGenerator.CONTROL_STRUCTURES)) {
+			throw new FallbackException("ControlStructures isn't the one of cish");
+		}
+		final Class<?> condition = this.expression(ifElse.getCondition());
+		if (condition != boolean.class && condition != Boolean.class) {
+			throw new FallbackException(String.format("the condition of an if block is a %s", condition.getSimpleName()));
+		}
+		this.convert(condition, boolean.class);
+		final Code.Label otherwise = new Code.Label();
+		this.code.jump(Code.IFEQ, otherwise);
+		this.block(ifElse.getThen());
+		if (ifElse.getOtherwise() == null) {
+			this.code.place(otherwise, this.frame());
+			return void.class;
+		}
+		final Code.Label end = new Code.Label();
+		this.code.jump(Code.GOTO, end);
+		this.code.place(otherwise, this.frame());
+		this.block(ifElse.getOtherwise());
+		this.code.place(end, this.frame());
+		return void.class;
+	}
+
+	@Override
+	public Class<?> visit(final Condition condition) throws ParseException {
+		final Class<?>       owner = this.compiler.resolveMember(this.compiler.resolveType("ControlStructures"), "Condition");
+		final Class<?>       type  = this.compiler.resolveMember(owner, "ConditionType");
+		final List<Node>     sides = List.of(condition.getLeft(), condition.getRight());
+		final List<Class<?>> types = new ArrayList<>(this.typesOf(sides));
+		types.add(type);
+		final Method method = MethodResolver.resolve("Condition.evaluate", BytecodeGenerator.methods(owner, "evaluate"), types);
+		if (!Modifier.isStatic(method.getModifiers()) || method.isVarArgs() && !Types.isConvertible(type, method.getParameterTypes()[2], true)) {
+			throw new FallbackException("Condition.evaluate can't be used");
+		}
+		this.checkExceptions(method);
+		for (int i = 0; i < sides.size(); i++) {
+			this.expression(sides.get(i));
+			this.convert(types.get(i), method.getParameterTypes()[i]);
+		}
+		try {
+			this.code.getStatic(type, type.getField(condition.getComparison().name()).getName(), type);
+		} catch (final NoSuchFieldException e) {
+			throw new FallbackException(String.format("the comparison %s doesn't exist", condition.getComparison()));
+		}
+		this.code.invoke(owner, method);
+		return method.getReturnType();
+	}
+
+	@Override
+	public Class<?> visit(final Predicate predicate) {
+		throw new FallbackException("predicates need javac");
+	}
+
+	@Override
+	public Class<?> visit(final ObjectCall objectCall) throws ParseException {
+		return this.chain(this.read(objectCall.getVariable()), objectCall.getCalls());
+	}
+
+	@Override
+	public Class<?> visit(final Call call) {
+		throw new FallbackException("a call without receiver");
+	}
+
+	@Override
+	public Class<?> visit(final Command command) throws ParseException {
+		final Class<?> result;
+		if (this.lookup(command.getNamespace()) != null) {
+			result = this.invoke(this.read(command.getNamespace()), false, command.getName(), command.getArguments());
+		} else {
+			result = this.invoke(this.compiler.resolveType(command.getNamespace()), true, command.getName(), command.getArguments());
+		}
+		return this.chain(result, command.getCalls());
+	}
+
+	@Override
+	public Class<?> visit(final NewObject newObject) throws ParseException {
+		final Class<?> type = this.compiler.resolveType(newObject.getType());
+		this.compiler.checkAccessible(type);
+		if (type.isInterface() || type.isEnum() || Modifier.isAbstract(type.getModifiers()) || type.getEnclosingClass() != null && !Modifier.isStatic(type.getModifiers())) {
+			throw new FallbackException(String.format("%s can't be instantiated", type.getSimpleName()));
+		}
+		final List<Class<?>> types       = this.typesOf(newObject.getArguments());
+		final Executable     constructor = MethodResolver.resolve("new " + type.getSimpleName(), Arrays.asList(type.getConstructors()), types);
+		this.checkExceptions(constructor);
+		this.code.newObject(type);
+		this.arguments(constructor, newObject.getArguments(), types);
+		this.code.invoke(type, constructor);
+		return this.chain(type, newObject.getCalls());
+	}
+
+	@Override
+	public Class<?> visit(final Assignment assignment) throws ParseException {
+		this.statementOnly("an assignment");
+		final String name = assignment.getVariable();
+		BytecodeGenerator.checkName(name);
+		if (this.variables.add(name)) {
+			if (this.lookup(name) != null) {
+				throw new FallbackException(String.format("the variable %s is declared twice", name));
+			}
+			final Class<?> type  = this.expression(assignment.getValue());
+			final Local    local = new Local(name, type, this.nextSlot, this.depth());
+			this.nextSlot += Types.size(type);
+			this.code.store(type, local.slot);
+			this.scopes.element().put(name, local);
+			this.locals.add(local);
+			return void.class;
+		}
+		final Local local = this.lookup(name);
+		if (local == null || local.depth < this.depth()) {
+			throw new FallbackException(String.format("the variable %s is assigned outside of its scope", name));
+		}
+		final Class<?> type = this.expression(assignment.getValue());
+		if (!Types.isConvertible(type, local.type, true)) {
+			throw new FallbackException(String.format("a %s is assigned to the %s variable %s", type.getSimpleName(), local.type.getSimpleName(), name));
+		}
+		this.convert(type, local.type);
+		this.code.store(local.type, local.slot);
+		local.assignments++;
+		return void.class;
+	}
+
+	@Override
+	public Class<?> visit(final Lambda lambda) {
+		throw new FallbackException("lambdas need javac");
+	}
+
+	@Override
+	public Class<?> visit(final RegexLiteral regexLiteral) throws ParseException {
+		return this.invoke(this.compiler.resolveType("Regex"), true, "parse", List.of(new StringLiteral(regexLiteral.getPattern())));
+	}
+
+	@Override
+	public Class<?> visit(final StringLiteral stringLiteral) {
+		this.code.pushString(BytecodeGenerator.javaString(stringLiteral.getValue()));
+		return String.class;
+	}
+
+	@Override
+	public Class<?> visit(final NumberLiteral numberLiteral) {
+		return this.number(numberLiteral.getValue());
+	}
+
+	@Override
+	public Class<?> visit(final Identifier identifier) {
+		return this.read(identifier.getName());
+	}
+
+	@Override
+	public Class<?> visit(final Concatenation concatenation) throws ParseException {
+		final List<Node> parts = concatenation.getParts();
+		if (parts.get(0) instanceof NumberLiteral && parts.get(1) instanceof NumberLiteral) {
+			throw new FallbackException("numbers are added");
+		}
+		this.code.newObject(StringBuilder.class);
+		this.code.invoke(StringBuilder.class, BytecodeGenerator.constructor(StringBuilder.class));
+		for (final Node part : parts) {
+			Class<?> type = this.expression(part);
+			if (part instanceof Identifier) {
+				if (type.isPrimitive()) {
+					throw new FallbackException(String.format("toString() is called on the %s variable %s", type.getSimpleName(), ((Identifier) part).getName()));
+				}
+				this.compiler.checkAccessible(type);
+				this.code.invoke(Object.class, BytecodeGenerator.method(Object.class, "toString"));
+				type = String.class;
+			}
+			this.code.invoke(StringBuilder.class, BytecodeGenerator.method(StringBuilder.class, "append", type));
+		}
+		this.code.invoke(StringBuilder.class, BytecodeGenerator.method(StringBuilder.class, "toString"));
+		return String.class;
+	}
+
+	/**
+	 * A local variable of the main method
+	 */
+	private static class Local {
+		private final String   name;
+		private final Class<?> type;
+		private final int      slot;
+		private final int      depth;
+		private       int      assignments = 1;
+		private       boolean  captured;
+
+		/**
+		 * Constructor
+		 *
+		 * @param name  name
+		 * @param type  static type of the first value
+		 * @param slot  slot
+		 * @param depth depth of nested if blocks, where the variable is declared
+		 */
+		Local(final String name, final Class<?> type, final int slot, final int depth) {
+			this.name = name;
+			this.type = type;
+			this.slot = slot;
+			this.depth = depth;
+		}
+	}
+}
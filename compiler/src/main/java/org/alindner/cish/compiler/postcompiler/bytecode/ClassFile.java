@@ -0,0 +1,215 @@
+package org.alindner.cish.compiler.postcompiler.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a class file without fields, interfaces or nested classes, which is all the main class of a cish script and a module-info need.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+class ClassFile {
+	static final         int          PUBLIC     = 0x0001;
+	static final         int          STATIC     = 0x0008;
+	private static final int          SUPER      = 0x0020;
+	private static final int          MODULE     = 0x8000;
+	private static final int          TRANSITIVE = 0x0020;
+	private static final int          MANDATED   = 0x8000;
+	private static final int          MAGIC      = 0xCAFEBABE;
+	private static final int          JAVA_11    = 55;
+	private final        ConstantPool pool       = new ConstantPool();
+	private final        List<byte[]> methods    = new ArrayList<>();
+	private final        List<byte[]> attributes = new ArrayList<>();
+	private final        int          access;
+	private final        int          thisClass;
+	private final        int          superClass;
+
+	/**
+	 * Constructor of a public class
+	 *
+	 * @param name       internal name of the class
+	 * @param superClass internal name of the super class
+	 */
+	ClassFile(final String name, final String superClass) {
+		this.access = ClassFile.PUBLIC | ClassFile.SUPER;
+		this.thisClass = this.pool.classRef(name);
+		this.superClass = this.pool.classRef(superClass);
+	}
+
+	/**
+	 * Constructor of a module-info
+	 */
+	private ClassFile() {
+		this.access = ClassFile.MODULE;
+		this.thisClass = this.pool.classRef("module-info");
+		this.superClass = 0;
+	}
+
+	/**
+	 * generates a module-info.class
+	 *
+	 * @param name     module name
+	 * @param requires modules, which are required transitively
+	 * @param exports  exported packages
+	 *
+	 * @return byte code
+	 */
+	static byte[] moduleInfo(final String name, final List<String> requires, final List<String> exports) {
+		final ClassFile file = new ClassFile();
+		file.attributes.add(ClassFile.attribute(file.pool, "Module", out -> {
+			out.writeShort(file.pool.module(name));
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(requires.size() + 1);
+			out.writeShort(file.pool.module("java.base"));
+			out.writeShort(ClassFile.MANDATED);
+			out.writeShort(0);
+			for (final String module : requires) {
+				out.writeShort(file.pool.module(module));
+				out.writeShort(ClassFile.TRANSITIVE);
+				out.writeShort(0);
+			}
+			out.writeShort(exports.size());
+			for (final String export : exports) {
+				out.writeShort(file.pool.pkg(export.replace('.', '/')));
+				out.writeShort(0);
+				out.writeShort(0);
+			}
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(0);
+		}));
+		return file.toByteArray();
+	}
+
+	/**
+	 * get the constant pool
+	 *
+	 * @return constant pool
+	 */
+	ConstantPool getPool() {
+		return this.pool;
+	}
+
+	/**
+	 * adds a method
+	 *
+	 * @param access     access flags
+	 * @param name       name
+	 * @param descriptor descriptor
+	 * @param code       byte code of the method
+	 * @param exceptions internal names of the declared exceptions
+	 */
+	void addMethod(final int access, final String name, final String descriptor, final Code code, final List<String> exceptions) {
+		this.methods.add(ClassFile.bytes(out -> {
+			out.writeShort(access);
+			out.writeShort(this.pool.utf8(name));
+			out.writeShort(this.pool.utf8(descriptor));
+			out.writeShort(exceptions.isEmpty() ? 1 : 2);
+			ClassFile.attribute(out, this.pool, "Code", code.toAttribute());
+			if (!exceptions.isEmpty()) {
+				ClassFile.attribute(out, this.pool, "Exceptions", ClassFile.bytes(attribute -> {
+					attribute.writeShort(exceptions.size());
+					for (final String exception : exceptions) {
+						attribute.writeShort(this.pool.classRef(exception));
+					}
+				}));
+			}
+		}));
+	}
+
+	/**
+	 * sets the name of the source file, which is shown in stack traces
+	 *
+	 * @param fileName name of the file
+	 */
+	void setSourceFile(final String fileName) {
+		this.attributes.add(ClassFile.attribute(this.pool, "SourceFile", out -> out.writeShort(this.pool.utf8(fileName))));
+	}
+
+	/**
+	 * writes an attribute
+	 *
+	 * @param out     output
+	 * @param pool    constant pool
+	 * @param name    name of the attribute
+	 * @param content content of the attribute
+	 *
+	 * @throws IOException write error
+	 */
+	static void attribute(final DataOutputStream out, final ConstantPool pool, final String name, final byte[] content) throws IOException {
+		out.writeShort(pool.utf8(name));
+		out.writeInt(content.length);
+		out.write(content);
+	}
+
+	/**
+	 * writes an attribute to a byte array
+	 *
+	 * @param pool    constant pool
+	 * @param name    name of the attribute
+	 * @param content writes the content of the attribute
+	 *
+	 * @return attribute
+	 */
+	private static byte[] attribute(final ConstantPool pool, final String name, final Writer content) {
+		final byte[] bytes = ClassFile.bytes(content);
+		return ClassFile.bytes(out -> ClassFile.attribute(out, pool, name, bytes));
+	}
+
+	/**
+	 * collects the output of a writer
+	 *
+	 * @param writer writer
+	 *
+	 * @return written bytes
+	 */
+	private static byte[] bytes(final Writer writer) {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try {
+			writer.write(new DataOutputStream(bos));
+		} catch (final IOException e) {
+			throw new FallbackException("the class file can't be written: " + e.getMessage());
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * get the class file
+	 *
+	 * @return byte code
+	 */
+	byte[] toByteArray() {
+		return ClassFile.bytes(out -> {
+			out.writeInt(ClassFile.MAGIC);
+			out.writeShort(0);
+			out.writeShort(ClassFile.JAVA_11);
+			this.pool.writeTo(out);
+			out.writeShort(this.access);
+			out.writeShort(this.thisClass);
+			out.writeShort(this.superClass);
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(this.methods.size());
+			for (final byte[] method : this.methods) {
+				out.write(method);
+			}
+			out.writeShort(this.attributes.size());
+			for (final byte[] attribute : this.attributes) {
+				out.write(attribute);
+			}
+		});
+	}
+
+	/**
+	 * writes a part of a class file
+	 */
+	@FunctionalInterface
+	private interface Writer {
+		void write(DataOutputStream out) throws IOException;
+	}
+}
@@ -0,0 +1,491 @@
+package org.alindner.cish.compiler.postcompiler.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * The byte code of a single method.
+ * <p>
+ * Besides the instructions it tracks the size of the operand stack and the local variables and records a stack map frame for every jump target, as required by the verifier.
+ * Only forward jumps with an empty operand stack are supported, which is all the structured code of a cish script needs.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+class Code {
+	static final         int                                IFEQ            = 153;
+	static final         int                                GOTO            = 167;
+	private static final int                                ICONST_0        = 3;
+	private static final int                                DCONST_0        = 14;
+	private static final int                                BIPUSH          = 16;
+	private static final int                                SIPUSH          = 17;
+	private static final int                                LDC             = 18;
+	private static final int                                LDC_W           = 19;
+	private static final int                                LDC2_W          = 20;
+	private static final int                                ILOAD           = 21;
+	private static final int                                ISTORE          = 54;
+	private static final int                                POP             = 87;
+	private static final int                                POP2            = 88;
+	private static final int                                DUP             = 89;
+	private static final int                                AASTORE         = 83;
+	private static final int                                RETURN          = 177;
+	private static final int                                GETSTATIC       = 178;
+	private static final int                                PUTSTATIC       = 179;
+	private static final int                                INVOKEVIRTUAL   = 182;
+	private static final int                                INVOKESPECIAL   = 183;
+	private static final int                                INVOKESTATIC    = 184;
+	private static final int                                INVOKEINTERFACE = 185;
+	private static final int                                NEW             = 187;
+	private static final int                                ANEWARRAY       = 189;
+	private static final int                                WIDE            = 196;
+	private static final int                                FULL_FRAME      = 255;
+	private static final int                                MAX_LENGTH      = 0xFFFF;
+	private final        ConstantPool                       pool;
+	private final        ByteArrayOutputStream              bytes           = new ByteArrayOutputStream();
+	private final        SortedMap<Integer, List<Class<?>>> frames          = new TreeMap<>();
+	private final        SortedMap<Integer, Integer>        lines           = new TreeMap<>();
+	private              int                                stack;
+	private              int                                maxStack;
+	private              int                                maxLocals;
+
+	/**
+	 * Constructor
+	 *
+	 * @param pool constant pool of the class
+	 */
+	Code(final ConstantPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * get the offset of the next instruction
+	 *
+	 * @return offset
+	 */
+	private int position() {
+		return this.bytes.size();
+	}
+
+	/**
+	 * writes an instruction and adjusts the size of the operand stack
+	 *
+	 * @param delta    change of the operand stack size
+	 * @param opcodes opcode and operands, each written as one byte
+	 */
+	private void emit(final int delta, final int... opcodes) {
+		for (final int opcode : opcodes) {
+			this.bytes.write(opcode);
+		}
+		this.stack += delta;
+		this.maxStack = Math.max(this.maxStack, this.stack);
+		if (this.position() > Code.MAX_LENGTH) {
+			throw new FallbackException("the script is too large for a single method");
+		}
+	}
+
+	/**
+	 * writes an instruction with a two byte operand
+	 *
+	 * @param delta   change of the operand stack size
+	 * @param opcode  opcode
+	 * @param operand operand
+	 */
+	private void emitShort(final int delta, final int opcode, final int operand) {
+		this.emit(delta, opcode, operand >> 8 & 0xFF, operand & 0xFF);
+	}
+
+	/**
+	 * pushes an int constant
+	 *
+	 * @param value value
+	 */
+	void pushInt(final int value) {
+		if (value >= -1 && value <= 5) {
+			this.emit(1, Code.ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			this.emit(1, Code.BIPUSH, value & 0xFF);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			this.emitShort(1, Code.SIPUSH, value);
+		} else {
+			this.ldc(this.pool.integer(value));
+		}
+	}
+
+	/**
+	 * pushes a double constant
+	 *
+	 * @param value value
+	 */
+	void pushDouble(final double value) {
+		if (Double.doubleToRawLongBits(value) == 0L || value == 1.0) {
+			this.emit(2, Code.DCONST_0 + (int) value);
+		} else {
+			this.emitShort(2, Code.LDC2_W, this.pool.doubleValue(value));
+		}
+	}
+
+	/**
+	 * pushes a string constant
+	 *
+	 * @param value value
+	 */
+	void pushString(final String value) {
+		this.ldc(this.pool.string(value));
+	}
+
+	/**
+	 * pushes a single slot constant of the constant pool
+	 *
+	 * @param index index of the constant
+	 */
+	private void ldc(final int index) {
+		if (index < 256) {
+			this.emit(1, Code.LDC, index);
+		} else {
+			this.emitShort(1, Code.LDC_W, index);
+		}
+	}
+
+	/**
+	 * get the offset of the typed load or store opcode of a type, e.g. <code>iload</code>, <code>lload</code>, <code>fload</code>, <code>dload</code> and <code>aload</code>
+	 *
+	 * @param type type
+	 *
+	 * @return offset
+	 */
+	private static int typeOffset(final Class<?> type) {
+		if (!type.isPrimitive()) {
+			return 4;
+		}
+		if (type == long.class) {
+			return 1;
+		}
+		if (type == float.class) {
+			return 2;
+		}
+		return type == double.class ? 3 : 0;
+	}
+
+	/**
+	 * writes a load or store instruction of a local variable
+	 *
+	 * @param opcode opcode
+	 * @param slot   slot of the variable
+	 * @param delta  change of the operand stack size
+	 */
+	private void local(final int opcode, final int slot, final int delta) {
+		if (slot < 256) {
+			this.emit(delta, opcode, slot);
+		} else {
+			this.emit(0, Code.WIDE);
+			this.emitShort(delta, opcode, slot);
+		}
+	}
+
+	/**
+	 * pushes a local variable
+	 *
+	 * @param type type of the variable
+	 * @param slot slot of the variable
+	 */
+	void load(final Class<?> type, final int slot) {
+		this.local(Code.ILOAD + Code.typeOffset(type), slot, Types.size(type));
+	}
+
+	/**
+	 * pops the top of the stack into a local variable
+	 *
+	 * @param type type of the variable
+	 * @param slot slot of the variable
+	 */
+	void store(final Class<?> type, final int slot) {
+		this.local(Code.ISTORE + Code.typeOffset(type), slot, -Types.size(type));
+		this.maxLocals = Math.max(this.maxLocals, slot + Types.size(type));
+	}
+
+	/**
+	 * discards the top of the stack
+	 *
+	 * @param type type of the value on the top of the stack
+	 */
+	void pop(final Class<?> type) {
+		if (Types.size(type) == 2) {
+			this.emit(-2, Code.POP2);
+		} else if (Types.size(type) == 1) {
+			this.emit(-1, Code.POP);
+		}
+	}
+
+	/**
+	 * writes an instruction without operands
+	 *
+	 * @param opcode opcode
+	 * @param delta  change of the operand stack size
+	 */
+	void instruction(final int opcode, final int delta) {
+		this.emit(delta, opcode);
+	}
+
+	/**
+	 * reads a static field
+	 *
+	 * @param owner class of the field
+	 * @param name  name of the field
+	 * @param type  type of the field
+	 */
+	void getStatic(final Class<?> owner, final String name, final Class<?> type) {
+		this.emitShort(Types.size(type), Code.GETSTATIC, this.pool.fieldRef(Types.internalName(owner), name, Types.descriptor(type)));
+	}
+
+	/**
+	 * writes a static field
+	 *
+	 * @param owner class of the field
+	 * @param name  name of the field
+	 * @param type  type of the field
+	 */
+	void putStatic(final Class<?> owner, final String name, final Class<?> type) {
+		this.emitShort(-Types.size(type), Code.PUTSTATIC, this.pool.fieldRef(Types.internalName(owner), name, Types.descriptor(type)));
+	}
+
+	/**
+	 * creates a new, uninitialized object and duplicates the reference, so it can be passed to the constructor and remains on the stack afterwards
+	 *
+	 * @param type class of the object
+	 */
+	void newObject(final Class<?> type) {
+		this.emitShort(1, Code.NEW, this.pool.classRef(Types.internalName(type)));
+		this.emit(1, Code.DUP);
+	}
+
+	/**
+	 * creates an array of references with the given length and leaves it on the stack
+	 *
+	 * @param componentType component type
+	 * @param length        length
+	 */
+	void newArray(final Class<?> componentType, final int length) {
+		this.pushInt(length);
+		this.emitShort(0, Code.ANEWARRAY, this.pool.classRef(Types.internalName(componentType)));
+	}
+
+	/**
+	 * prepares storing an element into the array on top of the stack. The element needs to be pushed afterwards and stored by {@link #storeElement()}.
+	 *
+	 * @param index index of the element
+	 */
+	void prepareElement(final int index) {
+		this.emit(1, Code.DUP);
+		this.pushInt(index);
+	}
+
+	/**
+	 * stores an element prepared by {@link #prepareElement(int)}
+	 */
+	void storeElement() {
+		this.emit(-3, Code.AASTORE);
+	}
+
+	/**
+	 * invokes a method or constructor. Its arguments and, unless it is static or a constructor, the receiver are expected on the stack.
+	 *
+	 * @param owner      class, which is used to look up the method
+	 * @param executable method or constructor
+	 */
+	void invoke(final Class<?> owner, final Executable executable) {
+		final boolean isStatic       = Modifier.isStatic(executable.getModifiers());
+		final boolean interfaceOwner = owner.isInterface();
+		int           arguments      = isStatic ? 0 : 1;
+		for (final Class<?> parameter : executable.getParameterTypes()) {
+			arguments += Types.size(parameter);
+		}
+		final int returned = executable instanceof Method ? Types.size(((Method) executable).getReturnType()) : 0;
+		final int index    = this.pool.methodRef(Types.internalName(owner), Types.name(executable), Types.descriptor(executable), interfaceOwner);
+		if (isStatic) {
+			this.emitShort(returned - arguments, Code.INVOKESTATIC, index);
+		} else if (executable instanceof Constructor) {
+			this.emitShort(-arguments, Code.INVOKESPECIAL, index);
+		} else if (interfaceOwner) {
+			this.emitShort(returned - arguments, Code.INVOKEINTERFACE, index);
+			this.emit(0, arguments, 0);
+		} else {
+			this.emitShort(returned - arguments, Code.INVOKEVIRTUAL, index);
+		}
+	}
+
+	/**
+	 * invokes a static void method of a class, which isn't loaded yet, like the main method of another script of the same module
+	 *
+	 * @param owner      internal name of the class
+	 * @param name       name of the method
+	 * @param descriptor descriptor of the method
+	 * @param arguments  number of stack slots used by the arguments
+	 */
+	void invokeStatic(final String owner, final String name, final String descriptor, final int arguments) {
+		this.emitShort(-arguments, Code.INVOKESTATIC, this.pool.methodRef(owner, name, descriptor, false));
+	}
+
+	/**
+	 * writes a forward jump to a label, which is placed later on
+	 *
+	 * @param opcode <code>ifeq</code> or <code>goto</code>
+	 * @param label  target
+	 */
+	void jump(final int opcode, final Label label) {
+		label.sources.add(this.position());
+		this.emitShort(opcode == Code.IFEQ ? -1 : 0, opcode, 0);
+	}
+
+	/**
+	 * places a label at the current position and records the stack map frame of it
+	 *
+	 * @param label  label
+	 * @param locals types of the local variables, which are in scope at the label. A type, which uses two slots, is only listed once and <code>null</code> marks an unused slot.
+	 */
+	void place(final Label label, final List<Class<?>> locals) {
+		if (this.stack != 0) {
+			throw new IllegalStateException("A jump target needs an empty operand stack.");
+		}
+		final byte[] code   = this.bytes.toByteArray();
+		final int    target = this.position();
+		for (final int source : label.sources) {
+			final int offset = target - source;
+			code[source + 1] = (byte) (offset >> 8);
+			code[source + 2] = (byte) offset;
+		}
+		this.bytes.reset();
+		this.bytes.write(code, 0, code.length);
+		this.frames.merge(target, locals, (existing, added) -> existing.size() <= added.size() ? existing : added);
+	}
+
+	/**
+	 * writes a <code>return</code> of a void method
+	 */
+	void returnVoid() {
+		this.emit(0, Code.RETURN);
+	}
+
+	/**
+	 * reserves local variable slots, e.g. for the parameters of a method
+	 *
+	 * @param slots number of slots
+	 */
+	void reserveLocals(final int slots) {
+		this.maxLocals = Math.max(this.maxLocals, slots);
+	}
+
+	/**
+	 * marks the start of the code of a line of the source file
+	 *
+	 * @param line line, starting with 1
+	 */
+	void line(final int line) {
+		this.lines.put(this.position(), line);
+	}
+
+	/**
+	 * writes the content of the <code>Code</code> attribute
+	 *
+	 * @return attribute content
+	 *
+	 * @throws IOException write error
+	 */
+	byte[] toAttribute() throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final DataOutputStream      out = new DataOutputStream(bos);
+		out.writeShort(this.maxStack);
+		out.writeShort(this.maxLocals);
+		out.writeInt(this.bytes.size());
+		this.bytes.writeTo(out);
+		out.writeShort(0);
+		out.writeShort((this.frames.isEmpty() ? 0 : 1) + (this.lines.isEmpty() ? 0 : 1));
+		if (!this.frames.isEmpty()) {
+			ClassFile.attribute(out, this.pool, "StackMapTable", this.stackMapTable());
+		}
+		if (!this.lines.isEmpty()) {
+			ClassFile.attribute(out, this.pool, "LineNumberTable", this.lineNumberTable());
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * writes the content of the <code>LineNumberTable</code> attribute
+	 *
+	 * @return attribute content
+	 *
+	 * @throws IOException write error
+	 */
+	private byte[] lineNumberTable() throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final DataOutputStream      out = new DataOutputStream(bos);
+		out.writeShort(this.lines.size());
+		for (final Map.Entry<Integer, Integer> line : this.lines.entrySet()) {
+			out.writeShort(line.getKey());
+			out.writeShort(line.getValue());
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * writes the content of the <code>StackMapTable</code> attribute. Every frame is written as full frame with an empty operand stack.
+	 *
+	 * @return attribute content
+	 *
+	 * @throws IOException write error
+	 */
+	private byte[] stackMapTable() throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final DataOutputStream      out = new DataOutputStream(bos);
+		out.writeShort(this.frames.size());
+		int previous = -1;
+		for (final Map.Entry<Integer, List<Class<?>>> frame : this.frames.entrySet()) {
+			out.writeByte(Code.FULL_FRAME);
+			out.writeShort(frame.getKey() - previous - 1);
+			out.writeShort(frame.getValue().size());
+			for (final Class<?> type : frame.getValue()) {
+				this.verificationType(out, type);
+			}
+			out.writeShort(0);
+			previous = frame.getKey();
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * writes the verification type of a local variable
+	 *
+	 * @param out  output
+	 * @param type type of the variable or null, if the slot is unused
+	 *
+	 * @throws IOException write error
+	 */
+	private void verificationType(final DataOutputStream out, final Class<?> type) throws IOException {
+		if (type == null) {
+			out.writeByte(0);
+		} else if (!type.isPrimitive()) {
+			out.writeByte(7);
+			out.writeShort(this.pool.classRef(Types.internalName(type)));
+		} else if (type == float.class) {
+			out.writeByte(2);
+		} else if (type == double.class) {
+			out.writeByte(3);
+		} else if (type == long.class) {
+			out.writeByte(4);
+		} else {
+			out.writeByte(1);
+		}
+	}
+
+	/**
+	 * A jump target
+	 */
+	static class Label {
+		private final List<Integer> sources = new ArrayList<>();
+	}
+}
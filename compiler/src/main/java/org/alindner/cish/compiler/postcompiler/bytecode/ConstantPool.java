@@ -0,0 +1,247 @@
+package org.alindner.cish.compiler.postcompiler.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The constant pool of a class file. An equal constant is only added once.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+class ConstantPool {
+	private static final int                   UTF8             = 1;
+	private static final int                   INTEGER          = 3;
+	private static final int                   DOUBLE           = 6;
+	private static final int                   CLASS            = 7;
+	private static final int                   STRING           = 8;
+	private static final int                   FIELD            = 9;
+	private static final int                   METHOD           = 10;
+	private static final int                   INTERFACE_METHOD = 11;
+	private static final int                   NAME_AND_TYPE    = 12;
+	private static final int                   MODULE           = 19;
+	private static final int                   PACKAGE          = 20;
+	private static final int                   MAX_SIZE         = 0xFFFF;
+	private final        ByteArrayOutputStream bytes            = new ByteArrayOutputStream();
+	private final        DataOutputStream      out              = new DataOutputStream(this.bytes);
+	private final        Map<String, Integer>  indices          = new HashMap<>();
+	private              int                   size             = 1;
+
+	/**
+	 * adds a constant, if it doesn't exist yet
+	 *
+	 * @param key   unique key of the constant
+	 * @param slots number of slots, the constant uses
+	 * @param entry writes the constant
+	 *
+	 * @return index of the constant
+	 */
+	private int add(final String key, final int slots, final Entry entry) {
+		final Integer index = this.indices.get(key);
+		if (index != null) {
+			return index;
+		}
+		if (this.size + slots > ConstantPool.MAX_SIZE) {
+			throw new FallbackException("the constant pool is too large");
+		}
+		try {
+			entry.write(this.out);
+		} catch (final IOException e) {
+			throw new FallbackException("a constant can't be written: " + e.getMessage());
+		}
+		final int added = this.size;
+		this.size += slots;
+		this.indices.put(key, added);
+		return added;
+	}
+
+	/**
+	 * adds an utf8 constant
+	 *
+	 * @param value value
+	 *
+	 * @return index
+	 */
+	int utf8(final String value) {
+		return this.add("u" + value, 1, out -> {
+			out.writeByte(ConstantPool.UTF8);
+			out.writeUTF(value);
+		});
+	}
+
+	/**
+	 * adds an integer constant
+	 *
+	 * @param value value
+	 *
+	 * @return index
+	 */
+	int integer(final int value) {
+		return this.add("i" + value, 1, out -> {
+			out.writeByte(ConstantPool.INTEGER);
+			out.writeInt(value);
+		});
+	}
+
+	/**
+	 * adds a double constant, which uses two slots
+	 *
+	 * @param value value
+	 *
+	 * @return index
+	 */
+	int doubleValue(final double value) {
+		return this.add("d" + Double.doubleToRawLongBits(value), 2, out -> {
+			out.writeByte(ConstantPool.DOUBLE);
+			out.writeDouble(value);
+		});
+	}
+
+	/**
+	 * adds a string constant
+	 *
+	 * @param value value
+	 *
+	 * @return index
+	 */
+	int string(final String value) {
+		final int utf8 = this.utf8(value);
+		return this.add("s" + value, 1, out -> {
+			out.writeByte(ConstantPool.STRING);
+			out.writeShort(utf8);
+		});
+	}
+
+	/**
+	 * adds a class constant
+	 *
+	 * @param internalName internal name of the class, like <code>java/lang/String</code>
+	 *
+	 * @return index
+	 */
+	int classRef(final String internalName) {
+		final int name = this.utf8(internalName);
+		return this.add("c" + internalName, 1, out -> {
+			out.writeByte(ConstantPool.CLASS);
+			out.writeShort(name);
+		});
+	}
+
+	/**
+	 * adds a name and type constant
+	 *
+	 * @param name       name of the member
+	 * @param descriptor descriptor of the member
+	 *
+	 * @return index
+	 */
+	private int nameAndType(final String name, final String descriptor) {
+		final int nameIndex       = this.utf8(name);
+		final int descriptorIndex = this.utf8(descriptor);
+		return this.add("n" + name + ":" + descriptor, 1, out -> {
+			out.writeByte(ConstantPool.NAME_AND_TYPE);
+			out.writeShort(nameIndex);
+			out.writeShort(descriptorIndex);
+		});
+	}
+
+	/**
+	 * adds a reference to a field or method
+	 *
+	 * @param tag        tag of the constant
+	 * @param owner      internal name of the class, which owns the member
+	 * @param name       name of the member
+	 * @param descriptor descriptor of the member
+	 *
+	 * @return index
+	 */
+	private int memberRef(final int tag, final String owner, final String name, final String descriptor) {
+		final int ownerIndex       = this.classRef(owner);
+		final int nameAndTypeIndex = this.nameAndType(name, descriptor);
+		return this.add(tag + owner + "." + name + ":" + descriptor, 1, out -> {
+			out.writeByte(tag);
+			out.writeShort(ownerIndex);
+			out.writeShort(nameAndTypeIndex);
+		});
+	}
+
+	/**
+	 * adds a field reference
+	 *
+	 * @param owner      internal name of the class
+	 * @param name       name of the field
+	 * @param descriptor descriptor of the field
+	 *
+	 * @return index
+	 */
+	int fieldRef(final String owner, final String name, final String descriptor) {
+		return this.memberRef(ConstantPool.FIELD, owner, name, descriptor);
+	}
+
+	/**
+	 * adds a method reference
+	 *
+	 * @param owner       internal name of the class
+	 * @param name        name of the method
+	 * @param descriptor  descriptor of the method
+	 * @param isInterface the owner is an interface
+	 *
+	 * @return index
+	 */
+	int methodRef(final String owner, final String name, final String descriptor, final boolean isInterface) {
+		return this.memberRef(isInterface ? ConstantPool.INTERFACE_METHOD : ConstantPool.METHOD, owner, name, descriptor);
+	}
+
+	/**
+	 * adds a module constant
+	 *
+	 * @param name module name
+	 *
+	 * @return index
+	 */
+	int module(final String name) {
+		final int nameIndex = this.utf8(name);
+		return this.add("m" + name, 1, out -> {
+			out.writeByte(ConstantPool.MODULE);
+			out.writeShort(nameIndex);
+		});
+	}
+
+	/**
+	 * adds a package constant
+	 *
+	 * @param name package name, like <code>java/lang</code>
+	 *
+	 * @return index
+	 */
+	int pkg(final String name) {
+		final int nameIndex = this.utf8(name);
+		return this.add("p" + name, 1, out -> {
+			out.writeByte(ConstantPool.PACKAGE);
+			out.writeShort(nameIndex);
+		});
+	}
+
+	/**
+	 * writes the constant pool including its size
+	 *
+	 * @param target output
+	 *
+	 * @throws IOException write error
+	 */
+	void writeTo(final DataOutputStream target) throws IOException {
+		target.writeShort(this.size);
+		this.bytes.writeTo(target);
+	}
+
+	/**
+	 * writes a single constant
+	 */
+	@FunctionalInterface
+	private interface Entry {
+		void write(DataOutputStream out) throws IOException;
+	}
+}
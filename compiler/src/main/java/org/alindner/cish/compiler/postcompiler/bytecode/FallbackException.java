@@ -0,0 +1,20 @@
+package org.alindner.cish.compiler.postcompiler.bytecode;
+
+/**
+ * Signals, that a script can't be compiled to byte code directly and javac needs to be used instead
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+class FallbackException extends RuntimeException {
+	private static final long serialVersionUID = -5300745180826946215L;
+
+	/**
+	 * Constructor
+	 *
+	 * @param reason why javac is needed
+	 */
+	FallbackException(final String reason) {
+		super(reason);
+	}
+}
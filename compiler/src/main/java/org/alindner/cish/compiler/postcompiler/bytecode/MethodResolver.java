@@ -0,0 +1,325 @@
+package org.alindner.cish.compiler.postcompiler.bytecode;
+
+import java.lang.reflect.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Selects the method or constructor, which javac would choose for an invocation, following the three phases of the java language specification: without boxing, with
+ * boxing and with variable arity.
+ * <p>
+ * Generic methods are only supported, if every type variable is the type of exactly one parameter and isn't used elsewhere, e.g.
+ * <code>&lt;T extends Comparable&lt;T&gt;&gt; boolean evaluate(T a, ...)</code>. The erasure of such a method is invoked exactly as javac would do it. Every other use of
+ * generics needs type inference and leads to a {@link FallbackException}, so javac decides.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+final class MethodResolver {
+	private MethodResolver() {
+	}
+
+	/**
+	 * selects the most specific applicable method or constructor
+	 *
+	 * @param description name of the invocation, used in the fallback message
+	 * @param candidates  all methods or constructors with the invoked name
+	 * @param arguments   static types of the arguments
+	 * @param <T>         method or constructor
+	 *
+	 * @return selected method or constructor
+	 */
+	static <T extends Executable> T resolve(final String description, final List<T> candidates, final List<Class<?>> arguments) {
+		final List<T> plausible = candidates.stream()
+		                                    .filter(candidate -> !(candidate instanceof Method && ((Method) candidate).isBridge()) && !candidate.isSynthetic())
+		                                    .filter(candidate -> candidate.getParameterCount() == arguments.size()
+				                                    || candidate.isVarArgs() && arguments.size() >= candidate.getParameterCount() - 1)
+		                                    .collect(Collectors.toList());
+		for (final T candidate : plausible) {
+			if (!MethodResolver.isSupported(candidate)) {
+				throw new FallbackException(String.format("%s needs type inference", description));
+			}
+		}
+		for (final boolean boxing : new boolean[]{false, true}) {
+			final List<T> applicable = plausible.stream()
+			                                    .filter(candidate -> candidate.getParameterCount() == arguments.size())
+			                                    .filter(candidate -> MethodResolver.isApplicable(candidate, arguments, boxing))
+			                                    .collect(Collectors.toList());
+			if (!applicable.isEmpty()) {
+				return MethodResolver.checked(description, MethodResolver.mostSpecific(description, applicable));
+			}
+		}
+		final List<T> variableArity = plausible.stream()
+		                                       .filter(Executable::isVarArgs)
+		                                       .filter(candidate -> MethodResolver.isApplicableByVariableArity(candidate, arguments))
+		                                       .collect(Collectors.toList());
+		if (variableArity.size() == 1) {
+			return MethodResolver.checked(description, variableArity.get(0));
+		}
+		throw new FallbackException(String.format(
+				"%s(%s) %s",
+				description,
+				arguments.stream().map(Class::getSimpleName).collect(Collectors.joining(", ")),
+				variableArity.isEmpty() ? "can't be resolved" : "is ambiguous"
+		));
+	}
+
+	/**
+	 * ensures, that the erasure of the selected method or constructor is enough to type check the invocation. A parameter like <code>List&lt;String&gt;</code> would need
+	 * the type arguments of the passed value, which are only known to javac.
+	 *
+	 * @param description name of the invocation, used in the fallback message
+	 * @param selected    selected method or constructor
+	 * @param <T>         method or constructor
+	 *
+	 * @return selected method or constructor
+	 */
+	private static <T extends Executable> T checked(final String description, final T selected) {
+		for (final Type parameter : selected.getGenericParameterTypes()) {
+			final Type type = parameter instanceof GenericArrayType ? ((GenericArrayType) parameter).getGenericComponentType() : parameter;
+			if (type instanceof ParameterizedType && !Arrays.stream(((ParameterizedType) type).getActualTypeArguments()).allMatch(MethodResolver::isUnboundedWildcard)) {
+				throw new FallbackException(String.format("%s needs the type arguments of its arguments", description));
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * checks, if a type argument is <code>?</code>
+	 *
+	 * @param type type argument
+	 *
+	 * @return is an unbounded wildcard
+	 */
+	private static boolean isUnboundedWildcard(final Type type) {
+		return type instanceof WildcardType
+				&& ((WildcardType) type).getLowerBounds().length == 0
+				&& Arrays.equals(((WildcardType) type).getUpperBounds(), new Type[]{Object.class});
+	}
+
+	/**
+	 * checks, if a method or constructor is applicable by fixed arity invocation
+	 *
+	 * @param candidate method or constructor
+	 * @param arguments static types of the arguments
+	 * @param boxing    boxing is allowed
+	 *
+	 * @return is applicable
+	 */
+	private static boolean isApplicable(final Executable candidate, final List<Class<?>> arguments, final boolean boxing) {
+		final Class<?>[] parameters = candidate.getParameterTypes();
+		for (int i = 0; i < parameters.length; i++) {
+			if (!MethodResolver.accepts(candidate, i, parameters[i], arguments.get(i), boxing)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * checks, if a method or constructor is applicable by variable arity invocation
+	 *
+	 * @param candidate method or constructor with variable arity
+	 * @param arguments static types of the arguments
+	 *
+	 * @return is applicable
+	 */
+	private static boolean isApplicableByVariableArity(final Executable candidate, final List<Class<?>> arguments) {
+		final Class<?>[] parameters = candidate.getParameterTypes();
+		final int        fixed      = parameters.length - 1;
+		if (parameters[fixed].getComponentType().isPrimitive()) {
+			return false;
+		}
+		for (int i = 0; i < arguments.size(); i++) {
+			final Class<?> parameter = i < fixed ? parameters[i] : parameters[fixed].getComponentType();
+			if (!MethodResolver.accepts(candidate, Math.min(i, fixed), parameter, arguments.get(i), true)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * checks, if an argument can be passed to a parameter. If the parameter type is a type variable of the method, its bounds are checked as well.
+	 *
+	 * @param candidate method or constructor
+	 * @param index     index of the parameter
+	 * @param parameter erased type of the parameter
+	 * @param argument  static type of the argument
+	 * @param boxing    boxing is allowed
+	 *
+	 * @return is accepted
+	 */
+	private static boolean accepts(final Executable candidate, final int index, final Class<?> parameter, final Class<?> argument, final boolean boxing) {
+		if (!Types.isConvertible(argument, parameter, boxing)) {
+			return false;
+		}
+		final Type generic = candidate.getGenericParameterTypes()[index];
+		if (!(generic instanceof TypeVariable)) {
+			return true;
+		}
+		final Class<?> value = argument.isPrimitive() ? Types.box(argument) : argument;
+		for (final Type bound : ((TypeVariable<?>) generic).getBounds()) {
+			if (bound instanceof ParameterizedType && !MethodResolver.isSelfBounded(value, (ParameterizedType) bound)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * checks a bound like <code>T extends Comparable&lt;T&gt;</code>, which needs the argument to implement <code>Comparable</code> of itself or of a super type
+	 *
+	 * @param value class of the argument
+	 * @param bound bound of the type variable
+	 *
+	 * @return the bound is satisfied
+	 */
+	private static boolean isSelfBounded(final Class<?> value, final ParameterizedType bound) {
+		final Class<?> raw = (Class<?>) bound.getRawType();
+		return MethodResolver.supertypes(value).stream().anyMatch(type -> type instanceof ParameterizedType
+				&& ((ParameterizedType) type).getRawType() == raw
+				&& ((ParameterizedType) type).getActualTypeArguments()[0] instanceof Class
+				&& ((Class<?>) ((ParameterizedType) type).getActualTypeArguments()[0]).isAssignableFrom(value));
+	}
+
+	/**
+	 * collects the generic super classes and interfaces of a class
+	 *
+	 * @param type class
+	 *
+	 * @return generic super types
+	 */
+	private static List<Type> supertypes(final Class<?> type) {
+		final List<Type> types = new ArrayList<>();
+		if (type == null) {
+			return types;
+		}
+		if (type.getGenericSuperclass() != null) {
+			types.add(type.getGenericSuperclass());
+		}
+		types.addAll(Arrays.asList(type.getGenericInterfaces()));
+		types.addAll(MethodResolver.supertypes(type.getSuperclass()));
+		for (final Class<?> implemented : type.getInterfaces()) {
+			types.addAll(MethodResolver.supertypes(implemented));
+		}
+		return types;
+	}
+
+	/**
+	 * selects the most specific of the applicable methods or constructors. If several have the same parameter types, e.g. because an interface method is inherited twice,
+	 * the one with the most specific return type is used.
+	 *
+	 * @param description name of the invocation, used in the fallback message
+	 * @param applicable  applicable methods or constructors
+	 * @param <T>         method or constructor
+	 *
+	 * @return most specific method or constructor
+	 */
+	private static <T extends Executable> T mostSpecific(final String description, final List<T> applicable) {
+		final List<T> maximal = applicable.stream()
+		                                  .filter(candidate -> applicable.stream().allMatch(other -> MethodResolver.isMoreSpecific(candidate, other)))
+		                                  .collect(Collectors.toList());
+		if (maximal.isEmpty()) {
+			throw new FallbackException(String.format("%s is ambiguous", description));
+		}
+		return maximal.stream()
+		              .filter(candidate -> maximal.stream().allMatch(other -> !(candidate instanceof Method)
+				              || ((Method) other).getReturnType().isAssignableFrom(((Method) candidate).getReturnType())))
+		              .findFirst()
+		              .orElseThrow(() -> new FallbackException(String.format("%s is ambiguous", description)));
+	}
+
+	/**
+	 * checks, if a method or constructor is at least as specific as another one
+	 *
+	 * @param candidate method or constructor
+	 * @param other     other method or constructor
+	 *
+	 * @return every parameter type of candidate is a subtype of the one of other
+	 */
+	private static boolean isMoreSpecific(final Executable candidate, final Executable other) {
+		final Class<?>[] parameters      = candidate.getParameterTypes();
+		final Class<?>[] otherParameters = other.getParameterTypes();
+		for (int i = 0; i < parameters.length; i++) {
+			if (!Types.isSubtype(parameters[i], otherParameters[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * checks, if invoking a method or constructor doesn't need type inference. Type variables of the declaring class are never supported, as the receiver is only known
+	 * by its erasure.
+	 *
+	 * @param candidate method or constructor
+	 *
+	 * @return is supported
+	 */
+	private static boolean isSupported(final Executable candidate) {
+		final Type[] parameters = candidate.getGenericParameterTypes();
+		if (parameters.length != candidate.getParameterCount()) {
+			return false;
+		}
+		if (candidate instanceof Method && MethodResolver.mentionsTypeVariable(((Method) candidate).getGenericReturnType())) {
+			return false;
+		}
+		final List<TypeVariable<?>> used = new ArrayList<>();
+		for (final Type parameter : parameters) {
+			if (parameter instanceof TypeVariable && Arrays.asList(candidate.getTypeParameters()).contains(parameter) && !used.contains(parameter)) {
+				used.add((TypeVariable<?>) parameter);
+				if (!Arrays.stream(((TypeVariable<?>) parameter).getBounds()).allMatch(bound -> MethodResolver.isSimpleBound((TypeVariable<?>) parameter, bound))) {
+					return false;
+				}
+			} else if (MethodResolver.mentionsTypeVariable(parameter)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * checks, if a bound of a type variable is a class or a parameterized type of the variable itself, like <code>Comparable&lt;T&gt;</code>
+	 *
+	 * @param variable type variable
+	 * @param bound    bound
+	 *
+	 * @return the bound can be checked without type inference
+	 */
+	private static boolean isSimpleBound(final TypeVariable<?> variable, final Type bound) {
+		if (bound instanceof Class) {
+			return true;
+		}
+		return bound instanceof ParameterizedType
+				&& ((ParameterizedType) bound).getActualTypeArguments().length == 1
+				&& variable.equals(((ParameterizedType) bound).getActualTypeArguments()[0]);
+	}
+
+	/**
+	 * checks, if a type contains a type variable
+	 *
+	 * @param type type
+	 *
+	 * @return contains a type variable
+	 */
+	private static boolean mentionsTypeVariable(final Type type) {
+		if (type instanceof TypeVariable) {
+			return true;
+		}
+		if (type instanceof ParameterizedType) {
+			return Arrays.stream(((ParameterizedType) type).getActualTypeArguments()).anyMatch(MethodResolver::mentionsTypeVariable)
+					|| ((ParameterizedType) type).getOwnerType() != null && MethodResolver.mentionsTypeVariable(((ParameterizedType) type).getOwnerType());
+		}
+		if (type instanceof GenericArrayType) {
+			return MethodResolver.mentionsTypeVariable(((GenericArrayType) type).getGenericComponentType());
+		}
+		if (type instanceof WildcardType) {
+			return Arrays.stream(((WildcardType) type).getUpperBounds()).anyMatch(MethodResolver::mentionsTypeVariable)
+					|| Arrays.stream(((WildcardType) type).getLowerBounds()).anyMatch(MethodResolver::mentionsTypeVariable);
+		}
+		return false;
+	}
+}
@@ -0,0 +1,187 @@
+package org.alindner.cish.compiler.postcompiler.bytecode;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Descriptors and conversions of java types as defined by the java language specification
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+final class Types {
+	private static final Map<Class<?>, Class<?>>       BOXES    = Map.of(
+			boolean.class, Boolean.class,
+			byte.class, Byte.class,
+			short.class, Short.class,
+			char.class, Character.class,
+			int.class, Integer.class,
+			long.class, Long.class,
+			float.class, Float.class,
+			double.class, Double.class
+	);
+	private static final Map<Class<?>, List<Class<?>>> WIDENING = Map.of(
+			byte.class, List.of(short.class, int.class, long.class, float.class, double.class),
+			short.class, List.of(int.class, long.class, float.class, double.class),
+			char.class, List.of(int.class, long.class, float.class, double.class),
+			int.class, List.of(long.class, float.class, double.class),
+			long.class, List.of(float.class, double.class),
+			float.class, List.of(double.class)
+	);
+
+	private Types() {
+	}
+
+	/**
+	 * get the internal name of a class, like <code>java/lang/String</code>
+	 *
+	 * @param type class
+	 *
+	 * @return internal name
+	 */
+	static String internalName(final Class<?> type) {
+		return type.isArray() ? Types.descriptor(type) : type.getName().replace('.', '/');
+	}
+
+	/**
+	 * get the field descriptor of a type
+	 *
+	 * @param type type
+	 *
+	 * @return descriptor, like <code>Ljava/lang/String;</code>
+	 */
+	static String descriptor(final Class<?> type) {
+		if (type.isArray()) {
+			return "[" + Types.descriptor(type.getComponentType());
+		}
+		if (!type.isPrimitive()) {
+			return "L" + Types.internalName(type) + ";";
+		}
+		if (type == boolean.class) {
+			return "Z";
+		}
+		if (type == long.class) {
+			return "J";
+		}
+		if (type == void.class) {
+			return "V";
+		}
+		return String.valueOf(Character.toUpperCase(type.getName().charAt(0)));
+	}
+
+	/**
+	 * get the descriptor of a method or constructor
+	 *
+	 * @param executable method or constructor
+	 *
+	 * @return descriptor, like <code>(Ljava/lang/String;)V</code>
+	 */
+	static String descriptor(final Executable executable) {
+		final StringBuilder builder = new StringBuilder("(");
+		for (final Class<?> parameter : executable.getParameterTypes()) {
+			builder.append(Types.descriptor(parameter));
+		}
+		builder.append(')');
+		return builder.append(executable instanceof Method ? Types.descriptor(((Method) executable).getReturnType()) : "V").toString();
+	}
+
+	/**
+	 * get the name of a method or <code>&lt;init&gt;</code> for a constructor
+	 *
+	 * @param executable method or constructor
+	 *
+	 * @return name used in the byte code
+	 */
+	static String name(final Executable executable) {
+		return executable instanceof Constructor ? "<init>" : executable.getName();
+	}
+
+	/**
+	 * get the number of stack slots or local variable slots, a value of the given type uses
+	 *
+	 * @param type type
+	 *
+	 * @return 0 for void, 2 for long and double and 1 otherwise
+	 */
+	static int size(final Class<?> type) {
+		if (type == void.class) {
+			return 0;
+		}
+		return type == long.class || type == double.class ? 2 : 1;
+	}
+
+	/**
+	 * get the wrapper class of a primitive type
+	 *
+	 * @param type primitive type
+	 *
+	 * @return wrapper class
+	 */
+	static Class<?> box(final Class<?> type) {
+		return Types.BOXES.get(type);
+	}
+
+	/**
+	 * get the primitive type of a wrapper class
+	 *
+	 * @param type wrapper class
+	 *
+	 * @return primitive type or null, if the type isn't a wrapper class
+	 */
+	static Class<?> unbox(final Class<?> type) {
+		return Types.BOXES.entrySet().stream().filter(entry -> entry.getValue() == type).map(Map.Entry::getKey).findFirst().orElse(null);
+	}
+
+	/**
+	 * checks, if a primitive type is converted to another one by a widening primitive conversion
+	 *
+	 * @param from primitive type
+	 * @param to   primitive type
+	 *
+	 * @return is a widening conversion
+	 */
+	static boolean isWidening(final Class<?> from, final Class<?> to) {
+		return Types.WIDENING.getOrDefault(from, List.of()).contains(to);
+	}
+
+	/**
+	 * checks, if a type is a subtype of another one. Primitive types are subtypes along the widening conversions.
+	 *
+	 * @param type  type
+	 * @param other possible super type
+	 *
+	 * @return is a subtype
+	 */
+	static boolean isSubtype(final Class<?> type, final Class<?> other) {
+		if (type.isPrimitive() || other.isPrimitive()) {
+			return type == other || Types.isWidening(type, other);
+		}
+		return other.isAssignableFrom(type);
+	}
+
+	/**
+	 * checks, if a value can be passed to a parameter
+	 *
+	 * @param from   type of the value
+	 * @param to     type of the parameter
+	 * @param boxing boxing and unboxing is allowed, i.e. loose instead of strict invocation context
+	 *
+	 * @return is convertible
+	 */
+	static boolean isConvertible(final Class<?> from, final Class<?> to, final boolean boxing) {
+		if (from.isPrimitive() == to.isPrimitive()) {
+			return Types.isSubtype(from, to);
+		}
+		if (!boxing) {
+			return false;
+		}
+		if (from.isPrimitive()) {
+			return to.isAssignableFrom(Types.box(from));
+		}
+		final Class<?> unboxed = Types.unbox(from);
+		return unboxed != null && Types.isSubtype(unboxed, to);
+	}
+}
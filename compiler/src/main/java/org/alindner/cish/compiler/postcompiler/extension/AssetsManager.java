@@ -5,27 +5,48 @@ import org.alindner.cish.compiler.utils.CishPath;
 import org.alindner.cish.compiler.utils.Utils;
 
 import java.io.*;
+import java.math.BigInteger;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Optional;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Manages all Assets, which are different kinds of files.
  * <p>
- * It is thread save and {@link Serializable}. Downloads the file, if it wasn't already downloaded.
+ * It is thread save and {@link Serializable}. Downloads the file, if it wasn't already downloaded. Concurrent requests of the same url share one download. The downloads run on
+ * a pool with a bounded number of threads, which can be set by the system property <code>cish.download.threads</code>. A download is written to a temporary file, which is
+ * verified by the <code>.sha256</code> or <code>.sha1</code> file next to the url, if the server provides one, and only then moved to its place.
  *
  * @author alindner
  * @since 0.7.0
  */
 @Log4j2
 public final class AssetsManager implements Serializable {
-	private static final long                        serialVersionUID = 7691572604648016027L;
-	private final        CopyOnWriteArrayList<Asset> database         = new CopyOnWriteArrayList<>();
-	private transient    Path                        file;
+	private static final long                                                serialVersionUID = -3049913850283742118L;
+	private static final int                                                 TIMEOUT          = 30_000;
+	private static final List<Map.Entry<String, String>>                     checksums        = List.of(Map.entry("sha256", "SHA-256"), Map.entry("sha1", "SHA-1"));
+	private static final ExecutorService                                     executor         = Executors.newFixedThreadPool(
+			Integer.getInteger("cish.download.threads", 4),
+			runnable -> {
+				final Thread thread = new Thread(runnable, "cish-download");
+				thread.setDaemon(true);
+				return thread;
+			}
+	);
+	private final        ConcurrentHashMap<String, Asset>                    database         = new ConcurrentHashMap<>();
+	private transient    ConcurrentHashMap<String, CompletableFuture<Asset>> inFlight         = new ConcurrentHashMap<>();
+	private transient    Path                                                file;
+	private transient    Path                                                dir;
 
 	/**
 	 * storage path of the {@link AssetsManager}
@@ -33,23 +54,110 @@ public final class AssetsManager implements Serializable {
 	 * @param file storage path
 	 */
 	AssetsManager(final Path file) {
+		this(file, CishPath.ofTmp("assets"));
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param file storage path
+	 * @param dir  directory of the downloaded files
+	 */
+	AssetsManager(final Path file, final Path dir) {
 		this.file = file;
+		this.dir = dir;
+	}
+
+	/**
+	 * get the checksum of a file, which is served next to the url, e.g. <code>lib.jar.sha256</code> for <code>lib.jar</code>
+	 *
+	 * @param url url of the file
+	 *
+	 * @return algorithm and expected checksum in lower case or nothing, if the server doesn't provide one
+	 */
+	private static Optional<Map.Entry<String, String>> expectedChecksum(final URL url) {
+		for (final Map.Entry<String, String> checksum : AssetsManager.checksums) {
+			try (final InputStream is = AssetsManager.open(new URL(url.toExternalForm() + "." + checksum.getKey()))) {
+				final String content = new String(is.readAllBytes(), StandardCharsets.UTF_8).trim();
+				if (!content.isEmpty()) {
+					return Optional.of(Map.entry(checksum.getValue(), content.split("\\s+")[0].toLowerCase(Locale.ROOT)));
+				}
+			} catch (final IOException e) {
+				AssetsManager.log.debug("There is no {} checksum of {}", checksum::getKey, () -> url);
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * opens a stream to an url with timeouts
+	 *
+	 * @param url url
+	 *
+	 * @return stream
+	 *
+	 * @throws IOException if the url can't be read
+	 */
+	private static InputStream open(final URL url) throws IOException {
+		final URLConnection connection = url.openConnection();
+		connection.setConnectTimeout(AssetsManager.TIMEOUT);
+		connection.setReadTimeout(AssetsManager.TIMEOUT);
+		return connection.getInputStream();
 	}
 
+	/**
+	 * creates the message digest of an algorithm
+	 *
+	 * @param algorithm algorithm
+	 *
+	 * @return message digest
+	 *
+	 * @throws IOException the algorithm isn't supported
+	 */
+	private static MessageDigest digest(final String algorithm) throws IOException {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IOException(String.format("%s isn't supported", algorithm), e);
+		}
+	}
+
+	/**
+	 * waits for a download
+	 *
+	 * @param future download
+	 *
+	 * @return representation of the downloaded file
+	 *
+	 * @throws IOException if download failed
+	 */
+	private static Asset await(final Future<Asset> future) throws IOException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a download");
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Couldn't download extension", e.getCause());
+		}
+	}
 
 	/**
 	 * Download a file form url.
 	 * <p>
-	 * Will be saved in the cish tmp directory.
+	 * Will be saved in its own directory inside the assets directory, so it keeps its file name. A local file isn't copied.
 	 *
 	 * @param url url
 	 *
 	 * @return representation of the downloaded file
 	 *
-	 * @throws IOException if download failed
+	 * @throws IOException if download failed or the checksum doesn't match
 	 * @see CishPath#ofTmp(String)
 	 */
-	private static Asset download(final URL url) throws IOException {
+	private Asset download(final URL url) throws IOException {
 		if (url.getProtocol().equals("file")) {
 			try {
 				final Path   path = Path.of(url.toURI());
@@ -59,23 +167,71 @@ public final class AssetsManager implements Serializable {
 				AssetsManager.log.error(String.format("Couldn't download extension %s", url), e);
 				throw new IOException(String.format("Couldn't download extension %s", url), e);
 			}
-
-		} else {
+		}
+		final Optional<Map.Entry<String, String>> expected = AssetsManager.expectedChecksum(url);
+		final String                              name     = url.getPath().substring(url.getPath().lastIndexOf('/') + 1);
+		final Path                                target   = this.dir.resolve(Utils.hash(url.toExternalForm())).resolve(name.isEmpty() ? "asset.jar" : name);
+		Files.createDirectories(target.getParent());
+		final Path tmp = Files.createTempFile(target.getParent(), name, ".part");
+		try {
+			final MessageDigest md = AssetsManager.digest(expected.map(Map.Entry::getKey).orElse("SHA-256"));
+			try (final InputStream is = new DigestInputStream(AssetsManager.open(url), md)) {
+				Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+			}
+			final String hash = String.format("%0" + md.getDigestLength() * 2 + "x", new BigInteger(1, md.digest()));
+			if (expected.isPresent() && !expected.get().getValue().equals(hash)) {
+				throw new IOException(String.format("The %s checksum of %s doesn't match. Expected %s, but was %s", expected.get().getKey(), url, expected.get().getValue(), hash));
+			}
 			try {
-				final ReadableByteChannel rbc    = Channels.newChannel(url.openStream());
-				final String              hash   = Utils.hash(Path.of(url.getFile()).getFileName().toString());
-				final Path                target = CishPath.ofTmp(hash + ".jar");
-				final FileOutputStream    fos;
-				fos = new FileOutputStream(target.toAbsolutePath().toString());
-				fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
-				return Asset.builder().url(url).hash(hash).path(target).build();
-			} catch (final IOException e) {
-				AssetsManager.log.error(String.format("Couldn't download extension %s", url), e);
-				throw new IOException(String.format("Couldn't download extension %s", url), e);
+				Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (final AtomicMoveNotSupportedException e) {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
 			}
+			return Asset.builder().url(url).hash(hash).path(target).build();
+		} catch (final IOException e) {
+			AssetsManager.log.error(String.format("Couldn't download extension %s", url), e);
+			throw new IOException(String.format("Couldn't download extension %s", url), e);
+		} finally {
+			Files.deleteIfExists(tmp);
 		}
 	}
 
+	/**
+	 * get the download of an url. A running download of the same url is reused.
+	 *
+	 * @param url url
+	 *
+	 * @return download
+	 */
+	private CompletableFuture<Asset> request(final URL url) {
+		final String key   = url.toExternalForm();
+		final Asset  known = this.database.get(key);
+		if (known != null && Files.exists(known.getPath())) {
+			return CompletableFuture.completedFuture(known);
+		}
+		final CompletableFuture<Asset> created = new CompletableFuture<>();
+		final CompletableFuture<Asset> running = this.inFlight.putIfAbsent(key, created);
+		if (running != null) {
+			return running;
+		}
+		final Runnable task = () -> {
+			try {
+				final Asset asset = this.download(url);
+				this.database.put(key, asset);
+				created.complete(asset);
+			} catch (final IOException | RuntimeException e) {
+				created.completeExceptionally(e);
+			} finally {
+				this.inFlight.remove(key, created);
+			}
+		};
+		if (url.getProtocol().equals("file")) {
+			task.run();
+		} else {
+			AssetsManager.executor.execute(task);
+		}
+		return created;
+	}
 
 	/**
 	 * get a asset by url.
@@ -89,14 +245,28 @@ public final class AssetsManager implements Serializable {
 	 * @throws IOException if download failed
 	 */
 	public Asset getByUrl(final URL url) throws IOException {
-		final Optional<Asset> o = this.database.stream().filter(asset -> asset.getUrl().equals(url)).findFirst();
-		if (o.isPresent()) {
-			return o.get();
-		} else {
-			final Asset asset = AssetsManager.download(url);
-			this.database.add(asset);
-			return asset;
-		}
+		return AssetsManager.await(this.request(url));
+	}
+
+	/**
+	 * get the assets of several urls. The missing ones are downloaded in parallel. A failed download is logged and skipped.
+	 *
+	 * @param urls urls
+	 *
+	 * @return representations of the downloaded files in the order of the urls
+	 */
+	public List<Asset> getAll(final Collection<URL> urls) {
+		final Map<String, CompletableFuture<Asset>> downloads = new LinkedHashMap<>();
+		urls.forEach(url -> downloads.computeIfAbsent(url.toExternalForm(), key -> this.request(url)));
+		final List<Asset> assets = new ArrayList<>();
+		downloads.forEach((url, download) -> {
+			try {
+				assets.add(AssetsManager.await(download));
+			} catch (final IOException e) {
+				AssetsManager.log.error(String.format("Couldn't download the extension %s", url), e);
+			}
+		});
+		return assets;
 	}
 
 	/**
@@ -109,6 +279,7 @@ public final class AssetsManager implements Serializable {
 	private void writeObject(final ObjectOutputStream oos) throws IOException {
 		oos.defaultWriteObject();
 		oos.writeUTF(this.file.toAbsolutePath().toString());
+		oos.writeUTF(this.dir.toAbsolutePath().toString());
 	}
 
 	/**
@@ -122,5 +293,7 @@ public final class AssetsManager implements Serializable {
 	private void readObject(final ObjectInputStream ois) throws IOException, ClassNotFoundException {
 		ois.defaultReadObject();
 		this.file = Path.of(ois.readUTF());
+		this.dir = Path.of(ois.readUTF());
+		this.inFlight = new ConcurrentHashMap<>();
 	}
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package org.alindner.cish.compiler.postcompiler.extension;
 
 import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.postcompiler.CacheCollector;
 import org.alindner.cish.compiler.postcompiler.extension.worker.DependencyWorker;
 import org.alindner.cish.compiler.utils.CishPath;
 import org.alindner.cish.compiler.utils.Utils;
@@ -8,8 +9,10 @@ import org.alindner.cish.compiler.utils.Utils;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Handles the processing of an cish extension
@@ -19,18 +22,23 @@ import java.util.stream.Collectors;
  */
 @Log4j2
 public final class ExtensionManager implements Serializable {
-	private final static List<Path>            directories               = List.of(
+	/**
+	 * a reference, which selects all loaded extensions. It is used for scripts, which contain java code, because the referenced classes of it aren't known.
+	 */
+	public static final  String                      ALL_EXTENSIONS   = "*";
+	private final static List<Path>                  directories      = List.of(
 			CishPath.ofExtensions("."),
 			Path.of("/usr/lib/cish/extensions/"),
 			Path.of("./.cish/extensions/")
 	);
-	private static final long                  serialVersionUID          = 6242256947347783642L;
-	private final        Deque<FileInfo>       queue                     = new ArrayDeque<>();
-	private final        Map<FileInfo, String> listOfGlobalLoadedClasses = new HashMap<>();
-	private final        Deque<FileInfo>       loaded                    = new ArrayDeque<>();
-	private final        AssetsManager         assetsManager;
-	private              boolean               notRun                    = false;
-	private              String                hash                      = "";
+	private static final long                        serialVersionUID = 4873521466090312757L;
+	private final        Deque<FileInfo>             queue            = new ArrayDeque<>();
+	private final        Set<FileInfo>               loaded           = new LinkedHashSet<>();
+	private final        Map<String, List<FileInfo>> providers        = new HashMap<>();
+	private final        Map<String, List<FileInfo>> dependents       = new HashMap<>();
+	private final        Map<String, JarScan>        scans            = new HashMap<>();
+	private final        AssetsManager               assetsManager;
+	private              String                      hash             = "";
 
 	/**
 	 * constructor
@@ -63,29 +71,65 @@ public final class ExtensionManager implements Serializable {
 	}
 
 	/**
-	 * calculate a comparable string based on all loaded extensions
+	 * search all extension jars in the given directories
 	 *
-	 * @return comparable string
+	 * @return absolute paths of the jars
 	 */
-	private static String calcHash() {
-		return ExtensionManager.directories.stream() //todo duplicated code
-		                                   .parallel()
+	private static List<Path> findJars() {
+		return ExtensionManager.directories.stream()
 		                                   .filter(Files::exists)
 		                                   .filter(Files::isDirectory)
 		                                   .flatMap(extensionsDir -> {
-			                                   try {
-				                                   return Files.walk(extensionsDir);
+			                                   try (final Stream<Path> files = Files.walk(extensionsDir)) {
+				                                   return files.filter(path -> path.getFileName().toString().endsWith(".jar"))
+				                                               .map(path -> path.normalize().toAbsolutePath())
+				                                               .collect(Collectors.toList())
+				                                               .stream();
 			                                   } catch (final IOException e) {
 				                                   ExtensionManager.log.error(String.format("Couldn't read in jars from directory %s", extensionsDir), e);
 			                                   }
-			                                   return null;
+			                                   return Stream.empty();
 		                                   })
-		                                   .filter(Objects::nonNull)
-		                                   .filter(path -> path.getFileName().toString().endsWith(".jar"))
-		                                   .map(path -> path.normalize().toAbsolutePath())
 		                                   .sorted()
-		                                   .map(path -> Utils.hash(path.toString()))
-		                                   .collect(Collectors.joining(":"));
+		                                   .distinct()
+		                                   .collect(Collectors.toList());
+	}
+
+	/**
+	 * get the size and the modification time of a jar
+	 *
+	 * @param jar jar
+	 *
+	 * @return comparable string
+	 */
+	private static String stat(final Path jar) {
+		try {
+			final BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+			return String.format("%d:%s", attributes.size(), attributes.lastModifiedTime());
+		} catch (final IOException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * calculate a comparable string based on all loaded extensions. It changes, if a jar is added, removed or changed in place.
+	 *
+	 * @return comparable string
+	 */
+	public static String calcHash() {
+		return ExtensionManager.findJars()
+		                       .stream()
+		                       .map(path -> Utils.hash(path + ":" + ExtensionManager.stat(path)))
+		                       .collect(Collectors.joining(":"));
+	}
+
+	/**
+	 * get a comparable string of the scanned extensions
+	 *
+	 * @return hash of the extension jars
+	 */
+	public String getHash() {
+		return this.hash;
 	}
 
 	public AssetsManager getAssetsManager() {
@@ -95,38 +139,128 @@ public final class ExtensionManager implements Serializable {
 	/**
 	 * read in all extensions form the given directories
 	 * <p>
-	 * This will be done in parallel. It will read in the jar files, parses it and collects all methods and classes, which are annotated with {@link
-	 * org.alindner.cish.extension.annotations.CishDependency}.
+	 * It will read in the jar files, parses it and collects all methods and classes, which are annotated with {@link
+	 * org.alindner.cish.extension.annotations.CishDependency}. The result is cached per jar: a jar is only scanned again, if its size or modification time changed and its
+	 * content differs from the scanned one. The extensions of removed or changed jars are unloaded. New and changed jars are scanned in parallel.
 	 */
 	public void scanForExtensions() {
-		if (!this.notRun && !this.hash.equals(ExtensionManager.calcHash())) {
-			ExtensionManager.directories.stream()
-			                            .parallel()
-			                            .filter(Files::exists)
-			                            .filter(Files::isDirectory)
-			                            .flatMap(extensionsDir -> {
-				                            try {
-					                            return Files.walk(extensionsDir);
-				                            } catch (final IOException e) {
-					                            ExtensionManager.log.error(String.format("Couldn't read in jars from directory %s", extensionsDir), e);
-				                            }
-				                            return null;
-			                            })
-			                            .filter(Objects::nonNull)
-			                            .filter(path -> path.getFileName().toString().endsWith(".jar"))
-			                            .map(DependencyWorker::new)
-			                            .map(DependencyWorker::call)
-			                            .forEach(e -> {
-				                            try {
-					                            this.queue.addAll(e.getDependenciesList());
-				                            } catch (final Exception interruptedException) {
-					                            ExtensionManager.log.error("Couldn't load extension {}. Thread was interrupted.", () -> interruptedException);
-					                            ExtensionManager.log.error(e);
-				                            }
-			                            });
-			this.notRun = true;
-			this.hash = ExtensionManager.calcHash();
+		final List<Path>  jars    = ExtensionManager.findJars();
+		final Set<String> current = jars.stream().map(Path::toString).collect(Collectors.toSet());
+		new ArrayList<>(this.scans.keySet()).stream()
+		                                    .filter(jar -> !current.contains(jar))
+		                                    .forEach(jar -> {
+			                                    ExtensionManager.log.debug("Extension jar {} was removed", jar);
+			                                    this.unload(this.scans.remove(jar));
+		                                    });
+
+		final Map<Path, JarScan> changed = new HashMap<>();
+		for (final Path jar : jars) {
+			final String  stat = ExtensionManager.stat(jar);
+			final JarScan scan = this.scans.get(jar.toString());
+			if (scan != null && scan.stat.equals(stat)) {
+				continue;
+			}
+			final String digest;
+			try {
+				digest = Utils.hash(jar);
+			} catch (final IOException e) {
+				ExtensionManager.log.error(String.format("Couldn't read in the extension jar %s", jar), e);
+				continue;
+			}
+			if (scan != null && scan.digest.equals(digest)) {
+				scan.stat = stat;
+				continue;
+			}
+			if (scan != null) {
+				ExtensionManager.log.debug("Extension jar {} was changed", jar);
+				this.unload(scan);
+			}
+			changed.put(jar, new JarScan(stat, digest));
 		}
+		changed.entrySet()
+		       .parallelStream()
+		       .map(entry -> Map.entry(entry.getValue(), new DependencyWorker(entry.getKey()).call()))
+		       .collect(Collectors.toList())
+		       .forEach(entry -> {
+			       entry.getKey().extensions.addAll(entry.getValue().getDependenciesList());
+			       this.queue.addAll(entry.getValue().getDependenciesList());
+		       });
+		changed.forEach((jar, scan) -> this.scans.put(jar.toString(), scan));
+
+		this.hash = Utils.hash(this.scans.entrySet()
+		                                 .stream()
+		                                 .sorted(Map.Entry.comparingByKey())
+		                                 .map(entry -> entry.getKey() + ":" + entry.getValue().digest)
+		                                 .collect(Collectors.joining("\n")));
+	}
+
+	/**
+	 * unloads the extensions of a jar, which was removed or changed
+	 *
+	 * @param scan scan result of the jar
+	 */
+	private void unload(final JarScan scan) {
+		this.queue.removeAll(scan.extensions);
+		this.loaded.removeAll(scan.extensions);
+		scan.extensions.forEach(fileInfo -> {
+			ExtensionManager.unindex(this.providers, fileInfo.getProvides(), fileInfo);
+			ExtensionManager.unindex(this.dependents, ExtensionManager.coordinates(fileInfo), fileInfo);
+		});
+	}
+
+	/**
+	 * get the coordinates of the dependencies of an extension. The url is compared as string, because {@link java.net.URL#equals(Object)} resolves the host.
+	 *
+	 * @param fileInfo extension
+	 *
+	 * @return coordinates
+	 */
+	private static List<String> coordinates(final FileInfo fileInfo) {
+		return fileInfo.getDependencies().stream().map(dependency -> dependency.getUrl().toExternalForm()).distinct().collect(Collectors.toList());
+	}
+
+	/**
+	 * adds an extension to an index
+	 *
+	 * @param index    index
+	 * @param keys     keys, which the extension is listed under
+	 * @param fileInfo extension
+	 */
+	private static void index(final Map<String, List<FileInfo>> index, final Collection<String> keys, final FileInfo fileInfo) {
+		keys.forEach(key -> index.computeIfAbsent(key, k -> new ArrayList<>(1)).add(fileInfo));
+	}
+
+	/**
+	 * removes an extension from an index
+	 *
+	 * @param index    index
+	 * @param keys     keys, which the extension is listed under
+	 * @param fileInfo extension
+	 */
+	private static void unindex(final Map<String, List<FileInfo>> index, final Collection<String> keys, final FileInfo fileInfo) {
+		keys.forEach(key -> index.computeIfPresent(key, (k, list) -> {
+			list.remove(fileInfo);
+			return list.isEmpty() ? null : list;
+		}));
+	}
+
+	/**
+	 * looks up the keys in an index
+	 *
+	 * @param index index
+	 * @param keys  keys of the extension, which is checked
+	 *
+	 * @return the colliding keys and the names of the extensions, which are listed under them
+	 */
+	private static Map<String, List<String>> collisions(final Map<String, List<FileInfo>> index, final Collection<String> keys) {
+		final Map<String, List<String>> collisions = new TreeMap<>();
+		keys.forEach(key -> {
+			final List<FileInfo> listed = index.get(key);
+			if (listed != null) {
+				collisions.put(key, listed.stream().map(fileInfo -> fileInfo.getName() + "@" + fileInfo.getVersion()).collect(Collectors.toList()));
+			}
+		});
+		return collisions;
 	}
 
 	/**
@@ -142,102 +276,121 @@ public final class ExtensionManager implements Serializable {
 	/**
 	 * process a extension, represented as a {@link FileInfo}.
 	 * <p>
-	 * It will check, if the dependencies collides with another dependency in the list. Also a check for duplicating classes is performt.
+	 * It will check, if the dependencies collides with another dependency in the list. Also a check for duplicating classes is performt. Both checks look up the classes and
+	 * the dependencies of the extension in indexes of the already loaded extensions, so they don't depend on the number of loaded extensions.
 	 *
 	 * @param fileInfo extension
 	 */
 	private void processFoundExtension(final FileInfo fileInfo) {
-		if (this.loaded.contains(fileInfo)) {
+		if (!this.loaded.add(fileInfo)) {
 			throw new Error(String.format("Extension %s was already loaded. Skipping.", fileInfo.getName()));
 		}
-		/*
-		 * read in all already loaded extensions and get their dependencies and check, if they collide with extension which should be loaded
-		 */
-		final boolean containsAlreadyLoadedExtension = this.loaded.stream()
-		                                                          .map(FileInfo::getDependencies)
-		                                                          .flatMap(Collection::stream)
-		                                                          .anyMatch(element -> fileInfo.getDependencies().contains(element));
+		final List<String> coordinates = ExtensionManager.coordinates(fileInfo);
 		//todo when loading a class from an url other than maven central, this might load the same lib, but currently this is not detected
-
-		if (containsAlreadyLoadedExtension) {
-			ExtensionManager.log.error("The provided extension {}@{} classes with an already loaded extension. ", fileInfo::getName, fileInfo::getVersion);
-			ExtensionManager.log.debug(
-					"The colliding extensions are: {}",
-					() -> this.loaded.stream()
-					                 .map(FileInfo::getDependencies)
-					                 .flatMap(Collection::stream)
-					                 .filter(element -> fileInfo.getDependencies().contains(element))
-					                 .collect(Collectors.toList())
+		final Map<String, List<String>> sharedDependencies = ExtensionManager.collisions(this.dependents, coordinates);
+		if (!sharedDependencies.isEmpty()) {
+			ExtensionManager.log.error(
+					"The provided extension {}@{} shares dependencies with already loaded extensions: {}",
+					fileInfo::getName,
+					fileInfo::getVersion,
+					() -> sharedDependencies
+			);
+		}
+		final Map<String, List<String>> duplicatedClasses = ExtensionManager.collisions(this.providers, fileInfo.getProvides());
+		if (!duplicatedClasses.isEmpty()) {
+			ExtensionManager.log.error(
+					"The provided extension {}@{} clashes with already loaded extensions: {}",
+					fileInfo::getName,
+					fileInfo::getVersion,
+					() -> duplicatedClasses
 			);
 		}
+		ExtensionManager.index(this.providers, fileInfo.getProvides(), fileInfo);
+		ExtensionManager.index(this.dependents, coordinates, fileInfo);
 
+		ExtensionManager.log.debug(String.format("Extension was successful loaded: %s@%s", fileInfo.getName(), fileInfo.getVersion()));
+	}
 
-		final boolean ListOfAllClasses = this.listOfGlobalLoadedClasses.values()
-		                                                               .stream()
-		                                                               .anyMatch(element -> fileInfo.getProvides().contains(element));
-		if (ListOfAllClasses) {
-			ExtensionManager.log.error("The provided extension {}@{} clashes with an already loaded extension. ", fileInfo::getName, fileInfo::getVersion);
-			ExtensionManager.log.debug(
-					"The colliding classes are: {}",
-					() -> this.listOfGlobalLoadedClasses.values().stream().filter(element -> fileInfo.getProvides().contains(element)).collect(Collectors.toList())
-			);
+	/**
+	 * get the loaded extensions, which are referenced by a script. An extension is referenced by the simple or the full name of a class it provides, e.g. <code>IO</code>
+	 * for <code>IO::ls()</code>.
+	 *
+	 * @param references referenced names of the script tree, see {@link org.alindner.cish.compiler.ScriptMetaInfo#getAllReferences()}
+	 *
+	 * @return referenced extensions
+	 */
+	private List<FileInfo> getReferenced(final Set<String> references) {
+		if (references.contains(ExtensionManager.ALL_EXTENSIONS)) {
+			return new ArrayList<>(this.loaded);
 		}
-		this.loaded.offerLast(fileInfo);
-		this.listOfGlobalLoadedClasses.putAll(
-				fileInfo.getProvides()
-				        .stream()
-				        .map(className -> Map.entry(
-						        fileInfo,
-						        className
-				        ))
-				        .collect(
-						        Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)
-				        )
+		final List<FileInfo> referenced = this.loaded.stream().filter(fileInfo -> ExtensionManager.isReferenced(fileInfo, references)).collect(Collectors.toList());
+		ExtensionManager.log.debug(
+				"Using {} of {} loaded extensions: {}",
+				referenced::size,
+				this.loaded::size,
+				() -> referenced.stream().map(FileInfo::getName).collect(Collectors.toList())
 		);
+		return referenced;
+	}
 
-		ExtensionManager.log.debug(String.format("Extension was successful loaded: %s@%s", fileInfo.getName(), fileInfo.getVersion()));
+	/**
+	 * checks, if a script references a class of an extension
+	 *
+	 * @param fileInfo   extension
+	 * @param references referenced names of the script tree
+	 *
+	 * @return is referenced
+	 */
+	private static boolean isReferenced(final FileInfo fileInfo, final Set<String> references) {
+		return fileInfo.getProvides()
+		               .stream()
+		               .anyMatch(className -> references.contains(className) || references.contains(className.substring(className.lastIndexOf('.') + 1)));
 	}
 
 	/**
 	 * generates a list of all packages, which needs to be imported to run the cish script
 	 *
+	 * @param references referenced names of the script tree
+	 *
 	 * @return list of packages
 	 */
-	public List<String> getImports() {
-		return this.loaded.stream()
-		                  .map(FileInfo::getProvides)
-		                  .flatMap(Collection::stream)
-		                  .distinct()
-		                  .collect(Collectors.toList());
+	public List<String> getImports(final Set<String> references) {
+		return this.getReferenced(references)
+		           .stream()
+		           .map(FileInfo::getProvides)
+		           .flatMap(Collection::stream)
+		           .distinct()
+		           .collect(Collectors.toList());
 	}
 
 	/**
-	 * generate the module list (JPMS modules) based of all loaded extensions and their dependencies.
+	 * generate the module list (JPMS modules) based of the referenced extensions and their dependencies.
 	 * <p>
-	 * If it is necessary, a dependency will be downloaded.
+	 * If it is necessary, a dependency will be downloaded. The missing dependencies are downloaded in parallel. The dependencies of extensions, which aren't referenced, are
+	 * never downloaded.
+	 *
+	 * @param loadDependencies add the dependencies of the extensions
+	 * @param references       referenced names of the script tree
 	 *
 	 * @return List of Path to the modules
 	 */
-	public List<Path> getModulesList(final boolean loadDependencies) {
-		final List<Path> depList;
+	public List<Path> getModulesList(final boolean loadDependencies, final Set<String> references) {
+		final List<FileInfo> referenced = this.getReferenced(references);
+		final List<Path>     depList;
 		if (loadDependencies) {
-			depList = this.loaded.stream()
-			                     .flatMap(fileInfo -> fileInfo.getDependencies().stream())
-			                     .map(file -> {
-				                     try {
-					                     return this.assetsManager.getByUrl(file.getUrl()).getPath().getParent();
-				                     } catch (final IOException e) {
-					                     ExtensionManager.log.error(String.format("Couldn't downloaded the extension: %s", file), e);
-				                     }
-				                     return null;
-			                     })
-			                     .distinct()
-			                     .filter(Objects::nonNull)
-			                     .collect(Collectors.toList());
+			depList = this.assetsManager.getAll(referenced.stream()
+			                                              .flatMap(fileInfo -> fileInfo.getDependencies().stream())
+			                                              .map(DependenciesMetaInfo::getUrl)
+			                                              .collect(Collectors.toList()))
+			                            .stream()
+			                            .map(asset -> asset.getPath().getParent())
+			                            .distinct()
+			                            .collect(Collectors.toList());
+			depList.forEach(CacheCollector::markUsed);
 		} else {
 			depList = new ArrayList<>();
 		}
-		this.loaded.forEach(fileInfo -> depList.add(fileInfo.getFile()));
+		referenced.forEach(fileInfo -> depList.add(fileInfo.getFile()));
 		return depList.stream().distinct().collect(Collectors.toList());
 	}
 
@@ -253,5 +406,25 @@ public final class ExtensionManager implements Serializable {
 			ExtensionManager.log.error(e);
 		}
 	}
-}
 
+	/**
+	 * The cached scan result of an extension jar
+	 */
+	private static final class JarScan implements Serializable {
+		private static final long           serialVersionUID = -4301957287154163850L;
+		private final        String         digest;
+		private final        List<FileInfo> extensions       = new ArrayList<>();
+		private              String         stat;
+
+		/**
+		 * Constructor
+		 *
+		 * @param stat   size and modification time of the jar
+		 * @param digest hash of the content of the jar
+		 */
+		private JarScan(final String stat, final String digest) {
+			this.stat = stat;
+			this.digest = digest;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,267 @@
+package org.alindner.cish.compiler.postcompiler.extension;
+
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.postcompiler.CacheCollector;
+import org.alindner.cish.compiler.utils.CishPath;
+import org.alindner.cish.compiler.utils.Utils;
+
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A cache of files, which are downloaded by url, e.g. the java files and jars of the <code>load</code> statement.
+ * <p>
+ * Every url has its own directory, which contains the downloaded file with its original file name and the <code>ETag</code> and <code>Last-Modified</code> headers of the
+ * response. A cached file is revalidated by a conditional request, so an unchanged file isn't downloaded again. If the server isn't reachable, the cached file is used. With
+ * the system property <code>cish.offline=true</code>, the cached files are used without asking the server.
+ * <p>
+ * All downloads share one http client, which uses http/2, if the server supports it.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class HttpCache {
+	public static final  String     OFFLINE_PROPERTY = "cish.offline";
+	private static final String     META             = "meta.properties";
+	private static final String     ETAG             = "etag";
+	private static final String     LAST_MODIFIED    = "last-modified";
+	private static final String     FILE             = "file";
+	private static final Duration   TIMEOUT          = Duration.ofSeconds(30);
+	private static final HttpClient client           = HttpClient.newBuilder()
+	                                                             .version(HttpClient.Version.HTTP_2)
+	                                                             .followRedirects(HttpClient.Redirect.NORMAL)
+	                                                             .connectTimeout(HttpCache.TIMEOUT)
+	                                                             .build();
+	private final        Path       dir;
+	private final        boolean    offline;
+
+	/**
+	 * Constructor, which uses the cache directory of the cish home directory
+	 */
+	public HttpCache() {
+		this(CishPath.ofCacheDir("http"), Boolean.getBoolean(HttpCache.OFFLINE_PROPERTY));
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param dir     directory of the cache
+	 * @param offline use the cached files without asking the server
+	 */
+	public HttpCache(final Path dir, final boolean offline) {
+		this.dir = dir;
+		this.offline = offline;
+	}
+
+	/**
+	 * get the file name of an url
+	 *
+	 * @param uri url
+	 *
+	 * @return last segment of the path or <code>file</code>, if the path is empty
+	 */
+	private static String fileName(final URI uri) {
+		final String path = Objects.requireNonNullElse(uri.getPath(), "");
+		final String name = path.substring(path.lastIndexOf('/') + 1);
+		return name.isEmpty() ? HttpCache.FILE : name;
+	}
+
+	/**
+	 * moves a file atomically, if the file system supports it
+	 *
+	 * @param source source
+	 * @param target target
+	 *
+	 * @throws IOException move failed
+	 */
+	private static void move(final Path source, final Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * get the directory of an url
+	 *
+	 * @param uri url
+	 *
+	 * @return directory
+	 */
+	private Path entry(final URI uri) {
+		return this.dir.resolve(Utils.hash(uri.toASCIIString()));
+	}
+
+	/**
+	 * get the cached file of an url
+	 *
+	 * @param uri url
+	 *
+	 * @return file, if it was downloaded before
+	 */
+	public Optional<Path> cached(final URI uri) {
+		final Path file = this.entry(uri).resolve(HttpCache.fileName(uri));
+		return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+	}
+
+	/**
+	 * reads the headers of the last response
+	 *
+	 * @param uri url
+	 *
+	 * @return headers, which are needed to revalidate the file
+	 */
+	private Properties meta(final URI uri) {
+		final Properties properties = new Properties();
+		final Path       file       = this.entry(uri).resolve(HttpCache.META);
+		if (Files.isRegularFile(file)) {
+			try (final InputStream is = Files.newInputStream(file)) {
+				properties.load(is);
+			} catch (final IOException e) {
+				HttpCache.log.debug("Couldn't read the cache headers of {}", uri, e);
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * downloads an url or revalidates the cached file
+	 *
+	 * @param uri url
+	 *
+	 * @return cached file
+	 *
+	 * @throws IOException the file isn't cached and can't be downloaded
+	 */
+	public Path fetch(final URI uri) throws IOException {
+		try {
+			return this.fetchAsync(uri).join();
+		} catch (final CompletionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(String.format("Couldn't download %s", uri), e.getCause());
+		}
+	}
+
+	/**
+	 * downloads several urls in parallel. An url, which can't be downloaded, is logged and skipped.
+	 *
+	 * @param uris urls
+	 *
+	 * @return cached files by url
+	 */
+	public Map<URI, Path> fetchAll(final Collection<URI> uris) {
+		final Map<URI, CompletableFuture<Path>> downloads = new LinkedHashMap<>();
+		uris.forEach(uri -> downloads.computeIfAbsent(uri, this::fetchAsync));
+		final Map<URI, Path> files = new LinkedHashMap<>();
+		downloads.forEach((uri, download) -> {
+			try {
+				files.put(uri, download.join());
+			} catch (final CompletionException e) {
+				HttpCache.log.error(String.format("Couldn't download %s", uri), e.getCause());
+			}
+		});
+		return files;
+	}
+
+	/**
+	 * downloads an url or revalidates the cached file without blocking
+	 *
+	 * @param uri url
+	 *
+	 * @return cached file
+	 */
+	private CompletableFuture<Path> fetchAsync(final URI uri) {
+		final Optional<Path> cached = this.cached(uri);
+		if (this.offline) {
+			return cached.map(CompletableFuture::completedFuture)
+			             .orElseGet(() -> CompletableFuture.failedFuture(new FileNotFoundException(String.format("%s isn't cached and cish is offline", uri))));
+		}
+		final HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(HttpCache.TIMEOUT).header("Accept-Encoding", "gzip").GET();
+		if (cached.isPresent()) {
+			final Properties meta = this.meta(uri);
+			Optional.ofNullable(meta.getProperty(HttpCache.ETAG)).ifPresent(etag -> request.header("If-None-Match", etag));
+			Optional.ofNullable(meta.getProperty(HttpCache.LAST_MODIFIED)).ifPresent(lastModified -> request.header("If-Modified-Since", lastModified));
+		}
+		return HttpCache.client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream()).thenApply(response -> {
+			try {
+				return this.store(uri, response, cached);
+			} catch (final IOException e) {
+				throw new CompletionException(e);
+			}
+		}).exceptionally(e -> {
+			final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+			if (cached.isEmpty()) {
+				throw new CompletionException(cause);
+			}
+			HttpCache.log.warn("Couldn't revalidate {}, using the cached file: {}", uri, cause.getMessage());
+			return cached.get();
+		});
+	}
+
+	/**
+	 * writes a response to the cache. The file is written to a temporary file first, so a concurrent cish never sees a half written file.
+	 *
+	 * @param uri      url
+	 * @param response response
+	 * @param cached   cached file, which is kept, if the server says it is unchanged
+	 *
+	 * @return cached file
+	 *
+	 * @throws IOException write error or unexpected status code
+	 */
+	private Path store(final URI uri, final HttpResponse<InputStream> response, final Optional<Path> cached) throws IOException {
+		try (final InputStream body = response.body()) {
+			if (response.statusCode() == 304 && cached.isPresent()) {
+				HttpCache.log.debug("{} is unchanged", uri);
+				CacheCollector.markUsed(cached.get());
+				return cached.get();
+			}
+			if (response.statusCode() != 200) {
+				throw new IOException(String.format("Couldn't download %s: HTTP %d", uri, response.statusCode()));
+			}
+			final Path entry = this.entry(uri);
+			final Path file  = entry.resolve(HttpCache.fileName(uri));
+			Files.createDirectories(entry);
+			final Path tmp = Files.createTempFile(entry, HttpCache.FILE, ".part");
+			try {
+				final boolean gzip = response.headers().firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase).orElse(false);
+				try (final InputStream is = gzip ? new GZIPInputStream(body) : body) {
+					Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+				}
+				HttpCache.move(tmp, file);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+			final Properties meta = new Properties();
+			response.headers().firstValue("ETag").ifPresent(etag -> meta.setProperty(HttpCache.ETAG, etag));
+			response.headers().firstValue("Last-Modified").ifPresent(lastModified -> meta.setProperty(HttpCache.LAST_MODIFIED, lastModified));
+			final Path metaTmp = Files.createTempFile(entry, HttpCache.META, ".part");
+			try {
+				try (final OutputStream os = Files.newOutputStream(metaTmp)) {
+					meta.store(os, uri.toASCIIString());
+				}
+				HttpCache.move(metaTmp, entry.resolve(HttpCache.META));
+			} finally {
+				Files.deleteIfExists(metaTmp);
+			}
+			HttpCache.log.debug("Downloaded {}", uri);
+			return file;
+		}
+	}
+}
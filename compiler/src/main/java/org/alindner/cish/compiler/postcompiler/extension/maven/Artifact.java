@@ -0,0 +1,107 @@
+package org.alindner.cish.compiler.postcompiler.extension.maven;
+
+import lombok.Data;
+
+/**
+ * The coordinates of a maven artifact
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Artifact {
+	private final String groupId;
+	private final String artifactId;
+	private final String version;
+	private final String type;
+	private final String classifier;
+
+	/**
+	 * parses coordinates in the format <code>groupId:artifactId:version[:type[:classifier]]</code>
+	 *
+	 * @param coordinates coordinates
+	 *
+	 * @return artifact
+	 */
+	public static Artifact parse(final String coordinates) {
+		final String[] parts = coordinates.split(":", -1);
+		if (parts.length < 3 || parts.length > 5) {
+			throw new IllegalArgumentException(String.format("Malformed maven coordinates: %s", coordinates));
+		}
+		return new Artifact(
+				parts[0],
+				parts[1],
+				parts[2],
+				parts.length > 3 ? parts[3] : "jar",
+				parts.length > 4 && !parts[4].isEmpty() ? parts[4] : null
+		);
+	}
+
+	/**
+	 * get the key, which identifies the artifact regardless of its version. It is used for the version mediation.
+	 *
+	 * @return key
+	 */
+	public String getKey() {
+		return this.classifier == null ? String.format("%s:%s:%s", this.groupId, this.artifactId, this.type) : String.format(
+				"%s:%s:%s:%s",
+				this.groupId,
+				this.artifactId,
+				this.type,
+				this.classifier
+		);
+	}
+
+	/**
+	 * get the artifact of the pom, which describes this artifact
+	 *
+	 * @return pom artifact
+	 */
+	public Artifact getPom() {
+		return new Artifact(this.groupId, this.artifactId, this.version, "pom", null);
+	}
+
+	/**
+	 * checks, if the artifact is a file, which belongs on the module path
+	 *
+	 * @return is a jar
+	 */
+	public boolean isJar() {
+		return !this.type.equals("pom");
+	}
+
+	/**
+	 * get the file name inside a repository
+	 *
+	 * @return file name
+	 */
+	public String getFileName() {
+		final String extension = this.isJar() ? "jar" : "pom";
+		return this.classifier == null ? String.format("%s-%s.%s", this.artifactId, this.version, extension) : String.format(
+				"%s-%s-%s.%s",
+				this.artifactId,
+				this.version,
+				this.classifier,
+				extension
+		);
+	}
+
+	/**
+	 * get the path inside a repository with the default layout
+	 *
+	 * @return relative path
+	 */
+	public String getPath() {
+		return String.format("%s/%s/%s/%s", this.groupId.replace('.', '/'), this.artifactId, this.version, this.getFileName());
+	}
+
+	/**
+	 * get the coordinates in the format, which is read by {@link #parse(String)}
+	 *
+	 * @return coordinates
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s:%s:%s:%s:%s", this.groupId, this.artifactId, this.version, this.type, this.classifier == null ? "" : this.classifier);
+	}
+}
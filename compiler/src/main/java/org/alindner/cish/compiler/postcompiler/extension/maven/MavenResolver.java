@@ -0,0 +1,393 @@
+package org.alindner.cish.compiler.postcompiler.extension.maven;
+
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.postcompiler.CacheCollector;
+import org.alindner.cish.compiler.utils.CishPath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves a maven artifact and its transitive runtime dependencies without maven.
+ * <p>
+ * The poms are read from the given repositories, which may be <code>file:</code> or <code>http(s):</code> urls. The dependency graph is traversed breadth first, so the
+ * nearest version of an artifact wins and the first declaration wins between artifacts of the same depth, like maven does it. Test, provided and optional dependencies are
+ * skipped. All files are cached in a local repository and the artifacts of a graph are downloaded in parallel. The resolved graph is stored next to the copied jars, so the
+ * next resolution of the same artifact doesn't need the repositories at all.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class MavenResolver {
+	/**
+	 * system property, which overrides the repositories: a comma separated list of urls
+	 */
+	public static final  String                      REPOSITORIES_PROPERTY = "cish.maven.repositories";
+	private static final String                      CENTRAL               = "https://repo1.maven.org/maven2/";
+	private static final String                      GRAPH                 = "resolved.txt";
+	private static final int                         MAX_PARENTS           = 32;
+	private final        List<URI>                   repositories;
+	private final        Path                        local;
+	private final        Map<Artifact, Pom>          poms                  = new ConcurrentHashMap<>();
+	private final        AtomicReference<HttpClient> client                = new AtomicReference<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param repositories urls of the remote repositories in the order, in which they are asked
+	 * @param local        directory of the local repository, which caches all downloaded files
+	 */
+	public MavenResolver(final List<URI> repositories, final Path local) {
+		this.repositories = repositories.stream()
+		                                .map(uri -> uri.toString().endsWith("/") ? uri : URI.create(uri + "/"))
+		                                .collect(Collectors.toList());
+		this.local = local;
+	}
+
+	/**
+	 * creates a resolver, which uses the repositories of {@link #REPOSITORIES_PROPERTY}. Without the property, the local maven repository, if it exists, and maven central are
+	 * used.
+	 *
+	 * @return resolver
+	 */
+	public static MavenResolver ofDefaults() {
+		final String    property     = System.getProperty(MavenResolver.REPOSITORIES_PROPERTY, "");
+		final List<URI> repositories = new ArrayList<>();
+		if (property.isBlank()) {
+			final Path m2 = Path.of(System.getProperty("user.home"), ".m2", "repository");
+			if (Files.isDirectory(m2)) {
+				repositories.add(m2.toUri());
+			}
+			repositories.add(URI.create(MavenResolver.CENTRAL));
+		} else {
+			Arrays.stream(property.split(",")).map(String::trim).filter(s -> !s.isEmpty()).map(URI::create).forEach(repositories::add);
+		}
+		return new MavenResolver(repositories, CishPath.ofCacheDir("maven"));
+	}
+
+	/**
+	 * picks the version of a version specification. Ranges are resolved to their lower bound, if it is inclusive.
+	 *
+	 * @param specification version or version range
+	 *
+	 * @return version
+	 *
+	 * @throws IOException the range can't be resolved without the metadata of the repository
+	 */
+	static String pickVersion(final String specification) throws IOException {
+		if (!specification.startsWith("[") && !specification.startsWith("(")) {
+			return specification;
+		}
+		final String lower = specification.substring(1).split("[,\\])]", -1)[0].trim();
+		if (!specification.startsWith("[") || lower.isEmpty()) {
+			throw new IOException(String.format("The version range %s isn't supported", specification));
+		}
+		return lower;
+	}
+
+	/**
+	 * checks, if a dependency is excluded
+	 *
+	 * @param exclusions exclusions in the format <code>groupId:artifactId</code>, each part may be <code>*</code>
+	 * @param dependency dependency
+	 *
+	 * @return is excluded
+	 */
+	private static boolean isExcluded(final Set<String> exclusions, final Pom.Dependency dependency) {
+		return exclusions.stream().map(exclusion -> exclusion.split(":", 2)).anyMatch(exclusion -> (exclusion[0].equals("*") || exclusion[0].equals(dependency.getGroupId()))
+				&& (exclusion.length < 2 || exclusion[1].equals("*") || exclusion[1].equals(dependency.getArtifactId())));
+	}
+
+	/**
+	 * resolves an artifact and copies it together with its transitive runtime dependencies to the target directory
+	 *
+	 * @param root   artifact
+	 * @param target directory, which receives the jars
+	 *
+	 * @return the jars in the target directory. The first one is the artifact itself.
+	 *
+	 * @throws IOException the graph can't be resolved or an artifact can't be downloaded
+	 */
+	public List<Path> resolve(final Artifact root, final Path target) throws IOException {
+		final Path graphFile = target.resolve(MavenResolver.GRAPH);
+		if (Files.isRegularFile(graphFile)) {
+			final List<Path> jars = Files.readAllLines(graphFile, StandardCharsets.UTF_8)
+			                             .stream()
+			                             .filter(line -> !line.isBlank())
+			                             .map(line -> target.resolve(Artifact.parse(line).getFileName()))
+			                             .collect(Collectors.toList());
+			if (jars.stream().allMatch(Files::isRegularFile)) {
+				MavenResolver.log.debug("Using the resolved dependencies of {}", root);
+				return jars;
+			}
+		}
+
+		final List<Artifact> graph = this.collect(root).stream().filter(Artifact::isJar).collect(Collectors.toList());
+		MavenResolver.log.debug("Resolved {} to {}", () -> root, () -> graph);
+		final List<Path> files;
+		try {
+			files = graph.parallelStream().map(artifact -> {
+				try {
+					return this.fetch(artifact);
+				} catch (final IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).collect(Collectors.toList());
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		Files.createDirectories(target);
+		final List<Path> jars = new ArrayList<>();
+		for (int i = 0; i < graph.size(); i++) {
+			final Path jar = target.resolve(graph.get(i).getFileName());
+			if (Files.notExists(jar)) {
+				MavenResolver.link(files.get(i), jar);
+			}
+			jars.add(jar);
+		}
+		final Path tmp = Files.createTempFile(target, MavenResolver.GRAPH, ".tmp");
+		Files.write(tmp, graph.stream().map(Artifact::toString).collect(Collectors.toList()), StandardCharsets.UTF_8);
+		Files.move(tmp, graphFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return jars;
+	}
+
+	/**
+	 * computes the dependency graph of an artifact
+	 *
+	 * @param root artifact
+	 *
+	 * @return the artifact and its transitive runtime dependencies, nearest first
+	 *
+	 * @throws IOException a pom can't be read
+	 */
+	List<Artifact> collect(final Artifact root) throws IOException {
+		final List<Artifact> result = new ArrayList<>();
+		final Set<String>    keys   = new HashSet<>(List.of(root.getKey()));
+		List<Node>           level  = List.of(new Node(root, Set.of()));
+		while (!level.isEmpty()) {
+			level.parallelStream().forEach(node -> this.prefetch(node.artifact.getPom()));
+			final List<Node> next = new ArrayList<>();
+			for (final Node node : level) {
+				result.add(node.artifact);
+				final Pom pom;
+				try {
+					pom = this.effective(node.artifact.getPom());
+				} catch (final NoSuchFileException e) {
+					MavenResolver.log.warn("The pom of {} is missing, its dependencies aren't resolved", node.artifact);
+					continue;
+				}
+				for (final Pom.Dependency dependency : pom.getDependencies()) {
+					if (!dependency.isRuntime() || dependency.isOptional() || MavenResolver.isExcluded(node.exclusions, dependency) || !keys.add(dependency.getKey())) {
+						continue;
+					}
+					if (dependency.getVersion() == null) {
+						throw new IOException(String.format("The version of %s isn't specified by %s", dependency.getKey(), node.artifact));
+					}
+					final Set<String> exclusions = new HashSet<>(node.exclusions);
+					exclusions.addAll(dependency.getExclusions());
+					next.add(new Node(new Artifact(
+							dependency.getGroupId(),
+							dependency.getArtifactId(),
+							MavenResolver.pickVersion(dependency.getVersion()),
+							dependency.getType(),
+							dependency.getClassifier()
+					), exclusions));
+				}
+			}
+			level = next;
+		}
+		return result;
+	}
+
+	/**
+	 * loads a pom in the background. Errors are reported, when the pom is needed.
+	 *
+	 * @param pom artifact of the pom
+	 */
+	private void prefetch(final Artifact pom) {
+		try {
+			this.effective(pom);
+		} catch (final IOException e) {
+			MavenResolver.log.debug("Couldn't prefetch {}", pom);
+		}
+	}
+
+	/**
+	 * builds the effective pom: the parents are merged in, the properties are interpolated, the boms are imported and the dependency management is applied
+	 *
+	 * @param artifact artifact of the pom
+	 *
+	 * @return effective pom
+	 *
+	 * @throws IOException the pom or one of its parents can't be read
+	 */
+	Pom effective(final Artifact artifact) throws IOException {
+		final Pom cached = this.poms.get(artifact);
+		if (cached != null) {
+			return cached;
+		}
+		final Pom pom = this.inherited(artifact, 0);
+		pom.interpolate();
+		for (final Artifact bom : pom.getImports()) {
+			pom.importManaged(this.effective(bom).getManaged());
+		}
+		pom.applyManagement();
+		this.poms.putIfAbsent(artifact, pom);
+		return pom;
+	}
+
+	/**
+	 * reads a pom and merges its parents in
+	 *
+	 * @param artifact artifact of the pom
+	 * @param depth    number of the already read parents
+	 *
+	 * @return pom with all inherited values, but not interpolated yet
+	 *
+	 * @throws IOException the pom or one of its parents can't be read
+	 */
+	private Pom inherited(final Artifact artifact, final int depth) throws IOException {
+		if (depth > MavenResolver.MAX_PARENTS) {
+			throw new IOException(String.format("The parents of %s are cyclic", artifact));
+		}
+		final Pom pom;
+		try (final InputStream is = Files.newInputStream(this.fetch(artifact))) {
+			pom = Pom.parse(is);
+		}
+		if (pom.getParent() != null) {
+			pom.inherit(this.inherited(pom.getParent(), depth + 1));
+		}
+		return pom;
+	}
+
+	/**
+	 * get a file of the local repository. It is downloaded from the first repository, which contains it, if it isn't cached yet.
+	 *
+	 * @param artifact artifact
+	 *
+	 * @return file in the local repository
+	 *
+	 * @throws IOException no repository contains the file or the download failed
+	 */
+	Path fetch(final Artifact artifact) throws IOException {
+		final Path file = this.local.resolve(artifact.getPath());
+		if (Files.isRegularFile(file)) {
+			CacheCollector.markUsed(file);
+			return file;
+		}
+		Files.createDirectories(file.getParent());
+		for (final URI repository : this.repositories) {
+			final URI uri = repository.resolve(artifact.getPath());
+			if ("file".equals(uri.getScheme())) {
+				final Path source = Path.of(uri);
+				if (Files.isRegularFile(source)) {
+					MavenResolver.copy(source, file);
+					return file;
+				}
+				continue;
+			}
+			final Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".part");
+			try {
+				MavenResolver.log.debug("Downloading {}", uri);
+				final HttpResponse<Path> response = this.client().send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofFile(tmp));
+				if (response.statusCode() == 200) {
+					Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					return file;
+				}
+				if (response.statusCode() != 404) {
+					throw new IOException(String.format("Couldn't download %s: HTTP %d", uri, response.statusCode()));
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(String.format("The download of %s was interrupted", uri), e);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		}
+		throw new NoSuchFileException(artifact.toString(), null, String.format("No repository contains %s", artifact.getPath()));
+	}
+
+	/**
+	 * get the http client. It is created on the first download.
+	 *
+	 * @return http client
+	 */
+	private HttpClient client() {
+		return this.client.updateAndGet(current -> current != null ? current : HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build());
+	}
+
+	/**
+	 * links a file of the local repository into a target directory, so the same jar isn't stored once per extension. If the file system doesn't support hard links, the file
+	 * is copied.
+	 *
+	 * @param source file of the local repository
+	 * @param target target
+	 *
+	 * @throws IOException read or write error
+	 */
+	private static void link(final Path source, final Path target) throws IOException {
+		final Path tmp = target.resolveSibling(target.getFileName() + "." + System.nanoTime() + ".link");
+		try {
+			Files.createLink(tmp, source);
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException | UnsupportedOperationException e) {
+			MavenResolver.log.debug("Couldn't link {}, copying it", source, e);
+			MavenResolver.copy(source, target);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * copies a file. It is written to a temporary file first, so a concurrent cish never sees a half written file.
+	 *
+	 * @param source source
+	 * @param target target
+	 *
+	 * @throws IOException read or write error
+	 */
+	private static void copy(final Path source, final Path target) throws IOException {
+		final Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+		try {
+			Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * A node of the dependency graph
+	 */
+	private static class Node {
+		private final Artifact    artifact;
+		private final Set<String> exclusions;
+
+		/**
+		 * Constructor
+		 *
+		 * @param artifact   artifact
+		 * @param exclusions exclusions, which are inherited from the path to this node
+		 */
+		private Node(final Artifact artifact, final Set<String> exclusions) {
+			this.artifact = artifact;
+			this.exclusions = exclusions;
+		}
+	}
+}
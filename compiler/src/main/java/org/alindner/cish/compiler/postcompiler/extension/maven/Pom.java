@@ -0,0 +1,338 @@
+package org.alindner.cish.compiler.postcompiler.extension.maven;
+
+import lombok.Data;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The parts of a maven pom, which are needed to resolve the dependencies of an artifact
+ * <p>
+ * A pom is read as it is. {@link #inherit(Pom)}, {@link #interpolate()}, {@link #importManaged(List)} and {@link #applyManagement()} build the effective pom step by step.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+class Pom {
+	private static final Pattern             PROPERTY     = Pattern.compile("\\$\\{([^}]+)}");
+	private final        Map<String, String> properties   = new LinkedHashMap<>();
+	private final        List<Dependency>    dependencies = new ArrayList<>();
+	private final        List<Dependency>    managed      = new ArrayList<>();
+	private              String              groupId;
+	private              String              artifactId;
+	private              String              version;
+	private              String              packaging;
+	private              Artifact            parent;
+
+	/**
+	 * reads in a pom
+	 *
+	 * @param is content of the pom
+	 *
+	 * @return pom
+	 *
+	 * @throws IOException read error or malformed pom
+	 */
+	static Pom parse(final InputStream is) throws IOException {
+		final Element project;
+		try {
+			final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			factory.setExpandEntityReferences(false);
+			factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+			factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+			final DocumentBuilder builder = factory.newDocumentBuilder();
+			project = builder.parse(is).getDocumentElement();
+		} catch (final ParserConfigurationException | SAXException e) {
+			throw new IOException("Malformed pom", e);
+		}
+		final Pom pom = new Pom();
+		pom.groupId = Pom.text(project, "groupId");
+		pom.artifactId = Pom.text(project, "artifactId");
+		pom.version = Pom.text(project, "version");
+		pom.packaging = Objects.requireNonNullElse(Pom.text(project, "packaging"), "jar");
+		final Element parent = Pom.child(project, "parent");
+		if (parent != null) {
+			pom.parent = new Artifact(Pom.text(parent, "groupId"), Pom.text(parent, "artifactId"), Pom.text(parent, "version"), "pom", null);
+			pom.groupId = Objects.requireNonNullElse(pom.groupId, pom.parent.getGroupId());
+			pom.version = Objects.requireNonNullElse(pom.version, pom.parent.getVersion());
+		}
+		final Element properties = Pom.child(project, "properties");
+		if (properties != null) {
+			Pom.children(properties, null).forEach(property -> pom.properties.put(property.getTagName(), property.getTextContent().trim()));
+		}
+		pom.dependencies.addAll(Pom.dependencies(Pom.child(project, "dependencies")));
+		final Element management = Pom.child(project, "dependencyManagement");
+		if (management != null) {
+			pom.managed.addAll(Pom.dependencies(Pom.child(management, "dependencies")));
+		}
+		return pom;
+	}
+
+	/**
+	 * reads the dependencies of a <code>dependencies</code> element
+	 *
+	 * @param dependencies element or null
+	 *
+	 * @return dependencies
+	 */
+	private static List<Dependency> dependencies(final Element dependencies) {
+		if (dependencies == null) {
+			return List.of();
+		}
+		return Pom.children(dependencies, "dependency").stream().map(dependency -> {
+			final Element      exclusions = Pom.child(dependency, "exclusions");
+			final List<String> excluded   = exclusions == null ? List.of() : Pom.children(exclusions, "exclusion")
+			                                                                    .stream()
+			                                                                    .map(exclusion -> Pom.text(exclusion, "groupId") + ":" + Pom.text(exclusion, "artifactId"))
+			                                                                    .collect(Collectors.toList());
+			return new Dependency(
+					Pom.text(dependency, "groupId"),
+					Pom.text(dependency, "artifactId"),
+					Pom.text(dependency, "version"),
+					Objects.requireNonNullElse(Pom.text(dependency, "type"), "jar"),
+					Pom.text(dependency, "classifier"),
+					Pom.text(dependency, "scope"),
+					"true".equals(Pom.text(dependency, "optional")),
+					excluded
+			);
+		}).collect(Collectors.toList());
+	}
+
+	/**
+	 * get the child elements
+	 *
+	 * @param element parent element
+	 * @param name    tag name or null for all children
+	 *
+	 * @return child elements
+	 */
+	private static List<Element> children(final Element element, final String name) {
+		final List<Element> children = new ArrayList<>();
+		for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node instanceof Element && (name == null || ((Element) node).getTagName().equals(name))) {
+				children.add((Element) node);
+			}
+		}
+		return children;
+	}
+
+	/**
+	 * get the first child element
+	 *
+	 * @param element parent element
+	 * @param name    tag name
+	 *
+	 * @return child element or null
+	 */
+	private static Element child(final Element element, final String name) {
+		final List<Element> children = Pom.children(element, name);
+		return children.isEmpty() ? null : children.get(0);
+	}
+
+	/**
+	 * get the text of a child element
+	 *
+	 * @param element parent element
+	 * @param name    tag name
+	 *
+	 * @return trimmed text or null
+	 */
+	private static String text(final Element element, final String name) {
+		final Element child = Pom.child(element, name);
+		return child == null ? null : child.getTextContent().trim();
+	}
+
+	/**
+	 * merges the effective pom of the parent into this pom. The values of this pom win.
+	 *
+	 * @param effectiveParent effective pom of the parent
+	 */
+	void inherit(final Pom effectiveParent) {
+		final Map<String, String> properties = new LinkedHashMap<>(effectiveParent.properties);
+		properties.putAll(this.properties);
+		this.properties.clear();
+		this.properties.putAll(properties);
+		this.properties.putIfAbsent("project.parent.groupId", effectiveParent.groupId);
+		this.properties.putIfAbsent("project.parent.version", effectiveParent.version);
+
+		final Set<String> managedKeys = this.managed.stream().map(Dependency::getKey).collect(Collectors.toSet());
+		effectiveParent.managed.stream().filter(dependency -> !managedKeys.contains(dependency.getKey())).forEach(this.managed::add);
+
+		final Set<String>      keys      = this.dependencies.stream().map(Dependency::getKey).collect(Collectors.toSet());
+		final List<Dependency> inherited = effectiveParent.dependencies.stream().filter(dependency -> !keys.contains(dependency.getKey())).collect(Collectors.toList());
+		this.dependencies.addAll(0, inherited);
+	}
+
+	/**
+	 * replaces the <code>${...}</code> expressions of the dependencies by the properties of this pom
+	 */
+	void interpolate() {
+		this.properties.put("project.groupId", this.groupId);
+		this.properties.put("project.artifactId", this.artifactId);
+		this.properties.put("project.version", this.version);
+		this.properties.put("pom.groupId", this.groupId);
+		this.properties.put("pom.version", this.version);
+		this.dependencies.replaceAll(dependency -> dependency.interpolate(this::interpolate));
+		this.managed.replaceAll(dependency -> dependency.interpolate(this::interpolate));
+	}
+
+	/**
+	 * replaces the <code>${...}</code> expressions of a value. Properties may reference other properties.
+	 *
+	 * @param value value
+	 *
+	 * @return interpolated value
+	 */
+	String interpolate(final String value) {
+		if (value == null) {
+			return null;
+		}
+		String result = value;
+		for (int depth = 0; depth < 10 && result.contains("${"); depth++) {
+			final Matcher       matcher = Pom.PROPERTY.matcher(result);
+			final StringBuilder sb      = new StringBuilder();
+			while (matcher.find()) {
+				final String replacement = this.properties.get(matcher.group(1));
+				matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement == null ? matcher.group() : replacement));
+			}
+			matcher.appendTail(sb);
+			if (sb.toString().equals(result)) {
+				break;
+			}
+			result = sb.toString();
+		}
+		return result;
+	}
+
+	/**
+	 * get the imported boms. They are listed in the dependency management with the scope <code>import</code>.
+	 *
+	 * @return boms
+	 */
+	List<Artifact> getImports() {
+		return this.managed.stream()
+		                   .filter(dependency -> "import".equals(dependency.getScope()) && "pom".equals(dependency.getType()))
+		                   .map(Dependency::toArtifact)
+		                   .collect(Collectors.toList());
+	}
+
+	/**
+	 * adds the managed dependencies of an imported bom, which aren't managed by this pom
+	 *
+	 * @param imported managed dependencies of the bom
+	 */
+	void importManaged(final List<Dependency> imported) {
+		final Set<String> keys = this.managed.stream().map(Dependency::getKey).collect(Collectors.toSet());
+		imported.stream().filter(dependency -> !keys.contains(dependency.getKey())).forEach(this.managed::add);
+	}
+
+	/**
+	 * completes the version and the scope of the dependencies by the dependency management
+	 */
+	void applyManagement() {
+		final Map<String, Dependency> byKey = new HashMap<>();
+		this.managed.forEach(dependency -> byKey.putIfAbsent(dependency.getKey(), dependency));
+		this.dependencies.replaceAll(dependency -> {
+			final Dependency managedDependency = byKey.get(dependency.getKey());
+			return managedDependency == null ? dependency : dependency.manage(managedDependency);
+		});
+	}
+
+	/**
+	 * A dependency of a pom
+	 */
+	@Data
+	static class Dependency {
+		private final String       groupId;
+		private final String       artifactId;
+		private final String       version;
+		private final String       type;
+		private final String       classifier;
+		private final String       scope;
+		private final boolean      optional;
+		private final List<String> exclusions;
+
+		/**
+		 * get the key, which identifies the dependency regardless of its version
+		 *
+		 * @return key
+		 */
+		String getKey() {
+			return this.toArtifact().getKey();
+		}
+
+		/**
+		 * get the artifact of the dependency
+		 *
+		 * @return artifact
+		 */
+		Artifact toArtifact() {
+			return new Artifact(this.groupId, this.artifactId, this.version, this.type, this.classifier);
+		}
+
+		/**
+		 * checks, if the dependency is needed at runtime
+		 *
+		 * @return scope is compile or runtime
+		 */
+		boolean isRuntime() {
+			return this.scope == null || this.scope.equals("compile") || this.scope.equals("runtime");
+		}
+
+		/**
+		 * interpolates all values
+		 *
+		 * @param interpolator interpolator
+		 *
+		 * @return interpolated dependency
+		 */
+		Dependency interpolate(final UnaryOperator<String> interpolator) {
+			return new Dependency(
+					interpolator.apply(this.groupId),
+					interpolator.apply(this.artifactId),
+					interpolator.apply(this.version),
+					interpolator.apply(this.type),
+					interpolator.apply(this.classifier),
+					interpolator.apply(this.scope),
+					this.optional,
+					this.exclusions.stream().map(interpolator).collect(Collectors.toList())
+			);
+		}
+
+		/**
+		 * completes the version and the scope by a managed dependency
+		 *
+		 * @param managedDependency managed dependency
+		 *
+		 * @return completed dependency
+		 */
+		Dependency manage(final Dependency managedDependency) {
+			final List<String> excluded = new ArrayList<>(this.exclusions);
+			excluded.addAll(managedDependency.exclusions);
+			return new Dependency(
+					this.groupId,
+					this.artifactId,
+					this.version == null ? managedDependency.version : this.version,
+					this.type,
+					this.classifier,
+					this.scope == null ? managedDependency.scope : this.scope,
+					this.optional,
+					excluded
+			);
+		}
+	}
+}
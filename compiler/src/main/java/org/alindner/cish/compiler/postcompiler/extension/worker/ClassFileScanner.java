@@ -0,0 +1,589 @@
+package org.alindner.cish.compiler.postcompiler.extension.worker;
+
+import org.alindner.cish.extension.ExtensionIndex;
+import org.alindner.cish.extension.Type;
+import org.alindner.cish.extension.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Builds the {@link ExtensionIndex} of an extension jar, which was compiled without the annotation processor of the extension module.
+ * <p>
+ * The class files are read directly from the jar: a class is only parsed completely, if its constant pool references one of the annotations of the extension module. No class
+ * is loaded, so no static initializer runs while the jar is scanned.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+class ClassFileScanner {
+	private static final String                 ANNOTATIONS = "Lorg/alindner/cish/extension/annotations/";
+	private static final String                 RUNTIME     = "RuntimeVisibleAnnotations";
+	private final        ZipFile                zipFile;
+	private final        Map<String, ClassInfo> classes     = new HashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param zipFile extension jar
+	 */
+	private ClassFileScanner(final ZipFile zipFile) {
+		this.zipFile = zipFile;
+	}
+
+	/**
+	 * scans an extension jar
+	 *
+	 * @param jar extension jar
+	 *
+	 * @return index of the extension
+	 *
+	 * @throws IOException the jar or a class file can't be read
+	 */
+	static ExtensionIndex scan(final Path jar) throws IOException {
+		try (final ZipFile zipFile = new ZipFile(jar.toFile())) {
+			return new ClassFileScanner(zipFile).scan();
+		}
+	}
+
+	/**
+	 * scans all classes of the jar
+	 *
+	 * @return index of the extension
+	 *
+	 * @throws IOException a class file can't be read
+	 */
+	private ExtensionIndex scan() throws IOException {
+		final ExtensionIndex index = new ExtensionIndex();
+		for (final ZipEntry entry : Collections.list(this.zipFile.entries())) {
+			final String name = entry.getName();
+			if (entry.isDirectory() || !name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+				continue;
+			}
+			final ClassInfo info = this.read(entry, true);
+			if (info == null) {
+				continue;
+			}
+			final AnnotationInfo extension = info.find(CishExtension.class);
+			if (extension != null) {
+				index.getExtensions().add(this.buildExtension(info, extension));
+			}
+			for (final MethodInfo method : info.methods) {
+				final AnnotationInfo methodExtension = method.find(CishExtension.class);
+				if (methodExtension != null) {
+					final ExtensionIndex.Extension single = new ExtensionIndex.Extension(info.canonicalName(), methodExtension.string("value", CishExtension.class));
+					ClassFileScanner.addDependencies(single, method.annotations);
+					single.getMethods().add(method.name);
+					index.getExtensions().add(single);
+				}
+				final AnnotationInfo predicate = method.find(CishPredicate.class);
+				if (predicate != null) {
+					index.getPredicates().add(new ExtensionIndex.Predicate(info.name.replace('/', '.'), method.name, predicate.string("value", CishPredicate.class)));
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * builds the entry of an extension class with the public methods of the class and its super types inside the jar
+	 *
+	 * @param info      extension class
+	 * @param extension the {@link CishExtension} annotation of the class
+	 *
+	 * @return entry of the index
+	 *
+	 * @throws IOException a class file can't be read
+	 */
+	private ExtensionIndex.Extension buildExtension(final ClassInfo info, final AnnotationInfo extension) throws IOException {
+		final ExtensionIndex.Extension entry = new ExtensionIndex.Extension(info.canonicalName(), extension.string("value", CishExtension.class));
+		ClassFileScanner.addDependencies(entry, info.annotations);
+		final Set<String>   methods = new LinkedHashSet<>();
+		final Set<String>   visited = new HashSet<>();
+		final Deque<String> queue   = new ArrayDeque<>(List.of(info.name));
+		while (!queue.isEmpty()) {
+			final String name = queue.poll();
+			if (!visited.add(name)) {
+				continue;
+			}
+			final ZipEntry  classEntry = this.zipFile.getEntry(name + ".class");
+			final ClassInfo current    = classEntry == null ? null : this.read(classEntry, false);
+			if (current == null) {
+				continue;
+			}
+			for (final MethodInfo method : current.methods) {
+				if (Modifier.isPublic(method.access) && !method.name.startsWith("<")) {
+					ClassFileScanner.addDependencies(entry, method.annotations);
+					methods.add(method.name);
+				}
+			}
+			if (current.superName != null) {
+				queue.add(current.superName);
+			}
+			queue.addAll(current.interfaces);
+		}
+		entry.getMethods().addAll(methods);
+		return entry;
+	}
+
+	/**
+	 * adds the dependencies, which are declared by annotations. Repeated annotations are unwrapped from their containers.
+	 *
+	 * @param entry       entry of the index
+	 * @param annotations annotations of a class or method
+	 */
+	private static void addDependencies(final ExtensionIndex.Extension entry, final List<AnnotationInfo> annotations) {
+		for (final AnnotationInfo annotation : annotations) {
+			if (annotation.is(MavenDependencies.class) || annotation.is(JarDependencies.class) || annotation.is(JavaDependencies.class)) {
+				ClassFileScanner.addDependencies(entry, annotation.annotations("value"));
+			} else if (annotation.is(MavenDependency.class)) {
+				entry.getDependencies().add(new ExtensionIndex.Dependency(
+						ExtensionIndex.Dependency.MAVEN,
+						annotation.string("value", MavenDependency.class),
+						annotation.string("name", MavenDependency.class),
+						annotation.string("version", MavenDependency.class),
+						Type.valueOf(annotation.string("type", MavenDependency.class))
+				));
+			} else if (annotation.is(JarDependency.class)) {
+				entry.getDependencies().add(new ExtensionIndex.Dependency(
+						ExtensionIndex.Dependency.JAR,
+						annotation.string("value", JarDependency.class),
+						null,
+						annotation.string("version", JarDependency.class),
+						Type.valueOf(annotation.string("type", JarDependency.class))
+				));
+			} else if (annotation.is(JavaDependency.class)) {
+				entry.getDependencies().add(new ExtensionIndex.Dependency(
+						ExtensionIndex.Dependency.JAVA,
+						annotation.string("value", JavaDependency.class),
+						null,
+						annotation.string("version", JavaDependency.class),
+						Type.valueOf(annotation.string("type", JavaDependency.class))
+				));
+			}
+		}
+	}
+
+	/**
+	 * reads a class file. The parsed classes are cached, because the super types of several extensions are the same.
+	 *
+	 * @param entry     class file
+	 * @param annotated only parse the class, if it references the annotations of the extension module
+	 *
+	 * @return parsed class or null, if it doesn't reference the annotations
+	 *
+	 * @throws IOException the class file can't be read
+	 */
+	private ClassInfo read(final ZipEntry entry, final boolean annotated) throws IOException {
+		final String    name   = entry.getName().substring(0, entry.getName().length() - ".class".length());
+		final ClassInfo cached = this.classes.get(name);
+		if (cached != null) {
+			return cached;
+		}
+		final byte[] bytes;
+		try (final InputStream is = this.zipFile.getInputStream(entry)) {
+			bytes = is.readAllBytes();
+		}
+		final ClassInfo info = new ClassReader(bytes).read(annotated);
+		if (info != null) {
+			this.classes.put(name, info);
+		}
+		return info;
+	}
+
+	/**
+	 * The default value of an annotation element
+	 *
+	 * @param annotation annotation type
+	 * @param element    name of the element
+	 *
+	 * @return default value or null
+	 */
+	private static String defaultValue(final Class<? extends Annotation> annotation, final String element) {
+		try {
+			final Object value = annotation.getMethod(element).getDefaultValue();
+			if (value instanceof Enum) {
+				return ((Enum<?>) value).name();
+			}
+			return value == null ? null : value.toString();
+		} catch (final NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * A parsed class file
+	 */
+	private static class ClassInfo {
+		private final String               name;
+		private final String               superName;
+		private final List<String>         interfaces;
+		private final List<AnnotationInfo> annotations;
+		private final List<MethodInfo>     methods;
+
+		/**
+		 * Constructor
+		 *
+		 * @param name        internal name
+		 * @param superName   internal name of the super class or null
+		 * @param interfaces  internal names of the interfaces
+		 * @param annotations runtime visible annotations
+		 * @param methods     methods
+		 */
+		private ClassInfo(final String name, final String superName, final List<String> interfaces, final List<AnnotationInfo> annotations, final List<MethodInfo> methods) {
+			this.name = name;
+			this.superName = superName;
+			this.interfaces = interfaces;
+			this.annotations = annotations;
+			this.methods = methods;
+		}
+
+		/**
+		 * get the canonical name. Extensions are top level or member classes, so each <code>$</code> separates a member class.
+		 *
+		 * @return canonical name
+		 */
+		private String canonicalName() {
+			return this.name.replace('/', '.').replace('$', '.');
+		}
+
+		/**
+		 * searches an annotation of the class
+		 *
+		 * @param type annotation type
+		 *
+		 * @return annotation or null
+		 */
+		private AnnotationInfo find(final Class<? extends Annotation> type) {
+			return AnnotationInfo.find(this.annotations, type);
+		}
+	}
+
+	/**
+	 * A method of a parsed class file
+	 */
+	private static class MethodInfo {
+		private final int                  access;
+		private final String               name;
+		private final List<AnnotationInfo> annotations;
+
+		/**
+		 * Constructor
+		 *
+		 * @param access      access flags
+		 * @param name        name
+		 * @param annotations runtime visible annotations
+		 */
+		private MethodInfo(final int access, final String name, final List<AnnotationInfo> annotations) {
+			this.access = access;
+			this.name = name;
+			this.annotations = annotations;
+		}
+
+		/**
+		 * searches an annotation of the method
+		 *
+		 * @param type annotation type
+		 *
+		 * @return annotation or null
+		 */
+		private AnnotationInfo find(final Class<? extends Annotation> type) {
+			return AnnotationInfo.find(this.annotations, type);
+		}
+	}
+
+	/**
+	 * An annotation of a parsed class file. Strings and enum constants are stored as strings, nested annotations as {@link AnnotationInfo} and arrays as lists.
+	 */
+	private static class AnnotationInfo {
+		private final String              descriptor;
+		private final Map<String, Object> values;
+
+		/**
+		 * Constructor
+		 *
+		 * @param descriptor type descriptor of the annotation
+		 * @param values     values of the elements
+		 */
+		private AnnotationInfo(final String descriptor, final Map<String, Object> values) {
+			this.descriptor = descriptor;
+			this.values = values;
+		}
+
+		/**
+		 * searches an annotation
+		 *
+		 * @param annotations annotations
+		 * @param type        annotation type
+		 *
+		 * @return annotation or null
+		 */
+		private static AnnotationInfo find(final List<AnnotationInfo> annotations, final Class<? extends Annotation> type) {
+			return annotations.stream().filter(annotation -> annotation.is(type)).findFirst().orElse(null);
+		}
+
+		/**
+		 * checks the type of the annotation
+		 *
+		 * @param type annotation type
+		 *
+		 * @return is of the given type
+		 */
+		private boolean is(final Class<? extends Annotation> type) {
+			return this.descriptor.equals("L" + type.getName().replace('.', '/') + ";");
+		}
+
+		/**
+		 * get a string or enum value. Missing elements get the default value of the annotation type.
+		 *
+		 * @param element name of the element
+		 * @param type    annotation type
+		 *
+		 * @return value
+		 */
+		private String string(final String element, final Class<? extends Annotation> type) {
+			final Object value = this.values.get(element);
+			return value instanceof String ? (String) value : ClassFileScanner.defaultValue(type, element);
+		}
+
+		/**
+		 * get an array of nested annotations
+		 *
+		 * @param element name of the element
+		 *
+		 * @return annotations
+		 */
+		private List<AnnotationInfo> annotations(final String element) {
+			final Object               value       = this.values.get(element);
+			final List<AnnotationInfo> annotations = new ArrayList<>();
+			if (value instanceof List) {
+				for (final Object nested : (List<?>) value) {
+					if (nested instanceof AnnotationInfo) {
+						annotations.add((AnnotationInfo) nested);
+					}
+				}
+			}
+			return annotations;
+		}
+	}
+
+	/**
+	 * Reads the parts of a class file, which are needed to find the extensions
+	 */
+	private static class ClassReader {
+		private final DataInputStream in;
+		private       String[]        utf8;
+		private       int[]           classes;
+
+		/**
+		 * Constructor
+		 *
+		 * @param bytes content of the class file
+		 */
+		private ClassReader(final byte[] bytes) {
+			this.in = new DataInputStream(new ByteArrayInputStream(bytes));
+		}
+
+		/**
+		 * reads the class file
+		 *
+		 * @param annotated stop after the constant pool, if it doesn't reference the annotations of the extension module
+		 *
+		 * @return parsed class or null
+		 *
+		 * @throws IOException malformed class file
+		 */
+		private ClassInfo read(final boolean annotated) throws IOException {
+			if (this.in.readInt() != 0xCAFEBABE) {
+				throw new IOException("Not a class file");
+			}
+			this.in.readUnsignedShort();
+			this.in.readUnsignedShort();
+			if (!this.readConstantPool() && annotated) {
+				return null;
+			}
+			this.in.readUnsignedShort();
+			final String       name       = this.className(this.in.readUnsignedShort());
+			final int          superIndex = this.in.readUnsignedShort();
+			final String       superName  = superIndex == 0 ? null : this.className(superIndex);
+			final int          count      = this.in.readUnsignedShort();
+			final List<String> interfaces = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				interfaces.add(this.className(this.in.readUnsignedShort()));
+			}
+			final int fields = this.in.readUnsignedShort();
+			for (int i = 0; i < fields; i++) {
+				this.in.readUnsignedShort();
+				this.in.readUnsignedShort();
+				this.in.readUnsignedShort();
+				this.readAnnotations();
+			}
+			final int              methodCount = this.in.readUnsignedShort();
+			final List<MethodInfo> methods     = new ArrayList<>();
+			for (int i = 0; i < methodCount; i++) {
+				final int    access     = this.in.readUnsignedShort();
+				final String methodName = this.utf8[this.in.readUnsignedShort()];
+				this.in.readUnsignedShort();
+				methods.add(new MethodInfo(access, methodName, this.readAnnotations()));
+			}
+			return new ClassInfo(name, superName, interfaces, this.readAnnotations(), methods);
+		}
+
+		/**
+		 * reads the constant pool
+		 *
+		 * @return the constant pool references the annotations of the extension module
+		 *
+		 * @throws IOException malformed class file
+		 */
+		private boolean readConstantPool() throws IOException {
+			final int count = this.in.readUnsignedShort();
+			this.utf8 = new String[count];
+			this.classes = new int[count];
+			boolean annotated = false;
+			for (int i = 1; i < count; i++) {
+				final int tag = this.in.readUnsignedByte();
+				switch (tag) {
+					case 1:
+						this.utf8[i] = this.in.readUTF();
+						annotated |= this.utf8[i].startsWith(ClassFileScanner.ANNOTATIONS);
+						break;
+					case 7:
+						this.classes[i] = this.in.readUnsignedShort();
+						break;
+					case 8:
+					case 16:
+					case 19:
+					case 20:
+						this.in.readUnsignedShort();
+						break;
+					case 15:
+						this.in.readUnsignedByte();
+						this.in.readUnsignedShort();
+						break;
+					case 3:
+					case 4:
+					case 9:
+					case 10:
+					case 11:
+					case 12:
+					case 17:
+					case 18:
+						this.in.readInt();
+						break;
+					case 5:
+					case 6:
+						this.in.readLong();
+						i++;
+						break;
+					default:
+						throw new IOException(String.format("Unknown constant pool tag %d", tag));
+				}
+			}
+			return annotated;
+		}
+
+		/**
+		 * resolves a class constant
+		 *
+		 * @param index index of the class constant
+		 *
+		 * @return internal name
+		 */
+		private String className(final int index) {
+			return this.utf8[this.classes[index]];
+		}
+
+		/**
+		 * reads the attributes of a class, field or method and parses the runtime visible annotations
+		 *
+		 * @return annotations
+		 *
+		 * @throws IOException malformed class file
+		 */
+		private List<AnnotationInfo> readAnnotations() throws IOException {
+			final List<AnnotationInfo> annotations = new ArrayList<>();
+			final int                  count       = this.in.readUnsignedShort();
+			for (int i = 0; i < count; i++) {
+				final String name   = this.utf8[this.in.readUnsignedShort()];
+				final int    length = this.in.readInt();
+				if (ClassFileScanner.RUNTIME.equals(name)) {
+					final int annotationCount = this.in.readUnsignedShort();
+					for (int j = 0; j < annotationCount; j++) {
+						annotations.add(this.readAnnotation());
+					}
+				} else {
+					this.in.skipBytes(length);
+				}
+			}
+			return annotations;
+		}
+
+		/**
+		 * reads a single annotation
+		 *
+		 * @return annotation
+		 *
+		 * @throws IOException malformed class file
+		 */
+		private AnnotationInfo readAnnotation() throws IOException {
+			final String              descriptor = this.utf8[this.in.readUnsignedShort()];
+			final int                 count      = this.in.readUnsignedShort();
+			final Map<String, Object> values     = new HashMap<>();
+			for (int i = 0; i < count; i++) {
+				final String name = this.utf8[this.in.readUnsignedShort()];
+				values.put(name, this.readValue());
+			}
+			return new AnnotationInfo(descriptor, values);
+		}
+
+		/**
+		 * reads the value of an annotation element. Only the values, which are needed by the extension annotations, are kept.
+		 *
+		 * @return value or null
+		 *
+		 * @throws IOException malformed class file
+		 */
+		private Object readValue() throws IOException {
+			final int tag = this.in.readUnsignedByte();
+			switch (tag) {
+				case 's':
+					return this.utf8[this.in.readUnsignedShort()];
+				case 'e':
+					this.in.readUnsignedShort();
+					return this.utf8[this.in.readUnsignedShort()];
+				case '@':
+					return this.readAnnotation();
+				case '[': {
+					final int          count  = this.in.readUnsignedShort();
+					final List<Object> values = new ArrayList<>();
+					for (int i = 0; i < count; i++) {
+						values.add(this.readValue());
+					}
+					return values;
+				}
+				case 'B':
+				case 'C':
+				case 'D':
+				case 'F':
+				case 'I':
+				case 'J':
+				case 'S':
+				case 'Z':
+				case 'c':
+					this.in.readUnsignedShort();
+					return null;
+				default:
+					throw new IOException(String.format("Unknown element value tag %c", tag));
+			}
+		}
+	}
+}
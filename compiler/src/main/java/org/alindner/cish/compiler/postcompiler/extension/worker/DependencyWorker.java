@@ -3,70 +3,44 @@ package org.alindner.cish.compiler.postcompiler.extension.worker;
 import lombok.extern.log4j.Log4j2;
 import org.alindner.cish.compiler.postcompiler.extension.DependenciesMetaInfo;
 import org.alindner.cish.compiler.postcompiler.extension.FileInfo;
-import org.alindner.cish.compiler.postcompiler.predicates.Predicates;
+import org.alindner.cish.compiler.postcompiler.extension.maven.Artifact;
+import org.alindner.cish.compiler.postcompiler.extension.maven.MavenResolver;
 import org.alindner.cish.compiler.utils.CishPath;
 import org.alindner.cish.compiler.utils.Utils;
+import org.alindner.cish.extension.ExtensionIndex;
 import org.alindner.cish.extension.Type;
 import org.alindner.cish.extension.Version;
-import org.alindner.cish.extension.annotations.*;
-import org.reflections.Reflections;
-import org.reflections.scanners.*;
-import org.reflections.util.ClasspathHelper;
-import org.reflections.util.ConfigurationBuilder;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.Callable;
-import java.util.function.Predicate;
-import java.util.function.Supplier;
+import java.util.jar.JarFile;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
 
 /**
  * Handels the parsing and processing af an extension
  * <p>
- * it will dynamically read in the extension and search for classes and methods, which are annotated with {@link org.alindner.cish.extension.annotations.CishDependency}, using
- * reflections. This takes a lot of time, therefore this class is thread-ready. For this reason, most of the methods are private.
+ * Extensions, which were compiled with the annotation processor of the extension module, contain an {@link ExtensionIndex}. Otherwise the {@link ClassFileScanner} searches the
+ * class files of the extension for classes and methods, which are annotated with {@link org.alindner.cish.extension.annotations.CishExtension}. In both cases no class of the
+ * extension is loaded. Its predicates are registered by {@link org.alindner.cish.compiler.postcompiler.predicates.Predicates}, when the script runs. This class is
+ * thread-ready. For this reason, most of the methods are private.
  *
  * @author alindner
  * @since 0.7.0
  */
 @Log4j2
 public class DependencyWorker implements Callable<DependencyWorker> {
-	private final static List<String> objList = Arrays.stream(Object.class.getMethods()).map(Method::getName).distinct().collect(Collectors.toList());
-	static               Path         executable;
-	static {
-		DependencyWorker.executable = Arrays.stream(System.getenv("PATH").split(":"))
-		                                    .map(Path::of)
-		                                    .map(Path::normalize)
-		                                    .map(path -> {
-			                                    try {
-				                                    return path.toRealPath();
-			                                    } catch (final IOException ignored) {
-				                                    return null;
-			                                    }
-		                                    })
-		                                    .filter(Objects::nonNull)
-		                                    .map(path -> path.resolve("mvn").normalize())
-		                                    .map(path -> {
-			                                    try {
-				                                    return path.toRealPath();
-			                                    } catch (final IOException ignored) {
-				                                    return null;
-			                                    }
-		                                    })
-		                                    .filter(Objects::nonNull)
-		                                    .findFirst()
-		                                    .orElseThrow(() -> new Error("Couldn't find maven executable"));
-
-	}
+	private final static List<String>  objList  = Arrays.stream(Object.class.getMethods()).map(Method::getName).distinct().collect(Collectors.toList());
+	private final static MavenResolver resolver = MavenResolver.ofDefaults();
 	private final List<FileInfo> dependenciesList = new ArrayList<>();
 	private final Path           file;
 
@@ -75,28 +49,47 @@ public class DependencyWorker implements Callable<DependencyWorker> {
 	}
 
 	/**
-	 * parses the {@link MavenDependency} annotation
+	 * build a meta info object of a maven dependency
 	 *
-	 * @param mavenDependency annotation
+	 * @param groupId    maven groupid
+	 * @param artifactId maven artifactid
+	 * @param version    maven version
+	 * @param type       type of dependency
 	 *
-	 * @return parsed annotation
+	 * @return parsed dependency
 	 *
-	 * @throws MalformedURLException if the values inside the given annotation are wrong formatted
+	 * @throws MalformedURLException if the values are wrong formatted
 	 */
-	private static DependenciesMetaInfo buildMavenDependency(final MavenDependency mavenDependency) throws MalformedURLException {
+	private static DependenciesMetaInfo buildMavenDependency(final String groupId, final String artifactId, final String version, final Type type) throws MalformedURLException {
 		DependencyWorker.log.debug("Found a MavenDependencies dependency");
-		final Path basePath = DependencyWorker.buildPom(mavenDependency.value(), mavenDependency.name(), mavenDependency.version());
+		final Path basePath = DependencyWorker.resolveMaven(groupId, artifactId, version);
 
 		final DependenciesMetaInfo dep = DependenciesMetaInfo
 				.builder()
-				.type(mavenDependency.type())
+				.type(type)
 				.url(basePath.toUri().toURL())
-				.version(new Version(mavenDependency.version()))
+				.version(new Version(version))
 				.build();
 		DependencyWorker.log.debug("added dependency: {}", () -> dep);
 		return dep;
 	}
 
+	/**
+	 * build a meta info object of a dependency, which is listed in an {@link ExtensionIndex}
+	 *
+	 * @param dependency dependency of the index
+	 *
+	 * @return parsed dependency
+	 *
+	 * @throws MalformedURLException if the values inside the index are wrong formatted
+	 */
+	private static DependenciesMetaInfo buildIndexedDependency(final ExtensionIndex.Dependency dependency) throws MalformedURLException {
+		if (ExtensionIndex.Dependency.MAVEN.equals(dependency.getKind())) {
+			return DependencyWorker.buildMavenDependency(dependency.getValue(), dependency.getName(), dependency.getVersion(), dependency.getType());
+		}
+		return DependencyWorker.buildGenericDependency(dependency.getValue(), dependency.getType(), dependency.getVersion());
+	}
+
 	/**
 	 * build a meta info object based on a url.
 	 *
@@ -122,36 +115,7 @@ public class DependencyWorker implements Callable<DependencyWorker> {
 	}
 
 	/**
-	 * parses the {@link JavaDependency} annotation
-	 *
-	 * @param javaDependency annotation
-	 *
-	 * @return parsed annotation
-	 *
-	 * @throws MalformedURLException if the values inside the given annotation are wrong formatted
-	 */
-	private static DependenciesMetaInfo buildJavaDependency(final JavaDependency javaDependency) throws MalformedURLException {
-		return DependencyWorker.buildGenericDependency(javaDependency.value(), javaDependency.type(), javaDependency.version());
-	}
-
-	/**
-	 * parses the {@link JarDependency} annotation
-	 *
-	 * @param jarDependency annotation
-	 *
-	 * @return parsed annotation
-	 *
-	 * @throws MalformedURLException if the values inside the given annotation are wrong formatted
-	 */
-	private static DependenciesMetaInfo buildJarDependency(final JarDependency jarDependency) throws MalformedURLException {
-		DependencyWorker.log.debug("Found a JarDependencies dependency");
-		return DependencyWorker.buildGenericDependency(jarDependency.value(), jarDependency.type(), jarDependency.version());
-	}
-
-	/**
-	 * Generate a pom file for simple loading of the dependencies.
-	 * <p>
-	 * This a fast and easy implementation, however a java only variant would be better.
+	 * Resolves a maven artifact and its transitive dependencies with the {@link MavenResolver}. The jars are copied into one directory per artifact.
 	 *
 	 * @param groupId    maven groupid
 	 * @param artifactId maven artifactid
@@ -159,221 +123,101 @@ public class DependencyWorker implements Callable<DependencyWorker> {
 	 *
 	 * @return Url to jar file with it's dependencies next to the jar file
 	 */
-	static Path buildPom(final String groupId, final String artifactId, final String version) {
+	static Path resolveMaven(final String groupId, final String artifactId, final String version) {
 		final String hash = Utils.hash(String.format("%s:%s:%s", groupId, artifactId, version));
 		final Path   base = CishPath.ofTmp("downloads").resolve(hash);
-
 		try {
-			if (!Files.isDirectory(base)) {
-				Files.createDirectories(base);
-			}
-			if (!Files.isRegularFile(base.resolve("pom.xml"))) {
-				final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
-				                   "<project xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
-				                   "         xmlns=\"http://maven.apache.org/POM/4.0.0\"\n" +
-				                   "         xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd\">\n" +
-				                   "    <modelVersion>4.0.0</modelVersion>\n" +
-				                   "    <groupId>" + hash + "</groupId>\n" +
-				                   "    <artifactId>demoExtension</artifactId>\n" +
-				                   "    <version>0.0.1</version>\n" +
-				                   "    <dependencies>\n" +
-				                   "        <dependency>\n" +
-				                   "            <groupId>" + groupId + "</groupId>\n" +
-				                   "            <artifactId>" + artifactId + "</artifactId>\n" +
-				                   "            <version>" + version + "</version>\n" +
-				                   "        </dependency>\n" +
-				                   "    </dependencies>\n" +
-				                   "</project>";
-				Files.write(base.resolve("pom.xml"), xml.getBytes(StandardCharsets.UTF_8));
-			}
-			final ProcessBuilder pb = new ProcessBuilder(DependencyWorker.executable.toString(), "-DoutputDirectory=./", "dependency:copy-dependencies");
-			pb.environment().put("JAVA_HOME", System.getProperty("java.home"));
-			pb.directory(base.toFile());
-			final Process p = pb.start();
-
-			p.waitFor();
-		} catch (final InterruptedException | IOException e) {
+			return DependencyWorker.resolver.resolve(new Artifact(groupId, artifactId, version, "jar", null), base).get(0);
+		} catch (final IOException e) {
 			DependencyWorker.log.error(String.format("Couldn't download dependencies. GroupId: %s, ArtifactID: %s, version: %s", groupId, artifactId, version), e);
 		}
 		return base.resolve(String.format("%s-%s.jar", artifactId, version));
+	}
 
+	/**
+	 * get the build list of dependencies
+	 *
+	 * @return list of dependencies
+	 */
+	public List<FileInfo> getDependenciesList() {
+		return this.dependenciesList;
 	}
 
 	/**
-	 * get all dependencies a method relies on
+	 * reads the {@link ExtensionIndex} of the extension
 	 *
-	 * @param method method
+	 * @return index or nothing, if the extension doesn't contain one
 	 *
-	 * @return list of dependencies
+	 * @throws IOException the extension or the index can't be read
 	 */
-	private List<DependenciesMetaInfo> buildMethodDependenciesList(final Method method) {
-		final List<DependenciesMetaInfo> dependencies = new ArrayList<>();
-		try {
-			for (final MavenDependencies mavenDependencies : method.getAnnotationsByType(MavenDependencies.class)) {
-				for (final MavenDependency mavenDependency : mavenDependencies.value()) {
-					dependencies.add(DependencyWorker.buildMavenDependency(mavenDependency));
-				}
-			}
-			for (final MavenDependency mavenDependency : method.getAnnotationsByType(MavenDependency.class)) {
-				dependencies.add(DependencyWorker.buildMavenDependency(mavenDependency));
-			}
-			if (method.isAnnotationPresent(JarDependencies.class)) {
-				for (final JarDependency jarDependency : method.getAnnotation(JarDependencies.class).value()) {
-					dependencies.add(DependencyWorker.buildJarDependency(jarDependency));
-				}
-			}
-			for (final JarDependency jarDependency : method.getAnnotationsByType(JarDependency.class)) {
-				dependencies.add(DependencyWorker.buildJarDependency(jarDependency));
-			}
-			if (method.isAnnotationPresent(JavaDependencies.class)) {
-				for (final JavaDependency javaDependency : method.getAnnotation(JavaDependencies.class).value()) {
-					dependencies.add(DependencyWorker.buildJavaDependency(javaDependency));
-				}
+	private Optional<ExtensionIndex> readIndex() throws IOException {
+		if (!Files.isRegularFile(this.file)) {
+			return Optional.empty();
+		}
+		try (final JarFile jarFile = new JarFile(this.file.toFile())) {
+			final ZipEntry entry = jarFile.getEntry(ExtensionIndex.LOCATION);
+			if (entry == null) {
+				return Optional.empty();
 			}
-			for (final JavaDependency javaDependency : method.getAnnotationsByType(JavaDependency.class)) {
-				dependencies.add(DependencyWorker.buildJavaDependency(javaDependency));
+			try (final Reader reader = new InputStreamReader(jarFile.getInputStream(entry), StandardCharsets.UTF_8)) {
+				return Optional.of(ExtensionIndex.read(reader));
 			}
-		} catch (final MalformedURLException e) {
-			DependencyWorker.log.error(String.format(
-					"Couldn't parse URL from a given extensions. This will most probably a bug in the extension itself. Extension file: %s",
-					this.file
-			), e);
 		}
-		return dependencies;
 	}
 
 	/**
-	 * get the build list of dependencies
-	 *
-	 * @return list of dependencies
+	 * parses all dependencies for the given file. The {@link ExtensionIndex} is used, if the extension contains one. Otherwise the class files of the extension are scanned.
 	 */
-	public List<FileInfo> getDependenciesList() {
-		return this.dependenciesList;
+	private void buildQueue() {
+		DependencyWorker.log.debug("Search for the extension in {}", this.file::toAbsolutePath);
+		final ExtensionIndex index;
+		try {
+			final Optional<ExtensionIndex> prebuilt = this.readIndex();
+			if (prebuilt.isPresent()) {
+				index = prebuilt.get();
+			} else {
+				DependencyWorker.log.debug("{} doesn't contain an extension index, scanning its class files", this.file);
+				index = ClassFileScanner.scan(this.file);
+			}
+		} catch (final IOException e) {
+			DependencyWorker.log.error("Couldn't read in extension. The provided file {} doesn't behave as expected.", () -> this.file);
+			DependencyWorker.log.error("Exception is: ", e);
+			return;
+		}
+		this.buildQueue(index);
 	}
 
 	/**
-	 * parses all dependencies for the given file using reflection.
+	 * builds the list of dependencies of an extension, which contains an index
+	 *
+	 * @param index index of the extension
 	 */
-	private void buildQueue() {
+	private void buildQueue(final ExtensionIndex index) {
+		DependencyWorker.log.debug("Read the extension index of {}", this.file);
 		try {
-			DependencyWorker.log.debug("Search for the extension in {}", this.file::toAbsolutePath);
-
-			final ClassLoader     loader = URLClassLoader.newInstance(new URL[]{this.file.toUri().toURL()}, DependencyWorker.class.getClassLoader());
-			final Collection<URL> c      = new ArrayList<>(ClasspathHelper.forPackage("", loader));
-			c.add(this.file.toUri().toURL());
-			DependencyWorker.log.debug("Build the reflection scanner for the following urls: {}", () -> c);
-			final Reflections reflections = new Reflections(
-					new ConfigurationBuilder()
-							.addClassLoader(loader)
-							.addScanners(
-									new TypeAnnotationsScanner(),
-									new MethodParameterScanner(),
-									new MethodParameterNamesScanner(),
-									new TypeElementsScanner(),
-									new MemberUsageScanner(),
-									new SubTypesScanner(),
-									new MethodAnnotationsScanner(),
-									new ResourcesScanner()
-							)
-							.addUrls(c)
-			);
-			DependencyWorker.log.debug("Search for @CishExtension");
-			final Set<Class<?>> annotated = reflections.getTypesAnnotatedWith(CishExtension.class);
-			DependencyWorker.log.debug("Found this list of annotated @CishExtension classes: {}", () -> annotated);
-			for (final Class<?> currentClass : annotated) {
-				final CishExtension annotationCishExtension = currentClass.getAnnotation(CishExtension.class);
-				final String        name                    = currentClass.getCanonicalName();
-				DependencyWorker.log.debug("Extension was successful found: {}@{}", () -> name, annotationCishExtension::value);
-
-
-				final List<String> providedClasses = new ArrayList<>();
-				providedClasses.add(currentClass.getCanonicalName());
-//todo
-				DependencyWorker.log.debug("Search for dependencies");
+			for (final ExtensionIndex.Extension extension : index.getExtensions()) {
 				final List<DependenciesMetaInfo> dependencies = new ArrayList<>();
-				if (currentClass.isAnnotationPresent(MavenDependency.class)) {
-					for (final MavenDependency mavenDependency : currentClass.getAnnotationsByType(MavenDependency.class)) {
-						dependencies.add(DependencyWorker.buildMavenDependency(mavenDependency));
-					}
-				}
-				if (currentClass.isAnnotationPresent(JarDependency.class)) {
-					for (final JarDependency jarDependency : currentClass.getAnnotationsByType(JarDependency.class)) {
-						dependencies.add(DependencyWorker.buildJarDependency(jarDependency));
-					}
+				for (final ExtensionIndex.Dependency dependency : extension.getDependencies()) {
+					dependencies.add(DependencyWorker.buildIndexedDependency(dependency));
 				}
-				if (currentClass.isAnnotationPresent(JavaDependency.class)) {
-					DependencyWorker.log.debug("Found a JavaDependency dependency");
-					for (final JavaDependency javaDependency : currentClass.getAnnotationsByType(JavaDependency.class)) {
-						dependencies.add(DependencyWorker.buildJavaDependency(javaDependency));
-					}
-				}
-
-				DependencyWorker.log.debug("search for methods and their dependencies and conflicts");
-				final List<String> methods = new ArrayList<>();
-				for (final Method method : currentClass.getMethods()) {
-					final List<DependenciesMetaInfo> deps = this.buildMethodDependenciesList(method);
-					if (!deps.isEmpty()) {
-						DependencyWorker.log.debug("Found the following dependency list: {}", () -> deps);
-					}
-					dependencies.addAll(deps);
-					methods.add(method.getName());
-				}
-
-
 				final FileInfo entry;
 				this.dependenciesList.add(
 						entry = FileInfo.builder()
 						                .file(this.file)
-						                .version(new Version(annotationCishExtension.value()))
-						                .name(name)
-						                .provides(providedClasses.stream().distinct().collect(Collectors.toList()))
+						                .version(new Version(extension.getVersion()))
+						                .name(extension.getName())
+						                .provides(List.of(extension.getName()))
 						                .dependencies(dependencies.stream().distinct().collect(Collectors.toList()))
-						                .methods(methods.stream().distinct().filter(s -> !DependencyWorker.objList.contains(s)).collect(Collectors.toList()))
+						                .methods(extension.getMethods().stream().distinct().filter(s -> !DependencyWorker.objList.contains(s)).collect(Collectors.toList()))
 						                .build()
 				);
 				DependencyWorker.log.debug("Adding final file to queue: {}", () -> entry);
 			}
-			DependencyWorker.log.debug("Search for methods annotated with @CishExtension");
-			final Set<Method> annotatedMethods = reflections.getMethodsAnnotatedWith(CishExtension.class);
-			annotatedMethods.forEach(method -> {
-				final CishExtension annotation = method.getAnnotation(CishExtension.class);
-				final List<String>  classes    = List.of(annotation.getClass().getCanonicalName());
-				DependencyWorker.log.debug("Found the following conflicts list: {}", () -> classes);
-				final List<DependenciesMetaInfo> deps = this.buildMethodDependenciesList(method);
-				if (!deps.isEmpty()) {
-					DependencyWorker.log.debug("Found the following dependency list: {}", () -> deps);
-				}
-				final FileInfo entry;
-				this.dependenciesList.add(
-						entry = FileInfo.builder()
-						                .file(this.file)
-						                .version(new Version(annotation.value()))
-						                .name(method.getClass().getCanonicalName())
-						                .provides(classes)
-						                .dependencies(deps.stream().distinct().collect(Collectors.toList()))
-						                .methods(List.of(method.getName()))
-						                .build()
-				);
-				DependencyWorker.log.debug("Adding final file to queue: {}", () -> entry);
-			});
-
-			DependencyWorker.log.debug("Search for predicates (methods annotated with @CishPredicate)");
-			final Set<Method> predicateMethods = reflections.getMethodsAnnotatedWith(CishPredicate.class);
-			for (final Method predicateMethod : predicateMethods) {
-				DependencyWorker.log.debug("Found this predicate: {}", () -> predicateMethod);
-				final String name = predicateMethod.getAnnotation(CishPredicate.class).value();
-				try {
-					final Predicate<?>                          t    = (Predicate<?>) predicateMethod.invoke(null);
-					final Map<Class<?>, Supplier<Predicate<?>>> list = Map.of(predicateMethod.getDeclaringClass(), () -> t);
-					DependencyWorker.log.debug("Built predicate: {}", () -> list);
-					Predicates.addPredicate(name, list);
-				} catch (final IllegalAccessException | InvocationTargetException e) {
-					DependencyWorker.log.error("Couldn't build predicate.", e);
-				}
-			}
-		} catch (final NullPointerException | MalformedURLException e) {
-			DependencyWorker.log.error("Couldn't read in extension. The provided file {} doesn't behave as expected.", () -> this.file);
-			DependencyWorker.log.error("Exception is: ", e);
+		} catch (final MalformedURLException e) {
+			DependencyWorker.log.error(String.format(
+					"Couldn't parse URL from a given extensions. This will most probably a bug in the extension itself. Extension file: %s",
+					this.file
+			), e);
 		}
 	}
 
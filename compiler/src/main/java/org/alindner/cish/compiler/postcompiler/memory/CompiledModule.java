@@ -0,0 +1,196 @@
+package org.alindner.cish.compiler.postcompiler.memory;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReader;
+import java.lang.module.ModuleReference;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A JPMS module, which was compiled to memory.
+ * <p>
+ * It can be used as a {@link ModuleFinder}, so the module can be defined in a {@link ModuleLayer} without writing the class files to disk first.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class CompiledModule {
+	private static final String              MODULE_INFO = "module-info";
+	private final        String              name;
+	private final        Map<String, byte[]> classes;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name    name of the module
+	 * @param classes map of binary class names and their byte code
+	 */
+	public CompiledModule(final String name, final Map<String, byte[]> classes) {
+		this.name = name;
+		this.classes = classes;
+	}
+
+	/**
+	 * reads in a module, which was written by {@link #store(Path)}
+	 *
+	 * @param name      name of the module
+	 * @param moduleDir directory of the exploded module
+	 *
+	 * @return module
+	 *
+	 * @throws IOException read error
+	 */
+	public static CompiledModule load(final String name, final Path moduleDir) throws IOException {
+		final Map<String, byte[]> classes = new TreeMap<>();
+		try (final Stream<Path> files = Files.walk(moduleDir)) {
+			for (final Path file : files.filter(path -> path.toString().endsWith(".class")).collect(Collectors.toList())) {
+				final String resourceName = moduleDir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+				classes.put(resourceName.substring(0, resourceName.length() - ".class".length()).replace('/', '.'), Files.readAllBytes(file));
+			}
+		}
+		return new CompiledModule(name, classes);
+	}
+
+	/**
+	 * converts a binary class name to the resource name inside a module
+	 *
+	 * @param className binary class name
+	 *
+	 * @return resource name, like <code>main/Main.class</code>
+	 */
+	private static String toResourceName(final String className) {
+		return className.replace('.', '/') + ".class";
+	}
+
+	/**
+	 * get the name of the module
+	 *
+	 * @return module name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * get the classes of this module
+	 *
+	 * @return map of binary class names and their byte code
+	 */
+	public Map<String, byte[]> getClasses() {
+		return this.classes;
+	}
+
+	/**
+	 * get all packages, which are contained in this module
+	 *
+	 * @return set of package names
+	 */
+	public Set<String> getPackages() {
+		return this.classes.keySet()
+		                   .stream()
+		                   .filter(className -> className.contains("."))
+		                   .map(className -> className.substring(0, className.lastIndexOf('.')))
+		                   .collect(Collectors.toSet());
+	}
+
+	/**
+	 * read in the module descriptor from the compiled module-info.class
+	 *
+	 * @return module descriptor
+	 */
+	public ModuleDescriptor getDescriptor() {
+		return ModuleDescriptor.read(ByteBuffer.wrap(this.classes.get(CompiledModule.MODULE_INFO)), this::getPackages);
+	}
+
+	/**
+	 * generates a module finder, which finds exactly this module
+	 *
+	 * @return module finder
+	 */
+	public ModuleFinder asFinder() {
+		final ModuleReference reference = new ModuleReference(this.getDescriptor(), null) {
+			@Override
+			public ModuleReader open() {
+				return new Reader();
+			}
+		};
+		return new ModuleFinder() {
+			@Override
+			public Optional<ModuleReference> find(final String name) {
+				return CompiledModule.this.name.equals(name) ? Optional.of(reference) : Optional.empty();
+			}
+
+			@Override
+			public Set<ModuleReference> findAll() {
+				return Set.of(reference);
+			}
+		};
+	}
+
+	/**
+	 * writes the module as exploded module to the given directory. This fills the cache, so the next run doesn't need to compile again.
+	 *
+	 * @param target directory, which will contain a directory named like the module
+	 *
+	 * @throws IOException writing failed
+	 */
+	public void store(final Path target) throws IOException {
+		final Path moduleDir = target.resolve(this.name);
+		if (Files.exists(moduleDir)) {
+			FileUtils.deleteDirectory(moduleDir.toFile());
+		}
+		for (final Map.Entry<String, byte[]> entry : this.classes.entrySet()) {
+			final Path file = moduleDir.resolve(CompiledModule.toResourceName(entry.getKey()));
+			Files.createDirectories(file.getParent());
+			Files.write(file, entry.getValue());
+		}
+		CompiledModule.log.debug("Stored compiled module {} to {}", () -> this.name, () -> moduleDir);
+	}
+
+	/**
+	 * reads the classes directly from memory
+	 */
+	private class Reader implements ModuleReader {
+		private final Map<String, byte[]> resources = CompiledModule.this.classes.entrySet()
+		                                                                         .stream()
+		                                                                         .collect(Collectors.toMap(
+				                                                                         entry -> CompiledModule.toResourceName(entry.getKey()),
+				                                                                         Map.Entry::getValue
+		                                                                         ));
+
+		@Override
+		public Optional<URI> find(final String name) {
+			return this.resources.containsKey(name)
+			       ? Optional.of(URI.create(String.format("memory:///%s/%s", CompiledModule.this.name, name)))
+			       : Optional.empty();
+		}
+
+		@Override
+		public Optional<ByteBuffer> read(final String name) {
+			return Optional.ofNullable(this.resources.get(name)).map(ByteBuffer::wrap);
+		}
+
+		@Override
+		public Stream<String> list() {
+			return this.resources.keySet().stream();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package org.alindner.cish.compiler.postcompiler.memory;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * A file manager for javac, which catches all generated class files in memory.
+ * <p>
+ * Everything else, like reading in the modules of the module path, is forwarded to the standard file manager.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+public class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+	private final Map<String, JavaClass> classes = new TreeMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileManager the standard file manager of the system compiler
+	 */
+	public InMemoryFileManager(final StandardJavaFileManager fileManager) {
+		super(fileManager);
+	}
+
+	@Override
+	public JavaFileObject getJavaFileForOutput(final Location location, final String className, final JavaFileObject.Kind kind, final FileObject sibling) throws IOException {
+		if (location == StandardLocation.CLASS_OUTPUT && kind == JavaFileObject.Kind.CLASS) {
+			final JavaClass javaClass = new JavaClass(className);
+			this.classes.put(className, javaClass);
+			return javaClass;
+		}
+		return super.getJavaFileForOutput(location, className, kind, sibling);
+	}
+
+	/**
+	 * get all compiled classes
+	 *
+	 * @return map of binary class names and their byte code
+	 */
+	public Map<String, byte[]> getClasses() {
+		return this.classes.values()
+		                   .stream()
+		                   .collect(Collectors.toMap(JavaClass::getClassName, JavaClass::getBytes, (a, b) -> b, TreeMap::new));
+	}
+}
@@ -0,0 +1,51 @@
+package org.alindner.cish.compiler.postcompiler.memory;
+
+import javax.tools.SimpleJavaFileObject;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * A compiled class, which is written by javac to memory instead of the filesystem
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+public class JavaClass extends SimpleJavaFileObject {
+	private final String                className;
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+	/**
+	 * Constructor
+	 *
+	 * @param className binary name of the class, like <code>main.Main</code>
+	 */
+	public JavaClass(final String className) {
+		super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+		this.className = className;
+	}
+
+	@Override
+	public OutputStream openOutputStream() {
+		this.bytes.reset();
+		return this.bytes;
+	}
+
+	/**
+	 * get the binary name of the class
+	 *
+	 * @return class name
+	 */
+	public String getClassName() {
+		return this.className;
+	}
+
+	/**
+	 * get the byte code javac has written
+	 *
+	 * @return byte code
+	 */
+	public byte[] getBytes() {
+		return this.bytes.toByteArray();
+	}
+}
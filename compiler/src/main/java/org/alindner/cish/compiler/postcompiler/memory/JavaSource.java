@@ -0,0 +1,54 @@
+package org.alindner.cish.compiler.postcompiler.memory;
+
+import org.alindner.cish.compiler.precompiler.LineMap;
+
+import javax.tools.SimpleJavaFileObject;
+import java.net.URI;
+
+/**
+ * A java source file, which only lives in memory
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+public class JavaSource extends SimpleJavaFileObject {
+	private final String  content;
+	private final LineMap lineMap;
+
+	/**
+	 * Constructor
+	 *
+	 * @param relativePath path inside of the module, like <code>main/Main.java</code>
+	 * @param content      java code
+	 */
+	public JavaSource(final String relativePath, final String content) {
+		this(relativePath, content, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param relativePath path inside of the module, like <code>main/Main.java</code>
+	 * @param content      java code
+	 * @param lineMap      maps the lines of the java code to the lines of the script or null, if it isn't generated from a script
+	 */
+	public JavaSource(final String relativePath, final String content, final LineMap lineMap) {
+		super(URI.create("string:///" + relativePath), Kind.SOURCE);
+		this.content = content;
+		this.lineMap = lineMap;
+	}
+
+	/**
+	 * get the line map of this source
+	 *
+	 * @return line map or null, if the source isn't generated from a script
+	 */
+	public LineMap getLineMap() {
+		return this.lineMap;
+	}
+
+	@Override
+	public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+		return this.content;
+	}
+}
@@ -2,16 +2,13 @@ package org.alindner.cish.compiler.postcompiler.predicates;
 
 import lombok.extern.log4j.Log4j2;
 
-import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 import java.util.function.Predicate;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 /**
  * This class executes predicates predicate
  * <p>
- * to do so, it access all registered class from {@code Predicates#predicates}.
+ * to do so, it looks up the predicate for the class of the tested object in {@link Predicates}.
  */
 @Log4j2
 public class Is {
@@ -25,34 +22,9 @@ public class Is {
 	 * @return does {@code obj} matches {@code predicate}
 	 */
 	public static <T> boolean is(final T obj, final String predicate) {
-		final Map<String, Map<Class<?>, Supplier<Predicate<?>>>> res =
-				Predicates.predicates.entrySet()
-				                     .stream()
-				                     .map(
-						                     classMapEntry -> Map.of(
-								                     "is" + Is.toCamelCase(classMapEntry.getKey()),
-								                     classMapEntry.getValue()
-						                     )
-				                     )
-				                     .flatMap(map -> map.entrySet().stream())
-				                     .collect(
-						                     Collectors.toMap(
-								                     Map.Entry::getKey,
-								                     Map.Entry::getValue
-						                     )
-				                     );
-
-		if (res.containsKey(predicate)) {
-			final List<Supplier<Predicate<?>>> result = res.get(predicate)
-			                                               .entrySet()
-			                                               .stream()
-			                                               .filter(classSupplierEntry -> classSupplierEntry.getKey().isAssignableFrom(obj.getClass()))
-			                                               .map(Map.Entry::getValue)
-			                                               .collect(Collectors.toList());
-			if (result.size() > 0) {
-				final Predicate<T> pred = (Predicate<T>) result.get(0).get();
-				return pred.test(obj);
-			}
+		final Optional<Predicate<?>> result = Predicates.find(predicate, obj.getClass());
+		if (result.isPresent()) {
+			return ((Predicate<T>) result.get()).test(obj);
 		}
 		Is.log.fatal("Predicate wasn't found.", new Exception());
 		return false;
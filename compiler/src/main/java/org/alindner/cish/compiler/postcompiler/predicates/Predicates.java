@@ -1,25 +1,202 @@
 package org.alindner.cish.compiler.postcompiler.predicates;
 
-import java.util.HashMap;
-import java.util.Map;
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.extension.ExtensionIndex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.module.ModuleReader;
+import java.lang.module.ResolvedModule;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 /**
  * Management class of predicates
+ * <p>
+ * The predicates are registered by their method name, e.g. <code>isZip</code> for <code>@CishPredicate("zip")</code>. The predicate matching a receiver class is looked up once
+ * per predicate and class and cached in a {@link ClassValue}. The predicates of the extensions are read from the {@link ExtensionIndex} of the modules of the layers, which
+ * were added by {@link #addLayer(ModuleLayer)}, on the first lookup.
  */
+@Log4j2
 public class Predicates {
+	private static final String                                             EXTENSION_MODULE = "cish.extension";
 	/**
 	 * all predicate which are used from the {@see Is} class.
 	 */
-	static Map<String, Map<Class<?>, Supplier<Predicate<?>>>> predicates = new HashMap<>();
+	private static final Map<String, Map<Class<?>, Supplier<Predicate<?>>>> predicates       = new ConcurrentHashMap<>();
+	private static final Map<String, ClassValue<Optional<Predicate<?>>>>    dispatchers      = new ConcurrentHashMap<>();
+	private static final Queue<WeakReference<ModuleLayer>>                  pending          = new ConcurrentLinkedQueue<>();
+	private static final Set<ModuleLayer>                                   layers           = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
 
 	/**
-	 * add a predicate to the current active list
+	 * add a predicate to the current active list. Predicates with the same name, but other receiver classes, are kept.
 	 *
 	 * @param cishPredicate predicate
+	 * @param mapping       receiver classes and the suppliers of the predicates for them
 	 */
 	public static void addPredicate(final String cishPredicate, final Map<Class<?>, Supplier<Predicate<?>>> mapping) {
-		Predicates.predicates.put(cishPredicate, mapping);
+		final String name = Predicates.methodName(cishPredicate);
+		Predicates.predicates.merge(name, Collections.unmodifiableMap(new LinkedHashMap<>(mapping)), (current, added) -> {
+			final Map<Class<?>, Supplier<Predicate<?>>> merged = new LinkedHashMap<>(current);
+			merged.putAll(added);
+			return Collections.unmodifiableMap(merged);
+		});
+		Predicates.dispatchers.remove(name);
+	}
+
+	/**
+	 * registers the predicates of the extensions of a module layer and its parents. They are read on the first lookup of a predicate, so running a script without predicates
+	 * costs nothing. Every layer is only read once.
+	 * <p>
+	 * A layer, which wasn't read yet, is only referenced weakly. A layer, which was unloaded in the meantime, is dropped, so a long running process, which never looks up a
+	 * predicate, doesn't keep its layers.
+	 *
+	 * @param layer module layer
+	 */
+	public static void addLayer(final ModuleLayer layer) {
+		Predicates.pending.removeIf(reference -> reference.get() == null);
+		if (Predicates.layers.add(layer)) {
+			Predicates.pending.add(new WeakReference<>(layer));
+			layer.parents().forEach(Predicates::addLayer);
+		}
+	}
+
+	/**
+	 * get the method name, which is used for a predicate in a script
+	 * <p>
+	 * {@code Example: zip_file ---> isZipFile}
+	 *
+	 * @param cishPredicate name of the predicate
+	 *
+	 * @return method name
+	 */
+	public static String methodName(final String cishPredicate) {
+		return "is" + Is.toCamelCase(cishPredicate);
+	}
+
+	/**
+	 * get the predicate for a receiver class
+	 *
+	 * @param name method name of the predicate, e.g. <code>isZip</code>
+	 * @param type class of the tested object
+	 *
+	 * @return predicate, if one is registered for the class or one of its super classes
+	 */
+	static Optional<Predicate<?>> find(final String name, final Class<?> type) {
+		Predicates.registerPendingLayers();
+		return Predicates.dispatchers.computeIfAbsent(name, key -> Predicates.dispatcher(Predicates.predicates.getOrDefault(key, Map.of()))).get(type);
+	}
+
+	/**
+	 * builds the dispatch cache of a predicate
+	 *
+	 * @param mapping receiver classes and the suppliers of the predicates for them
+	 *
+	 * @return cache, which holds the predicate per receiver class
+	 */
+	private static ClassValue<Optional<Predicate<?>>> dispatcher(final Map<Class<?>, Supplier<Predicate<?>>> mapping) {
+		return new ClassValue<>() {
+			@Override
+			protected Optional<Predicate<?>> computeValue(final Class<?> type) {
+				return mapping.entrySet().stream().filter(entry -> entry.getKey().isAssignableFrom(type)).findFirst().map(entry -> entry.getValue().get());
+			}
+		};
+	}
+
+	/**
+	 * reads the predicates of the added layers. The layers are only removed from the queue after they are registered, so a concurrent lookup waits for them.
+	 */
+	private static void registerPendingLayers() {
+		if (Predicates.pending.isEmpty()) {
+			return;
+		}
+		synchronized (Predicates.pending) {
+			WeakReference<ModuleLayer> reference;
+			while ((reference = Predicates.pending.peek()) != null) {
+				final ModuleLayer layer = reference.get();
+				if (layer != null) {
+					Predicates.register(layer);
+				}
+				Predicates.pending.remove(reference);
+			}
+		}
+	}
+
+	/**
+	 * registers the predicates of all modules of a layer, which contain an {@link ExtensionIndex}. Only modules, which require the extension module, are read.
+	 *
+	 * @param layer module layer
+	 */
+	private static void register(final ModuleLayer layer) {
+		for (final ResolvedModule module : layer.configuration().modules()) {
+			if (module.reference().descriptor().requires().stream().noneMatch(requires -> requires.name().equals(Predicates.EXTENSION_MODULE))) {
+				continue;
+			}
+			final ExtensionIndex index;
+			try (final ModuleReader moduleReader = module.reference().open()) {
+				final Optional<InputStream> is = moduleReader.open(ExtensionIndex.LOCATION);
+				if (is.isEmpty()) {
+					continue;
+				}
+				try (final Reader reader = new InputStreamReader(is.get(), StandardCharsets.UTF_8)) {
+					index = ExtensionIndex.read(reader);
+				}
+			} catch (final IOException e) {
+				Predicates.log.error(String.format("Couldn't read the extension index of %s", module.name()), e);
+				continue;
+			}
+			final ClassLoader loader = layer.findLoader(module.name());
+			index.getPredicates().forEach(predicate -> Predicates.register(loader, predicate));
+		}
+	}
+
+	/**
+	 * registers a predicate of an extension
+	 *
+	 * @param loader    class loader of the extension
+	 * @param predicate predicate of the index
+	 */
+	private static void register(final ClassLoader loader, final ExtensionIndex.Predicate predicate) {
+		Predicates.log.debug("Found this predicate: {}#{}", predicate::getClassName, predicate::getMethod);
+		try {
+			final Method       method   = Class.forName(predicate.getClassName(), true, loader).getMethod(predicate.getMethod());
+			final Predicate<?> instance = (Predicate<?>) method.invoke(null);
+			Predicates.addPredicate(predicate.getName(), Map.of(Predicates.receiverType(method), () -> instance));
+		} catch (final ReflectiveOperationException | ClassCastException e) {
+			Predicates.log.error("Couldn't build predicate.", e);
+		}
+	}
+
+	/**
+	 * get the class, which a predicate tests, from the return type of the method, e.g. {@link java.nio.file.Path} for <code>Predicate&lt;? super Path&gt;</code>
+	 *
+	 * @param method method, which returns the predicate
+	 *
+	 * @return receiver class or {@link Object}, if it is unknown
+	 */
+	static Class<?> receiverType(final Method method) {
+		if (!(method.getGenericReturnType() instanceof ParameterizedType)) {
+			return Object.class;
+		}
+		Type argument = ((ParameterizedType) method.getGenericReturnType()).getActualTypeArguments()[0];
+		if (argument instanceof WildcardType) {
+			final WildcardType wildcard = (WildcardType) argument;
+			argument = wildcard.getLowerBounds().length > 0 ? wildcard.getLowerBounds()[0] : wildcard.getUpperBounds()[0];
+		}
+		if (argument instanceof ParameterizedType) {
+			argument = ((ParameterizedType) argument).getRawType();
+		}
+		return argument instanceof Class ? (Class<?>) argument : Object.class;
 	}
-}
\ No newline at end of file
+}
@@ -2,15 +2,18 @@ package org.alindner.cish.compiler.precompiler;
 
 import lombok.Getter;
 import org.alindner.cish.compiler.ScriptMetaInfo;
+import org.alindner.cish.compiler.precompiler.ast.Script;
 import org.alindner.cish.compiler.precompiler.jj.ParseException;
 import org.alindner.cish.compiler.precompiler.jj.Parser;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * a middleware to the targeted cish compiler
@@ -20,12 +23,32 @@ public class CishCompiler {
 
 	private final boolean        debug;
 	private final ScriptMetaInfo cishFile;
+	private final List<Path>     includeChain;
 	private       String         content;
-	private       Parser         parser;
+	private       Script         script;
+	private       JavaGenerator  generator;
 
+	/**
+	 * Constructor
+	 *
+	 * @param debug    debug mode
+	 * @param cishFile script, which is compiled
+	 */
 	public CishCompiler(final boolean debug, final ScriptMetaInfo cishFile) {
+		this(debug, cishFile, List.of(IncludeCache.canonical(cishFile.getScript())));
+	}
+
+	/**
+	 * Constructor, which is used to compile an included file
+	 *
+	 * @param debug        debug mode
+	 * @param cishFile     script, which is compiled
+	 * @param includeChain canonical paths of the files, which are currently expanded, starting with the root script
+	 */
+	CishCompiler(final boolean debug, final ScriptMetaInfo cishFile, final List<Path> includeChain) {
 		this.debug = debug;
 		this.cishFile = cishFile;
+		this.includeChain = includeChain;
 	}
 
 	/**
@@ -36,8 +59,7 @@ public class CishCompiler {
 	 * @throws ParseException syntax error
 	 */
 	public CishCompiler compile(final Path file) throws ParseException, FileNotFoundException {
-		this.parser = new Parser(new FileInputStream(file.toFile()), false, this.cishFile);
-		this.doCompile();
+		this.doCompile(new Parser(new FileInputStream(file.toFile()), Charset.defaultCharset()), false);
 		return this;
 	}
 
@@ -50,8 +72,7 @@ public class CishCompiler {
 	 * @throws ParseException syntax error
 	 */
 	public CishCompiler compile(final String content, final boolean renderClass) throws ParseException {
-		this.parser = new Parser(new StringReader(content), renderClass, this.cishFile);
-		this.doCompile();
+		this.doCompile(new Parser(new StringReader(content)), renderClass);
 		return this;
 	}
 
@@ -72,24 +93,22 @@ public class CishCompiler {
 	 * @throws ParseException syntax error
 	 */
 	public CishCompiler compile() throws ParseException {
-		this.parser = new Parser(System.in, false, this.cishFile);
-		this.doCompile();
+		this.doCompile(new Parser(System.in, Charset.defaultCharset()), false);
 		return this;
 	}
 
 	/**
-	 * compile the cish file to java
+	 * parse the script to a syntax tree and generate the java code of it
+	 *
+	 * @param parser      parser, which reads the script
+	 * @param renderClass render a class structur around the content with imports
 	 *
 	 * @throws ParseException syntax error
 	 */
-	public void doCompile() throws ParseException {
-		if (!this.debug) {
-			this.parser.disable_tracing();
-		} else {
-			this.parser.enable_tracing();
-		}
-
-		this.content = this.parser.Root();
+	private void doCompile(final Parser parser, final boolean renderClass) throws ParseException {
+		this.script = parser.Root();
+		this.generator = new JavaGenerator(this.debug, this.cishFile, this.includeChain, renderClass);
+		this.content = this.script.accept(this.generator);
 	}
 
 	/**
@@ -98,7 +117,25 @@ public class CishCompiler {
 	 * @return java content
 	 */
 	public List<String> getJavaClasses() {
-		return this.parser.getJavaLines();
+		return this.generator.getJavaClasses();
+	}
+
+	/**
+	 * get the line maps of the java classes, in the same order as {@link #getJavaClasses()}
+	 *
+	 * @return line maps
+	 */
+	public List<LineMap> getJavaClassLines() {
+		return this.generator.getJavaClassLines();
+	}
+
+	/**
+	 * get the line map of the generated content
+	 *
+	 * @return line map
+	 */
+	public LineMap getLineMap() {
+		return this.generator.getLineMap();
 	}
 
 	/**
@@ -107,7 +144,7 @@ public class CishCompiler {
 	 * @return import statements
 	 */
 	public List<String> getImports() {
-		return this.parser.getImports();
+		return this.generator.getImports();
 	}
 
 	/**
@@ -116,7 +153,7 @@ public class CishCompiler {
 	 * @return require statements
 	 */
 	public List<String> getRequires() {
-		return this.parser.getRequires();
+		return this.generator.getRequires();
 	}
 
 	/**
@@ -125,7 +162,25 @@ public class CishCompiler {
 	 * @return load statements
 	 */
 	public List<String> getLoads() {
-		return this.parser.getLoads();
+		return this.generator.getLoads();
+	}
+
+	/**
+	 * get a list of include(RETURN VALUE) statements, including the ones of included files
+	 *
+	 * @return include statements
+	 */
+	public List<String> getIncludes() {
+		return this.generator.getIncludes();
+	}
+
+	/**
+	 * get the names of the classes, which the generated code uses, including the ones of included files
+	 *
+	 * @return referenced names
+	 */
+	public Set<String> getReferences() {
+		return this.generator.getReferences();
 	}
 
 	/**
@@ -136,6 +191,6 @@ public class CishCompiler {
 	 * @return map of all files
 	 */
 	public Map<String, String> getBash() {
-		return this.parser.getBash();
+		return this.generator.getBash();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package org.alindner.cish.compiler.precompiler;
+
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.ScriptMetaInfo;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+import org.alindner.cish.compiler.utils.Utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Caches the expansion of included files.
+ * <p>
+ * An included file is parsed once and its compiled fragment is reused for every further <code>include()</code> of it. An entry is keyed by the canonical path of the file and
+ * is valid as long as the content of the file and of all files it includes itself didn't change. As an include chain is tracked while expanding, include cycles are reported
+ * instead of recursing endlessly.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class IncludeCache {
+	private static final IncludeCache     INSTANCE = new IncludeCache();
+	private final        Map<Path, Entry> entries  = new ConcurrentHashMap<>();
+
+	/**
+	 * get the cache, which is shared by all compilations of this jvm
+	 *
+	 * @return include cache
+	 */
+	public static IncludeCache getInstance() {
+		return IncludeCache.INSTANCE;
+	}
+
+	/**
+	 * get the canonical path of a file. If the file doesn't exist, the normalized absolute path is used.
+	 *
+	 * @param path path
+	 *
+	 * @return canonical path
+	 */
+	static Path canonical(final Path path) {
+		try {
+			return path.toRealPath();
+		} catch (final IOException e) {
+			return path.toAbsolutePath().normalize();
+		}
+	}
+
+	/**
+	 * expands an included file
+	 *
+	 * @param include path of the included file, as written in the script
+	 * @param chain   canonical paths of the files, which are currently expanded, starting with the root script
+	 * @param debug   debug mode
+	 * @param script  script, which is compiled
+	 *
+	 * @return compiler, which holds the generated fragment and the imports, requires, loads and includes of it
+	 *
+	 * @throws ParseException syntax error in the included file or an include cycle
+	 * @throws IOException    the file couldn't be read
+	 */
+	public CishCompiler expand(final String include, final List<Path> chain, final boolean debug, final ScriptMetaInfo script) throws ParseException, IOException {
+		final Path file = IncludeCache.canonical(Path.of(include));
+		if (chain.contains(file)) {
+			throw new ParseException(String.format(
+					"Include cycle detected: %s -> %s",
+					chain.subList(chain.indexOf(file), chain.size()).stream().map(Path::toString).collect(Collectors.joining(" -> ")),
+					file
+			));
+		}
+		final String content = Utils.loadTextContent(file.toString());
+		final Entry  entry   = this.entries.get(file);
+		if (entry != null && entry.isValid(file, content)) {
+			IncludeCache.log.debug("Reusing the parsed include {}", file);
+			return entry.getCompiler();
+		}
+
+		final List<Path> next = new ArrayList<>(chain);
+		next.add(file);
+		final CishCompiler compiler = new CishCompiler(debug, script, next).compile(content, false);
+		final Map<Path, String> hashes = new HashMap<>();
+		hashes.put(file, Utils.hash(content));
+		for (final String nested : compiler.getIncludes()) {
+			final Path nestedFile = IncludeCache.canonical(Path.of(nested));
+			hashes.put(nestedFile, Utils.hash(Utils.loadTextContentOrEmpty(nestedFile.toString())));
+		}
+		this.entries.put(file, new Entry(compiler, hashes));
+		return compiler;
+	}
+
+	/**
+	 * A parsed include and the hashes of the files it was built from
+	 */
+	private static class Entry {
+		private final CishCompiler      compiler;
+		private final Map<Path, String> hashes;
+
+		/**
+		 * Constructor
+		 *
+		 * @param compiler compiler holding the parsed include
+		 * @param hashes   content hashes of the included file and of all files included by it
+		 */
+		Entry(final CishCompiler compiler, final Map<Path, String> hashes) {
+			this.compiler = compiler;
+			this.hashes = hashes;
+		}
+
+		/**
+		 * checks, if the included file and all files included by it are unchanged
+		 *
+		 * @param file    included file
+		 * @param content current content of the included file
+		 *
+		 * @return the entry can be reused
+		 */
+		boolean isValid(final Path file, final String content) {
+			return this.hashes.entrySet().stream().allMatch(hash -> hash.getValue().equals(Utils.hash(
+					hash.getKey().equals(file) ? content : Utils.loadTextContentOrEmpty(hash.getKey().toString())
+			)));
+		}
+
+		/**
+		 * get the compiler holding the parsed include
+		 *
+		 * @return compiler
+		 */
+		CishCompiler getCompiler() {
+			return this.compiler;
+		}
+	}
+}
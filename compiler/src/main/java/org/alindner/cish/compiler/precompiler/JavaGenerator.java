@@ -0,0 +1,307 @@
+package org.alindner.cish.compiler.precompiler;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.ScriptMetaInfo;
+import org.alindner.cish.compiler.postcompiler.extension.ExtensionManager;
+import org.alindner.cish.compiler.precompiler.ast.*;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+import org.alindner.cish.compiler.utils.CishPath;
+import org.alindner.cish.compiler.utils.Utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Generates the java code of a parsed cish script and collects the java classes, imports, loads, requires, includes and bash scripts it references.
+ * <p>
+ * The names of the classes, which the generated code uses, are collected as references, e.g. <code>IO</code> for <code>IO::ls()</code>. Only the extensions providing them
+ * are loaded. Java code can use any class, so it references {@link ExtensionManager#ALL_EXTENSIONS}.
+ * <p>
+ * Every statement of the script is generated to its own line. The {@link LineMap}s of the generated code and of the java classes map these lines back to the script, so
+ * compile errors and stack traces can name the line of the script. The code of an included file is mapped to the line of its <code>include</code> statement.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+@Getter
+public class JavaGenerator implements NodeVisitor<String> {
+	public static final List<String>        MAIN_IMPORTS   = List.of("java.util.*", "java.nio.file.*", "org.alindner.cish.lang.functions.predicate.*");
+	private final       boolean             debug;
+	private final       ScriptMetaInfo      script;
+	private final       List<Path>          includeChain;
+	private final       boolean             renderClass;
+	private final       List<String>        javaClasses    = new ArrayList<>();
+	private final       List<LineMap>       javaClassLines = new ArrayList<>();
+	private final       List<String>        imports        = new ArrayList<>();
+	private final       List<String>        loads          = new ArrayList<>();
+	private final       List<String>        requires       = new ArrayList<>();
+	private final       List<String>        includes       = new ArrayList<>();
+	private final       Map<String, String> bash           = new HashMap<>();
+	private final       Set<String>         references     = new TreeSet<>();
+	private final       LineMap             lineMap;
+	private             Set<String>         variables      = new LinkedHashSet<>();
+	private             int                 line           = 1;
+
+	/**
+	 * Constructor
+	 *
+	 * @param debug        debug mode, which is passed to the compilers of included files
+	 * @param script       script, which is generated
+	 * @param includeChain canonical paths of the files, which are currently expanded, starting with the root script
+	 * @param renderClass  render a class structure around the statements
+	 */
+	public JavaGenerator(final boolean debug, final ScriptMetaInfo script, final List<Path> includeChain, final boolean renderClass) {
+		this.debug = debug;
+		this.script = script;
+		this.includeChain = includeChain;
+		this.renderClass = renderClass;
+		this.lineMap = new LineMap(script.getScript());
+	}
+
+	/**
+	 * generates the code of a list of nodes
+	 *
+	 * @param nodes     nodes
+	 * @param delimiter delimiter, which is appended to the code of every node
+	 *
+	 * @return code
+	 *
+	 * @throws ParseException semantic error
+	 */
+	private String generate(final List<? extends Node> nodes, final String delimiter) throws ParseException {
+		final StringBuilder builder = new StringBuilder();
+		for (final Node node : nodes) {
+			builder.append(node.accept(this)).append(delimiter);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * generates a comma separated list of arguments
+	 *
+	 * @param arguments arguments
+	 *
+	 * @return code without the parentheses
+	 *
+	 * @throws ParseException semantic error
+	 */
+	private String arguments(final List<Node> arguments) throws ParseException {
+		final StringJoiner joiner = new StringJoiner(",");
+		for (final Node argument : arguments) {
+			joiner.add(argument.accept(this));
+		}
+		return joiner.toString();
+	}
+
+	/**
+	 * maps every line of the given code to the line of the current statement
+	 *
+	 * @param lineMap   line map
+	 * @param firstLine generated line, the code starts at
+	 * @param code      generated code
+	 */
+	private void mapToStatement(final LineMap lineMap, final int firstLine, final String code) {
+		final long lines = code.chars().filter(c -> c == '\n').count();
+		for (int i = 0; i <= lines; i++) {
+			lineMap.map(firstLine + i, this.line);
+		}
+	}
+
+	@Override
+	public String visit(final Script script) throws ParseException {
+		final StringBuilder builder = new StringBuilder();
+		if (this.renderClass) {
+			// the main class needs the imports MAIN_IMPORTS, which are written in front of it together with the imports of the script
+			this.references.add("Parameter");
+			builder.append("public class Main { public static void main(final Path _file, final List<String> _simpleParameters, final List<String> _argsList, final Map<String, String> _parameters) throws Exception { Parameter.params = _simpleParameters; Parameter.simpleArgs = _argsList; Parameter.extendedParams = _parameters; Parameter.script = _file;\n");
+		}
+		int generatedLine = this.renderClass ? 2 : 1;
+		for (int i = 0; i < script.getStatements().size(); i++) {
+			final Node statement = script.getStatements().get(i);
+			this.line = script.getLines().get(i);
+			final String code = statement.accept(this) + ";\n";
+			if (statement instanceof Include) {
+				this.mapToStatement(this.lineMap, generatedLine, code);
+			} else {
+				this.lineMap.map(generatedLine, this.line);
+			}
+			generatedLine += (int) code.chars().filter(c -> c == '\n').count();
+			builder.append(code);
+		}
+		if (this.renderClass) {
+			builder.append("}}");
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public String visit(final Include include) throws ParseException {
+		try {
+			final CishCompiler c = IncludeCache.getInstance().expand(include.getPath(), this.includeChain, this.debug, this.script);
+			this.includes.add(include.getPath());
+			this.includes.addAll(c.getIncludes());
+			this.imports.addAll(c.getImports());
+			this.requires.addAll(c.getRequires());
+			this.loads.addAll(c.getLoads());
+			for (final String javaClass : c.getJavaClasses()) {
+				final LineMap lineMap = new LineMap(this.script.getScript());
+				this.mapToStatement(lineMap, 1, javaClass);
+				this.javaClasses.add(javaClass);
+				this.javaClassLines.add(lineMap);
+			}
+			this.bash.putAll(c.getBash());
+			this.references.addAll(c.getReferences());
+			return c.getContent();
+		} catch (final IOException e) {
+			JavaGenerator.log.error("Error when including file", e);
+			return "";
+		}
+	}
+
+	@Override
+	public String visit(final Require require) {
+		this.requires.add(require.getPath());
+		return ScriptMetaInfo.packageName(this.script.resolveRequire(require.getPath())) + ".Main.main(_file, _simpleParameters, _argsList, _parameters);\n";
+	}
+
+	@Override
+	public String visit(final Load load) {
+		this.loads.add(load.getSource());
+		this.references.add(ExtensionManager.ALL_EXTENSIONS);
+		this.imports.addAll(load.getImports());
+		if (load.isImportAll()) {
+			this.imports.add("*." + load.getSource());
+		}
+		return "";
+	}
+
+	@Override
+	public String visit(final JavaHeredoc javaHeredoc) {
+		this.javaClasses.add(javaHeredoc.getCode());
+		this.javaClassLines.add(new LineMap(this.script.getScript()).map(1, this.line));
+		this.references.add(ExtensionManager.ALL_EXTENSIONS);
+		return "";
+	}
+
+	@Override
+	public String visit(final BashHeredoc bashHeredoc) {
+		final String fileName = Utils.hash(bashHeredoc.getCode());
+		this.bash.put(fileName, bashHeredoc.getCode());
+		this.references.add("Bash");
+		return String.format("Bash.runScript(\"%s\");", CishPath.ofBashScript(fileName));
+	}
+
+	@Override
+	public String visit(final InlineJava inlineJava) {
+		this.references.add(ExtensionManager.ALL_EXTENSIONS);
+		return inlineJava.getCode();
+	}
+
+	@Override
+	public String visit(final IfElse ifElse) throws ParseException {
+		this.references.add("ControlStructures");
+		final StringBuilder builder = new StringBuilder("ControlStructures.when(").append(ifElse.getCondition().accept(this))
+		                                                                          .append(", () -> {")
+		                                                                          .append(this.generate(ifElse.getThen(), ";"))
+		                                                                          .append("}");
+		if (ifElse.getOtherwise() != null) {
+			builder.append(", () -> {").append(this.generate(ifElse.getOtherwise(), ";")).append("}");
+		}
+		return builder.append(")").toString();
+	}
+
+	@Override
+	public String visit(final Condition condition) throws ParseException {
+		this.references.add("ControlStructures");
+		return String.format(
+				"ControlStructures.Condition.evaluate(%s, %s, ControlStructures.Condition.ConditionType.%s)",
+				condition.getLeft().accept(this),
+				condition.getRight().accept(this),
+				condition.getComparison()
+		);
+	}
+
+	@Override
+	public String visit(final Predicate predicate) {
+		// a predicate isn't bound to an extension class, so every extension could provide it
+		this.references.add(ExtensionManager.ALL_EXTENSIONS);
+		return String.format("org.alindner.cish.compiler.postcompiler.predicates.Is.is(%s, \"%s\")", predicate.getVariable(), predicate.getName());
+	}
+
+	@Override
+	public String visit(final ObjectCall objectCall) throws ParseException {
+		final String variable = objectCall.getVariable();
+		if (!this.variables.contains(variable) && !variable.equals("it") && !variable.equals("file")) {
+			throw new ParseException(String.format("The variable was not declared. Given variable was '%s'. Declared variables are %s", variable, this.variables));
+		}
+		return variable + this.generate(objectCall.getCalls(), "");
+	}
+
+	@Override
+	public String visit(final Call call) throws ParseException {
+		return "." + call.getName() + "(" + this.arguments(call.getArguments()) + ")";
+	}
+
+	@Override
+	public String visit(final Command command) throws ParseException {
+		this.references.add(command.getNamespace());
+		return command.getNamespace() + "." + command.getName() + "(" + this.arguments(command.getArguments()) + ")" + this.generate(command.getCalls(), "");
+	}
+
+	@Override
+	public String visit(final NewObject newObject) throws ParseException {
+		this.references.add(newObject.getType());
+		return "new " + newObject.getType() + "(" + this.arguments(newObject.getArguments()) + ")" + this.generate(newObject.getCalls(), "");
+	}
+
+	@Override
+	public String visit(final Assignment assignment) throws ParseException {
+		final String variable = assignment.getVariable();
+		return (this.variables.add(variable) ? "var " + variable : variable) + "=" + assignment.getValue().accept(this);
+	}
+
+	@Override
+	public String visit(final Lambda lambda) throws ParseException {
+		final Set<String> outer = this.variables;
+		this.variables = new LinkedHashSet<>(outer);
+		try {
+			return "(" + String.join(", ", lambda.getParameters()) + ") -> {" + this.generate(lambda.getBody(), ";") + "}";
+		} finally {
+			this.variables = outer;
+		}
+	}
+
+	@Override
+	public String visit(final RegexLiteral regexLiteral) {
+		this.references.add("Regex");
+		return "Regex.parse(\"" + regexLiteral.getPattern() + "\")";
+	}
+
+	@Override
+	public String visit(final StringLiteral stringLiteral) {
+		return "\"" + stringLiteral.getValue() + "\"";
+	}
+
+	@Override
+	public String visit(final NumberLiteral numberLiteral) {
+		return numberLiteral.getValue();
+	}
+
+	@Override
+	public String visit(final Identifier identifier) {
+		this.references.add(identifier.getName());
+		return identifier.getName();
+	}
+
+	@Override
+	public String visit(final Concatenation concatenation) throws ParseException {
+		final StringJoiner joiner = new StringJoiner("+");
+		for (final Node part : concatenation.getParts()) {
+			joiner.add(part instanceof Identifier ? ((Identifier) part).getName() + ".toString()" : part.accept(this));
+		}
+		return joiner.toString();
+	}
+}
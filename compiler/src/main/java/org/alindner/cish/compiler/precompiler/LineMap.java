@@ -0,0 +1,79 @@
+package org.alindner.cish.compiler.precompiler;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Maps the lines of a generated java file to the lines of the file, it was generated from.
+ * <p>
+ * Every entry marks a generated line and the source line, which belongs to it. The following generated lines belong to the following source lines, until the next entry
+ * starts. So a statement, which is generated to a single line, needs one entry, and java code, which is copied from the script, needs one entry as well.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+public class LineMap {
+	private final Path                           source;
+	private final NavigableMap<Integer, Integer> lines = new TreeMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param source file, the java code was generated from
+	 */
+	public LineMap(final Path source) {
+		this.source = source;
+	}
+
+	/**
+	 * get the file, the java code was generated from
+	 *
+	 * @return cish or java file
+	 */
+	public Path getSource() {
+		return this.source;
+	}
+
+	/**
+	 * maps a generated line and the following lines to a source line and the following lines
+	 *
+	 * @param generatedLine line of the generated code, starting with 1
+	 * @param sourceLine    line of the source, starting with 1
+	 *
+	 * @return this
+	 */
+	public LineMap map(final int generatedLine, final int sourceLine) {
+		this.lines.put(generatedLine, sourceLine);
+		return this;
+	}
+
+	/**
+	 * get a copy of this map, which is valid after the given number of lines were inserted in front of the generated code
+	 *
+	 * @param offset number of inserted lines
+	 *
+	 * @return shifted copy
+	 */
+	public LineMap shift(final int offset) {
+		final LineMap shifted = new LineMap(this.source);
+		this.lines.forEach((generated, source) -> shifted.map(generated + offset, source));
+		return shifted;
+	}
+
+	/**
+	 * get the source line of a generated line
+	 *
+	 * @param generatedLine line of the generated code
+	 *
+	 * @return source line or 0, if the line doesn't belong to any source line
+	 */
+	public int toSource(final long generatedLine) {
+		if (generatedLine < 1 || generatedLine > Integer.MAX_VALUE) {
+			return 0;
+		}
+		final Map.Entry<Integer, Integer> entry = this.lines.floorEntry((int) generatedLine);
+		return entry == null ? 0 : entry.getValue() + (int) generatedLine - entry.getKey();
+	}
+}
@@ -0,0 +1,21 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+/**
+ * An assignment of a value to a variable. The first assignment declares the variable.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Assignment implements Node {
+	private final String variable;
+	private final Node   value;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
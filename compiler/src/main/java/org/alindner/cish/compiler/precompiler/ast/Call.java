@@ -0,0 +1,23 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+import java.util.List;
+
+/**
+ * A method call, which is part of a chain
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Call implements Node {
+	private final String     name;
+	private final List<Node> arguments;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
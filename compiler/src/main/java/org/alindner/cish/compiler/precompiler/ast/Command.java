@@ -0,0 +1,25 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+import java.util.List;
+
+/**
+ * A call of a command like <code>IO::createDir("dir")</code>
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Command implements Node {
+	private final String     namespace;
+	private final String     name;
+	private final List<Node> arguments;
+	private final List<Call> calls;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,11 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+/**
+ * Type of a {@link Condition}. The names match the condition types of the cish lang.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+public enum Comparison {
+	EQUALS, NOTEQUALS, LOWER, LOWEREQUAL, HIGHER, HIGEREQUAL
+}
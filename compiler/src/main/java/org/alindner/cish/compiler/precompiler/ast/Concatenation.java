@@ -0,0 +1,22 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+import java.util.List;
+
+/**
+ * A string concatenation like <code>dir + "/file"</code>
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Concatenation implements Node {
+	private final List<Node> parts;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,22 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+/**
+ * A comparison of two values
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Condition implements Node {
+	private final Node       left;
+	private final Comparison comparison;
+	private final Node       right;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,20 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+/**
+ * A reference to a variable or class
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Identifier implements Node {
+	private final String name;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,24 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+import java.util.List;
+
+/**
+ * An <code>if (condition) { } else { }</code> statement
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class IfElse implements Node {
+	private final Node       condition;
+	private final List<Node> then;
+	private final List<Node> otherwise;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,20 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+/**
+ * An <code>include("file")</code> statement, which inlines another cish file
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Include implements Node {
+	private final String path;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,20 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+/**
+ * Java code, which is inlined without any changes
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class InlineJava implements Node {
+	private final String code;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,20 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+/**
+ * A java heredoc, which defines additional classes
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class JavaHeredoc implements Node {
+	private final String code;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,23 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+import java.util.List;
+
+/**
+ * A lambda like <code>(a) -> { }</code> or <code>{ }</code>, which has the implicit parameter <code>it</code>
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Lambda implements Node {
+	private final List<String> parameters;
+	private final List<Node>   body;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,24 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+import java.util.List;
+
+/**
+ * A <code>load("source", [imports])</code> statement, which adds a java file, jar or maven artifact to the script
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Load implements Node {
+	private final String       source;
+	private final List<String> imports;
+	private final boolean      importAll;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
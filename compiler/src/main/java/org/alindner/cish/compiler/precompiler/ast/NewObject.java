@@ -0,0 +1,24 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+import java.util.List;
+
+/**
+ * An object creation like <code>new File("a")</code>
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class NewObject implements Node {
+	private final String     type;
+	private final List<Node> arguments;
+	private final List<Call> calls;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
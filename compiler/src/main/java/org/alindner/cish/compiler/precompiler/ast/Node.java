@@ -0,0 +1,23 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+/**
+ * A node of the syntax tree, which is built by the parser
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+public interface Node {
+	/**
+	 * calls the method of the visitor, which belongs to the type of this node
+	 *
+	 * @param visitor visitor
+	 * @param <T>     result type of the visitor
+	 *
+	 * @return result of the visitor
+	 *
+	 * @throws ParseException semantic error, like the usage of an undeclared variable
+	 */
+	<T> T accept(NodeVisitor<T> visitor) throws ParseException;
+}
@@ -0,0 +1,55 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+/**
+ * Visits the nodes of the syntax tree
+ *
+ * @param <T> result type
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+public interface NodeVisitor<T> {
+	T visit(Script script) throws ParseException;
+
+	T visit(Include include) throws ParseException;
+
+	T visit(Require require) throws ParseException;
+
+	T visit(Load load) throws ParseException;
+
+	T visit(JavaHeredoc javaHeredoc) throws ParseException;
+
+	T visit(BashHeredoc bashHeredoc) throws ParseException;
+
+	T visit(InlineJava inlineJava) throws ParseException;
+
+	T visit(IfElse ifElse) throws ParseException;
+
+	T visit(Condition condition) throws ParseException;
+
+	T visit(Predicate predicate) throws ParseException;
+
+	T visit(ObjectCall objectCall) throws ParseException;
+
+	T visit(Call call) throws ParseException;
+
+	T visit(Command command) throws ParseException;
+
+	T visit(NewObject newObject) throws ParseException;
+
+	T visit(Assignment assignment) throws ParseException;
+
+	T visit(Lambda lambda) throws ParseException;
+
+	T visit(RegexLiteral regexLiteral) throws ParseException;
+
+	T visit(StringLiteral stringLiteral) throws ParseException;
+
+	T visit(NumberLiteral numberLiteral) throws ParseException;
+
+	T visit(Identifier identifier) throws ParseException;
+
+	T visit(Concatenation concatenation) throws ParseException;
+}
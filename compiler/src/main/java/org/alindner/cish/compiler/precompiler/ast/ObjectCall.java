@@ -0,0 +1,23 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+import java.util.List;
+
+/**
+ * Method calls on a variable like <code>file.getName().trim()</code>
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class ObjectCall implements Node {
+	private final String     variable;
+	private final List<Call> calls;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,21 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+/**
+ * A predicate check like <code>file.~Zip()</code>
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Predicate implements Node {
+	private final String variable;
+	private final String name;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -0,0 +1,20 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+/**
+ * A <code>require("file")</code> statement, which runs another cish script
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Require implements Node {
+	private final String path;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
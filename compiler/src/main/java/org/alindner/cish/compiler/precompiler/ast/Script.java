@@ -0,0 +1,23 @@
+package org.alindner.cish.compiler.precompiler.ast;
+
+import lombok.Data;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+
+import java.util.List;
+
+/**
+ * The root of a parsed cish script. It knows the line of each of its statements, so the generated code can be mapped back to the script.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Data
+public class Script implements Node {
+	private final List<Node>    statements;
+	private final List<Integer> lines;
+
+	@Override
+	public <T> T accept(final NodeVisitor<T> visitor) throws ParseException {
+		return visitor.visit(this);
+	}
+}
@@ -14,6 +14,7 @@ public class CishPath {
 	static final Path baseCompiled  = CishPath.base.resolve("cache/compiled");
 	final static Path tmp           = CishPath.base.resolve("tmp");
 	final static Path cacheDir      = CishPath.base.resolve("cache");
+	final static Path bash          = CishPath.cacheDir.resolve("bash");
 	static {
 		try {
 			if (Files.notExists(CishPath.tmp)) {
@@ -25,6 +26,9 @@ public class CishPath {
 			if (Files.notExists(CishPath.baseCompiled)) {
 				Files.createDirectories(CishPath.baseCompiled);
 			}
+			if (Files.notExists(CishPath.bash)) {
+				Files.createDirectories(CishPath.bash);
+			}
 		} catch (final IOException e) {
 			CishPath.log.fatal("Couldn't create directory.", e);
 			throw new Error("Unable to create the directory inside the home directory", e);
@@ -54,17 +58,15 @@ public class CishPath {
 		return CishPath.baseCompiled.resolve(CishPath.getCompileDirOfShellScript(cishFile)).toAbsolutePath();
 	}
 
-	public static Path ofBashScript(final Path cishFile, final String bashName) {
-		final Path d = CishPath.ofCishFile(cishFile).resolve("bash");
-		if (!Files.isDirectory(d)) {
-			try {
-				Files.createDirectories(d);
-			} catch (final IOException e) {
-				CishPath.log.fatal("Couldn't create directory.", e);
-				throw new Error("Unable to create the directory inside the home directory", e);
-			}
-		}
-		return CishPath.ofCishFile(cishFile).resolve("bash").resolve(bashName);
+	/**
+	 * get the path of an inline bash script. The bash scripts are stored by the hash of their content, so they can be shared by all cish scripts.
+	 *
+	 * @param bashName hash of the bash script
+	 *
+	 * @return path of the bash script
+	 */
+	public static Path ofBashScript(final String bashName) {
+		return CishPath.bash.resolve(bashName).toAbsolutePath();
 	}
 
 	public static Path modulePath(final Path cishFile) {
@@ -88,10 +90,6 @@ public class CishPath {
 		return CishPath.mainPackage(cishFile).resolve("Main.java");
 	}
 
-	public static Path outPath(final Path cishFile) {
-		return CishPath.ofCishFile(cishFile).resolve("out");
-	}
-
 	public static Path moduleInfoFile(final Path cishFile) {
 		return CishPath.modulePath(cishFile).resolve("module-info.java");
 	}
@@ -4,6 +4,7 @@ import lombok.extern.log4j.Log4j2;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -50,6 +51,31 @@ public class Utils {
 		return String.format("%032X", new BigInteger(1, md.digest()));
 	}
 
+	/**
+	 * hashes the content of a file using sha 256
+	 *
+	 * @param file file which should be hashed
+	 *
+	 * @return hashed content
+	 *
+	 * @throws IOException when reading in fails
+	 */
+	public static String hash(final Path file) throws IOException {
+		final MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("sha-256");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IOException("sha-256 isn't supported", e);
+		}
+		final byte[] buffer = new byte[8192];
+		try (final InputStream is = Files.newInputStream(file)) {
+			for (int read = is.read(buffer); read >= 0; read = is.read(buffer)) {
+				md.update(buffer, 0, read);
+			}
+		}
+		return String.format("%032X", new BigInteger(1, md.digest()));
+	}
+
 	/**
 	 * load the content of given files
 	 *
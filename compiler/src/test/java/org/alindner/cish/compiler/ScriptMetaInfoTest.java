@@ -0,0 +1,33 @@
+package org.alindner.cish.compiler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptMetaInfoTest {
+	@TempDir
+	Path dir;
+
+	@Test
+	void scriptsWithTheSameFileNameGetDifferentPackages() {
+		assertNotEquals(ScriptMetaInfo.packageName(this.dir.resolve("a/lib.cish")), ScriptMetaInfo.packageName(this.dir.resolve("b/lib.cish")));
+		assertEquals(ScriptMetaInfo.packageName(this.dir.resolve("a/lib.cish")), ScriptMetaInfo.packageName(this.dir.resolve("b/../a/lib.cish")));
+	}
+
+	@Test
+	void resolvesTheRequiresAgainstTheDirectoryOfTheScript() throws IOException {
+		final Path           main   = Files.writeString(Files.createDirectories(this.dir.resolve("b")).resolve("main.cish"), "");
+		final ScriptMetaInfo script = new ScriptMetaInfo(main, "main");
+		script.getRequires().add("lib.cish");
+		script.getRequires().add("../a/lib.cish");
+
+		assertEquals(List.of(this.dir.resolve("b/lib.cish"), this.dir.resolve("a/lib.cish")), script.getRequiresAsPaths());
+		assertEquals(ScriptMetaInfo.packageName(this.dir.resolve("a/lib.cish")), ScriptMetaInfo.packageName(script.resolveRequire("../a/lib.cish")));
+	}
+}
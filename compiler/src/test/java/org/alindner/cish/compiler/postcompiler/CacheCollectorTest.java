@@ -0,0 +1,95 @@
+package org.alindner.cish.compiler.postcompiler;
+
+import org.alindner.cish.compiler.postcompiler.extension.ExtensionManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheCollectorTest {
+	@TempDir
+	Path home;
+
+	/**
+	 * writes a file of the given size and sets the modification time of its entry
+	 */
+	private Path entry(final String path, final int size, final Duration age) throws IOException {
+		final Path file = this.home.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.write(file, new byte[size]);
+		final FileTime time = FileTime.fromMillis(System.currentTimeMillis() - age.toMillis());
+		Files.setLastModifiedTime(file, time);
+		Files.setLastModifiedTime(file.getParent(), time);
+		return file;
+	}
+
+	private Map<String, Long> sizes(final CacheCollector collector) throws IOException {
+		return collector.stats().stream().collect(Collectors.toMap(CacheCollector.Usage::getName, CacheCollector.Usage::getSize));
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedEntries() throws IOException {
+		final Path           a         = this.entry("cache/compiled/a/Main.class", 100, Duration.ofDays(3));
+		final Path           b         = this.entry("cache/compiled/b/Main.class", 100, Duration.ofDays(2));
+		final Path           c         = this.entry("tmp/downloads/c/lib.jar", 100, Duration.ofDays(1));
+		final Path           manager   = this.entry("cache/" + ExtensionManager.class.getName(), 10, Duration.ZERO);
+		final CacheCollector collector = new CacheCollector(this.home, 150);
+		collector.touch(a);
+
+		assertEquals(200, collector.gc());
+		assertTrue(Files.exists(a));
+		assertFalse(Files.exists(b.getParent()));
+		assertFalse(Files.exists(c.getParent()));
+		assertFalse(Files.exists(manager));
+		assertEquals(100, this.sizes(collector).get("compiled"));
+	}
+
+	@Test
+	void keepsRecentlyUsedEntries() throws IOException {
+		final Path a = this.entry("cache/bash/a", 100, Duration.ofMinutes(1));
+		final Path b = this.entry("cache/maven/org/example/b/1.0/b-1.0.jar", 100, Duration.ofMinutes(1));
+
+		assertEquals(0, new CacheCollector(this.home, 0).gc());
+		assertTrue(Files.exists(a));
+		assertTrue(Files.exists(b));
+	}
+
+	@Test
+	void deduplicatesEqualJars() throws IOException {
+		final Path a = this.entry("tmp/downloads/a/lib.jar", 100, Duration.ofDays(1));
+		final Path b = this.entry("tmp/downloads/b/lib.jar", 100, Duration.ofDays(1));
+		final Path c = this.entry("cache/maven/org/example/lib/1.0/lib-1.0.jar", 100, Duration.ofDays(1));
+		final Path d = this.entry("tmp/assets/d/other.jar", 100, Duration.ofDays(1));
+		Files.write(d, new byte[]{1}, StandardOpenOption.APPEND);
+
+		final CacheCollector collector = new CacheCollector(this.home, Long.MAX_VALUE);
+		assertEquals(200, collector.gc());
+		assertTrue(Files.isSameFile(a, b));
+		assertTrue(Files.isSameFile(a, c));
+		assertFalse(Files.isSameFile(a, d));
+		final Map<String, Long> sizes = this.sizes(collector);
+		assertEquals(201, sizes.values().stream().mapToLong(Long::longValue).sum());
+	}
+
+	@Test
+	void clearDeletesEverythingAndTombstones() throws IOException {
+		this.entry("cache/compiled/a/Main.class", 100, Duration.ZERO);
+		this.entry("cache/compiled/b.1.gc/Main.class", 100, Duration.ZERO);
+		this.entry("tmp/cds1/classes.lst", 100, Duration.ZERO);
+		final CacheCollector collector = new CacheCollector(this.home, Long.MAX_VALUE);
+
+		assertEquals(100, this.sizes(collector).get("compiled"));
+		assertFalse(Files.exists(this.home.resolve("cache/compiled/b.1.gc")));
+		assertEquals(200, collector.clear());
+		assertEquals(0, this.sizes(collector).values().stream().mapToLong(Long::longValue).sum());
+	}
+}
@@ -0,0 +1,79 @@
+package org.alindner.cish.compiler.postcompiler;
+
+import org.alindner.cish.compiler.ScriptMetaInfo;
+import org.alindner.cish.compiler.postcompiler.memory.CompiledModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheManagerTest {
+	@TempDir
+	Path dir;
+
+	private ScriptMetaInfo script(final String main, final String helper) throws IOException {
+		final Path file = this.dir.resolve("lib.cish");
+		Files.writeString(file, main);
+		final ScriptMetaInfo script = new ScriptMetaInfo(file, "plib");
+		script.getJavaContent().put("Main", main);
+		if (helper != null) {
+			script.getJavaContent().put("Helper", helper);
+		}
+		return script;
+	}
+
+	@Test
+	void apiKeyIgnoresTheMainClass() throws IOException {
+		assertEquals(
+				CacheManager.buildApiKey(this.script("Console::print(\"a\")", "class Helper {}")),
+				CacheManager.buildApiKey(this.script("Console::print(\"b\")", "class Helper {}"))
+		);
+	}
+
+	@Test
+	void apiKeyChangesWithTheJavaClasses() throws IOException {
+		final String key = CacheManager.buildApiKey(this.script("Console::print(\"a\")", "class Helper {}"));
+		assertNotEquals(key, CacheManager.buildApiKey(this.script("Console::print(\"a\")", "class Helper { int x; }")));
+		assertNotEquals(key, CacheManager.buildApiKey(this.script("Console::print(\"a\")", null)));
+
+		final ScriptMetaInfo loading = this.script("Console::print(\"a\")", "class Helper {}");
+		loading.getLoads().add("https://example.org/lib.jar");
+		assertNotEquals(key, CacheManager.buildApiKey(loading));
+	}
+
+	@Test
+	void apiKeyChangesWithTheContentOfARemoteSource() throws IOException {
+		final ScriptMetaInfo first = this.script("Console::print(\"a\")", null);
+		first.getLoads().add("https://example.org/Helper.java");
+		first.getRemoteHashes().put("https://example.org/Helper.java", "first");
+		final ScriptMetaInfo second = this.script("Console::print(\"a\")", null);
+		second.getLoads().add("https://example.org/Helper.java");
+		second.getRemoteHashes().put("https://example.org/Helper.java", "second");
+		assertNotEquals(CacheManager.buildApiKey(first), CacheManager.buildApiKey(second));
+
+		assertTrue(CacheManager.isRemoteSource("https://example.org/Helper.java"));
+		assertFalse(CacheManager.isRemoteSource("https://example.org/lib.jar"));
+		assertFalse(CacheManager.isRemoteSource("Helper.java"));
+	}
+
+	@Test
+	void evictionKeepsRecentlyUsedEntries() throws IOException {
+		final Path           store  = Files.createDirectories(this.dir.resolve("compiled"));
+		final CacheManager   cm     = new CacheManager(store, 1);
+		final CompiledModule module = new CompiledModule("cishResult", Map.of("main.Main", new byte[]{1, 2, 3}));
+		final Path           old    = cm.store("old", module);
+		final Path           recent = cm.store("recent", module);
+		Files.setLastModifiedTime(old, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(1).toMillis()));
+
+		cm.store("new", module);
+		assertFalse(Files.exists(old));
+		assertTrue(Files.exists(recent));
+	}
+}
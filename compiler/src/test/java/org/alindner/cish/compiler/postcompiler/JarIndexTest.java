@@ -0,0 +1,86 @@
+package org.alindner.cish.compiler.postcompiler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarIndexTest {
+	@TempDir
+	Path dir;
+
+	/**
+	 * writes a jar with empty class files. The module finder derives the packages from the entry names.
+	 */
+	private Path jar(final Path file, final String... entries) throws IOException {
+		Files.createDirectories(file.getParent());
+		final Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(new Attributes.Name("Automatic-Module-Name"), "org.example.lib");
+		try (final JarOutputStream os = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+			for (final String entry : entries) {
+				os.putNextEntry(new ZipEntry(entry));
+				os.closeEntry();
+			}
+		}
+		return file;
+	}
+
+	@Test
+	void scansAndStoresTheIndex() throws IOException {
+		final Path home = this.dir.resolve("home");
+		final Path jar  = this.jar(home.resolve("assets/x/lib-1.0.jar"), "org/example/A.class", "org/example/impl/B.class", "META-INF/x.txt");
+
+		final JarIndex index = JarIndex.of(jar, home.resolve("jars"), home);
+		assertEquals("org.example.lib", index.getModule());
+		assertEquals(List.of("org.example.*", "org.example.impl.*"), index.getImports());
+		assertTrue(Files.exists(home.resolve("assets/x/lib-1.0.jar.index")));
+		assertTrue(Files.exists(home.resolve("jars").resolve(index.getHash() + ".index")));
+		assertSame(index, JarIndex.of(jar, home.resolve("jars"), home));
+	}
+
+	@Test
+	void scansAJarWithTheUnnamedPackage() throws IOException {
+		final Path home = this.dir.resolve("home");
+		final Path jar  = this.jar(home.resolve("http/x/lib.jar"), "Main.class", "org/example/A.class", "META-INF/versions/11/org/example/v11/B.class");
+
+		final JarIndex index = JarIndex.of(jar, home.resolve("jars"), home);
+		assertEquals("", index.getModule());
+		assertEquals(List.of("org.example.*", "org.example.v11.*"), index.getImports());
+	}
+
+	@Test
+	void reusesTheIndexOfTheSameContent() throws IOException {
+		final Path home  = this.dir.resolve("home");
+		final Path jar   = this.jar(home.resolve("assets/x/lib-1.0.jar"), "org/example/A.class");
+		final Path index = home.resolve("jars").resolve(JarIndex.of(jar, home.resolve("jars"), home).getHash() + ".index");
+		Files.writeString(index, Files.readString(index, StandardCharsets.ISO_8859_1).replace("packages=org.example", "packages=org.indexed"), StandardCharsets.ISO_8859_1);
+
+		final Path copy = this.dir.resolve("outside/lib-1.0.jar");
+		Files.createDirectories(copy.getParent());
+		Files.copy(jar, copy, StandardCopyOption.COPY_ATTRIBUTES);
+		assertEquals(List.of("org.indexed.*"), JarIndex.of(copy, home.resolve("jars"), home).getImports());
+		assertFalse(Files.exists(this.dir.resolve("outside/lib-1.0.jar.index")));
+	}
+
+	@Test
+	void rescansAChangedJar() throws IOException {
+		final Path home = this.dir.resolve("home");
+		final Path jar  = this.jar(home.resolve("http/x/lib.jar"), "org/example/A.class");
+		assertEquals(List.of("org.example.*"), JarIndex.of(jar, home.resolve("jars"), home).getImports());
+
+		this.jar(jar, "org/example/A.class", "org/other/B.class");
+		assertEquals(List.of("org.example.*", "org.other.*"), JarIndex.of(jar, home.resolve("jars"), home).getImports());
+	}
+}
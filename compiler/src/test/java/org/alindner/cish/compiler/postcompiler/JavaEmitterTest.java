@@ -0,0 +1,66 @@
+package org.alindner.cish.compiler.postcompiler;
+
+import org.alindner.cish.compiler.ScriptMetaInfo;
+import org.alindner.cish.compiler.precompiler.CishCompiler;
+import org.alindner.cish.compiler.precompiler.LineMap;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaEmitterTest {
+	@TempDir
+	Path dir;
+
+	private CishCompiler parse(final String content) throws IOException, ParseException {
+		final Path script = this.dir.resolve("main.cish");
+		Files.writeString(script, content);
+		return new CishCompiler(false, new ScriptMetaInfo(script, "main")).compile(content);
+	}
+
+	@Test
+	void writesEveryImportOnce() {
+		final String content = new JavaEmitter("main").addImports(List.of("java.util.*", "java.io.*")).addImports(List.of("java.util.*", "main.A")).finish("class A {}");
+		assertEquals("package main;\nimport java.util.*;\nimport java.io.*;\nimport main.A;\nclass A {}", content);
+	}
+
+	@Test
+	void mapsTheGeneratedLinesToTheScript() throws IOException, ParseException {
+		final CishCompiler compiler = this.parse("a = \"x\"\n\n# comment\nb = \"y\"\n```java\nclass Helper {\n}\n```\n");
+		final JavaEmitter  emitter  = new JavaEmitter("main").addImports(List.of("java.util.*", "java.nio.file.*"));
+		final List<String> lines    = emitter.finish(compiler.getContent()).lines().collect(Collectors.toList());
+		final LineMap      lineMap  = emitter.shift(compiler.getLineMap());
+
+		assertEquals(this.dir.resolve("main.cish"), lineMap.getSource());
+		assertEquals(1, lineMap.toSource(lines.indexOf("var a=\"x\";") + 1));
+		assertEquals(4, lineMap.toSource(lines.indexOf("var b=\"y\";") + 1));
+		assertEquals(0, lineMap.toSource(1));
+		assertEquals(6, compiler.getJavaClassLines().get(0).toSource(2));
+	}
+
+	@Test
+	void replacesTheGeneratedLinesOfAStackTrace() {
+		final Exception exception = new IllegalStateException("failed", new RuntimeException());
+		exception.setStackTrace(new StackTraceElement[]{
+				new StackTraceElement("main.Main", "lambda$main$0", "Main.java", 7),
+				new StackTraceElement("main.Main$1", "run", "Main.java", 9),
+				new StackTraceElement("java.util.List", "of", "List.java", 7)
+		});
+		final Map<String, LineMap> lineMaps = Map.of("main.Main", new LineMap(this.dir.resolve("main.cish")).map(6, 2));
+
+		final StackTraceElement[] trace = PostCompiler.toScriptLines(exception, lineMaps).getStackTrace();
+		assertEquals("main.cish", trace[0].getFileName());
+		assertEquals(3, trace[0].getLineNumber());
+		assertEquals(5, trace[1].getLineNumber());
+		assertEquals("List.java", trace[2].getFileName());
+		assertEquals(7, trace[2].getLineNumber());
+	}
+}
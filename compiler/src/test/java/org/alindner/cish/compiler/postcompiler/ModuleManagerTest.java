@@ -0,0 +1,58 @@
+package org.alindner.cish.compiler.postcompiler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModuleManagerTest {
+	@TempDir
+	Path dir;
+
+	/**
+	 * get the extension layer of a module manager, which uses the given module path
+	 */
+	private static ModuleLayer layer(final Path modulePath) {
+		final ModuleManager manager = new ModuleManager(() -> {
+			throw new IllegalStateException("the modules are already known");
+		}, () -> {
+			throw new IllegalStateException("the modules are already known");
+		});
+		manager.setModules(List.of(), List.of(modulePath));
+		return manager.getExtensionLayer();
+	}
+
+	@Test
+	void sharesTheLayerOfTheSameModulePaths() throws IOException {
+		final Path modules = Files.createDirectories(this.dir.resolve("modules"));
+		assertSame(ModuleManagerTest.layer(modules), ModuleManagerTest.layer(modules));
+	}
+
+	@Test
+	void replacesTheLayerOfAChangedModulePath() throws IOException {
+		final Path        modules = Files.createDirectories(this.dir.resolve("modules"));
+		final ModuleLayer first   = ModuleManagerTest.layer(modules);
+		Files.setLastModifiedTime(modules, FileTime.from(Instant.now().minusSeconds(60)));
+
+		final ModuleLayer second = ModuleManagerTest.layer(modules);
+		assertNotSame(first, second);
+		assertSame(second, ModuleManagerTest.layer(modules));
+	}
+
+	@Test
+	void keepsOnlyTheLastLayers() throws IOException {
+		final Path        first      = Files.createDirectories(this.dir.resolve("modules"));
+		final ModuleLayer firstLayer = ModuleManagerTest.layer(first);
+		for (int i = 0; i < ModuleManager.MAX_EXTENSION_LAYERS; i++) {
+			ModuleManagerTest.layer(Files.createDirectories(this.dir.resolve("modules" + i)));
+		}
+		assertNotSame(firstLayer, ModuleManagerTest.layer(first));
+	}
+}
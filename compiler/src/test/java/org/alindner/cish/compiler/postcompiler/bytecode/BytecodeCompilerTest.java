@@ -0,0 +1,271 @@
+package org.alindner.cish.compiler.postcompiler.bytecode;
+
+import org.alindner.cish.compiler.ScriptMetaInfo;
+import org.alindner.cish.compiler.postcompiler.memory.CompiledModule;
+import org.alindner.cish.compiler.postcompiler.memory.InMemoryFileManager;
+import org.alindner.cish.compiler.postcompiler.memory.JavaSource;
+import org.alindner.cish.compiler.precompiler.CishCompiler;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * compiles scripts with the byte code compiler and with javac, runs both results and compares their output. The scripts use a small stand-in for the module cish.lang:
+ * Parameter, ControlStructures and ControlBodySimple have the signatures of the real classes, Console has a method for every kind of invocation and records what is printed.
+ */
+class BytecodeCompilerTest {
+	private static final List<String>        IMPORTS = List.of("org.alindner.cish.lang.*");
+	private static final List<String>        MODULES = List.of("cish.lang");
+	private static final String              HEADER  = "package main;\nimport java.util.*;\nimport java.nio.file.*;\nimport org.alindner.cish.lang.*;\n";
+	private static final Map<String, String> LANG    = Map.of(
+			"module-info.java",
+			"module cish.lang {\n exports org.alindner.cish.lang;\n exports org.alindner.cish.lang.structures;\n}",
+			"org/alindner/cish/lang/Parameter.java",
+			"package org.alindner.cish.lang;\nimport java.nio.file.Path;\nimport java.util.*;\npublic class Parameter {\n public static List<String> params;\n public static Map<String, String> extendedParams;\n public static List<String> simpleArgs;\n public static Path script;\n public static List<String> get() { return simpleArgs; }\n}",
+			"org/alindner/cish/lang/Console.java",
+			String.join(
+					"\n",
+					"package org.alindner.cish.lang;",
+					"import java.io.IOException;",
+					"import java.util.*;",
+					"public class Console {",
+					" private static final StringBuilder OUT = new StringBuilder();",
+					" public static void print(final String value) { OUT.append(\"s:\").append(value).append('\\n'); }",
+					" public static void print(final Integer value) { OUT.append(\"i:\").append(value).append('\\n'); }",
+					" public static void print(final List<?> value) { OUT.append(\"l:\").append(value).append('\\n'); }",
+					" public static void print(final Object value) { OUT.append(\"o:\").append(value).append('\\n'); }",
+					" public static int twice(final int value) { return 2 * value; }",
+					" public static long big(final long value) { return value * 1000000000L; }",
+					" public static String join(final String... values) { return String.join(\"-\", values); }",
+					" public static List<String> list(final String... values) { return Arrays.asList(values); }",
+					" public static String read() throws IOException { return \"read\"; }",
+					" public static void each(final java.util.function.Consumer<String> consumer) { consumer.accept(\"it\"); }",
+					" public static String take() { final String out = OUT.toString(); OUT.setLength(0); return out; }",
+					"}"
+			),
+			"org/alindner/cish/lang/structures/ControlBodySimple.java",
+			"package org.alindner.cish.lang.structures;\npublic interface ControlBodySimple {\n void doIt();\n}",
+			"org/alindner/cish/lang/ControlStructures.java",
+			String.join(
+					"\n",
+					"package org.alindner.cish.lang;",
+					"import org.alindner.cish.lang.structures.ControlBodySimple;",
+					"public class ControlStructures {",
+					" public static void when(final boolean cond, final ControlBodySimple then) { if (cond) { then.doIt(); } }",
+					" public static void when(final boolean cond, final ControlBodySimple then, final ControlBodySimple el) { if (cond) { then.doIt(); } else { el.doIt(); } }",
+					" public static class Condition {",
+					"  public static <T extends Comparable<T>, S extends Comparable<S>> boolean evaluate(final T var1, final S var2, final ConditionType type) {",
+					"   final boolean same = var1.equals(var2);",
+					"   switch (type) {",
+					"    case EQUALS: return same;",
+					"    case NOTEQUALS: return !same;",
+					"    default: return var1.toString().compareTo(var2.toString()) < 0;",
+					"   }",
+					"  }",
+					"  public static boolean evaluate(final Integer var1, final String var2, final ConditionType type) { return evaluate(var1.toString(), var2, type); }",
+					"  public enum ConditionType { EQUALS, NOTEQUALS, LOWER, LOWEREQUAL, HIGHER, HIGEREQUAL }",
+					" }",
+					"}"
+			)
+	);
+	@TempDir
+	Path dir;
+	private Path        lang;
+	private ModuleLayer layer;
+
+	@BeforeEach
+	void compileLang() throws IOException {
+		this.lang = Files.createDirectories(this.dir.resolve("lang"));
+		final List<JavaSource> sources = new ArrayList<>();
+		BytecodeCompilerTest.LANG.forEach((name, content) -> sources.add(new JavaSource(name, content)));
+		final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		assertTrue(javac.getTask(null, null, null, List.of("-d", this.lang.toString()), null, sources).call());
+		final Configuration configuration = ModuleLayer.boot().configuration().resolve(ModuleFinder.of(this.lang), ModuleFinder.of(), Set.of("cish.lang"));
+		this.layer = ModuleLayer.boot().defineModulesWithOneLoader(configuration, ClassLoader.getSystemClassLoader());
+	}
+
+	/**
+	 * parses a script, which is stored as main.cish
+	 */
+	private CishCompiler parse(final String content) throws IOException, ParseException {
+		final Path script = Files.writeString(this.dir.resolve("main.cish"), content);
+		return new CishCompiler(false, new ScriptMetaInfo(script, "main")).compile(content);
+	}
+
+	/**
+	 * compiles a script with the byte code compiler
+	 */
+	private Optional<Map<String, byte[]>> bytecode(final String content) throws IOException, ParseException {
+		return new BytecodeCompiler("cishResult", this.layer, BytecodeCompilerTest.MODULES).compile(List.of(this.parse(content)), BytecodeCompilerTest.IMPORTS);
+	}
+
+	/**
+	 * compiles the java code of a script with javac
+	 *
+	 * @return classes or nothing, if javac rejects the code
+	 */
+	private Optional<Map<String, byte[]>> javac(final String content) throws IOException, ParseException {
+		final List<JavaSource> sources = List.of(
+				new JavaSource("module-info.java", "module cishResult {\n requires cish.lang;\n exports main;\n}"),
+				new JavaSource("main/Main.java", BytecodeCompilerTest.HEADER + this.parse(content).getContent())
+		);
+		final JavaCompiler                        javac       = ToolProvider.getSystemJavaCompiler();
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		try (final InMemoryFileManager fileManager = new InMemoryFileManager(javac.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8))) {
+			if (!javac.getTask(null, fileManager, diagnostics, List.of("-p", this.lang.toString()), null, sources).call()) {
+				return Optional.empty();
+			}
+			return Optional.of(fileManager.getClasses());
+		}
+	}
+
+	/**
+	 * loads the compiled module into a new layer, runs its main class and returns what the script printed
+	 */
+	private String run(final Map<String, byte[]> classes) throws ReflectiveOperationException {
+		final CompiledModule module        = new CompiledModule("cishResult", classes);
+		final Configuration  configuration = this.layer.configuration().resolve(module.asFinder(), ModuleFinder.of(), Set.of("cishResult"));
+		final ModuleLayer    child         = this.layer.defineModulesWithOneLoader(configuration, ClassLoader.getSystemClassLoader());
+		final Class<?>       console       = this.layer.findLoader("cish.lang").loadClass("org.alindner.cish.lang.Console");
+		console.getMethod("take").invoke(null);
+		Class.forName("main.Main", true, child.findLoader("cishResult"))
+		     .getMethod("main", Path.class, List.class, List.class, Map.class)
+		     .invoke(null, this.dir.resolve("main.cish"), List.of(), List.of("arg"), Map.of());
+		return (String) console.getMethod("take").invoke(null);
+	}
+
+	/**
+	 * compiles a script with both compilers, runs both results and asserts, that they print the same
+	 *
+	 * @return output of the script
+	 */
+	private String compare(final String content) throws IOException, ParseException, ReflectiveOperationException {
+		final Map<String, byte[]> bytecode = this.bytecode(content).orElseThrow(() -> new AssertionError("the byte code compiler fell back to javac"));
+		final Map<String, byte[]> javac    = this.javac(content).orElseThrow(() -> new AssertionError("javac rejected the script"));
+		final String              output   = this.run(bytecode);
+		assertEquals(this.run(javac), output);
+		return output;
+	}
+
+	@Test
+	void selectsTheOverloadsJavacSelects() throws IOException, ParseException, ReflectiveOperationException {
+		final String output = this.compare(String.join(
+				"\n",
+				"Console::print(\"text\")",
+				"Console::print(42)",
+				"Console::print(4.5)",
+				"Console::print(Console::twice(21))",
+				"Console::print(Console::big(3))",
+				"Console::print(Console::join(\"a\", \"b\", \"c\"))",
+				"Console::print(Console::join())",
+				"name = \"cish\"",
+				"Console::print(name.toUpperCase())",
+				"Console::print(name.substring(1).length())",
+				"Console::print(Console::list(name, \"x\"))",
+				"builder = new StringBuilder(name).append(\"!\")",
+				"Console::print(builder.toString())",
+				""
+		));
+		assertEquals("s:text\ni:42\no:4.5\ni:42\no:3000000000\ns:a-b-c\ns:\ns:CISH\ni:3\nl:[cish, x]\ns:cish!\n", output);
+	}
+
+	@Test
+	void concatenatesLikeJavac() throws IOException, ParseException, ReflectiveOperationException {
+		final String output = this.compare(String.join(
+				"\n",
+				"name = \"cish\"",
+				"list = Console::list(\"1\", \"2\")",
+				"text = \"hello \" + name + \"!\"",
+				"Console::print(text)",
+				"Console::print(\"v\" + 7 + \".\" + 1.5)",
+				"Console::print(name + \" \" + list + \" \\t\")",
+				""
+		));
+		assertEquals("s:hello cish!\ns:v7.1.5\ns:cish [1, 2] \t\n", output);
+	}
+
+	@Test
+	void mergesTheFramesOfBranches() throws IOException, ParseException, ReflectiveOperationException {
+		final String output = this.compare(String.join(
+				"\n",
+				"ratio = 2.5",
+				"count = 3",
+				"big = Console::big(1)",
+				"name = \"cish\"",
+				"if (name == \"cish\") {",
+				"    inner = \"then \" + name",
+				"    Console::print(inner)",
+				"    if (count == 3) {",
+				"        nested = 1.5",
+				"        Console::print(nested)",
+				"    } else {",
+				"        Console::print(\"not reached\")",
+				"    }",
+				"    Console::print(big)",
+				"} else {",
+				"    other = 7",
+				"    Console::print(other)",
+				"}",
+				"after = \"after\"",
+				"if (count != 3) {",
+				"    Console::print(\"not reached\")",
+				"}",
+				"if (count == \"3\") {",
+				"    Console::print(\"mixed\")",
+				"}",
+				"Console::print(after + \" \" + name)",
+				"Console::print(ratio)",
+				""
+		));
+		assertEquals("s:then cish\no:1.5\no:1000000000\ns:mixed\ns:after cish\no:2.5\n", output);
+	}
+
+	@Test
+	void fallsBackForCodeOnlyJavacCompiles() throws IOException, ParseException, ReflectiveOperationException {
+		final String lambda = "Console::each({\n    Console::print(it)\n})\n";
+		assertTrue(this.bytecode(lambda).isEmpty());
+		assertEquals("s:it\n", this.run(this.javac(lambda).orElseThrow()));
+
+		final String java = "```java\nclass Helper {}\n```\nConsole::print(\"java\")\n";
+		assertTrue(this.bytecode(java).isEmpty());
+
+		final String generic = "Console::print(Collections::max(List::of(1, 3, 2)))\n";
+		assertTrue(this.bytecode(generic).isEmpty());
+		assertEquals("i:3\n", this.run(this.javac(generic).orElseThrow()));
+	}
+
+	@Test
+	void fallsBackWhereJavacRejectsTheScript() throws IOException, ParseException {
+		for (final String script : List.of(
+				"name = \"cish\"\nif (name == \"cish\") {\n    Console::print(Console::read())\n}\n",
+				"name = \"cish\"\nif (name == \"cish\") {\n    Console::print(name)\n}\nname = \"other\"\n",
+				"Console::missing()\n",
+				"count = 3\nConsole::print(\"\" + count)\nConsole::print(count.toString())\n",
+				"Unknown::print(\"x\")\n"
+		)) {
+			assertTrue(this.bytecode(script).isEmpty(), script);
+			assertTrue(this.javac(script).isEmpty(), script);
+		}
+	}
+
+	@Test
+	void passesTheParametersToTheScript() throws IOException, ParseException, ReflectiveOperationException {
+		assertEquals("l:[arg]\n", this.compare("Console::print(Parameter::get())\n"));
+	}
+}
@@ -0,0 +1,120 @@
+package org.alindner.cish.compiler.postcompiler.extension;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssetsManagerTest {
+	private final Map<String, byte[]> files     = new ConcurrentHashMap<>();
+	private final AtomicInteger       downloads = new AtomicInteger();
+	@TempDir
+	Path                              dir;
+	private       HttpServer          server;
+	private       AssetsManager       manager;
+
+	@BeforeEach
+	void setup() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.createContext("/", exchange -> {
+			final byte[] content = this.files.get(exchange.getRequestURI().getPath());
+			if (content == null) {
+				exchange.sendResponseHeaders(404, -1);
+			} else {
+				if (exchange.getRequestURI().getPath().endsWith(".jar")) {
+					this.downloads.incrementAndGet();
+					try {
+						Thread.sleep(200);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				exchange.sendResponseHeaders(200, content.length);
+				try (final OutputStream os = exchange.getResponseBody()) {
+					os.write(content);
+				}
+			}
+			exchange.close();
+		});
+		this.server.start();
+		this.manager = new AssetsManager(this.dir.resolve("assets.db"), this.dir.resolve("assets"));
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.server.stop(0);
+	}
+
+	private URL url(final String path) throws IOException {
+		return new URL(String.format("http://localhost:%d%s", this.server.getAddress().getPort(), path));
+	}
+
+	private List<Path> partFiles() throws IOException {
+		try (final var stream = Files.walk(this.dir)) {
+			return stream.filter(path -> path.getFileName().toString().endsWith(".part")).collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	void concurrentRequestsShareOneDownload() throws Exception {
+		this.files.put("/lib.jar", "content".getBytes(StandardCharsets.UTF_8));
+		final URL             url      = this.url("/lib.jar");
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<Asset>> futures = executor.invokeAll(List.<Callable<Asset>>of(
+					() -> this.manager.getByUrl(url),
+					() -> this.manager.getByUrl(url),
+					() -> this.manager.getByUrl(url),
+					() -> this.manager.getByUrl(url)
+			));
+			for (final Future<Asset> future : futures) {
+				assertEquals("content", Files.readString(future.get().getPath()));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, this.downloads.get());
+		assertEquals("lib.jar", this.manager.getByUrl(url).getPath().getFileName().toString());
+		assertEquals(1, this.downloads.get());
+	}
+
+	@Test
+	void verifiesTheChecksum() throws IOException {
+		this.files.put("/good.jar", "content".getBytes(StandardCharsets.UTF_8));
+		this.files.put("/good.jar.sha256", "ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73  good.jar\n".getBytes(StandardCharsets.UTF_8));
+		this.files.put("/bad.jar", "content".getBytes(StandardCharsets.UTF_8));
+		this.files.put("/bad.jar.sha1", "0000000000000000000000000000000000000000".getBytes(StandardCharsets.UTF_8));
+
+		assertEquals("ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73", this.manager.getByUrl(this.url("/good.jar")).getHash());
+		assertThrows(IOException.class, () -> this.manager.getByUrl(this.url("/bad.jar")));
+		assertTrue(this.partFiles().isEmpty());
+	}
+
+	@Test
+	void getAllSkipsFailedDownloads() throws IOException {
+		this.files.put("/a.jar", "a".getBytes(StandardCharsets.UTF_8));
+		this.files.put("/b.jar", "b".getBytes(StandardCharsets.UTF_8));
+
+		final List<Asset> assets = this.manager.getAll(List.of(this.url("/a.jar"), this.url("/missing.jar"), this.url("/b.jar"), this.url("/a.jar")));
+		assertEquals(List.of("a.jar", "b.jar"), assets.stream().map(asset -> asset.getPath().getFileName().toString()).collect(Collectors.toList()));
+		assertEquals(2, this.downloads.get());
+		assertTrue(this.partFiles().isEmpty());
+	}
+}
@@ -0,0 +1,163 @@
+package org.alindner.cish.compiler.postcompiler.extension;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpCacheTest {
+	private static final String         LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+	private final        AtomicInteger  downloads     = new AtomicInteger();
+	private final        AtomicInteger  unchanged     = new AtomicInteger();
+	@TempDir
+	Path                                dir;
+	private              HttpServer     server;
+	private              CountDownLatch parallel;
+	private              AtomicBoolean  concurrent;
+
+	@BeforeEach
+	void setup() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.createContext("/etag/", exchange -> {
+			if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				this.respond(exchange, 304, null);
+				return;
+			}
+			exchange.getResponseHeaders().add("ETag", "\"v1\"");
+			this.respond(exchange, 200, "class A {}".getBytes(StandardCharsets.UTF_8));
+		});
+		this.server.createContext("/modified/", exchange -> {
+			if (HttpCacheTest.LAST_MODIFIED.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+				this.respond(exchange, 304, null);
+				return;
+			}
+			exchange.getResponseHeaders().add("Last-Modified", HttpCacheTest.LAST_MODIFIED);
+			this.respond(exchange, 200, "class B {}".getBytes(StandardCharsets.UTF_8));
+		});
+		this.server.createContext("/gzip/", exchange -> {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (final GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+				gzip.write("class C {}".getBytes(StandardCharsets.UTF_8));
+			}
+			exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+			this.respond(exchange, 200, bytes.toByteArray());
+		});
+		this.server.createContext("/parallel/", exchange -> {
+			this.parallel.countDown();
+			try {
+				if (!this.parallel.await(10, TimeUnit.SECONDS)) {
+					this.concurrent.set(false);
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.respond(exchange, 200, exchange.getRequestURI().getPath().getBytes(StandardCharsets.UTF_8));
+		});
+		this.server.createContext("/missing/", exchange -> this.respond(exchange, 404, null));
+		this.server.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.server.stop(0);
+	}
+
+	private void respond(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+		if (status == 200) {
+			this.downloads.incrementAndGet();
+		} else if (status == 304) {
+			this.unchanged.incrementAndGet();
+		}
+		exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+		if (body != null) {
+			try (final OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		}
+		exchange.close();
+	}
+
+	private URI uri(final String path) {
+		return URI.create(String.format("http://localhost:%d%s", this.server.getAddress().getPort(), path));
+	}
+
+	@Test
+	void revalidatesByETag() throws IOException {
+		final HttpCache cache = new HttpCache(this.dir, false);
+		final Path      file  = cache.fetch(this.uri("/etag/A.java"));
+		assertEquals("A.java", file.getFileName().toString());
+		assertEquals(file, cache.fetch(this.uri("/etag/A.java")));
+		assertEquals("class A {}", Files.readString(file));
+		assertEquals(1, this.downloads.get());
+		assertEquals(1, this.unchanged.get());
+	}
+
+	@Test
+	void revalidatesByLastModified() throws IOException {
+		final HttpCache cache = new HttpCache(this.dir, false);
+		assertEquals("class B {}", Files.readString(cache.fetch(this.uri("/modified/B.java"))));
+		assertEquals("class B {}", Files.readString(cache.fetch(this.uri("/modified/B.java"))));
+		assertEquals(1, this.downloads.get());
+		assertEquals(1, this.unchanged.get());
+	}
+
+	@Test
+	void decompressesGzip() throws IOException {
+		assertEquals("class C {}", Files.readString(new HttpCache(this.dir, false).fetch(this.uri("/gzip/C.java"))));
+	}
+
+	@Test
+	void offlineUsesTheCachedFile() throws IOException {
+		final Path file = new HttpCache(this.dir, false).fetch(this.uri("/etag/A.java"));
+
+		final HttpCache offline = new HttpCache(this.dir, true);
+		assertEquals(file, offline.fetch(this.uri("/etag/A.java")));
+		assertThrows(IOException.class, () -> offline.fetch(this.uri("/etag/B.java")));
+		assertEquals(1, this.downloads.get() + this.unchanged.get());
+	}
+
+	@Test
+	void unreachableServerUsesTheCachedFile() throws IOException {
+		final HttpCache cache = new HttpCache(this.dir, false);
+		final URI       uri   = this.uri("/etag/A.java");
+		final Path      file  = cache.fetch(uri);
+		this.server.stop(0);
+
+		assertEquals(file, cache.fetch(uri));
+		assertThrows(IOException.class, () -> cache.fetch(this.uri("/etag/B.java")));
+	}
+
+	@Test
+	void fetchesInParallel() {
+		this.parallel = new CountDownLatch(3);
+		this.concurrent = new AtomicBoolean(true);
+		final List<URI> uris = List.of(this.uri("/parallel/a.jar"), this.uri("/missing/b.jar"), this.uri("/parallel/c.jar"), this.uri("/parallel/d.jar"), this.uri("/parallel/a.jar"));
+
+		final Map<URI, Path> files = new HttpCache(this.dir, false).fetchAll(uris);
+		assertTrue(this.concurrent.get());
+		assertEquals(List.of(this.uri("/parallel/a.jar"), this.uri("/parallel/c.jar"), this.uri("/parallel/d.jar")), List.copyOf(files.keySet()));
+		assertEquals(3, this.downloads.get());
+	}
+}
@@ -0,0 +1,144 @@
+package org.alindner.cish.compiler.postcompiler.extension.maven;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MavenResolverTest {
+	@TempDir
+	Path          dir;
+	Path          repository;
+	MavenResolver resolver;
+
+	@BeforeEach
+	void setup() {
+		this.repository = this.dir.resolve("repository");
+		this.resolver = new MavenResolver(List.of(this.repository.toUri()), this.dir.resolve("local"));
+	}
+
+	/**
+	 * writes a pom and, unless the packaging is pom, an empty jar to the test repository
+	 */
+	private void deploy(final String artifactId, final String version, final String body) throws IOException {
+		final Path base = this.repository.resolve("org/example").resolve(artifactId).resolve(version);
+		Files.createDirectories(base);
+		Files.write(base.resolve(artifactId + "-" + version + ".pom"), String.format(
+				"<project xmlns=\"http://maven.apache.org/POM/4.0.0\"><modelVersion>4.0.0</modelVersion><groupId>org.example</groupId><artifactId>%s</artifactId>"
+						+ "<version>%s</version>%s</project>",
+				artifactId,
+				version,
+				body
+		).getBytes(StandardCharsets.UTF_8));
+		if (!body.contains("<packaging>pom</packaging>")) {
+			Files.write(base.resolve(artifactId + "-" + version + ".jar"), new byte[0]);
+		}
+	}
+
+	private static String dependency(final String artifactId, final String version, final String extra) {
+		return String.format(
+				"<dependency><groupId>org.example</groupId><artifactId>%s</artifactId>%s%s</dependency>",
+				artifactId,
+				version == null ? "" : "<version>" + version + "</version>",
+				extra
+		);
+	}
+
+	private List<String> collect(final String artifactId) throws IOException {
+		return this.resolver.collect(new Artifact("org.example", artifactId, "1.0", "jar", null))
+		                    .stream()
+		                    .map(artifact -> artifact.getArtifactId() + ":" + artifact.getVersion())
+		                    .collect(Collectors.toList());
+	}
+
+	@Test
+	void nearestWins() throws IOException {
+		this.deploy("a", "1.0", "<dependencies>" + MavenResolverTest.dependency("b", "1.0", "") + MavenResolverTest.dependency("d", "2.0", "") + "</dependencies>");
+		this.deploy("b", "1.0", "<dependencies>" + MavenResolverTest.dependency("d", "1.0", "") + MavenResolverTest.dependency("e", "1.0", "") + "</dependencies>");
+		this.deploy("d", "1.0", "");
+		this.deploy("d", "2.0", "");
+		this.deploy("e", "1.0", "");
+
+		assertEquals(List.of("a:1.0", "b:1.0", "d:2.0", "e:1.0"), this.collect("a"));
+	}
+
+	@Test
+	void firstDeclarationWins() throws IOException {
+		this.deploy("a", "1.0", "<dependencies>" + MavenResolverTest.dependency("b", "1.0", "") + MavenResolverTest.dependency("c", "1.0", "") + "</dependencies>");
+		this.deploy("b", "1.0", "<dependencies>" + MavenResolverTest.dependency("d", "1.0", "") + "</dependencies>");
+		this.deploy("c", "1.0", "<dependencies>" + MavenResolverTest.dependency("d", "2.0", "") + "</dependencies>");
+		this.deploy("d", "1.0", "");
+		this.deploy("d", "2.0", "");
+
+		assertEquals(List.of("a:1.0", "b:1.0", "c:1.0", "d:1.0"), this.collect("a"));
+	}
+
+	@Test
+	void skipsTestOptionalAndExcludedDependencies() throws IOException {
+		this.deploy("a", "1.0", "<dependencies>"
+				+ MavenResolverTest.dependency("t", "1.0", "<scope>test</scope>")
+				+ MavenResolverTest.dependency("o", "1.0", "<optional>true</optional>")
+				+ MavenResolverTest.dependency("b", "1.0", "<exclusions><exclusion><groupId>org.example</groupId><artifactId>d</artifactId></exclusion></exclusions>")
+				+ MavenResolverTest.dependency("r", "1.0", "<scope>runtime</scope>")
+				+ "</dependencies>");
+		this.deploy("b", "1.0", "<dependencies>" + MavenResolverTest.dependency("c", "1.0", "") + "</dependencies>");
+		this.deploy("c", "1.0", "<dependencies>" + MavenResolverTest.dependency("d", "1.0", "") + "</dependencies>");
+		this.deploy("r", "1.0", "");
+
+		assertEquals(List.of("a:1.0", "b:1.0", "r:1.0", "c:1.0"), this.collect("a"));
+	}
+
+	@Test
+	void inheritsPropertiesAndManagement() throws IOException {
+		this.deploy("bom", "1.0", "<packaging>pom</packaging><dependencyManagement><dependencies>" + MavenResolverTest.dependency("e", "3.0", "") + "</dependencies></dependencyManagement>");
+		this.deploy("parent", "1.0", "<packaging>pom</packaging><properties><d.version>2.0</d.version></properties><dependencyManagement><dependencies>"
+				+ MavenResolverTest.dependency("d", "${d.version}", "")
+				+ MavenResolverTest.dependency("bom", "1.0", "<type>pom</type><scope>import</scope>")
+				+ "</dependencies></dependencyManagement>");
+		this.deploy("a", "1.0", "<parent><groupId>org.example</groupId><artifactId>parent</artifactId><version>1.0</version></parent><dependencies>"
+				+ MavenResolverTest.dependency("d", null, "")
+				+ MavenResolverTest.dependency("e", null, "")
+				+ MavenResolverTest.dependency("f", "${project.version}", "")
+				+ "</dependencies>");
+		this.deploy("d", "2.0", "");
+		this.deploy("e", "3.0", "");
+		this.deploy("f", "1.0", "");
+
+		assertEquals(List.of("a:1.0", "d:2.0", "e:3.0", "f:1.0"), this.collect("a"));
+	}
+
+	@Test
+	void resolveCopiesJarsAndReusesTheGraph() throws IOException {
+		this.deploy("a", "1.0", "<dependencies>" + MavenResolverTest.dependency("b", "1.0", "") + "</dependencies>");
+		this.deploy("b", "1.0", "");
+		final Path target = this.dir.resolve("target");
+
+		final List<Path> jars = this.resolver.resolve(new Artifact("org.example", "a", "1.0", "jar", null), target);
+		assertEquals(List.of(target.resolve("a-1.0.jar"), target.resolve("b-1.0.jar")), jars);
+		assertTrue(jars.stream().allMatch(Files::isRegularFile));
+
+		final MavenResolver offline = new MavenResolver(List.of(this.dir.resolve("missing").toUri()), this.dir.resolve("empty"));
+		assertEquals(jars, offline.resolve(new Artifact("org.example", "a", "1.0", "jar", null), target));
+	}
+
+	@Test
+	void missingArtifact() {
+		assertThrows(IOException.class, () -> this.resolver.resolve(new Artifact("org.example", "missing", "1.0", "jar", null), this.dir.resolve("target")));
+	}
+
+	@Test
+	void pickVersion() throws IOException {
+		assertEquals("1.0", MavenResolver.pickVersion("1.0"));
+		assertEquals("1.2", MavenResolver.pickVersion("[1.2]"));
+		assertEquals("1.2", MavenResolver.pickVersion("[1.2,2.0)"));
+		assertThrows(IOException.class, () -> MavenResolver.pickVersion("(,2.0]"));
+	}
+}
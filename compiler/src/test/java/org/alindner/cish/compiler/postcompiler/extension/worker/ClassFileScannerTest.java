@@ -0,0 +1,146 @@
+package org.alindner.cish.compiler.postcompiler.extension.worker;
+
+import org.alindner.cish.extension.ExtensionIndex;
+import org.alindner.cish.extension.annotations.CishExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassFileScannerTest {
+	private static final String ARCHIVE   = String.join(
+			"\n",
+			"package org.example.ext;",
+			"import java.nio.file.Path;",
+			"import java.util.function.Predicate;",
+			"import org.alindner.cish.extension.Type;",
+			"import org.alindner.cish.extension.annotations.*;",
+			"@CishExtension(\"1.0\")",
+			"@MavenDependency(value = \"org.example\", name = \"first\", version = \"1.0\")",
+			"@MavenDependency(value = \"org.example\", name = \"second\", version = \"2.0\", type = Type.HIGHER)",
+			"public class Archive extends Base implements Named {",
+			"	public static final long   LIMIT = 4_294_967_296L;",
+			"	public static final double RATIO = 0.75;",
+			"	@JarDependency(\"https://example.org/zip.jar\")",
+			"	public static void unzip(final Path file) {}",
+			"	@Deprecated(since = \"1.0\", forRemoval = true)",
+			"	public static void zip(final Path file) {}",
+			"	static void hidden() {}",
+			"	private static void secret() {}",
+			"	public static class Entry {",
+			"		@CishExtension",
+			"		@JavaDependency(value = \"https://example.org/Entry.java\", version = \"3\", type = Type.LOWER)",
+			"		public static String entry() { return String.valueOf(Archive.LIMIT * Archive.RATIO); }",
+			"		@CishPredicate(\"zip_file\")",
+			"		public static Predicate<Path> zipFile() { return file -> file.toString().endsWith(\".zip\"); }",
+			"		public static void notAnExtension() {}",
+			"	}",
+			"}"
+	);
+	private static final String BASE      = "package org.example.ext;\nclass Base { public void inherited() {} protected void notPublic() {} }";
+	private static final String NAMED     = "package org.example.ext;\npublic interface Named { default String name() { return \"archive\"; } }";
+	private static final String UNRELATED = "package org.example.ext;\npublic class Unrelated { public static void other() {} }";
+	@TempDir
+	Path dir;
+
+	/**
+	 * compiles the fixture extension with the annotation processor of the extension module
+	 *
+	 * @return directory of the class files and the index
+	 */
+	private Path compile() throws IOException, URISyntaxException {
+		final Path         sources   = Files.createDirectories(this.dir.resolve("src/org/example/ext"));
+		final Path         classes   = Files.createDirectories(this.dir.resolve("classes"));
+		final String       extension = Path.of(CishExtension.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+		final List<String> args      = new ArrayList<>(List.of("-d", classes.toString(), "-classpath", extension, "-processorpath", extension));
+		args.add(Files.writeString(sources.resolve("Archive.java"), ClassFileScannerTest.ARCHIVE).toString());
+		args.add(Files.writeString(sources.resolve("Base.java"), ClassFileScannerTest.BASE).toString());
+		args.add(Files.writeString(sources.resolve("Named.java"), ClassFileScannerTest.NAMED).toString());
+		args.add(Files.writeString(sources.resolve("Unrelated.java"), ClassFileScannerTest.UNRELATED).toString());
+		assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, args.toArray(new String[0])));
+		return classes;
+	}
+
+	/**
+	 * writes the class files to a jar without the index, like a jar, which was built without the annotation processor
+	 */
+	private Path jar(final Path classes) throws IOException {
+		final Path jar = this.dir.resolve("extension.jar");
+		try (final ZipOutputStream os = new ZipOutputStream(Files.newOutputStream(jar)); final Stream<Path> files = Files.walk(classes)) {
+			for (final Path file : files.filter(Files::isRegularFile).filter(file -> file.toString().endsWith(".class")).collect(Collectors.toList())) {
+				os.putNextEntry(new ZipEntry(classes.relativize(file).toString().replace('\\', '/')));
+				os.write(Files.readAllBytes(file));
+				os.closeEntry();
+			}
+		}
+		return jar;
+	}
+
+	/**
+	 * describes an index independent of the order, in which the classes, methods and annotations were found
+	 */
+	private static List<String> describe(final ExtensionIndex index) {
+		final List<String> lines = new ArrayList<>();
+		index.getExtensions().forEach(extension -> lines.add(String.format(
+				"extension %s %s %s %s",
+				extension.getName(),
+				extension.getVersion(),
+				extension.getMethods().stream().sorted().collect(Collectors.toList()),
+				extension.getDependencies()
+				         .stream()
+				         .map(dependency -> String.join(" ", dependency.getKind(), dependency.getValue(), String.valueOf(dependency.getName()), dependency.getVersion(), dependency.getType().name()))
+				         .sorted()
+				         .collect(Collectors.toList())
+		)));
+		index.getPredicates().forEach(predicate -> lines.add(String.join(" ", "predicate", predicate.getClassName(), predicate.getMethod(), predicate.getName())));
+		lines.sort(String::compareTo);
+		return lines;
+	}
+
+	@Test
+	void scansTheSameIndexAsTheAnnotationProcessor() throws IOException, URISyntaxException {
+		final Path           classes = this.compile();
+		final ExtensionIndex processed;
+		try (final Reader reader = Files.newBufferedReader(classes.resolve(ExtensionIndex.LOCATION), StandardCharsets.UTF_8)) {
+			processed = ExtensionIndex.read(reader);
+		}
+		assertEquals(List.of(
+				"extension org.example.ext.Archive 1.0 [inherited, name, unzip, zip] "
+				+ "[jar https://example.org/zip.jar null latest EQUALS, maven org.example first 1.0 EQUALS, maven org.example second 2.0 HIGHER]",
+				"extension org.example.ext.Archive.Entry latest [entry] [java https://example.org/Entry.java null 3 LOWER]",
+				"predicate org.example.ext.Archive$Entry zipFile zip_file"
+		), ClassFileScannerTest.describe(processed));
+
+		assertEquals(ClassFileScannerTest.describe(processed), ClassFileScannerTest.describe(ClassFileScanner.scan(this.jar(classes))));
+	}
+
+	@Test
+	void writesAndReadsTheScannedIndex() throws IOException, URISyntaxException {
+		final ExtensionIndex scanned = ClassFileScanner.scan(this.jar(this.compile()));
+		final StringWriter   writer  = new StringWriter();
+		scanned.write(writer);
+		assertEquals(ClassFileScannerTest.describe(scanned), ClassFileScannerTest.describe(ExtensionIndex.read(new StringReader(writer.toString()))));
+	}
+
+	@Test
+	void rejectsAMalformedIndex() {
+		assertThrows(IOException.class, () -> ExtensionIndex.read(new StringReader("extension\torg.example.A\n")));
+		assertThrows(IOException.class, () -> ExtensionIndex.read(new StringReader("extension\torg.example.A\t1.0\ndependency\tmaven\tg\ta\t1\tNEWER\n")));
+	}
+}
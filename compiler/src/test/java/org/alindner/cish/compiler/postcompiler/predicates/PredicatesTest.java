@@ -0,0 +1,120 @@
+package org.alindner.cish.compiler.postcompiler.predicates;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PredicatesTest {
+	private static final Predicate<Object> ANY = value -> true;
+
+	public static Predicate<? super Path> superPath() {
+		return path -> true;
+	}
+
+	public static Predicate<List<String>> list() {
+		return list -> true;
+	}
+
+	@SuppressWarnings("rawtypes")
+	public static Predicate raw() {
+		return value -> true;
+	}
+
+	public static <T> Predicate<T> generic() {
+		return value -> true;
+	}
+
+	@Test
+	void mergesThePredicatesOfTheSameName() {
+		final Predicate<Path>   path   = file -> true;
+		final Predicate<String> string = value -> true;
+		Predicates.addPredicate("merged_type", Map.of(Path.class, () -> path));
+		Predicates.addPredicate("merged_type", Map.of(String.class, () -> string));
+
+		assertSame(path, Predicates.find("isMergedType", Path.of("a").getClass()).orElseThrow());
+		assertSame(string, Predicates.find("isMergedType", String.class).orElseThrow());
+		assertTrue(Predicates.find("isMergedType", Integer.class).isEmpty());
+		assertTrue(Predicates.find("isUnknownPredicate", String.class).isEmpty());
+	}
+
+	@Test
+	void dispatchesToTheFirstRegisteredMatchingReceiverType() {
+		final Predicate<Number>  number  = value -> true;
+		final Predicate<Integer> integer = value -> true;
+		Predicates.addPredicate("ordered", Map.of(Number.class, () -> number));
+		Predicates.addPredicate("ordered", Map.of(Integer.class, () -> integer));
+
+		assertSame(number, Predicates.find("isOrdered", Integer.class).orElseThrow());
+		assertSame(number, Predicates.find("isOrdered", Long.class).orElseThrow());
+		assertTrue(Predicates.find("isOrdered", String.class).isEmpty());
+	}
+
+	@Test
+	void cachesThePredicatePerReceiverClass() {
+		final AtomicInteger created = new AtomicInteger();
+		Predicates.addPredicate("cached", Map.of(CharSequence.class, () -> {
+			created.incrementAndGet();
+			return PredicatesTest.ANY;
+		}));
+
+		assertTrue(Predicates.find("isCached", String.class).isPresent());
+		assertTrue(Predicates.find("isCached", String.class).isPresent());
+		assertEquals(1, created.get());
+		assertTrue(Predicates.find("isCached", StringBuilder.class).isPresent());
+		assertEquals(2, created.get());
+	}
+
+	@Test
+	void addingAPredicateResetsTheDispatchCache() {
+		assertTrue(Predicates.find("isLate", ArrayList.class).isEmpty());
+		Predicates.addPredicate("late", Map.of(List.class, () -> PredicatesTest.ANY));
+		assertSame(PredicatesTest.ANY, Predicates.find("isLate", ArrayList.class).orElseThrow());
+	}
+
+	@Test
+	void readsTheReceiverTypeFromTheReturnType() throws NoSuchMethodException {
+		assertEquals(Path.class, Predicates.receiverType(PredicatesTest.class.getMethod("superPath")));
+		assertEquals(List.class, Predicates.receiverType(PredicatesTest.class.getMethod("list")));
+		assertEquals(Object.class, Predicates.receiverType(PredicatesTest.class.getMethod("raw")));
+		assertEquals(Object.class, Predicates.receiverType(PredicatesTest.class.getMethod("generic")));
+	}
+
+	/**
+	 * adds an empty layer, like the layer of a script run, without looking up a predicate afterwards
+	 */
+	private static WeakReference<ModuleLayer> addTemporaryLayer() {
+		final Configuration configuration = ModuleLayer.boot().configuration().resolve(ModuleFinder.of(), ModuleFinder.of(), Set.of());
+		final ModuleLayer   layer         = ModuleLayer.boot().defineModulesWithOneLoader(configuration, ClassLoader.getSystemClassLoader());
+		Predicates.addLayer(layer);
+		return new WeakReference<>(layer);
+	}
+
+	@Test
+	void doesNotKeepTheAddedLayers() throws InterruptedException {
+		final WeakReference<ModuleLayer> layer = PredicatesTest.addTemporaryLayer();
+		for (int i = 0; i < 50 && layer.get() != null; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertNull(layer.get());
+		Predicates.addLayer(ModuleLayer.boot());
+		assertTrue(Predicates.find("isNothing", Object.class).isEmpty());
+	}
+
+	@Test
+	void convertsTheNameToTheMethodName() {
+		assertEquals("isZipFile", Predicates.methodName("zip_file"));
+		assertEquals("isZip", Predicates.methodName("zip"));
+	}
+}
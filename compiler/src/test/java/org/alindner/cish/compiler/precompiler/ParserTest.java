@@ -0,0 +1,138 @@
+package org.alindner.cish.compiler.precompiler;
+
+import org.alindner.cish.compiler.ScriptMetaInfo;
+import org.alindner.cish.compiler.precompiler.ast.*;
+import org.alindner.cish.compiler.precompiler.jj.ParseException;
+import org.alindner.cish.compiler.precompiler.jj.Parser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ParserTest {
+	@TempDir
+	Path dir;
+
+	private static Script parse(final String content) throws ParseException {
+		return new Parser(new StringReader(content)).Root();
+	}
+
+	/**
+	 * generates a script with the given number of lines, which uses most constructs of the grammar. Ten lines contain four statements.
+	 */
+	private static String generate(final int lines) {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < lines; i += 10) {
+			builder.append("v").append(i).append(" = \"x\" + ").append(i).append('\n');
+			builder.append("Console::print(v").append(i).append(")\n");
+			builder.append("if (v").append(i).append(" == \"x\") {\n    Console::print(\"y\")\n} else {\n    Console::print(\"z\")\n}\n");
+			builder.append("IO::listFiles(dir).exec(file -> {\n    Console::print(file)\n})\n");
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * parses the script a few times and returns the shortest cpu time of the parsing thread. The time of the garbage collector isn't part of it, as the whole tree of a large
+	 * script is alive until the end and copying it dominates the wall clock time on a small heap.
+	 */
+	private static long parseTime(final String content, final int statements) throws ParseException {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long               best    = Long.MAX_VALUE;
+		for (int i = 0; i < 3; i++) {
+			final long   start  = threads.getCurrentThreadCpuTime();
+			final Script script = ParserTest.parse(content);
+			best = Math.min(best, threads.getCurrentThreadCpuTime() - start);
+			assertEquals(statements, script.getStatements().size());
+			assertEquals(statements, script.getLines().size());
+		}
+		return best;
+	}
+
+	private static Lambda lambdaOf(final Node statement) {
+		return (Lambda) ((Command) statement).getCalls().get(0).getArguments().get(0);
+	}
+
+	@Test
+	void parsesAllLambdaForms() throws ParseException {
+		final Script script = ParserTest.parse(String.join(
+				"\n",
+				"IO::listFiles(dir).exec(file -> {",
+				"    Console::print(file)",
+				"})",
+				"IO::listFiles(dir).exec(file => {",
+				"    Console::print(file)",
+				"})",
+				"IO::listFiles(dir).exec((a, b) -> {",
+				"    Console::print(a)",
+				"})",
+				"IO::listFiles(dir).exec({",
+				"    Console::print(it)",
+				"})"
+		));
+		assertEquals(4, script.getStatements().size());
+		assertEquals(List.of("file"), ParserTest.lambdaOf(script.getStatements().get(0)).getParameters());
+		assertEquals(List.of("file"), ParserTest.lambdaOf(script.getStatements().get(1)).getParameters());
+		assertEquals(List.of("a", "b"), ParserTest.lambdaOf(script.getStatements().get(2)).getParameters());
+		assertEquals(List.of("it"), ParserTest.lambdaOf(script.getStatements().get(3)).getParameters());
+		assertEquals(1, ParserTest.lambdaOf(script.getStatements().get(0)).getBody().size());
+	}
+
+	@Test
+	void keepsAnIdentifierWithoutArrowAsArgument() throws ParseException {
+		final Script script = ParserTest.parse("Console::print(file)\n");
+		final Node   arg    = ((Command) script.getStatements().get(0)).getArguments().get(0);
+		assertEquals(new Identifier("file"), arg);
+	}
+
+	@Test
+	void generatesASingleParameterLambda() throws IOException, ParseException {
+		final Path script = Files.writeString(this.dir.resolve("main.cish"), "");
+		final String content = new CishCompiler(false, new ScriptMetaInfo(script, "main")).compile("IO::listFiles(dir).exec(file -> {\nConsole::print(file)\n})\n").getContent();
+		assertTrue(content.contains("(file) -> {"), content);
+	}
+
+	@Test
+	void parsesIfElseAndConcatenation() throws ParseException {
+		final Script script = ParserTest.parse("a = \"x\" + b\nif (a == \"x\") {\n    Console::print(a)\n}\nelse {\n    Console::print(b)\n}\n");
+		assertEquals(2, script.getStatements().size());
+		assertTrue(((Assignment) script.getStatements().get(0)).getValue() instanceof Concatenation);
+		final IfElse ifElse = (IfElse) script.getStatements().get(1);
+		assertTrue(ifElse.getCondition() instanceof Condition);
+		assertEquals(1, ifElse.getThen().size());
+		assertEquals(1, ifElse.getOtherwise().size());
+	}
+
+	@Test
+	void recordsTheLineOfEachStatement() throws ParseException {
+		final Script script = ParserTest.parse("a = \"x\"\n\n# comment\nb = \"y\"\nif (a == b) {\n    Console::print(a)\n}\n");
+		assertEquals(List.of(1, 4, 5), script.getLines());
+	}
+
+	@Test
+	void rejectsUnsupportedSyntax() {
+		assertThrows(ParseException.class, () -> ParserTest.parse("names = [\"cish\", \"cds\"]\n"));
+		assertThrows(ParseException.class, () -> ParserTest.parse("for (name : names) {\n}\n"));
+	}
+
+	@Test
+	void parsesLargeScriptsInLinearTime() throws ParseException {
+		assumeTrue(ManagementFactory.getThreadMXBean().isCurrentThreadCpuTimeSupported());
+		ParserTest.parseTime(ParserTest.generate(100_000), 40_000);
+
+		final long   small  = ParserTest.parseTime(ParserTest.generate(1_000), 400);
+		final long   medium = ParserTest.parseTime(ParserTest.generate(10_000), 4_000);
+		final long   large  = ParserTest.parseTime(ParserTest.generate(100_000), 40_000);
+		final String times  = String.format("1k lines: %d us, 10k lines: %d us, 100k lines: %d us", small / 1_000, medium / 1_000, large / 1_000);
+		// ten times the input may take ten times as long. A parser with a global lookahead scaled much worse.
+		assertTrue(large < 30 * medium, times);
+	}
+}
@@ -5,6 +5,8 @@
  * @since 0.7.0
  */
 open module cish.extension {
+	requires static java.compiler;
 	exports org.alindner.cish.extension.annotations;
 	exports org.alindner.cish.extension;
+	provides javax.annotation.processing.Processor with org.alindner.cish.extension.processor.ExtensionIndexProcessor;
 }
\ No newline at end of file
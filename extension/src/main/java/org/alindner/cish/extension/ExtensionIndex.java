@@ -0,0 +1,336 @@
+package org.alindner.cish.extension;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The index of an extension jar, which is written to {@link #LOCATION} by the annotation processor of this module while the extension is compiled.
+ * <p>
+ * It lists the extension classes with their public methods, the declared dependencies and the predicates, so cish doesn't need to load and scan the classes of the jar. The
+ * index is a text file with one tab separated record per line:
+ * <pre>
+ * extension  &lt;canonical class name&gt;  &lt;version&gt;
+ * method     &lt;name&gt;
+ * dependency &lt;maven|jar|java&gt;  &lt;value&gt;  &lt;maven artifact id or empty&gt;  &lt;version&gt;  &lt;type&gt;
+ * predicate  &lt;binary class name&gt;  &lt;method&gt;  &lt;name&gt;
+ * </pre>
+ * The <code>method</code> and <code>dependency</code> records belong to the preceding <code>extension</code> record.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+public class ExtensionIndex {
+	/**
+	 * location of the index inside an extension jar
+	 */
+	public static final  String          LOCATION   = "META-INF/cish/extensions.idx";
+	private static final String          EXTENSION  = "extension";
+	private static final String          METHOD     = "method";
+	private static final String          DEPENDENCY = "dependency";
+	private static final String          PREDICATE  = "predicate";
+	private final        List<Extension> extensions = new ArrayList<>();
+	private final        List<Predicate> predicates = new ArrayList<>();
+
+	/**
+	 * reads in an index
+	 *
+	 * @param reader content of the index
+	 *
+	 * @return index
+	 *
+	 * @throws IOException read error or malformed index
+	 */
+	public static ExtensionIndex read(final Reader reader) throws IOException {
+		final ExtensionIndex index = new ExtensionIndex();
+		Extension            last  = null;
+		final BufferedReader lines = new BufferedReader(reader);
+		for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			final String[] fields = line.split("\t", -1);
+			if (fields[0].equals(ExtensionIndex.EXTENSION) && fields.length == 3) {
+				last = new Extension(fields[1], fields[2]);
+				index.extensions.add(last);
+			} else if (fields[0].equals(ExtensionIndex.METHOD) && fields.length == 2 && last != null) {
+				last.methods.add(fields[1]);
+			} else if (fields[0].equals(ExtensionIndex.DEPENDENCY) && fields.length == 6 && last != null) {
+				try {
+					last.dependencies.add(new Dependency(fields[1], fields[2], fields[3].isEmpty() ? null : fields[3], fields[4], Type.valueOf(fields[5])));
+				} catch (final IllegalArgumentException e) {
+					throw new IOException(String.format("Malformed dependency in the extension index: %s", line), e);
+				}
+			} else if (fields[0].equals(ExtensionIndex.PREDICATE) && fields.length == 4) {
+				index.predicates.add(new Predicate(fields[1], fields[2], fields[3]));
+			} else {
+				throw new IOException(String.format("Malformed line in the extension index: %s", line));
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * checks, if a value can be written to the index
+	 *
+	 * @param value value
+	 *
+	 * @return value
+	 */
+	private static String checked(final String value) {
+		if (value.contains("\t") || value.contains("\n") || value.contains("\r")) {
+			throw new IllegalArgumentException(String.format("The value '%s' contains a tab or a line break", value));
+		}
+		return value;
+	}
+
+	/**
+	 * writes the index
+	 *
+	 * @param writer target
+	 *
+	 * @throws IOException write error
+	 */
+	public void write(final Writer writer) throws IOException {
+		writer.write("# cish extension index\n");
+		for (final Extension extension : this.extensions) {
+			writer.write(String.join("\t", ExtensionIndex.EXTENSION, ExtensionIndex.checked(extension.name), ExtensionIndex.checked(extension.version)) + "\n");
+			for (final String method : extension.methods) {
+				writer.write(String.join("\t", ExtensionIndex.METHOD, ExtensionIndex.checked(method)) + "\n");
+			}
+			for (final Dependency dependency : extension.dependencies) {
+				writer.write(String.join(
+						"\t",
+						ExtensionIndex.DEPENDENCY,
+						ExtensionIndex.checked(dependency.kind),
+						ExtensionIndex.checked(dependency.value),
+						dependency.name == null ? "" : ExtensionIndex.checked(dependency.name),
+						ExtensionIndex.checked(dependency.version),
+						dependency.type.name()
+				) + "\n");
+			}
+		}
+		for (final Predicate predicate : this.predicates) {
+			writer.write(String.join(
+					"\t",
+					ExtensionIndex.PREDICATE,
+					ExtensionIndex.checked(predicate.className),
+					ExtensionIndex.checked(predicate.method),
+					ExtensionIndex.checked(predicate.name)
+			) + "\n");
+		}
+	}
+
+	/**
+	 * get the extensions
+	 *
+	 * @return extensions
+	 */
+	public List<Extension> getExtensions() {
+		return this.extensions;
+	}
+
+	/**
+	 * get the predicates
+	 *
+	 * @return predicates
+	 */
+	public List<Predicate> getPredicates() {
+		return this.predicates;
+	}
+
+	/**
+	 * An extension class or a single extension method
+	 */
+	public static class Extension {
+		private final String           name;
+		private final String           version;
+		private final List<String>     methods      = new ArrayList<>();
+		private final List<Dependency> dependencies = new ArrayList<>();
+
+		/**
+		 * Constructor
+		 *
+		 * @param name    canonical name of the class
+		 * @param version version of the extension
+		 */
+		public Extension(final String name, final String version) {
+			this.name = name;
+			this.version = version;
+		}
+
+		/**
+		 * get the canonical name of the class
+		 *
+		 * @return class name
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * get the version
+		 *
+		 * @return version
+		 */
+		public String getVersion() {
+			return this.version;
+		}
+
+		/**
+		 * get the names of the public methods
+		 *
+		 * @return method names
+		 */
+		public List<String> getMethods() {
+			return this.methods;
+		}
+
+		/**
+		 * get the declared dependencies of the class and its methods
+		 *
+		 * @return dependencies
+		 */
+		public List<Dependency> getDependencies() {
+			return this.dependencies;
+		}
+	}
+
+	/**
+	 * A dependency declared by {@link org.alindner.cish.extension.annotations.MavenDependency}, {@link org.alindner.cish.extension.annotations.JarDependency} or
+	 * {@link org.alindner.cish.extension.annotations.JavaDependency}
+	 */
+	public static class Dependency {
+		/**
+		 * kind of a maven dependency
+		 */
+		public static final String MAVEN = "maven";
+		/**
+		 * kind of a jar dependency
+		 */
+		public static final String JAR   = "jar";
+		/**
+		 * kind of a java dependency
+		 */
+		public static final String JAVA  = "java";
+		private final       String kind;
+		private final       String value;
+		private final       String name;
+		private final       String version;
+		private final       Type   type;
+
+		/**
+		 * Constructor
+		 *
+		 * @param kind    {@link #MAVEN}, {@link #JAR} or {@link #JAVA}
+		 * @param value   group id of a maven dependency or the url
+		 * @param name    artifact id of a maven dependency or null
+		 * @param version version
+		 * @param type    type
+		 */
+		public Dependency(final String kind, final String value, final String name, final String version, final Type type) {
+			this.kind = kind;
+			this.value = value;
+			this.name = name;
+			this.version = version;
+			this.type = type;
+		}
+
+		/**
+		 * get the kind
+		 *
+		 * @return {@link #MAVEN}, {@link #JAR} or {@link #JAVA}
+		 */
+		public String getKind() {
+			return this.kind;
+		}
+
+		/**
+		 * get the group id of a maven dependency or the url
+		 *
+		 * @return value
+		 */
+		public String getValue() {
+			return this.value;
+		}
+
+		/**
+		 * get the artifact id of a maven dependency
+		 *
+		 * @return artifact id or null
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * get the version
+		 *
+		 * @return version
+		 */
+		public String getVersion() {
+			return this.version;
+		}
+
+		/**
+		 * get the type
+		 *
+		 * @return type
+		 */
+		public Type getType() {
+			return this.type;
+		}
+	}
+
+	/**
+	 * A static method annotated with {@link org.alindner.cish.extension.annotations.CishPredicate}
+	 */
+	public static class Predicate {
+		private final String className;
+		private final String method;
+		private final String name;
+
+		/**
+		 * Constructor
+		 *
+		 * @param className binary name of the declaring class
+		 * @param method    name of the method
+		 * @param name      name of the predicate
+		 */
+		public Predicate(final String className, final String method, final String name) {
+			this.className = className;
+			this.method = method;
+			this.name = name;
+		}
+
+		/**
+		 * get the binary name of the declaring class
+		 *
+		 * @return class name
+		 */
+		public String getClassName() {
+			return this.className;
+		}
+
+		/**
+		 * get the name of the method
+		 *
+		 * @return method name
+		 */
+		public String getMethod() {
+			return this.method;
+		}
+
+		/**
+		 * get the name of the predicate
+		 *
+		 * @return predicate name
+		 */
+		public String getName() {
+			return this.name;
+		}
+	}
+}
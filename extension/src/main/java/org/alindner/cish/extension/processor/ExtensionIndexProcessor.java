@@ -0,0 +1,142 @@
+package org.alindner.cish.extension.processor;
+
+import org.alindner.cish.extension.ExtensionIndex;
+import org.alindner.cish.extension.annotations.*;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Writes the {@link ExtensionIndex} of an extension while it is compiled.
+ * <p>
+ * It collects the classes and methods annotated with {@link CishExtension}, the public methods of the classes, their dependency annotations and the methods annotated with
+ * {@link CishPredicate}. The processor is registered as service, so it runs whenever this module is on the annotation processor path of an extension.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@SupportedAnnotationTypes({"org.alindner.cish.extension.annotations.CishExtension", "org.alindner.cish.extension.annotations.CishPredicate"})
+public class ExtensionIndexProcessor extends AbstractProcessor {
+	private final ExtensionIndex index = new ExtensionIndex();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			if (!this.index.getExtensions().isEmpty() || !this.index.getPredicates().isEmpty()) {
+				this.write();
+			}
+			return false;
+		}
+		for (final Element element : roundEnv.getElementsAnnotatedWith(CishExtension.class)) {
+			final String version = element.getAnnotation(CishExtension.class).value();
+			if (element instanceof TypeElement) {
+				this.addClass((TypeElement) element, version);
+			} else if (element instanceof ExecutableElement) {
+				this.addMethod((ExecutableElement) element, version);
+			}
+		}
+		for (final ExecutableElement method : ElementFilter.methodsIn(roundEnv.getElementsAnnotatedWith(CishPredicate.class))) {
+			final TypeElement owner = (TypeElement) method.getEnclosingElement();
+			if (!method.getModifiers().contains(Modifier.STATIC) || !method.getModifiers().contains(Modifier.PUBLIC) || !method.getParameters().isEmpty()) {
+				this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "A predicate needs to be a public static method without parameters", method);
+				continue;
+			}
+			this.index.getPredicates().add(new ExtensionIndex.Predicate(
+					this.processingEnv.getElementUtils().getBinaryName(owner).toString(),
+					method.getSimpleName().toString(),
+					method.getAnnotation(CishPredicate.class).value()
+			));
+		}
+		return false;
+	}
+
+	/**
+	 * adds an extension class with its public methods, including the inherited ones except those of {@link Object}, and the dependencies of the class and the methods
+	 *
+	 * @param type    extension class
+	 * @param version version of the extension
+	 */
+	private void addClass(final TypeElement type, final String version) {
+		final ExtensionIndex.Extension extension = new ExtensionIndex.Extension(type.getQualifiedName().toString(), version);
+		ExtensionIndexProcessor.addDependencies(extension, type);
+		final Set<String> methods = new LinkedHashSet<>();
+		for (final ExecutableElement method : ElementFilter.methodsIn(this.processingEnv.getElementUtils().getAllMembers(type))) {
+			if (method.getModifiers().contains(Modifier.PUBLIC) && !((TypeElement) method.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object")) {
+				ExtensionIndexProcessor.addDependencies(extension, method);
+				methods.add(method.getSimpleName().toString());
+			}
+		}
+		extension.getMethods().addAll(methods);
+		this.index.getExtensions().add(extension);
+	}
+
+	/**
+	 * adds a single extension method
+	 *
+	 * @param method  extension method
+	 * @param version version of the extension
+	 */
+	private void addMethod(final ExecutableElement method, final String version) {
+		final TypeElement              owner     = (TypeElement) method.getEnclosingElement();
+		final ExtensionIndex.Extension extension = new ExtensionIndex.Extension(owner.getQualifiedName().toString(), version);
+		ExtensionIndexProcessor.addDependencies(extension, method);
+		extension.getMethods().add(method.getSimpleName().toString());
+		this.index.getExtensions().add(extension);
+	}
+
+	/**
+	 * adds the dependencies declared by an element. Repeated annotations are unwrapped from their containers.
+	 *
+	 * @param extension extension
+	 * @param element   annotated class or method
+	 */
+	private static void addDependencies(final ExtensionIndex.Extension extension, final Element element) {
+		for (final MavenDependency dependency : element.getAnnotationsByType(MavenDependency.class)) {
+			extension.getDependencies().add(new ExtensionIndex.Dependency(
+					ExtensionIndex.Dependency.MAVEN,
+					dependency.value(),
+					dependency.name(),
+					dependency.version(),
+					dependency.type()
+			));
+		}
+		for (final JarDependency dependency : element.getAnnotationsByType(JarDependency.class)) {
+			extension.getDependencies().add(new ExtensionIndex.Dependency(ExtensionIndex.Dependency.JAR, dependency.value(), null, dependency.version(), dependency.type()));
+		}
+		for (final JavaDependency dependency : element.getAnnotationsByType(JavaDependency.class)) {
+			extension.getDependencies().add(new ExtensionIndex.Dependency(ExtensionIndex.Dependency.JAVA, dependency.value(), null, dependency.version(), dependency.type()));
+		}
+	}
+
+	/**
+	 * writes the index to the class output
+	 */
+	private void write() {
+		try {
+			final FileObject file = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ExtensionIndex.LOCATION);
+			try (final Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+				this.index.write(writer);
+			}
+		} catch (final IOException | IllegalArgumentException e) {
+			this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Couldn't write the extension index: " + e.getMessage());
+		}
+	}
+}
@@ -7,17 +7,27 @@ import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
 import org.alindner.cish.compiler.Compiler;
+import org.alindner.cish.compiler.exceptions.CishCompileException;
 import org.alindner.cish.compiler.exceptions.CishException;
+import org.alindner.cish.compiler.postcompiler.Bundle;
+import org.alindner.cish.compiler.postcompiler.CacheCollector;
+import org.alindner.cish.compiler.postcompiler.extension.ExtensionManager;
 import org.alindner.cish.compiler.precompiler.jj.ParseException;
+import org.alindner.cish.interpreter.cds.CdsBuilder;
+import org.alindner.cish.interpreter.daemon.Daemon;
+import org.alindner.cish.interpreter.watch.Watcher;
+import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.config.Configurator;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * The public interface for a user of cish to interact with  the compiler and the default library
@@ -33,6 +43,7 @@ public class Interpreter {
 	private final   boolean             debug;
 	private final   boolean             verbose;
 	org.alindner.cish.lang.Maven.Builder.Executor test;
+	private final   ExtensionManager    manager;
 	private         Namespace           args             = null;
 	private         Compiler            compiler;
 
@@ -45,6 +56,20 @@ public class Interpreter {
 	 * @throws ParseException errors during script parsing
 	 */
 	public Interpreter(final String[] args) throws IOException, ParseException {
+		this(args, null);
+	}
+
+	/**
+	 * constructors which uses an already loaded extension manager
+	 *
+	 * @param args    arguments
+	 * @param manager extension manager or null, if the scripts should load one
+	 *
+	 * @throws IOException    errors during script reading
+	 * @throws ParseException errors during script parsing
+	 */
+	private Interpreter(final String[] args, final ExtensionManager manager) throws IOException, ParseException {
+		this.manager = manager;
 		this.parse(args);
 		switch (this.args.getString("log").toLowerCase()) {
 			case "debug":
@@ -77,25 +102,217 @@ public class Interpreter {
 	 * @param args all arguments, differentiate as args, (simple) parameter and extended parameter. More Information: {@link Interpreter#parseScriptParameters(List)}. First arg
 	 *             must be the script file
 	 *
-	 * @throws IOException    errors during script reading
-	 * @throws ParseException errors during script parsing
-	 * @throws CishException  errors during script parsing
+	 * @throws IOException         errors during script reading
+	 * @throws ParseException       errors during script parsing
+	 * @throws CishException        errors during script parsing
+	 * @throws InterruptedException interrupted while building the CDS archive
+	 */
+	public static void main(final String[] args) throws IOException, ParseException, CishException, InterruptedException {
+		if (args.length > 0 && "--daemon".equals(args[0])) {
+			Daemon.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && "--bundle".equals(args[0])) {
+			System.exit(Interpreter.bundle(Arrays.copyOfRange(args, 1, args.length)));
+			return;
+		}
+		if (args.length > 0 && "--cache".equals(args[0])) {
+			System.exit(Interpreter.cache(Arrays.copyOfRange(args, 1, args.length)));
+			return;
+		}
+		if (args.length > 0 && "--build-cds".equals(args[0])) {
+			CdsBuilder.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		try {
+			if (!new Interpreter(args).loadFiles()) {
+				System.exit(1);
+			}
+		} catch (final InvalidArgumentsException e) {
+			System.exit(1);
+		} catch (final CishCompileException e) {
+			// javac already printed its diagnostics
+			Interpreter.log.error(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * compiles a script and writes it as bundle, which can be executed without compiling it again
+	 *
+	 * @param args <code>script [-o bundle.jar]</code>
+	 *
+	 * @return exit code
 	 */
-	public static void main(final String[] args) throws IOException, ParseException, CishException {
-		new Interpreter(args).loadFiles();
+	private static int bundle(final String[] args) {
+		final ArgumentParser parser = ArgumentParsers.newFor("cish --bundle")
+		                                             .build()
+		                                             .defaultHelp(true)
+		                                             .description("Compiles a script to a self-contained jar.");
+		parser.addArgument("-o", "--output")
+		      .help("Jar to write, defaults to the script with the extension .jar");
+		parser.addArgument("file")
+		      .help("File to bundle");
+		try {
+			final Namespace namespace = parser.parseArgs(args);
+			final Path      script    = Path.of(namespace.getString("file"));
+			final String    output    = namespace.getString("output");
+			final String    fileName  = script.getFileName().toString();
+			final Compiler  compiler  = new Compiler(false, script);
+			compiler.compile();
+			Bundle.create(
+					compiler.getScript().getRootScript(),
+					output != null ? Path.of(output) : script.resolveSibling(fileName.replaceFirst("\\.[^.]*$", "") + ".jar")
+			);
+			return 0;
+		} catch (final ArgumentParserException e) {
+			parser.handleError(e);
+			return 1;
+		} catch (final CishException e) {
+			Interpreter.log.error("Couldn't bundle the script", e);
+			return 1;
+		}
 	}
 
 	/**
-	 * loads, compiles and executes the given cish scrips
+	 * shows or cleans up the cache in the cish home directory
+	 *
+	 * @param args <code>[gc|stats|clear]</code>
+	 *
+	 * @return exit code
+	 */
+	private static int cache(final String[] args) {
+		final ArgumentParser parser = ArgumentParsers.newFor("cish --cache")
+		                                             .build()
+		                                             .defaultHelp(true)
+		                                             .description("Shows or cleans up the cache in ~/.cish. gc deletes the least recently used entries, until the cache fits "
+				                                                          + "into cish.home.size megabytes.");
+		parser.addArgument("command")
+		      .nargs("?")
+		      .choices("gc", "stats", "clear")
+		      .setDefault("stats")
+		      .help("Action to perform");
+		try {
+			final Namespace      namespace = parser.parseArgs(args);
+			final CacheCollector collector = new CacheCollector();
+			switch (namespace.getString("command")) {
+				case "gc":
+					System.out.printf("Freed %s%n", FileUtils.byteCountToDisplaySize(collector.gc()));
+					break;
+				case "clear":
+					System.out.printf("Freed %s%n", FileUtils.byteCountToDisplaySize(collector.clear()));
+					break;
+				default:
+				case "stats":
+					final List<CacheCollector.Usage> usages = collector.stats();
+					usages.forEach(usage -> System.out.printf(
+							"%-10s %8d %10s  %s%n",
+							usage.getName(),
+							usage.getEntries(),
+							FileUtils.byteCountToDisplaySize(usage.getSize()),
+							usage.getRoot()
+					));
+					System.out.printf(
+							"%-10s %8d %10s  of %s%n",
+							"total",
+							usages.stream().mapToInt(CacheCollector.Usage::getEntries).sum(),
+							FileUtils.byteCountToDisplaySize(usages.stream().mapToLong(CacheCollector.Usage::getSize).sum()),
+							FileUtils.byteCountToDisplaySize(collector.getMaxSize())
+					);
+					break;
+			}
+			return 0;
+		} catch (final ArgumentParserException e) {
+			parser.handleError(e);
+			return 1;
+		} catch (final IOException e) {
+			Interpreter.log.error("Couldn't read the cache", e);
+			return 1;
+		}
+	}
+
+	/**
+	 * executes a cish call inside an already running jvm. This is used by the {@link Daemon}. Besides scripts, only <code>--bundle</code> and <code>--cache</code> can be
+	 * executed this way, the other commands need their own jvm.
+	 *
+	 * @param args    all arguments, like in {@link Interpreter#main(String[])}
+	 * @param manager the extension manager, which is shared between the calls
+	 *
+	 * @return exit code
+	 */
+	public static int execute(final String[] args, final ExtensionManager manager) {
+		if (args.length > 0 && "--bundle".equals(args[0])) {
+			return Interpreter.bundle(Arrays.copyOfRange(args, 1, args.length));
+		}
+		if (args.length > 0 && "--cache".equals(args[0])) {
+			return Interpreter.cache(Arrays.copyOfRange(args, 1, args.length));
+		}
+		try {
+			return new Interpreter(args, manager).loadFiles() ? 0 : 1;
+		} catch (final InvalidArgumentsException e) {
+			return 1;
+		} catch (final IOException | ParseException | CishException | RuntimeException e) {
+			Interpreter.log.error("The script failed", e);
+			return 1;
+		}
+	}
+
+	/**
+	 * loads, compiles and executes the given cish scrips. A bundle is executed directly.
+	 * <p>
+	 * All scripts share one extension manager, which is loaded with the first script, that needs it. This way the layer of the extensions is also resolved only once.
+	 * Afterwards the cish home directory is cleaned up, if it wasn't cleaned up for a while.
+	 *
+	 * @return all scripts finished without an exception
 	 *
 	 * @throws CishException TODO
+	 * @throws IOException   the files of a watched script can't be watched
 	 */
-	private void loadFiles() throws CishException {
+	private boolean loadFiles() throws CishException, IOException {
+		Supplier<ExtensionManager> manager   = this.manager != null ? () -> this.manager : null;
+		boolean                    succeeded = true;
 		for (final String fileName : this.args.<String>getList("file")) {
 			final Path f = Path.of(fileName);
-			this.compiler = new Compiler(this.debug, f);
+			if (Bundle.isBundle(f)) {
+				succeeded &= Bundle.open(f).run(this.simpleParameters, this.argsList, this.parameters);
+				continue;
+			}
+			if (manager == null) {
+				manager = Compiler.lazy(() -> ExtensionManager.load(f));
+			}
+			if (this.args.getBoolean("watch")) {
+				this.watch(f, manager);
+				continue;
+			}
+			this.compiler = new Compiler(this.debug, f, manager);
 			this.compiler.compile();
-			this.compiler.run(this.simpleParameters, this.argsList, this.parameters);
+			succeeded &= this.compiler.run(this.simpleParameters, this.argsList, this.parameters);
+		}
+		CacheCollector.collectIfDue();
+		return succeeded;
+	}
+
+	/**
+	 * compiles and executes the given cish script again, whenever one of its files changes. The runs share the jvm and the extension manager, so only the changed scripts
+	 * are compiled again and only the module layer of the script is defined again.
+	 *
+	 * @param f       cish script
+	 * @param manager extension manager
+	 *
+	 * @throws IOException the files of the script can't be watched
+	 */
+	private void watch(final Path f, final Supplier<ExtensionManager> manager) throws IOException {
+		try (final Watcher watcher = new Watcher(() -> {
+			this.compiler = new Compiler(this.debug, f, manager);
+			try {
+				this.compiler.compile();
+				this.compiler.run(this.simpleParameters, this.argsList, this.parameters);
+			} catch (final CishException e) {
+				Interpreter.log.error("The script failed", e);
+			}
+			return this.compiler.getFiles();
+		})) {
+			watcher.start();
 		}
 	}
 
@@ -116,6 +333,9 @@ public class Interpreter {
 		      .choices("info", "debug", "error", "verbose")
 		      .setDefault("error")
 		      .help("Set the default log level of the script");
+		parser.addArgument("--watch")
+		      .action(Arguments.storeTrue())
+		      .help("Run the script again, whenever it or one of its files changes");
 		parser.addArgument("file")
 		      .nargs(1)
 		      .help("File to interpret");
@@ -126,7 +346,7 @@ public class Interpreter {
 			this.parseScriptParameters(list);
 		} catch (final ArgumentParserException e) {
 			parser.handleError(e);
-			System.exit(1);
+			throw new InvalidArgumentsException(e);
 		}
 	}
 
@@ -165,6 +385,17 @@ public class Interpreter {
 		}
 		this.parseScriptParameters(args);
 	}
+
+	/**
+	 * the arguments couldn't be parsed. The error was already printed to the user.
+	 */
+	private static class InvalidArgumentsException extends RuntimeException {
+		private static final long serialVersionUID = -2416093117530402843L;
+
+		InvalidArgumentsException(final ArgumentParserException cause) {
+			super(cause);
+		}
+	}
 }
 
 
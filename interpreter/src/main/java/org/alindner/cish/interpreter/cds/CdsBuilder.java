@@ -0,0 +1,261 @@
+package org.alindner.cish.interpreter.cds;
+
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.utils.CishPath;
+import org.alindner.cish.interpreter.Interpreter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds an AppCDS archive for cish.
+ * <p>
+ * A short script spends most of its time with loading and verifying the classes of cish, the extensions and javac. A training jvm runs some scripts and the classes loaded by
+ * it are dumped to a class data sharing archive, which is mapped into memory by the next start. On java 13 and newer, a dynamic archive is created when the training jvm exits.
+ * On older versions, the loaded class list is dumped and a static archive is created from it.
+ * <p>
+ * The scripts are copied to a temporary directory before the training, so they aren't in the compile cache and javac is part of the archive.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class CdsBuilder {
+	/**
+	 * archive, which is used by the launcher if there is no system wide one
+	 */
+	public static final  Path         DEFAULT_ARCHIVE = CishPath.of("cish.jsa");
+	private static final String       TRAINING_SCRIPT = "training.cish";
+	private static final String       TRAIN_CLASS     = "cish.interpreter/" + CdsBuilder.class.getName();
+	private static final String       ADD_MODULES     = "ALL-MODULE-PATH,ALL-SYSTEM";
+	private final        Path         archive;
+	private final        List<Path>   scripts;
+
+	/**
+	 * Constructor
+	 *
+	 * @param archive path of the archive to build
+	 * @param scripts training scripts. If it is empty, a bundled script is used.
+	 */
+	public CdsBuilder(final Path archive, final List<Path> scripts) {
+		this.archive = archive.toAbsolutePath();
+		this.scripts = scripts.stream().map(Path::toAbsolutePath).map(Path::normalize).collect(Collectors.toList());
+	}
+
+	/**
+	 * build an archive or, if called with <code>--train</code>, run the training scripts
+	 *
+	 * @param args <code>[--cds-archive=path] [script...]</code>
+	 *
+	 * @throws IOException          the scripts couldn't be prepared
+	 * @throws InterruptedException interrupted while waiting for the training jvm
+	 */
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		Path             archive = CdsBuilder.DEFAULT_ARCHIVE;
+		final List<Path> scripts = new ArrayList<>();
+		boolean          train   = false;
+		for (final String arg : args) {
+			if ("--train".equals(arg)) {
+				train = true;
+			} else if (arg.startsWith("--cds-archive=")) {
+				archive = Path.of(arg.substring("--cds-archive=".length()));
+			} else {
+				scripts.add(Path.of(arg));
+			}
+		}
+		if (train) {
+			System.exit(CdsBuilder.train(scripts));
+		} else {
+			System.exit(new CdsBuilder(archive, scripts).build());
+		}
+	}
+
+	/**
+	 * runs all scripts inside the current jvm. A failing script stops the training, as it didn't load the classes of the later steps, like javac or running the script.
+	 *
+	 * @param scripts training scripts
+	 *
+	 * @return exit code
+	 */
+	private static int train(final List<Path> scripts) {
+		for (final Path script : scripts) {
+			final int exitCode = Interpreter.execute(new String[]{script.toString()}, null);
+			if (exitCode != 0) {
+				CdsBuilder.log.error("Training script {} exited with {}", script, exitCode);
+				return exitCode;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * copies the directory of a script recursively, so included and required files are found
+	 *
+	 * @param source source directory
+	 * @param target target directory
+	 *
+	 * @throws IOException copy error
+	 */
+	private static void copyDirectory(final Path source, final Path target) throws IOException {
+		try (final Stream<Path> files = Files.walk(source)) {
+			for (final Path file : (Iterable<Path>) files::iterator) {
+				final Path copy = target.resolve(source.relativize(file).toString());
+				if (Files.isDirectory(file)) {
+					Files.createDirectories(copy);
+				} else {
+					Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+		}
+	}
+
+	/**
+	 * deletes a directory recursively
+	 *
+	 * @param dir directory
+	 */
+	private static void deleteDirectory(final Path dir) {
+		try (final Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		} catch (final IOException e) {
+			CdsBuilder.log.error("Couldn't delete the training directory {}", dir, e);
+		}
+	}
+
+	/**
+	 * builds the archive
+	 *
+	 * @return exit code
+	 *
+	 * @throws IOException          the scripts couldn't be prepared
+	 * @throws InterruptedException interrupted while waiting for the training jvm
+	 */
+	public int build() throws IOException, InterruptedException {
+		final Path trainingDir = Files.createTempDirectory(CishPath.ofTmp("."), "cds");
+		try {
+			final List<Path> trainingScripts = this.prepareScripts(trainingDir);
+			Files.createDirectories(this.archive.getParent());
+			final Path tmpArchive = this.archive.resolveSibling(this.archive.getFileName() + ".tmp");
+			final Path classList  = this.archive.resolveSibling(this.archive.getFileName() + ".classlist");
+			final int  exitCode;
+			if (Runtime.version().feature() >= 13) {
+				exitCode = CdsBuilder.run(this.trainingCommand(
+						trainingScripts,
+						"-XX:ArchiveClassesAtExit=" + tmpArchive,
+						"-XX:DumpLoadedClassList=" + classList
+				));
+			} else {
+				final int trainingExitCode = CdsBuilder.run(this.trainingCommand(trainingScripts, "-XX:DumpLoadedClassList=" + classList));
+				exitCode = trainingExitCode != 0 ? trainingExitCode : CdsBuilder.run(this.command(
+						"-Xshare:dump",
+						"-XX:SharedClassListFile=" + classList,
+						"-XX:SharedArchiveFile=" + tmpArchive
+				));
+			}
+			if (exitCode != 0 || Files.notExists(tmpArchive)) {
+				CdsBuilder.log.error("Couldn't create the CDS archive. The jvm exited with {}", exitCode);
+				Files.deleteIfExists(tmpArchive);
+				return exitCode != 0 ? exitCode : 1;
+			}
+			Files.move(tmpArchive, this.archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			CdsBuilder.log.info("Created the CDS archive {}", this.archive);
+			return 0;
+		} finally {
+			CdsBuilder.deleteDirectory(trainingDir);
+		}
+	}
+
+	/**
+	 * copies the training scripts with their directories to the training directory
+	 *
+	 * @param trainingDir training directory
+	 *
+	 * @return paths of the copied scripts
+	 *
+	 * @throws IOException copy error
+	 */
+	private List<Path> prepareScripts(final Path trainingDir) throws IOException {
+		if (this.scripts.isEmpty()) {
+			final Path script = trainingDir.resolve(CdsBuilder.TRAINING_SCRIPT);
+			try (final InputStream is = CdsBuilder.class.getResourceAsStream(CdsBuilder.TRAINING_SCRIPT)) {
+				if (is == null) {
+					throw new IOException("The bundled training script is missing");
+				}
+				Files.copy(is, script);
+			}
+			return List.of(script);
+		}
+		final Map<Path, Path> copiedDirs = new HashMap<>();
+		final List<Path>      copies     = new ArrayList<>();
+		for (final Path script : this.scripts) {
+			final Path dir = script.getParent();
+			if (!copiedDirs.containsKey(dir)) {
+				final Path target = trainingDir.resolve(String.valueOf(copiedDirs.size()));
+				CdsBuilder.copyDirectory(dir, target);
+				copiedDirs.put(dir, target);
+			}
+			copies.add(copiedDirs.get(dir).resolve(script.getFileName()));
+		}
+		return copies;
+	}
+
+	/**
+	 * the command of the training jvm
+	 *
+	 * @param scripts  training scripts
+	 * @param cdsFlags jvm flags for creating the archive
+	 *
+	 * @return command
+	 */
+	private List<String> trainingCommand(final List<Path> scripts, final String... cdsFlags) {
+		final List<String> command = this.command(cdsFlags);
+		command.add("-m");
+		command.add(CdsBuilder.TRAIN_CLASS);
+		command.add("--train");
+		scripts.forEach(script -> command.add(script.toString()));
+		return command;
+	}
+
+	/**
+	 * a java command with the same module path as the launcher uses. A CDS archive is only used, if the module path matches.
+	 *
+	 * @param flags additional jvm flags
+	 *
+	 * @return command
+	 */
+	private List<String> command(final String... flags) {
+		final List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(List.of(flags));
+		command.add("--add-modules");
+		command.add(CdsBuilder.ADD_MODULES);
+		command.add("-p");
+		command.add(System.getProperty("jdk.module.path"));
+		return command;
+	}
+
+	/**
+	 * runs a command and forwards its output
+	 *
+	 * @param command command
+	 *
+	 * @return exit code
+	 *
+	 * @throws IOException          the command couldn't be started
+	 * @throws InterruptedException interrupted while waiting
+	 */
+	private static int run(final List<String> command) throws IOException, InterruptedException {
+		CdsBuilder.log.debug("Running {}", command);
+		return new ProcessBuilder(command).inheritIO().start().waitFor();
+	}
+}
@@ -0,0 +1,307 @@
+package org.alindner.cish.interpreter.daemon;
+
+import lombok.extern.log4j.Log4j2;
+import org.alindner.cish.compiler.postcompiler.extension.ExtensionManager;
+import org.alindner.cish.interpreter.Interpreter;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A long living cish process, which runs the scripts forwarded by the {@link DaemonClient}.
+ * <p>
+ * The daemon keeps the jvm, javac and the extension manager warm, so a script doesn't pay the startup costs of cish. It serves exactly one working directory, as a jvm can't
+ * change its working directory and relative paths inside a script would be resolved wrongly otherwise. For the same reason, it only accepts calls with the same environment as
+ * the daemon itself. The calls are executed one after another, as the cish library holds the parameters of a script in static fields. So a client has to send its call
+ * within a few seconds, otherwise it would block all other clients. Commands, which need their own jvm, like <code>--watch</code>, are rejected.
+ * <p>
+ * The daemon listens on the loopback interface and is described by a file in <code>~/.cish/daemon</code>, which is only readable by the current user and contains the secret
+ * token a client has to send.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class Daemon {
+	private static final Duration         DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(60);
+	private static final Duration         REQUEST_TIMEOUT      = Duration.ofSeconds(10);
+	private static final Set<String>      STANDALONE_COMMANDS  = Set.of("--daemon", "--build-cds", "--watch");
+	private final        Path             cwd                  = Path.of("").toAbsolutePath().normalize();
+	private final        String           token;
+	private final        String           envHash              = Protocol.hashEnv(System.getenv());
+	private final        Duration         idleTimeout;
+	private final        ExtensionManager manager;
+
+	/**
+	 * Constructor
+	 *
+	 * @param idleTimeout the daemon stops itself, if no client connects within this time
+	 */
+	public Daemon(final Duration idleTimeout) {
+		this.idleTimeout = idleTimeout;
+		this.manager = ExtensionManager.load(this.cwd);
+		final byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		this.token = String.format("%064X", new BigInteger(1, bytes));
+	}
+
+	/**
+	 * start a daemon
+	 *
+	 * @param args arguments, only <code>--idle-timeout=minutes</code> is supported
+	 *
+	 * @throws IOException the daemon couldn't listen on a socket
+	 */
+	public static void main(final String[] args) throws IOException {
+		Duration idleTimeout = Daemon.DEFAULT_IDLE_TIMEOUT;
+		for (final String arg : args) {
+			if (arg.startsWith("--idle-timeout=")) {
+				idleTimeout = Duration.ofMinutes(Long.parseLong(arg.substring("--idle-timeout=".length())));
+			} else {
+				throw new IllegalArgumentException("Unknown argument for the daemon: " + arg);
+			}
+		}
+		new Daemon(idleTimeout).start();
+	}
+
+	/**
+	 * listen for clients until the idle timeout is reached
+	 *
+	 * @throws IOException the daemon couldn't listen on a socket
+	 */
+	public void start() throws IOException {
+		try (final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout((int) this.idleTimeout.toMillis());
+			this.writeInfo(server.getLocalPort());
+			Runtime.getRuntime().addShutdownHook(new Thread(this::deleteInfo));
+			Daemon.log.info("cish daemon is listening on port {} for {}", server::getLocalPort, () -> this.cwd);
+			while (true) {
+				final Socket socket;
+				try {
+					socket = server.accept();
+				} catch (final SocketTimeoutException e) {
+					Daemon.log.info("No client connected within {}. Stopping the daemon.", this.idleTimeout);
+					break;
+				}
+				try (socket) {
+					socket.setSoTimeout((int) Daemon.REQUEST_TIMEOUT.toMillis());
+					this.serve(socket);
+				} catch (final IOException e) {
+					Daemon.log.error("Couldn't serve a client", e);
+				}
+			}
+		} finally {
+			this.deleteInfo();
+		}
+	}
+
+	/**
+	 * reads in the call of a client and executes it
+	 *
+	 * @param socket connection to the client
+	 *
+	 * @throws IOException connection error
+	 */
+	private void serve(final Socket socket) throws IOException {
+		final DataInputStream  in  = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		final String   token = Protocol.readString(in);
+		final Path     cwd   = Path.of(Protocol.readString(in));
+		final String[] args  = new String[in.readInt()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = Protocol.readString(in);
+		}
+		final int                 envSize = in.readInt();
+		final Map<String, String> env     = new HashMap<>();
+		for (int i = 0; i < envSize; i++) {
+			env.put(Protocol.readString(in), Protocol.readString(in));
+		}
+
+		if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), this.token.getBytes(StandardCharsets.UTF_8))) {
+			Daemon.reject(out, "invalid token");
+			return;
+		}
+		if (Arrays.stream(args).anyMatch(Daemon.STANDALONE_COMMANDS::contains)) {
+			Daemon.reject(out, "the command needs its own jvm");
+			return;
+		}
+		if (!cwd.normalize().equals(this.cwd)) {
+			Daemon.reject(out, "the daemon serves another working directory");
+			return;
+		}
+		if (!Protocol.hashEnv(env).equals(this.envHash)) {
+			Daemon.reject(out, "the environment differs from the one of the daemon");
+			return;
+		}
+		out.writeByte(Protocol.ACCEPTED);
+		out.flush();
+		socket.setSoTimeout(0);
+
+		final PrintStream stdout = System.out;
+		final PrintStream stderr = System.err;
+		final InputStream stdin  = System.in;
+		int               exitCode;
+		try (final PrintStream forwardedOut = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, Protocol.STDOUT)), true);
+		     final PrintStream forwardedErr = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, Protocol.STDERR)), true)) {
+			System.setOut(forwardedOut);
+			System.setErr(forwardedErr);
+			System.setIn(new FrameInputStream(in));
+			exitCode = Interpreter.execute(args, this.manager);
+			forwardedOut.flush();
+			forwardedErr.flush();
+		} finally {
+			System.setOut(stdout);
+			System.setErr(stderr);
+			System.setIn(stdin);
+		}
+		synchronized (out) {
+			out.writeByte(Protocol.EXIT);
+			out.writeInt(exitCode);
+			out.flush();
+		}
+	}
+
+	/**
+	 * tells the client, that it should run the script by itself
+	 *
+	 * @param out    stream to the client
+	 * @param reason reason
+	 *
+	 * @throws IOException write error
+	 */
+	private static void reject(final DataOutputStream out, final String reason) throws IOException {
+		Daemon.log.debug("Rejected a client: {}", reason);
+		out.writeByte(Protocol.REJECTED);
+		Protocol.writeString(out, reason);
+		out.flush();
+	}
+
+	/**
+	 * writes the file, which is used by the client to find this daemon
+	 *
+	 * @param port port of the daemon
+	 *
+	 * @throws IOException write error
+	 */
+	private void writeInfo(final int port) throws IOException {
+		final Path info = Protocol.infoFile(this.cwd);
+		Files.createDirectories(info.getParent());
+		final Path tmp = Files.createTempFile(info.getParent(), "daemon", ".tmp");
+		try {
+			Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+		} catch (final UnsupportedOperationException e) {
+			Daemon.log.debug("The file system doesn't support posix permissions", e);
+		}
+		final Properties properties = new Properties();
+		properties.setProperty(Protocol.PROPERTY_PORT, String.valueOf(port));
+		properties.setProperty(Protocol.PROPERTY_TOKEN, this.token);
+		properties.setProperty(Protocol.PROPERTY_PID, String.valueOf(ProcessHandle.current().pid()));
+		properties.setProperty(Protocol.PROPERTY_CWD, this.cwd.toString());
+		properties.setProperty(Protocol.PROPERTY_ENV, this.envHash);
+		try (final OutputStream os = Files.newOutputStream(tmp)) {
+			properties.store(os, "cish daemon");
+		}
+		Files.move(tmp, info, java.nio.file.StandardCopyOption.REPLACE_EXISTING, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * deletes the file, which is used by the client to find this daemon
+	 */
+	private void deleteInfo() {
+		try {
+			Files.deleteIfExists(Protocol.infoFile(this.cwd));
+		} catch (final IOException e) {
+			Daemon.log.error("Couldn't delete the daemon file", e);
+		}
+	}
+
+	/**
+	 * an output stream, which sends everything as frame of the given type to the client
+	 */
+	private static class FrameOutputStream extends OutputStream {
+		private final DataOutputStream out;
+		private final byte             type;
+
+		FrameOutputStream(final DataOutputStream out, final byte type) {
+			this.out = out;
+			this.type = type;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			this.write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			Protocol.writeFrame(this.out, this.type, b, off, len);
+		}
+
+		@Override
+		public void close() {
+			// the socket is closed by the daemon
+		}
+	}
+
+	/**
+	 * an input stream, which reads the stdin frames sent by the client
+	 */
+	private static class FrameInputStream extends InputStream {
+		private final DataInputStream in;
+		private       int             remaining = 0;
+		private       boolean         eof       = false;
+
+		FrameInputStream(final DataInputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			return this.read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			while (this.remaining == 0) {
+				if (this.eof) {
+					return -1;
+				}
+				try {
+					final byte type = this.in.readByte();
+					this.remaining = this.in.readInt();
+					if (type == Protocol.STDIN_EOF) {
+						this.eof = true;
+					}
+				} catch (final EOFException e) {
+					this.eof = true;
+				}
+			}
+			final int read = this.in.read(b, off, Math.min(len, this.remaining));
+			if (read < 0) {
+				this.eof = true;
+				this.remaining = 0;
+				return -1;
+			}
+			this.remaining -= read;
+			return read;
+		}
+	}
+}
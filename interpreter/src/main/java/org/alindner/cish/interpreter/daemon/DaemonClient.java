@@ -0,0 +1,150 @@
+package org.alindner.cish.interpreter.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A thin client, which forwards a cish call to a running {@link Daemon}.
+ * <p>
+ * It forwards the arguments, the working directory, the environment and stdin to the daemon and writes the output of the daemon to stdout and stderr. If there is no daemon for
+ * the current working directory or the daemon rejects the call, it exits with {@link Protocol#NO_DAEMON}, so the caller can start cish the normal way.
+ * <p>
+ * This class must only depend on <code>java.base</code>, as it should start as fast as possible.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+public class DaemonClient {
+	/**
+	 * forwards the call to the daemon
+	 *
+	 * @param args the arguments of cish, like the script file
+	 */
+	public static void main(final String[] args) {
+		final Path cwd  = Path.of("").toAbsolutePath();
+		final Path info = Protocol.infoFile(cwd);
+		if (!Files.isRegularFile(info)) {
+			System.exit(Protocol.NO_DAEMON);
+		}
+		final Properties properties = new Properties();
+		final int        port;
+		try (final InputStream is = Files.newInputStream(info)) {
+			properties.load(is);
+			port = Integer.parseInt(properties.getProperty(Protocol.PROPERTY_PORT));
+		} catch (final IOException | NumberFormatException e) {
+			System.exit(Protocol.NO_DAEMON);
+			return;
+		}
+		if (!Protocol.hashEnv(System.getenv()).equals(properties.getProperty(Protocol.PROPERTY_ENV))) {
+			System.exit(Protocol.NO_DAEMON);
+		}
+		System.exit(DaemonClient.forward(port, properties.getProperty(Protocol.PROPERTY_TOKEN), cwd, args));
+	}
+
+	/**
+	 * connect to the daemon and forward the call
+	 *
+	 * @param port  port of the daemon
+	 * @param token secret of the daemon
+	 * @param cwd   working directory
+	 * @param args  arguments
+	 *
+	 * @return exit code
+	 */
+	private static int forward(final int port, final String token, final Path cwd, final String[] args) {
+		boolean accepted = false;
+		try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			final DataInputStream  in  = new DataInputStream(socket.getInputStream());
+
+			Protocol.writeString(out, token);
+			Protocol.writeString(out, cwd.toString());
+			out.writeInt(args.length);
+			for (final String arg : args) {
+				Protocol.writeString(out, arg);
+			}
+			final Map<String, String> env = System.getenv();
+			out.writeInt(env.size());
+			for (final Map.Entry<String, String> entry : env.entrySet()) {
+				Protocol.writeString(out, entry.getKey());
+				Protocol.writeString(out, entry.getValue());
+			}
+			out.flush();
+
+			while (true) {
+				final byte type = in.readByte();
+				switch (type) {
+					case Protocol.ACCEPTED:
+						accepted = true;
+						DaemonClient.forwardStdin(out);
+						break;
+					case Protocol.REJECTED:
+						Protocol.readString(in);
+						return Protocol.NO_DAEMON;
+					case Protocol.STDOUT:
+						DaemonClient.copyFrame(in, System.out);
+						break;
+					case Protocol.STDERR:
+						DaemonClient.copyFrame(in, System.err);
+						break;
+					case Protocol.EXIT:
+						return in.readInt();
+					default:
+						throw new IOException("Unknown frame type " + type);
+				}
+			}
+		} catch (final IOException e) {
+			if (!accepted) {
+				return Protocol.NO_DAEMON;
+			}
+			System.err.println("Lost the connection to the cish daemon: " + e.getMessage());
+			return 1;
+		}
+	}
+
+	/**
+	 * copies the content of a frame to the given stream
+	 *
+	 * @param in     input of the socket
+	 * @param stream stdout or stderr
+	 *
+	 * @throws IOException read error
+	 */
+	private static void copyFrame(final DataInputStream in, final OutputStream stream) throws IOException {
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		stream.write(bytes);
+		stream.flush();
+	}
+
+	/**
+	 * forwards stdin in the background to the daemon
+	 *
+	 * @param out output of the socket
+	 */
+	private static void forwardStdin(final DataOutputStream out) {
+		final Thread thread = new Thread(() -> {
+			final byte[] buffer = new byte[8192];
+			try {
+				int read;
+				while ((read = System.in.read(buffer)) >= 0) {
+					Protocol.writeFrame(out, Protocol.STDIN, buffer, 0, read);
+				}
+				Protocol.writeFrame(out, Protocol.STDIN_EOF, buffer, 0, 0);
+			} catch (final IOException ignored) {
+				// the daemon closed the connection, because the script has finished
+			}
+		}, "cish-stdin");
+		thread.setDaemon(true);
+		thread.start();
+	}
+}
@@ -0,0 +1,144 @@
+package org.alindner.cish.interpreter.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The wire protocol between the {@link DaemonClient} and the {@link Daemon}.
+ * <p>
+ * The client starts with a handshake (token, working directory, arguments and environment). Afterwards both sides exchange frames, which start with a type byte. The client only
+ * sends stdin frames, the daemon sends stdout, stderr and finally the exit code.
+ * <p>
+ * This class must only depend on <code>java.base</code>, as the client should start as fast as possible.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+final class Protocol {
+	/**
+	 * exit code of the client, if there is no daemon, which can run the script. The caller should start cish the normal way then.
+	 */
+	static final         int         NO_DAEMON      = 75;
+	static final         byte        STDIN          = 0;
+	static final         byte        STDIN_EOF      = 1;
+	static final         byte        STDOUT         = 2;
+	static final         byte        STDERR         = 3;
+	static final         byte        EXIT           = 4;
+	static final         byte        ACCEPTED       = 5;
+	static final         byte        REJECTED       = 6;
+	/**
+	 * environment variables, which are maintained by the shell itself and differ between nearly every call. They are ignored when comparing the environment of a client.
+	 */
+	static final         Set<String> VOLATILE_ENV   = Set.of("_", "SHLVL", "OLDPWD", "PWD");
+	static final         String      PROPERTY_PORT  = "port";
+	static final         String      PROPERTY_TOKEN = "token";
+	static final         String      PROPERTY_PID   = "pid";
+	static final         String      PROPERTY_CWD   = "cwd";
+	static final         String      PROPERTY_ENV   = "env";
+	private static final Path        DAEMON_DIR     = Path.of(System.getProperty("user.home"), ".cish", "daemon");
+
+	private Protocol() {
+	}
+
+	/**
+	 * get the file, which describes the daemon serving the given working directory
+	 *
+	 * @param cwd working directory
+	 *
+	 * @return path to the properties file
+	 */
+	static Path infoFile(final Path cwd) {
+		return Protocol.DAEMON_DIR.resolve(Protocol.hash(cwd.toAbsolutePath().normalize().toString()) + ".properties");
+	}
+
+	/**
+	 * builds a comparable hash of an environment, without the {@link #VOLATILE_ENV} variables
+	 *
+	 * @param env environment
+	 *
+	 * @return hash
+	 */
+	static String hashEnv(final Map<String, String> env) {
+		final StringBuilder builder = new StringBuilder();
+		new TreeMap<>(env).forEach((key, value) -> {
+			if (!Protocol.VOLATILE_ENV.contains(key)) {
+				builder.append(key).append('=').append(value).append('\0');
+			}
+		});
+		return Protocol.hash(builder.toString());
+	}
+
+	/**
+	 * hashes the given string using sha 256
+	 *
+	 * @param str string
+	 *
+	 * @return hash
+	 */
+	static String hash(final String str) {
+		try {
+			final MessageDigest md = MessageDigest.getInstance("sha-256");
+			return String.format("%032X", new BigInteger(1, md.digest(str.getBytes(StandardCharsets.UTF_8))));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("sha-256 is not supported by this jvm", e);
+		}
+	}
+
+	/**
+	 * writes a string with an arbitrary length
+	 *
+	 * @param out stream
+	 * @param str string
+	 *
+	 * @throws IOException write error
+	 */
+	static void writeString(final DataOutputStream out, final String str) throws IOException {
+		final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * reads a string written by {@link #writeString(DataOutputStream, String)}
+	 *
+	 * @param in stream
+	 *
+	 * @return string
+	 *
+	 * @throws IOException read error
+	 */
+	static String readString(final DataInputStream in) throws IOException {
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * writes a data frame
+	 *
+	 * @param out    stream
+	 * @param type   type of the frame
+	 * @param bytes  buffer
+	 * @param offset start in buffer
+	 * @param length length of data
+	 *
+	 * @throws IOException write error
+	 */
+	static void writeFrame(final DataOutputStream out, final byte type, final byte[] bytes, final int offset, final int length) throws IOException {
+		synchronized (out) {
+			out.writeByte(type);
+			out.writeInt(length);
+			out.write(bytes, offset, length);
+			out.flush();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package org.alindner.cish.interpreter.watch;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a script again, whenever one of its files changes.
+ * <p>
+ * The script is run inside the jvm of the watcher, so javac, the extension manager and the module layer of the extensions stay warm between the runs. Each run returns the
+ * files, which belong to the script at this point, as a change of the script can add or remove includes and required scripts. The directories of these files are registered
+ * with a {@link WatchService}, because editors often replace a file instead of writing into it. Editors also write a file in several steps, so the watcher waits until no
+ * file changed for a short time, before it runs the script again.
+ *
+ * @author alindner
+ * @since 0.7.0
+ */
+@Log4j2
+public class Watcher implements Closeable {
+	private static final Duration            DEFAULT_DEBOUNCE = Duration.ofMillis(150);
+	private final        WatchService        service;
+	private final        Supplier<Set<Path>> run;
+	private final        Duration            debounce;
+	private final        Map<Path, WatchKey> keys             = new HashMap<>();
+	private              Set<Path>           files            = Set.of();
+
+	/**
+	 * Constructor
+	 *
+	 * @param run compiles and runs the script and returns the absolute paths of its files
+	 *
+	 * @throws IOException the file system can't be watched
+	 */
+	public Watcher(final Supplier<Set<Path>> run) throws IOException {
+		this(run, Watcher.DEFAULT_DEBOUNCE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param run      compiles and runs the script and returns the absolute paths of its files
+	 * @param debounce time without any change, after which the script is run again
+	 *
+	 * @throws IOException the file system can't be watched
+	 */
+	Watcher(final Supplier<Set<Path>> run, final Duration debounce) throws IOException {
+		this.service = FileSystems.getDefault().newWatchService();
+		this.run = run;
+		this.debounce = debounce;
+	}
+
+	/**
+	 * runs the script and runs it again after every change, until the watcher is closed or the thread is interrupted
+	 *
+	 * @throws IOException a directory can't be watched
+	 */
+	public void start() throws IOException {
+		try {
+			while (true) {
+				this.discardEvents();
+				final Instant start = Instant.now();
+				this.files = this.run.get();
+				Watcher.log.info("Finished after {} ms, watching {} files for changes.", () -> Duration.between(start, Instant.now()).toMillis(), this.files::size);
+				this.register();
+				if (this.changedSince(start)) {
+					Watcher.log.info("A file changed while the script was running");
+					continue;
+				}
+				this.awaitChange();
+			}
+		} catch (final ClosedWatchServiceException e) {
+			Watcher.log.debug("Stopped watching", e);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * watches the directories of the current files and stops watching the directories, which aren't needed anymore
+	 *
+	 * @throws IOException a directory can't be watched
+	 */
+	private void register() throws IOException {
+		final Set<Path> directories = this.files.stream().map(Path::getParent).filter(Objects::nonNull).collect(Collectors.toSet());
+		this.keys.entrySet().removeIf(entry -> {
+			if (entry.getValue().isValid() && directories.contains(entry.getKey())) {
+				return false;
+			}
+			entry.getValue().cancel();
+			return true;
+		});
+		for (final Path directory : directories) {
+			if (!this.keys.containsKey(directory) && Files.isDirectory(directory)) {
+				this.keys.put(directory, directory.register(this.service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+			}
+		}
+	}
+
+	/**
+	 * discards the events, which happened before the next run, as the run reads in the current files anyway
+	 */
+	private void discardEvents() {
+		WatchKey key;
+		while ((key = this.service.poll()) != null) {
+			key.pollEvents();
+			key.reset();
+		}
+	}
+
+	/**
+	 * checks, if one of the current files was changed after the given time. A directory is only watched after the run, which found the file, so such a change has no event.
+	 * A modification time in the future is ignored, otherwise the script would run again and again.
+	 *
+	 * @param time start of the run
+	 *
+	 * @return a file changed
+	 */
+	private boolean changedSince(final Instant time) {
+		final Instant now = Instant.now();
+		return this.files.stream().anyMatch(file -> {
+			try {
+				final Instant modified = Files.getLastModifiedTime(file).toInstant();
+				return !modified.isBefore(time) && !modified.isAfter(now);
+			} catch (final IOException e) {
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * waits for a change of one of the current files and afterwards until no file changed within the debounce time
+	 *
+	 * @throws InterruptedException interrupted while waiting
+	 */
+	private void awaitChange() throws InterruptedException {
+		while (!this.changed(this.service.take())) {
+			Watcher.log.trace("Ignored a change of a file, which doesn't belong to the script");
+		}
+		WatchKey key;
+		while ((key = this.service.poll(this.debounce.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+			this.changed(key);
+		}
+	}
+
+	/**
+	 * consumes the events of a watched directory
+	 *
+	 * @param key key of the directory
+	 *
+	 * @return one of the current files changed or events were lost
+	 */
+	private boolean changed(final WatchKey key) {
+		final Path directory = (Path) key.watchable();
+		boolean    changed   = false;
+		for (final WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed = true;
+			} else if (this.files.contains(directory.resolve((Path) event.context()))) {
+				Watcher.log.info("{} changed", () -> directory.resolve((Path) event.context()));
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+
+	/**
+	 * stops watching. A running {@link #start()} returns after the current run of the script.
+	 *
+	 * @throws IOException the watch service can't be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		this.service.close();
+	}
+}
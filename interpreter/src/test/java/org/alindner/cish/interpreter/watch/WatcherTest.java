@@ -0,0 +1,132 @@
+package org.alindner.cish.interpreter.watch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatcherTest {
+	/**
+	 * time, the watcher gets to register the directories after a run, as the test can't see the end of a run
+	 */
+	private static final long REGISTERED = 200;
+	@TempDir
+	Path dir;
+
+	/**
+	 * runs the watcher in a new thread
+	 */
+	private static Thread start(final Watcher watcher) {
+		final Thread thread = new Thread(() -> {
+			try {
+				watcher.start();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * stops the watcher and waits for its thread
+	 */
+	private static void stop(final Watcher watcher, final Thread thread) throws IOException, InterruptedException {
+		watcher.close();
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+	}
+
+	@Test
+	void runsTheScriptAgainAfterAChange() throws IOException, InterruptedException {
+		final Path      script = Files.writeString(this.dir.resolve("main.cish"), "a");
+		final Semaphore runs   = new Semaphore(0);
+		try (final Watcher watcher = new Watcher(() -> {
+			runs.release();
+			return Set.of(script);
+		}, Duration.ofMillis(100))) {
+			final Thread thread = WatcherTest.start(watcher);
+			assertTrue(runs.tryAcquire(5, TimeUnit.SECONDS));
+			Thread.sleep(WatcherTest.REGISTERED);
+
+			Files.writeString(this.dir.resolve("other.txt"), "b");
+			Files.writeString(script, "b");
+			Files.writeString(script, "c");
+			assertTrue(runs.tryAcquire(5, TimeUnit.SECONDS));
+			assertFalse(runs.tryAcquire(500, TimeUnit.MILLISECONDS));
+
+			WatcherTest.stop(watcher, thread);
+		}
+	}
+
+	@Test
+	void runsOnceForSeveralWrites() throws IOException, InterruptedException {
+		final Path      script = Files.writeString(this.dir.resolve("main.cish"), "a");
+		final Semaphore runs   = new Semaphore(0);
+		try (final Watcher watcher = new Watcher(() -> {
+			runs.release();
+			return Set.of(script);
+		}, Duration.ofMillis(300))) {
+			final Thread thread = WatcherTest.start(watcher);
+			assertTrue(runs.tryAcquire(5, TimeUnit.SECONDS));
+			Thread.sleep(WatcherTest.REGISTERED);
+
+			for (int i = 0; i < 5; i++) {
+				Files.writeString(script, "write " + i);
+				Thread.sleep(50);
+			}
+			assertFalse(runs.tryAcquire(100, TimeUnit.MILLISECONDS));
+			assertTrue(runs.tryAcquire(5, TimeUnit.SECONDS));
+			assertFalse(runs.tryAcquire(800, TimeUnit.MILLISECONDS));
+
+			WatcherTest.stop(watcher, thread);
+		}
+	}
+
+	@Test
+	void watchesTheDirectoriesOfTheCurrentFiles() throws IOException, InterruptedException {
+		final Path            script  = Files.writeString(this.dir.resolve("main.cish"), "a");
+		final Path            include = Files.writeString(Files.createDirectories(this.dir.resolve("lib")).resolve("include.cish"), "a");
+		final List<Set<Path>> files   = List.of(Set.of(script), Set.of(script, include), Set.of(script));
+		final AtomicInteger   count   = new AtomicInteger();
+		final Semaphore       runs    = new Semaphore(0);
+		try (final Watcher watcher = new Watcher(() -> {
+			runs.release();
+			return files.get(Math.min(count.getAndIncrement(), files.size() - 1));
+		}, Duration.ofMillis(100))) {
+			final Thread thread = WatcherTest.start(watcher);
+			assertTrue(runs.tryAcquire(5, TimeUnit.SECONDS));
+			Thread.sleep(WatcherTest.REGISTERED);
+
+			// the include isn't part of the script yet
+			Files.writeString(include, "b");
+			assertFalse(runs.tryAcquire(500, TimeUnit.MILLISECONDS));
+
+			// the script includes it now, so its directory is watched after the next run
+			Files.writeString(script, "b");
+			assertTrue(runs.tryAcquire(5, TimeUnit.SECONDS));
+			Thread.sleep(WatcherTest.REGISTERED);
+			Files.writeString(include, "c");
+			assertTrue(runs.tryAcquire(5, TimeUnit.SECONDS));
+			Thread.sleep(WatcherTest.REGISTERED);
+
+			// the include was removed again
+			Files.writeString(include, "d");
+			assertFalse(runs.tryAcquire(500, TimeUnit.MILLISECONDS));
+			assertEquals(3, count.get());
+
+			WatcherTest.stop(watcher, thread);
+		}
+	}
+}